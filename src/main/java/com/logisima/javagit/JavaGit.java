@@ -21,8 +21,12 @@ package com.logisima.javagit;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import com.logisima.javagit.cli.add.GitAdd;
 import com.logisima.javagit.cli.add.GitAddOptions;
@@ -44,6 +48,7 @@ import com.logisima.javagit.cli.commit.GitCommitResponse;
 import com.logisima.javagit.cli.init.GitInitOptions;
 import com.logisima.javagit.cli.init.GitInitResponse;
 import com.logisima.javagit.cli.log.GitLog;
+import com.logisima.javagit.cli.log.GitLogHandler;
 import com.logisima.javagit.cli.log.GitLogOptions;
 import com.logisima.javagit.cli.log.GitLogResponse;
 import com.logisima.javagit.cli.mv.GitMv;
@@ -62,6 +67,7 @@ import com.logisima.javagit.cli.status.GitStatusOptions;
 import com.logisima.javagit.cli.status.GitStatusResponse;
 import com.logisima.javagit.object.Ref;
 import com.logisima.javagit.object.Ref.RefType;
+import com.logisima.javagit.object.db.ObjectReader;
 import com.logisima.javagit.utilities.CheckUtilities;
 
 public class JavaGit {
@@ -108,6 +114,20 @@ public class JavaGit {
         return gitAdd.add(repositoryPath, file, options);
     }
 
+    /**
+     * Asynchronous git add of files. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitAddResponse> addAsync(final List<File> paths, final GitAddOptions options) {
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitAddResponse>() {
+
+            public GitAddResponse call() throws JavaGitException {
+                return client.getGitAddInstance().add(repository, paths, options);
+            }
+        });
+    }
+
     // ~~~~ BEGIN GIT BRANCH
 
     /**
@@ -147,6 +167,22 @@ public class JavaGit {
         return gitBranch.createBranch(repositoryPath, options, branchName);
     }
 
+    /**
+     * Asynchronous git branch. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitBranchResponse> branchAsync(final GitBranchOptions options) {
+        CheckUtilities.checkNullArgument(options, "options");
+
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitBranchResponse>() {
+
+            public GitBranchResponse call() throws JavaGitException {
+                return client.getGitBranchInstance().branch(repository, options);
+            }
+        });
+    }
+
     // ~~~~ BEGIN GIT COMMIT
 
     /**
@@ -174,6 +210,20 @@ public class JavaGit {
         return gitCommit.commit(repositoryPath, paths, message, options);
     }
 
+    /**
+     * Asynchronous commit of the staged changes. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitCommitResponse> commitAsync(final String message, final GitCommitOptions options) {
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitCommitResponse>() {
+
+            public GitCommitResponse call() throws JavaGitException {
+                return client.getGitCommitInstance().commit(repository, message, options);
+            }
+        });
+    }
+
     // ~~~~ BEGIN GIT CHECKOUT
 
     /**
@@ -234,6 +284,54 @@ public class JavaGit {
         return gitLog.log(repositoryPath, options, files);
     }
 
+    /**
+     * Git log streaming the commits to a handler, without collecting them.
+     */
+    public void log(GitLogOptions options, GitLogHandler handler) throws JavaGitException {
+        IClient client = ClientManager.getInstance().getPreferredClient();
+        GitLog gitLog = client.getGitLogInstance();
+        gitLog.log(repositoryPath, options, null, handler);
+    }
+
+    /**
+     * Git log files streaming the commits to a handler, without collecting them.
+     */
+    public void log(List<File> files, GitLogOptions options, GitLogHandler handler) throws JavaGitException {
+        CheckUtilities.checkNullListArgument(files, "files");
+        IClient client = ClientManager.getInstance().getPreferredClient();
+        GitLog gitLog = client.getGitLogInstance();
+        gitLog.log(repositoryPath, options, files, handler);
+    }
+
+    /**
+     * Asynchronous git log. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitLogResponse> logAsync(final GitLogOptions options) {
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitLogResponse>() {
+
+            public GitLogResponse call() throws JavaGitException {
+                return client.getGitLogInstance().log(repository, options);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous git log files. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitLogResponse> logAsync(final List<File> files, final GitLogOptions options) {
+        CheckUtilities.checkNullListArgument(files, "files");
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitLogResponse>() {
+
+            public GitLogResponse call() throws JavaGitException {
+                return client.getGitLogInstance().log(repository, options, files);
+            }
+        });
+    }
+
     // ~~~~ BEGIN GIT MOVE
 
     /**
@@ -345,6 +443,26 @@ public class JavaGit {
         return gitShow.show(repositoryPath, options, file, revision);
     }
 
+    /**
+     * Git show on a file and a rev, streaming the content of the file to an output stream
+     */
+    public GitShowResponse show(File file, Ref revision, GitShowOptions options, OutputStream out)
+            throws JavaGitException {
+        IClient client = ClientManager.getInstance().getPreferredClient();
+        com.logisima.javagit.cli.show.GitShow gitShow = client.getGitShowInstance();
+        return gitShow.show(repositoryPath, options, file, revision, out);
+    }
+
+    /**
+     * Git show on a file and a rev, streaming the content of the file to a channel
+     */
+    public GitShowResponse show(File file, Ref revision, GitShowOptions options, WritableByteChannel channel)
+            throws JavaGitException {
+        IClient client = ClientManager.getInstance().getPreferredClient();
+        com.logisima.javagit.cli.show.GitShow gitShow = client.getGitShowInstance();
+        return gitShow.show(repositoryPath, options, file, revision, channel);
+    }
+
     /**
      * Git show on a file and a rev
      */
@@ -354,6 +472,20 @@ public class JavaGit {
         return gitShow.show(repositoryPath, options, revision);
     }
 
+    /**
+     * Asynchronous git show of a rev. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitShowResponse> showAsync(final Ref revision, final GitShowOptions options) {
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitShowResponse>() {
+
+            public GitShowResponse call() throws JavaGitException {
+                return client.getGitShowInstance().show(repository, options, revision);
+            }
+        });
+    }
+
     // ~~~~ BEGIN GIT STATUS
 
     /**
@@ -388,4 +520,43 @@ public class JavaGit {
         return gitStatus.status(repositoryPath, options, file);
     }
 
+    /**
+     * Asynchronous git status. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitStatusResponse> statusAsync(final GitStatusOptions options) {
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitStatusResponse>() {
+
+            public GitStatusResponse call() throws JavaGitException {
+                return client.getGitStatusInstance().status(repository, options);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous git status of paths. The command runs on the executor of <code>JavaGitConfiguration</code>.
+     */
+    public Future<GitStatusResponse> statusAsync(final List<File> paths, final GitStatusOptions options) {
+        final IClient client = ClientManager.getInstance().getPreferredClient();
+        final File repository = repositoryPath;
+        return client.submit(new Callable<GitStatusResponse>() {
+
+            public GitStatusResponse call() throws JavaGitException {
+                return client.getGitStatusInstance().status(repository, options, paths);
+            }
+        });
+    }
+
+    // ~~~~ BEGIN OBJECT DATABASE
+
+    /**
+     * Gets the <code>ObjectReader</code> of the repository. The reader is shared by all the callers working on the
+     * same repository and should be reused for any number of lookups.
+     */
+    public ObjectReader getObjectReader() throws JavaGitException {
+        IClient client = ClientManager.getInstance().getPreferredClient();
+        return client.getObjectReaderInstance(repositoryPath);
+    }
+
 }
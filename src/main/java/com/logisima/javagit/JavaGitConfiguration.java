@@ -23,6 +23,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.logisima.javagit.cli.Parser;
 import com.logisima.javagit.cli.Response;
@@ -42,12 +46,46 @@ public final class JavaGitConfiguration {
      * The path to our git binaries. Default to null, which means that the git command is available via the system PATH
      * environment variable.
      */
-    private static File   gitPath    = null;
+    private static File            gitPath             = null;
 
     /*
      * The version string fpr the locally-installed git binaries.
      */
-    private static String gitVersion = null;
+    private static String          gitVersion          = null;
+
+    /*
+     * The maximum size, in bytes, of the delta base cache of each repository read in-process. Defaults to 32 MB.
+     */
+    private static int             deltaBaseCacheLimit = 32 * 1024 * 1024;
+
+    /*
+     * The executor running the asynchronous commands. Default to null, which means that a pool of daemon threads is
+     * created on the first asynchronous command.
+     */
+    private static ExecutorService executor            = null;
+
+    /*
+     * The number of read commands allowed to run at the same time on a repository. Defaults to the number of
+     * processors.
+     */
+    private static int             maxConcurrentReads  = Runtime.getRuntime().availableProcessors();
+
+    /*
+     * The time, in milliseconds, a command may wait for its turn and run. Defaults to 0, which means no limit.
+     */
+    private static long            commandTimeout      = 0;
+
+    /*
+     * The total length, in characters, of the paths passed as arguments to a command. Longer lists of paths are passed
+     * on the standard input of git. Defaults to 16 K, under the limit of the command line on every platform.
+     */
+    private static int             maxPathspecLength   = 16 * 1024;
+
+    /*
+     * The time, in milliseconds, after which the resources of a repository nobody reads (batch processes, mapped packs)
+     * are released. Defaults to a minute.
+     */
+    private static long            idleTimeout         = 60 * 1000;
 
     /**
      * Constructor - private because this is an all-static class.
@@ -164,6 +202,25 @@ public final class JavaGitConfiguration {
         return gitVersion;
     }
 
+    /**
+     * Checks if the version of git is at least a given version.
+     * 
+     * @param major The major version number.
+     * @param minor The minor version number.
+     * @return true if the version of git is the given version or a later one.
+     * @throws JavaGitException Thrown if the version of git can't be read.
+     */
+    public static boolean isGitVersionAtLeast(int major, int minor) throws JavaGitException {
+        String[] numbers = getGitVersion().split("[^0-9]+", 3);
+        try {
+            int gitMajor = Integer.parseInt(numbers[0]);
+            int gitMinor = (numbers.length > 1) ? Integer.parseInt(numbers[1]) : 0;
+            return gitMajor > major || (gitMajor == major && gitMinor >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     /**
      * Judge the validity of a given git version string. This can be difficult to do, as there seems to be no
      * deliberately-defined git version format. So, here we do a minimal sanity check for two things: 1. The first
@@ -245,6 +302,155 @@ public final class JavaGitConfiguration {
         setGitPath(new File(path));
     }
 
+    /**
+     * Gets the maximum size of the delta base cache of each repository read in-process.
+     * 
+     * @return The limit, in bytes.
+     */
+    public static int getDeltaBaseCacheLimit() {
+        return deltaBaseCacheLimit;
+    }
+
+    /**
+     * Sets the maximum size of the delta base cache of each repository read in-process. The bases of deltified objects
+     * are kept up to this size, so history walks don't inflate the same bases again and again. The new limit applies
+     * to the repositories opened afterwards.
+     * 
+     * @param limit The limit, in bytes. 0 disables the cache.
+     */
+    public static void setDeltaBaseCacheLimit(int limit) {
+        CheckUtilities.checkIntArgumentGreaterThan(limit, -1, "delta base cache limit");
+        deltaBaseCacheLimit = limit;
+    }
+
+    /**
+     * Gets the number of read commands allowed to run at the same time on a repository.
+     * 
+     * @return The number of read commands.
+     */
+    public static int getMaxConcurrentReads() {
+        return maxConcurrentReads;
+    }
+
+    /**
+     * Sets the number of read commands (log, status, show, ...) allowed to run at the same time on a repository. The
+     * commands writing the index always run one at a time. The new limit applies to the repositories used afterwards.
+     * 
+     * @param max The number of read commands, at least 1.
+     */
+    public static void setMaxConcurrentReads(int max) {
+        CheckUtilities.checkIntArgumentGreaterThan(max, 0, "max concurrent reads");
+        maxConcurrentReads = max;
+    }
+
+    /**
+     * Gets the time a command may take.
+     * 
+     * @return The timeout, in milliseconds, 0 if there is no limit.
+     */
+    public static long getCommandTimeout() {
+        return commandTimeout;
+    }
+
+    /**
+     * Sets the time a command may take, waiting for its turn in the scheduler of the repository and running. When it's
+     * over, the git process is destroyed and the command fails with a <code>JavaGitException</code> of code
+     * <code>PROCESS_TIMEOUT</code>.
+     * 
+     * @param timeout The timeout, in milliseconds, 0 for no limit.
+     */
+    public static void setCommandTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException(ExceptionMessageMap.getMessage("000004") + "  { toCheck=[" + timeout
+                    + "], lowerBound=[-1], variableName=[command timeout] }");
+        }
+        commandTimeout = timeout;
+    }
+
+    /**
+     * Gets the total length of the paths which may be passed as arguments to a command.
+     * 
+     * @return The length, in characters.
+     */
+    public static int getMaxPathspecLength() {
+        return maxPathspecLength;
+    }
+
+    /**
+     * Sets the total length of the paths which may be passed as arguments to a command (add, rm, commit, checkout).
+     * When the paths are longer, they are written on the standard input of git, with
+     * <code>--pathspec-from-file</code>, so any number of paths is handled by a single process. Older versions of git
+     * (before 2.26) always get the paths as arguments.
+     * 
+     * @param length The length, in characters. 0 always passes the paths on the standard input.
+     */
+    public static void setMaxPathspecLength(int length) {
+        CheckUtilities.checkIntArgumentGreaterThan(length, -1, "max pathspec length");
+        maxPathspecLength = length;
+    }
+
+    /**
+     * Gets the time after which the resources of a repository nobody reads are released.
+     * 
+     * @return The timeout, in milliseconds, 0 if they are kept.
+     */
+    public static long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time after which the resources of a repository nobody reads are released: the &lt;git-cat-file&gt;
+     * processes of <code>GitCatFile</code> are stopped and the packs mapped by <code>ObjectDatabase</code> are
+     * unmapped. They are acquired again on the next read.
+     * 
+     * @param timeout The timeout, in milliseconds, 0 to keep them until the repository is closed.
+     */
+    public static void setIdleTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException(ExceptionMessageMap.getMessage("000004") + "  { toCheck=[" + timeout
+                    + "], lowerBound=[-1], variableName=[idle timeout] }");
+        }
+        idleTimeout = timeout;
+    }
+
+    /**
+     * Gets the executor running the asynchronous commands (the <code>*Async</code> methods of <code>JavaGit</code>).
+     * Unless an executor is set, a cached pool of daemon threads is used.
+     * 
+     * @return The executor.
+     */
+    public static synchronized ExecutorService getExecutor() {
+        if (null == executor) {
+            executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the executor running the asynchronous commands. Each command blocks a thread of the executor while git runs,
+     * so its size bounds the number of concurrent asynchronous commands. The previous executor is not shut down.
+     * 
+     * @param executorService The executor, or null to use the default pool of daemon threads.
+     */
+    public static synchronized void setExecutor(ExecutorService executorService) {
+        executor = executorService;
+    }
+
+    /*
+     * <code>DaemonThreadFactory</code> creates the threads of the default executor. They are daemon threads, so a
+     * pending command doesn't prevent the JVM from exiting.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "javagit-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /*
      * <code>GitVersionParser</code> parses the output of the <code>git --version</code> command. It is also used to
      * determine if the git binaries are accessible via the command line.
@@ -24,12 +24,15 @@ package com.logisima.javagit;
  */
 public class JavaGitException extends Exception {
 
-    public final static int   REPOSITORY_ERROR = 100;
-    public final static int   FILE_ERROR       = 200;
-    public final static int   PROCESS_ERROR    = 300;
+    public final static int   REPOSITORY_ERROR    = 100;
+    public final static int   REF_CONFLICT        = 110;
+    public final static int   FILE_ERROR          = 200;
+    public final static int   PROCESS_ERROR       = 300;
+    public final static int   PROCESS_TIMEOUT     = 310;
+    public final static int   PROCESS_INTERRUPTED = 320;
 
     // as per the Java spec, this is a required field for <code>Serializable</code>
-    private static final long serialVersionUID = 1402053559415331074L;
+    private static final long serialVersionUID    = 1402053559415331074L;
     // The code for an exception instance.
     private int               code;
 
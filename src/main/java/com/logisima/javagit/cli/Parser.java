@@ -57,6 +57,16 @@ public abstract class Parser {
      */
     public abstract Response getResponse() throws JavaGitException;
 
+    /**
+     * Tells if the parser needs no more output. When it returns true, the rest of the process output is not read and
+     * the process is destroyed. By default, the whole output is parsed.
+     * 
+     * @return true if the parsing is complete.
+     */
+    public boolean isComplete() {
+        return false;
+    }
+
     /**
      * Constructor.
      * 
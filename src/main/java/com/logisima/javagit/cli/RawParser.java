@@ -0,0 +1,76 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.cli;
+
+import java.nio.charset.Charset;
+
+/**
+ * Abstract class for the parsers of a binary output: instead of lines, the parser receives the raw bytes of the process
+ * output, chunk by chunk, as they are read. It suits the outputs using NUL separators (<code>-z</code> options), which
+ * can't be split in lines.
+ */
+public abstract class RawParser extends Parser {
+
+    /**
+     * The charset of the git outputs.
+     */
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Parses a chunk of the process output. A chunk may end in the middle of a record, the parser has to keep the
+     * incomplete record until the next chunk.
+     * 
+     * @param buffer The buffer containing the chunk. Its content is only valid during the call.
+     * @param offset The position of the chunk in the buffer.
+     * @param length The length of the chunk.
+     */
+    public abstract void parse(byte[] buffer, int offset, int length);
+
+    /**
+     * Parses a line of the output, given as a <code>String</code>: the line is converted back to bytes and parsed with
+     * its end of line.
+     * 
+     * @param line The line, without its end of line.
+     */
+    public void parseLine(String line) {
+        byte[] bytes = (line + "\n").getBytes(UTF8);
+        parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Tells if the error output of the process is read apart from its output. By default, it is merged in the output:
+     * a parser streaming the content of objects overrides this method, so that the messages of git are not mixed with
+     * the content.
+     * 
+     * @return true to receive the error output through <code>parseErrorOutput()</code>.
+     */
+    public boolean isErrorOutputSeparate() {
+        return false;
+    }
+
+    /**
+     * Receives the error output of the process, once the process is over, when it is read apart from the output.
+     * 
+     * @param errorOutput The error output, decoded in UTF-8.
+     */
+    public void parseErrorOutput(String errorOutput) {
+    }
+
+}
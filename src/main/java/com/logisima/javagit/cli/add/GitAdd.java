@@ -39,10 +39,18 @@ public class GitAdd {
      */
     public GitAddResponse add(File repositoryPath, List<File> paths, GitAddOptions options) throws JavaGitException {
         GitAddParser parser = new GitAddParser();
-        List<String> command = buildCommand(repositoryPath, options, paths);
+        List<String> command = buildCommand(repositoryPath, options);
+        List<String> pathspecs = null;
+        if (paths != null && paths.size() > 0) {
+            List<String> pathNames = new ArrayList<String>(paths.size());
+            for (File file : paths) {
+                pathNames.add(file.getPath());
+            }
+            pathspecs = ProcessUtilities.addPathspecs(command, pathNames, false);
+        }
         GitAddResponse response;
         try {
-            response = (GitAddResponse) ProcessUtilities.runCommand(repositoryPath, command, parser);
+            response = (GitAddResponse) ProcessUtilities.runCommand(repositoryPath, command, pathspecs, parser);
         } catch (IOException e) {
             throw new JavaGitException(JavaGitException.PROCESS_ERROR, e.getMessage());
         }
@@ -59,9 +67,9 @@ public class GitAdd {
     }
 
     /**
-     * Constructor of the command line.
+     * Constructor of the command line, without the paths.
      */
-    private List<String> buildCommand(File repositoryPath, GitAddOptions options, List<File> paths) {
+    private List<String> buildCommand(File repositoryPath, GitAddOptions options) {
         List<String> command = new ArrayList<String>();
         command.add(JavaGitConfiguration.getGitCommand());
         command.add("add");
@@ -85,11 +93,6 @@ public class GitAdd {
                 command.add("--ignore-errors");
             }
         }
-        if (paths != null && paths.size() > 0) {
-            for (File file : paths) {
-                command.add(file.getPath());
-            }
-        }
         return command;
     }
 
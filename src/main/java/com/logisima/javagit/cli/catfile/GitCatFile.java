@@ -0,0 +1,351 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.cli.catfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.object.db.GitObject;
+import com.logisima.javagit.object.db.ObjectInfo;
+import com.logisima.javagit.object.db.ObjectReader;
+import com.logisima.javagit.object.db.ObjectType;
+import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+import com.logisima.javagit.utilities.IdleReaper;
+import com.logisima.javagit.utilities.InstanceRegistry;
+import com.logisima.javagit.utilities.ProcessUtilities;
+
+/**
+ * Command-line implementation of the <code>ObjectReader</code> interface. Objects are read through long-lived
+ * &lt;git-cat-file --batch&gt; and &lt;git-cat-file --batch-check&gt; processes, so a lookup costs one pipe round-trip
+ * instead of a process creation.
+ * 
+ * The processes are stopped when nobody used them for <code>JavaGitConfiguration.getIdleTimeout()</code>, or when the
+ * reader is closed or collected, and started again on the next request.
+ */
+public class GitCatFile implements ObjectReader {
+
+    /**
+     * This guy's a per-repository singleton, so we need a static place to store our instances.
+     */
+    private static final InstanceRegistry<GitCatFile> INSTANCES = new InstanceRegistry<GitCatFile>();
+
+    /**
+     * The canonical path of the repository, the key of this instance.
+     */
+    private final String                              canonicalPath;
+
+    /**
+     * The processes of this reader, stopped when the reader is collected.
+     */
+    private final BatchProcesses                      processes;
+
+    /**
+     * Constructor. Private because this class is only available via the getInstance method.
+     *
+     * @param canonicalPath The canonical path to the repository.
+     */
+    private GitCatFile(String canonicalPath) {
+        this.canonicalPath = canonicalPath;
+        this.processes = new BatchProcesses(new File(canonicalPath));
+    }
+
+    /**
+     * Static factory method for retrieving the instance of this class for a repository.
+     *
+     * @param repositoryPath <code>File</code> object representing the path to the repository.
+     * @return The <code>GitCatFile</code> instance for this path.
+     * @throws JavaGitException Thrown if the path of the repository can't be resolved.
+     */
+    public static GitCatFile getInstance(File repositoryPath) throws JavaGitException {
+        CheckUtilities.checkNullArgument(repositoryPath, "repository path");
+        String canonicalPath;
+        try {
+            canonicalPath = repositoryPath.getCanonicalPath();
+        } catch (IOException e) {
+            throw new JavaGitException(JavaGitException.REPOSITORY_ERROR, e.getMessage(), e);
+        }
+
+        GitCatFile catFile = INSTANCES.get(canonicalPath);
+        if (null == catFile) {
+            // the processes are started on the first request, so a discarded instance costs nothing
+            GitCatFile newCatFile = new GitCatFile(canonicalPath);
+            catFile = INSTANCES.putIfAbsent(canonicalPath, newCatFile, newCatFile.processes);
+        }
+        return catFile;
+    }
+
+    public boolean has(String objectName) throws JavaGitException {
+        return null != getInfo(objectName);
+    }
+
+    public ObjectInfo getInfo(String objectName) throws JavaGitException {
+        return processes.batchCheck.request(objectName);
+    }
+
+    public GitObject open(String objectName) throws JavaGitException {
+        return (GitObject) processes.batch.request(objectName);
+    }
+
+    /**
+     * Stops the processes, and removes this reader from the instances: the next <code>getInstance()</code> creates a
+     * new one. A request made on a closed reader starts the processes again.
+     */
+    public void close() {
+        INSTANCES.remove(canonicalPath, this);
+        processes.close();
+    }
+
+    /**
+     * @return true if one of the processes of this reader is running
+     */
+    boolean isRunning() {
+        return processes.batch.isRunning() || processes.batchCheck.isRunning();
+    }
+
+    /**
+     * The two processes of a reader. They don't reference the reader, so they can be stopped once it is collected.
+     */
+    private static final class BatchProcesses implements Closeable {
+
+        // The &lt;git-cat-file --batch&gt; process, used to read object contents.
+        private final BatchProcess batch;
+
+        // The &lt;git-cat-file --batch-check&gt; process, used to read object headers.
+        private final BatchProcess batchCheck;
+
+        BatchProcesses(File repositoryPath) {
+            this.batch = new BatchProcess(repositoryPath, "--batch");
+            this.batchCheck = new BatchProcess(repositoryPath, "--batch-check");
+        }
+
+        public void close() {
+            batch.stop();
+            batchCheck.stop();
+        }
+    }
+
+    /**
+     * A &lt;git-cat-file&gt; process running in batch mode. Requests are written to the standard input of the process,
+     * one per line, and answered in order on its standard output.
+     */
+    private static final class BatchProcess implements IdleReaper.Releasable {
+
+        // The working directory of the process.
+        private final File   repositoryPath;
+
+        // The batch option: "--batch" or "--batch-check".
+        private final String mode;
+
+        // The running process, or null if it is not started.
+        private Process      process;
+
+        // The standard input of the process.
+        private OutputStream requests;
+
+        // The standard output of the process.
+        private InputStream  answers;
+
+        // Buffer used to read the header lines, reused for all the requests.
+        private byte[]       lineBuffer = new byte[128];
+
+        // The time of the last request, as given by System.nanoTime().
+        private long         lastRequest;
+
+        BatchProcess(File repositoryPath, String mode) {
+            this.repositoryPath = repositoryPath;
+            this.mode = mode;
+        }
+
+        /**
+         * Sends a request to the process and reads the answer.
+         *
+         * @param objectName The name of the requested object.
+         * @return An <code>ObjectInfo</code> in check mode, a <code>GitObject</code> otherwise, or null if the object
+         *         doesn't exist.
+         */
+        synchronized ObjectInfo request(String objectName) throws JavaGitException {
+            CheckUtilities.checkStringArgument(objectName, "object name");
+            if (objectName.indexOf('\n') >= 0) {
+                throw new JavaGitException(442001, ExceptionMessageMap.getMessage("442001") + " { objectName=["
+                        + objectName + "] }");
+            }
+
+            lastRequest = System.nanoTime();
+            try {
+                try {
+                    write(objectName);
+                } catch (IOException e) {
+                    // the process may have died since the last request, give it another try with a new one.
+                    stop();
+                    write(objectName);
+                }
+                return read(objectName);
+            } catch (IOException e) {
+                stop();
+                throw new JavaGitException(442000, ExceptionMessageMap.getMessage("442000") + " { objectName=["
+                        + objectName + "] }", e);
+            }
+        }
+
+        private void write(String objectName) throws IOException {
+            if (null == process) {
+                start();
+            }
+            requests.write(objectName.getBytes("UTF-8"));
+            requests.write('\n');
+            requests.flush();
+        }
+
+        private ObjectInfo read(String objectName) throws IOException, JavaGitException {
+            // header is "<sha1> <type> <size>", or "<name> missing" / "<name> ambiguous"
+            String header = readLine();
+            if (header.endsWith(" missing")) {
+                return null;
+            }
+            String[] fields = header.split(" ");
+            ObjectType type = (fields.length == 3) ? ObjectType.fromName(fields[1]) : null;
+            if (null == type) {
+                throw new JavaGitException(442001, ExceptionMessageMap.getMessage("442001") + " { objectName=["
+                        + objectName + "], header=[" + header + "] }");
+            }
+            long size = Long.parseLong(fields[2]);
+
+            if ("--batch-check".equals(mode)) {
+                return new ObjectInfo(fields[0], type, size);
+            }
+
+            if (size > Integer.MAX_VALUE) {
+                throw new JavaGitException(442002, ExceptionMessageMap.getMessage("442002") + " { objectName=["
+                        + objectName + "], size=[" + size + "] }");
+            }
+            byte[] data = new byte[(int) size];
+            int read = 0;
+            while (read < data.length) {
+                int n = answers.read(data, read, data.length - read);
+                if (n < 0) {
+                    throw new IOException(ExceptionMessageMap.getMessage("020101"));
+                }
+                read += n;
+            }
+            // the content is followed by a line feed
+            if (answers.read() != '\n') {
+                throw new IOException(ExceptionMessageMap.getMessage("020101"));
+            }
+            return new GitObject(fields[0], type, data);
+        }
+
+        private String readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                int b = answers.read();
+                if (b < 0) {
+                    throw new IOException(ExceptionMessageMap.getMessage("020101"));
+                }
+                if (b == '\n') {
+                    break;
+                }
+                if (length == lineBuffer.length) {
+                    byte[] newBuffer = new byte[lineBuffer.length * 2];
+                    System.arraycopy(lineBuffer, 0, newBuffer, 0, length);
+                    lineBuffer = newBuffer;
+                }
+                lineBuffer[length++] = (byte) b;
+            }
+            return new String(lineBuffer, 0, length, "UTF-8");
+        }
+
+        private void start() throws IOException {
+            List<String> command = new ArrayList<String>();
+            command.add(JavaGitConfiguration.getGitCommand());
+            command.add("cat-file");
+            command.add(mode);
+
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.directory(repositoryPath);
+            process = ProcessUtilities.startProcess(pb);
+            requests = new BufferedOutputStream(process.getOutputStream());
+            answers = new BufferedInputStream(process.getInputStream(), 65536);
+            drain(process.getErrorStream());
+            IdleReaper.register(this);
+        }
+
+        public synchronized boolean releaseIfIdle(long idleSince) {
+            if (null != process && lastRequest - idleSince >= 0) {
+                return false;
+            }
+            stop();
+            return true;
+        }
+
+        synchronized boolean isRunning() {
+            return null != process;
+        }
+
+        /**
+         * Stops the process. It will be started again on the next request.
+         */
+        synchronized void stop() {
+            if (null == process) {
+                return;
+            }
+            try {
+                requests.close();
+            } catch (IOException e) {
+                // the process is going away anyway
+            }
+            process.destroy();
+            process = null;
+            requests = null;
+            answers = null;
+        }
+
+        /**
+         * Reads and discards the error stream of the process, so that it never blocks on a full pipe.
+         */
+        private void drain(final InputStream errors) {
+            Thread drainer = new Thread("git cat-file " + mode + " stderr") {
+
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[1024];
+                    try {
+                        while (errors.read(buffer) >= 0) {
+                            // discard
+                        }
+                    } catch (IOException e) {
+                        // stream closed, the process is gone
+                    }
+                }
+            };
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+    }
+}
@@ -61,9 +61,10 @@ public class GitCheckout {
         CheckUtilities.checkFileValidity(repositoryPath);
         CheckUtilities.checkNullListArgument(paths, "list of file paths");
         GitCheckoutParser parser = new GitCheckoutParser();
-        List<String> command = buildCommand(null, null, paths);
+        List<String> command = buildCommand(null, null);
+        List<String> pathspecs = addPaths(command, paths);
         GitCheckoutResponse response = (GitCheckoutResponse) ProcessUtilities.runCommand(repositoryPath, command,
-                parser);
+                pathspecs, parser);
         return response;
     }
 
@@ -77,8 +78,9 @@ public class GitCheckout {
             throw new IllegalArgumentException("Invalid ref type passed as argument to checkout");
         }
         GitCheckoutParser parser = new GitCheckoutParser();
-        List<String> command = buildCommand(options, ref, paths);
-        return (GitCheckoutResponse) ProcessUtilities.runCommand(repositoryPath, command, parser);
+        List<String> command = buildCommand(options, ref);
+        List<String> pathspecs = addPaths(command, paths);
+        return (GitCheckoutResponse) ProcessUtilities.runCommand(repositoryPath, command, pathspecs, parser);
     }
 
     /**
@@ -94,36 +96,23 @@ public class GitCheckout {
     }
 
     /**
-     * builds a &lt;git-checkout&gt; command in sth <code>List<String></code> format.
+     * Adds the files to check out to a &lt;git-checkout&gt; command.
      * 
-     * @param options <code>GitCheckoutOptions</code> options passed to the &lt;git-checkout&gt; command.
-     * @param treeIsh either a branch type or sha1 type object
+     * @param command The command, with its options and its tree-ish.
      * @param paths List of files that are to be checked out
-     * @return
+     * @return The pathspecs to write on the standard input of the command, or null if the files are arguments.
      * @throws JavaGitException
      */
-    private List<String> buildCommand(GitCheckoutOptions options, Ref treeIsh, List<File> paths)
-            throws JavaGitException {
-        List<String> command = new ArrayList<String>();
-        command.add(JavaGitConfiguration.getGitCommand());
-        command.add("checkout");
-        // Process options
-        if (options != null) {
-            processOptions(command, options);
-        }
-        // Process tree-ish
-        if (treeIsh != null) {
-            command.add(treeIsh.getName());
-        }
+    private List<String> addPaths(List<String> command, List<File> paths) throws JavaGitException {
         // return if no file-paths are provided
         if (paths == null) {
-            return command;
+            return null;
         }
-        command.add("--");
+        List<String> names = new ArrayList<String>(paths.size());
         for (File file : paths) {
-            command.add(file.getName());
+            names.add(file.getName());
         }
-        return command;
+        return ProcessUtilities.addPathspecs(command, names, true);
     }
 
     private List<String> buildCommand(GitCheckoutOptions options, Ref branch) throws JavaGitException {
@@ -19,8 +19,15 @@
  */
 package com.logisima.javagit.cli.client;
 
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.add.GitAdd;
 import com.logisima.javagit.cli.branch.GitBranch;
+import com.logisima.javagit.cli.catfile.GitCatFile;
 import com.logisima.javagit.cli.checkout.GitCheckout;
 import com.logisima.javagit.cli.clone.GitClone;
 import com.logisima.javagit.cli.commit.GitCommit;
@@ -31,6 +38,7 @@ import com.logisima.javagit.cli.reset.GitReset;
 import com.logisima.javagit.cli.rm.GitRm;
 import com.logisima.javagit.cli.show.GitShow;
 import com.logisima.javagit.cli.status.GitStatus;
+import com.logisima.javagit.object.db.ObjectReader;
 
 /**
  * Command-line implementation of the <code>IClient</code> interface.
@@ -85,4 +93,12 @@ public class Client implements IClient {
         return new GitClone();
     }
 
+    public ObjectReader getObjectReaderInstance(File repositoryPath) throws JavaGitException {
+        return GitCatFile.getInstance(repositoryPath);
+    }
+
+    public <T> Future<T> submit(Callable<T> command) {
+        return JavaGitConfiguration.getExecutor().submit(command);
+    }
+
 }
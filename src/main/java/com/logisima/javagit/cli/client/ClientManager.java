@@ -22,6 +22,8 @@ package com.logisima.javagit.cli.client;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.logisima.javagit.nativeclient.NativeClient;
+
 /**
  * This class manages the <code>IClient</code> instances of the various <code>ClientType</code>s. It contains factory
  * type functionality (the <code>getClientType()</code> method) but manages much more than just creating
@@ -31,7 +33,7 @@ public class ClientManager {
 
     // An enumeration of the available client types.
     public static enum ClientType {
-        CLI
+        CLI, NATIVE
     };
 
     // The singleton instance of the class <code>ClientManager</code>.
@@ -72,6 +74,9 @@ public class ClientManager {
             if (ClientType.CLI == clientType) {
                 clientInstance = new Client();
             }
+            else if (ClientType.NATIVE == clientType) {
+                clientInstance = new NativeClient();
+            }
             if (null != clientInstance) {
                 clientImpls.put(clientType, clientInstance);
             }
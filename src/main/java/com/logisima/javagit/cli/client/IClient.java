@@ -19,6 +19,11 @@
  */
 package com.logisima.javagit.cli.client;
 
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.add.GitAdd;
 import com.logisima.javagit.cli.branch.GitBranch;
 import com.logisima.javagit.cli.checkout.GitCheckout;
@@ -31,6 +36,7 @@ import com.logisima.javagit.cli.reset.GitReset;
 import com.logisima.javagit.cli.rm.GitRm;
 import com.logisima.javagit.cli.show.GitShow;
 import com.logisima.javagit.cli.status.GitStatus;
+import com.logisima.javagit.object.db.ObjectReader;
 
 /**
  * An interface to represent a git client type, such as a command-line client.
@@ -121,4 +127,22 @@ public interface IClient {
      */
     public GitClone getGitCloneInstance();
 
+    /**
+     * Gets the <code>ObjectReader</code> of a repository.
+     * 
+     * @param repositoryPath The path to the repository.
+     * @return The <code>ObjectReader</code> of the repository.
+     * @throws JavaGitException Thrown if the repository path can't be resolved.
+     */
+    public ObjectReader getObjectReaderInstance(File repositoryPath) throws JavaGitException;
+
+    /**
+     * Submits a command to run asynchronously, on the executor of <code>JavaGitConfiguration</code>.
+     * 
+     * @param command The command to run.
+     * @return The future result of the command. A <code>JavaGitException</code> thrown by the command is the cause of
+     *         the <code>ExecutionException</code> thrown by <code>Future.get()</code>.
+     */
+    public <T> Future<T> submit(Callable<T> command);
+
 }
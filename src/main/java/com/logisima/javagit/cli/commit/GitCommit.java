@@ -51,20 +51,28 @@ public class GitCommit {
         CheckUtilities.checkNullArgument(repository, "repository");
         CheckUtilities.checkStringArgument(message, "message");
 
-        List<String> commandLine = buildCommand(options, message, files);
+        List<String> commandLine = buildCommand(options, message);
+        List<String> pathspecs = null;
+        if (null != files) {
+            List<String> pathNames = new ArrayList<String>(files.size());
+            for (File f : files) {
+                pathNames.add(f.getPath());
+            }
+            pathspecs = ProcessUtilities.addPathspecs(commandLine, pathNames, true);
+        }
         GitCommitParser parser = new GitCommitParser(repository.getAbsolutePath());
 
         try {
-            return (GitCommitResponse) ProcessUtilities.runCommand(repository, commandLine, parser);
+            return (GitCommitResponse) ProcessUtilities.runCommand(repository, commandLine, pathspecs, parser);
         } catch (IOException e) {
             throw new JavaGitException(JavaGitException.PROCESS_ERROR, e.getMessage());
         }
     }
 
     /**
-     * Builds a list of command arguments to pass to <code>ProcessBuilder</code>.
+     * Builds a list of command arguments to pass to <code>ProcessBuilder</code>, without the paths.
      */
-    protected List<String> buildCommand(GitCommitOptions options, String message, List<File> paths) {
+    protected List<String> buildCommand(GitCommitOptions options, String message) {
         List<String> cmd = new ArrayList<String>();
         cmd.add(JavaGitConfiguration.getGitCommand());
         cmd.add("commit");
@@ -97,12 +105,6 @@ public class GitCommit {
             cmd.add(message);
         }
 
-        if (null != paths) {
-            cmd.add("--");
-            for (File f : paths) {
-                cmd.add(f.getPath());
-            }
-        }
         return cmd;
     }
 
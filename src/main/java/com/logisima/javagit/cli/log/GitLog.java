@@ -26,6 +26,7 @@ import java.util.List;
 
 import com.logisima.javagit.JavaGitConfiguration;
 import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.utilities.CheckUtilities;
 import com.logisima.javagit.utilities.ProcessUtilities;
 
 /**
@@ -63,6 +64,28 @@ public class GitLog {
         return response;
     }
 
+    /**
+     * Implementation of git log streaming the commits to a handler while git is writing them. The commits are not
+     * collected, and the git process is destroyed as soon as the handler asks to stop.
+     * 
+     * @param repositoryPath The path to the repository.
+     * @param options The options of the log.
+     * @param paths The paths to limit the log to, or null for the whole history.
+     * @param handler The handler receiving the commits.
+     * @throws JavaGitException Thrown if the log can't be run.
+     */
+    public void log(File repositoryPath, GitLogOptions options, List<File> paths, GitLogHandler handler)
+            throws JavaGitException {
+        CheckUtilities.checkNullArgument(handler, "handler");
+        GitLogParser parser = new GitLogParser(handler);
+        List<String> command = buildCommand(repositoryPath, options, paths);
+        try {
+            ProcessUtilities.runCommand(repositoryPath, command, parser);
+        } catch (IOException e) {
+            throw new JavaGitException(JavaGitException.PROCESS_ERROR, e.getMessage());
+        }
+    }
+
     /**
      * This function builds the git log commands with necessary options as specified by the user.
      */
@@ -70,12 +93,10 @@ public class GitLog {
         List<String> command = new ArrayList<String>();
         command.add(JavaGitConfiguration.getGitCommand());
         command.add("log");
-        if (null != paths) {
-            command.add("--");
-            for (File f : paths) {
-                command.add(f.getPath());
-            }
-        }
+        // machine-readable output, parsed by GitLogParser
+        command.add("--format=" + GitLogParser.FORMAT);
+        command.add("--encoding=UTF-8");
+        command.add("-z");
         if (options != null) {
             // General Options
             /**
@@ -240,6 +261,12 @@ public class GitLog {
                 command.add("--skip=" + options.getOptLimitSkip());
             }
         }
+        if (null != paths) {
+            command.add("--");
+            for (File f : paths) {
+                command.add(f.getPath());
+            }
+        }
         return command;
     }
 
@@ -0,0 +1,39 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.cli.log;
+
+import com.logisima.javagit.cli.log.GitLogResponse.Commit;
+
+/**
+ * A callback receiving the commits of a git log one at a time, while they are read. The commits are not kept in a
+ * <code>GitLogResponse</code>, so the memory used doesn't depend on the size of the history.
+ */
+public interface GitLogHandler {
+
+    /**
+     * Handles a commit.
+     * 
+     * @param commit The commit.
+     * @return true to receive the next commit, false to stop the log. When the log is stopped, the git process is
+     *         destroyed without reading the rest of its output.
+     */
+    public boolean handleCommit(Commit commit);
+
+}
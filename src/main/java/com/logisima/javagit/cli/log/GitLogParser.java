@@ -21,111 +21,247 @@ package com.logisima.javagit.cli.log;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
 
 import com.logisima.javagit.JavaGitException;
-import com.logisima.javagit.cli.Parser;
+import com.logisima.javagit.cli.RawParser;
 import com.logisima.javagit.cli.log.GitLogResponse.Commit;
 import com.logisima.javagit.cli.log.GitLogResponse.CommitFile;
 
 /**
  * Parser class to parse the output generated by git log; and return a <code>GitLogResponse</code> object.
+ * 
+ * The log is requested with the {@link #FORMAT} format and the <code>-z</code> option: each commit starts with a record
+ * separator (0x1E) and its fields are separated by NUL bytes, followed by the NUL terminated <code>--numstat</code>
+ * entries. Fields are found by scanning the bytes, so a message can contain anything but these two separators. The
+ * error output of git is read apart, so its warnings can't end up in the middle of a commit.
+ * 
+ * If the parser is created with a <code>GitLogHandler</code>, each commit is given to the handler as soon as it is
+ * parsed instead of being added to the response.
  */
-public class GitLogParser extends Parser {
+public class GitLogParser extends RawParser {
 
-    private int            linesAdded;
-    private int            linesDeleted;
-    private boolean        canCommit;
-    private String         filename;
-    private String[]       tmp;
-    private GitLogResponse response;
+    /**
+     * The format given to git log: a record separator, then the SHA1, the parents, the author, the date and the raw
+     * message of the commit, each terminated by a NUL byte.
+     */
+    public static final String FORMAT              = "%x1e%H%x00%P%x00%an <%ae>%x00%ad%x00%B%x00";
+
+    // Separator of the commit records.
+    private static final byte  RECORD_SEPARATOR    = 0x1e;
+
+    // Number of NUL terminated fields of the format.
+    private static final int   FIELD_COUNT         = 5;
+
+    // Initial size of the buffer of the current record.
+    private static final int   RECORD_INITIAL_SIZE = 4096;
+
+    private boolean            complete;
+    private boolean            inRecord;
+    private byte[]             record;
+    private int                recordLength;
+    private int[]              fieldEnds;
+    private GitLogResponse     response;
+    private GitLogHandler      handler;
 
     public GitLogParser() {
+        this(null);
+    }
+
+    /**
+     * Constructor for a parser streaming the commits to a handler.
+     * 
+     * @param handler The handler receiving the commits, or null to collect them in the response.
+     */
+    public GitLogParser(GitLogHandler handler) {
         super();
-        linesAdded = 0;
-        linesDeleted = 0;
-        canCommit = false;
-        filename = null;
+        complete = false;
+        inRecord = false;
+        record = new byte[RECORD_INITIAL_SIZE];
+        recordLength = 0;
+        fieldEnds = new int[FIELD_COUNT];
         response = new GitLogResponse();
+        this.handler = handler;
     }
 
     /**
      * Add the final parsed commit. and returns the response of git log execution.
      */
     public GitLogResponse getResponse() throws JavaGitException {
+        if (inRecord && !complete) {
+            parseRecord();
+        }
+        inRecord = false;
         return response;
     }
 
     /**
-     * Parses a line at a time from the commandline execution output of git log
+     * The parsing is complete when the handler has asked to stop the log.
+     */
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public boolean isErrorOutputSeparate() {
+        return true;
+    }
+
+    /**
+     * Parses a chunk of the git log output. The bytes of the current commit are accumulated until the separator of the
+     * next commit.
+     */
+    public void parse(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end && !complete; i++) {
+            if (buffer[i] != RECORD_SEPARATOR) {
+                continue;
+            }
+            if (inRecord) {
+                append(buffer, start, i - start);
+                parseRecord();
+            }
+            // the bytes before the first record are ignored
+            inRecord = true;
+            recordLength = 0;
+            start = i + 1;
+        }
+        if (inRecord && !complete) {
+            append(buffer, start, end - start);
+        }
+    }
+
+    private void append(byte[] buffer, int offset, int length) {
+        if (recordLength + length > record.length) {
+            byte[] larger = new byte[Math.max(record.length * 2, recordLength + length)];
+            System.arraycopy(record, 0, larger, 0, recordLength);
+            record = larger;
+        }
+        System.arraycopy(buffer, offset, record, recordLength, length);
+        recordLength += length;
+    }
+
+    /**
+     * Parses the record of a commit, and adds it to the response or gives it to the handler.
      */
-    public void parseLine(String line) {
-        if (line.length() == 0) {
+    private void parseRecord() {
+        int field = 0;
+        for (int i = 0; i < recordLength && field < FIELD_COUNT; i++) {
+            if (record[i] == 0) {
+                fieldEnds[field++] = i;
+            }
+        }
+        if (field < FIELD_COUNT) {
+            // truncated record
             return;
         }
 
-        // commit
-        if (line.startsWith("commit")) {
-            if (canCommit) {
-                response.getCommitList().add(
-                        (new Commit(response.getSha(), response.getMergeDetails(), response.getAuthor(), response
-                                .getDateString(), response.getMessage(), response.getFiles())));
+        String sha = decode(0, fieldEnds[0]);
+        List<String> mergeDetails = parseParents(fieldEnds[0] + 1, fieldEnds[1]);
+        String author = decode(fieldEnds[1] + 1, fieldEnds[2]);
+        String date = decode(fieldEnds[2] + 1, fieldEnds[3]);
+        int messageEnd = fieldEnds[4];
+        while (messageEnd > fieldEnds[3] + 1 && record[messageEnd - 1] == '\n') {
+            messageEnd--;
+        }
+        String message = decode(fieldEnds[3] + 1, messageEnd);
+        List<CommitFile> files = parseFiles(fieldEnds[4] + 1);
+
+        Commit commit = new Commit(sha, mergeDetails, author, date, message, files);
+        if (null == handler) {
+            response.getCommitList().add(commit);
+        }
+        else if (!handler.handleCommit(commit)) {
+            complete = true;
+        }
+    }
 
+    /**
+     * Parses the space separated parents. Only merge commits have merge details.
+     */
+    private List<String> parseParents(int start, int end) {
+        List<String> parents = null;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (record[i] == ' ') {
+                count++;
             }
-            canCommit = true;
-            tmp = line.split(" ");
-            response.setSha(line.substring(tmp[0].length()).trim());
         }
-        // merge (optional)
-        else if (line.startsWith("Merge")) {
-            List<String> mergeDetails = new ArrayList<String>();
-            tmp = line.split(" ");
-            StringTokenizer st = new StringTokenizer(line.substring(tmp[0].length()));
-            while (st.hasMoreTokens()) {
-                mergeDetails.add(st.nextToken().trim());
+        if (count == 0) {
+            return null;
+        }
+        parents = new ArrayList<String>(count + 1);
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || record[i] == ' ') {
+                parents.add(decode(fieldStart, i));
+                fieldStart = i + 1;
             }
-
-            response.setMergeDetails(mergeDetails);
-            mergeDetails = null;
         }
-        // Author
-        else if (line.startsWith("Author")) {
-            tmp = line.split(" ");
-            response.setAuthor(line.substring(tmp[0].length()).trim());
+        return parents;
+    }
+
+    /**
+     * Parses the <code>--numstat -z</code> entries: "added TAB deleted TAB path NUL", or "added TAB deleted TAB NUL
+     * old-path NUL new-path NUL" for a rename or a copy. Binary files have "-" instead of the line counts.
+     */
+    private List<CommitFile> parseFiles(int start) {
+        List<CommitFile> files = null;
+        int pos = start;
+        while (pos < recordLength) {
+            // skip the NUL terminating the format and the new line before the entries
+            if (record[pos] == 0 || record[pos] == '\n') {
+                pos++;
+                continue;
+            }
+            int tab1 = indexOf((byte) '\t', pos);
+            int tab2 = indexOf((byte) '\t', tab1 + 1);
+            if (tab2 >= recordLength) {
+                break;
+            }
+            int linesAdded = parseCount(pos, tab1);
+            int linesDeleted = parseCount(tab1 + 1, tab2);
+            int nameStart = tab2 + 1;
+            if (nameStart < recordLength && record[nameStart] == 0) {
+                // rename or copy: the new path is the second one
+                nameStart = indexOf((byte) 0, nameStart + 1) + 1;
+            }
+            int nameEnd = indexOf((byte) 0, nameStart);
+            if (null == files) {
+                files = new ArrayList<CommitFile>();
+            }
+            files.add(new CommitFile(decode(nameStart, nameEnd), linesAdded, linesDeleted));
+            pos = nameEnd + 1;
         }
-        // Date
-        else if (line.startsWith("Date")) {
-            tmp = line.split(" ");
-            response.setDateString(line.substring(tmp[0].length()).trim());
+        return files;
+    }
+
+    /**
+     * Parses a line count, "-" for a binary file counting as 0.
+     */
+    private int parseCount(int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            byte b = record[i];
+            if (b < '0' || b > '9') {
+                return 0;
+            }
+            count = count * 10 + (b - '0');
         }
-        // message or fileDetails (always starts with an int)
-        else {
-            StringTokenizer st = new StringTokenizer(line);
-            try {
-                linesAdded = Integer.parseInt(st.nextToken());
-                linesDeleted = Integer.parseInt(st.nextToken());
-                filename = st.nextToken().toString();
-                response.getFiles().add(new CommitFile(filename, linesAdded, linesDeleted));
-            } catch (NumberFormatException nfe) {
-                try {
-                    if (st.nextToken().equals("-")) {
-                        linesAdded = 0;
-                        linesDeleted = 0;
-                        filename = st.nextToken().toString();
-                        response.getFiles().add(new CommitFile(filename, linesAdded, linesDeleted));
-                    }
-                    else {
-                        response.setMessage(line);
-                    }
-                } catch (NoSuchElementException nsee) {
-                    response.setMessage(line);
-                }
-            } catch (NoSuchElementException nsee) {
-                response.setMessage(line);
-            } catch (Exception e) {
-                response.setMessage(line);
+        return count;
+    }
+
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < recordLength; i++) {
+            if (record[i] == b) {
+                return i;
             }
         }
+        return recordLength;
+    }
+
+    private String decode(int start, int end) {
+        return new String(record, start, end - start, UTF8);
     }
 }
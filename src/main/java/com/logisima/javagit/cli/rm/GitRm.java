@@ -46,20 +46,30 @@ public class GitRm {
      */
     private GitRmResponse processRm(File repository, GitRmOptions options, File path, List<File> paths)
             throws JavaGitException {
-        List<String> cmdline = buildCommandLine(options, path, paths);
+        List<String> cmdline = buildCommandLine(options);
+        List<String> pathNames = new ArrayList<String>();
+        if (null != path) {
+            pathNames.add(path.getPath());
+        }
+        else {
+            for (File f : paths) {
+                pathNames.add(f.getPath());
+            }
+        }
+        List<String> pathspecs = ProcessUtilities.addPathspecs(cmdline, pathNames, false);
 
         GitRmParser parser = new GitRmParser();
         try {
-            return (GitRmResponse) ProcessUtilities.runCommand(repository, cmdline, parser);
+            return (GitRmResponse) ProcessUtilities.runCommand(repository, cmdline, pathspecs, parser);
         } catch (IOException e) {
             throw new JavaGitException(JavaGitException.PROCESS_ERROR, e.getMessage());
         }
     }
 
     /**
-     * Builds the command line.
+     * Builds the command line, without the paths.
      */
-    private List<String> buildCommandLine(GitRmOptions options, File path, List<File> paths) {
+    private List<String> buildCommandLine(GitRmOptions options) {
         List<String> cmdline = new ArrayList<String>();
 
         cmdline.add(JavaGitConfiguration.getGitCommand());
@@ -82,14 +92,6 @@ public class GitRm {
                 cmdline.add("-r");
             }
         }
-        if (null != path) {
-            cmdline.add(path.getPath());
-        }
-        else {
-            for (File f : paths) {
-                cmdline.add(f.getPath());
-            }
-        }
         return cmdline;
     }
 
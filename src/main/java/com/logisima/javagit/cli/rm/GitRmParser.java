@@ -31,7 +31,7 @@ public class GitRmParser extends Parser {
     /**
      * The response.
      */
-    private GitRmResponse response;
+    private GitRmResponse response = new GitRmResponse();
 
     @Override
     public void parseLine(String line) {
@@ -21,11 +21,14 @@ package com.logisima.javagit.cli.show;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.logisima.javagit.JavaGitConfiguration;
 import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.Parser;
 import com.logisima.javagit.object.Ref;
 import com.logisima.javagit.utilities.CheckUtilities;
 import com.logisima.javagit.utilities.ProcessUtilities;
@@ -46,17 +49,66 @@ public class GitShow {
     public GitShowResponse show(File repositoryPath, GitShowOptions options, File path, Ref revision)
             throws JavaGitException {
         CheckUtilities.checkNullArgument(repositoryPath, "repository");
+        if (null != revision) {
+            CheckUtilities.validateArgumentRefType(revision, Ref.RefType.SHA1, "revision");
+        }
+
+        List<String> command = buildCommand(repositoryPath, options, path, revision);
+        return run(repositoryPath, command, new GitShowParser());
+    }
+
+    /**
+     * Streams the content of a file at a revision (the &lt;revision&gt;:&lt;path&gt; form) to an output stream. The
+     * bytes are written as git outputs them, without being decoded.
+     * 
+     * @param repositoryPath The path to the repository.
+     * @param options The options, or null.
+     * @param path The path of the file, relative to the repository.
+     * @param revision The revision, as a SHA1.
+     * @param out The output stream receiving the content. It is not closed.
+     * @return The response, with the number of bytes written.
+     * @throws JavaGitException Thrown if the file doesn't exist at this revision, or if the output can't be written.
+     */
+    public GitShowResponse show(File repositoryPath, GitShowOptions options, File path, Ref revision,
+            OutputStream out) throws JavaGitException {
+        CheckUtilities.checkNullArgument(out, "output stream");
+        return showContent(repositoryPath, options, path, revision, new GitShowStreamParser(out));
+    }
+
+    /**
+     * Streams the content of a file at a revision (the &lt;revision&gt;:&lt;path&gt; form) to a channel. The bytes
+     * are written as git outputs them, without being decoded.
+     * 
+     * @param repositoryPath The path to the repository.
+     * @param options The options, or null.
+     * @param path The path of the file, relative to the repository.
+     * @param revision The revision, as a SHA1.
+     * @param channel The channel receiving the content. It is not closed.
+     * @return The response, with the number of bytes written.
+     * @throws JavaGitException Thrown if the file doesn't exist at this revision, or if the channel can't be written.
+     */
+    public GitShowResponse show(File repositoryPath, GitShowOptions options, File path, Ref revision,
+            WritableByteChannel channel) throws JavaGitException {
+        CheckUtilities.checkNullArgument(channel, "channel");
+        return showContent(repositoryPath, options, path, revision, new GitShowStreamParser(channel));
+    }
+
+    private GitShowResponse showContent(File repositoryPath, GitShowOptions options, File path, Ref revision,
+            GitShowStreamParser parser) throws JavaGitException {
+        CheckUtilities.checkNullArgument(repositoryPath, "repository");
+        CheckUtilities.checkNullArgument(path, "path");
         CheckUtilities.validateArgumentRefType(revision, Ref.RefType.SHA1, "revision");
 
-        GitShowParser parser = new GitShowParser();
         List<String> command = buildCommand(repositoryPath, options, path, revision);
+        return run(repositoryPath, command, parser);
+    }
+
+    private GitShowResponse run(File repositoryPath, List<String> command, Parser parser) throws JavaGitException {
         try {
-            GitShowResponse response = (GitShowResponse) ProcessUtilities.runCommand(repositoryPath, command, parser);
+            return (GitShowResponse) ProcessUtilities.runCommand(repositoryPath, command, parser);
         } catch (IOException e) {
-            throw new JavaGitException(JavaGitException.PROCESS_ERROR, e.getMessage());
+            throw new JavaGitException(JavaGitException.PROCESS_ERROR, e.getMessage(), e);
         }
-        // TODO besim
-        return null;
     }
 
     /**
@@ -68,8 +120,24 @@ public class GitShow {
         cmd.add(JavaGitConfiguration.getGitCommand());
         cmd.add("show");
 
+        if (null != options) {
+            if (null != options.getOptFormat()) {
+                cmd.add("--format=" + options.getOptFormat());
+            }
+            if (options.isOptNameOnly()) {
+                cmd.add("--name-only");
+            }
+            if (options.isOptNoPatch()) {
+                cmd.add("--no-patch");
+            }
+            if (options.isOptTextconv()) {
+                cmd.add("--textconv");
+            }
+        }
+
         if (file != null && revision != null) {
-            cmd.add(revision.getName() + ":" + file.getPath());
+            // the path of a tree entry always uses '/' separators
+            cmd.add(revision.getName() + ":" + file.getPath().replace(File.separatorChar, '/'));
         }
         else {
             if (revision != null) {
@@ -77,10 +145,6 @@ public class GitShow {
             }
         }
 
-        if (null != options) {
-            // TODO there is no options
-        }
-
         return cmd;
     }
 }
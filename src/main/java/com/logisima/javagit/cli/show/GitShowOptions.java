@@ -24,4 +24,87 @@ package com.logisima.javagit.cli.show;
  */
 public final class GitShowOptions {
 
+    // The --format option; pretty-print the commits with the given format.
+    private String  optFormat   = null;
+
+    // The --name-only option; show only the names of the changed files.
+    private boolean optNameOnly = false;
+
+    // The -s or --no-patch option; suppress the diff output.
+    private boolean optNoPatch  = false;
+
+    // The --textconv option; show the blobs through their textconv filter instead of their raw content.
+    private boolean optTextconv = false;
+
+    /**
+     * Get the format used to pretty-print the commits.
+     * 
+     * @return The format (ex: "%H %s"), or null if the --format option is not set.
+     */
+    public String getOptFormat() {
+        return optFormat;
+    }
+
+    /**
+     * Set the format used to pretty-print the commits.
+     * 
+     * @param optFormat The format (ex: "%H %s"), or null to unset the --format option.
+     */
+    public void setOptFormat(String optFormat) {
+        this.optFormat = optFormat;
+    }
+
+    /**
+     * Is the --name-only option set?
+     * 
+     * @return True if the --name-only option is set, false if it is not set.
+     */
+    public boolean isOptNameOnly() {
+        return optNameOnly;
+    }
+
+    /**
+     * Set the --name-only option.
+     * 
+     * @param optNameOnly True to set the --name-only option, false to unset it.
+     */
+    public void setOptNameOnly(boolean optNameOnly) {
+        this.optNameOnly = optNameOnly;
+    }
+
+    /**
+     * Is the --no-patch option set?
+     * 
+     * @return True if the --no-patch option is set, false if it is not set.
+     */
+    public boolean isOptNoPatch() {
+        return optNoPatch;
+    }
+
+    /**
+     * Set the --no-patch option.
+     * 
+     * @param optNoPatch True to set the --no-patch option, false to unset it.
+     */
+    public void setOptNoPatch(boolean optNoPatch) {
+        this.optNoPatch = optNoPatch;
+    }
+
+    /**
+     * Is the --textconv option set?
+     * 
+     * @return True if the --textconv option is set, false if it is not set.
+     */
+    public boolean isOptTextconv() {
+        return optTextconv;
+    }
+
+    /**
+     * Set the --textconv option. Without it, the content of a blob is shown as it is stored.
+     * 
+     * @param optTextconv True to set the --textconv option, false to unset it.
+     */
+    public void setOptTextconv(boolean optTextconv) {
+        this.optTextconv = optTextconv;
+    }
 }
@@ -21,27 +21,52 @@ package com.logisima.javagit.cli.show;
 
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.Parser;
-import com.logisima.javagit.cli.Response;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
 
 /**
- * Parser class to parse the output generated by git show; and return a <code>GitShowResponse</code> object.
+ * Parser class to parse the output generated by git show; and return a <code>GitShowResponse</code> object. The
+ * output is kept as text: the content of a blob is streamed by <code>GitShowStreamParser</code> instead.
  */
 public class GitShowParser extends Parser {
 
+    /**
+     * The response.
+     */
+    private final GitShowResponse response;
+
+    /**
+     * The output of git.
+     */
+    private final StringBuilder   output;
+
     /**
      * Constructor.
      */
     public GitShowParser() {
         super();
+        this.response = new GitShowResponse();
+        this.output = new StringBuilder();
     }
 
     @Override
     public void parseLine(String line) {
+        ++numLinesParsed;
+        output.append(line).append('\n');
+    }
+
+    @Override
+    public void processExitCode(int code) {
+        response.setProcessExitCode(code);
     }
 
     @Override
-    public Response getResponse() throws JavaGitException {
-        return null;
+    public GitShowResponse getResponse() throws JavaGitException {
+        if (response.getProcessExitCode() != 0) {
+            throw new JavaGitException(436000, ExceptionMessageMap.getMessage("436000") + " { "
+                    + output.toString().trim() + " }");
+        }
+        response.setProcessOutput(output.toString());
+        return response;
     }
 
 }
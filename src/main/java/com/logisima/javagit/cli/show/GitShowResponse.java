@@ -21,9 +21,31 @@ package com.logisima.javagit.cli.show;
 
 import com.logisima.javagit.cli.Response;
 
+/**
+ * <code>GitShowResponse</code> holds the response information returned by the <code>GitShow</code> class: the output
+ * of git, or the number of bytes written to the output of the caller when the content is streamed.
+ */
 public class GitShowResponse extends Response {
 
+    // The number of bytes written to the output of the caller.
+    private long size;
+
     public GitShowResponse() {
         super();
     }
+
+    /**
+     * @return the number of bytes written to the output of the caller, when the content is streamed
+     */
+    public long getSize() {
+        return size;
+    }
+
+    void setSize(long size) {
+        this.size = size;
+    }
+
+    void setProcessOutput(String processOutput) {
+        this.processOutput = processOutput;
+    }
 }
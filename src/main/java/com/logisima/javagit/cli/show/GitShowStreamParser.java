@@ -0,0 +1,136 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.cli.show;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.RawParser;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
+/**
+ * Parser class streaming the output of git show to the output of the caller, as raw bytes: nothing is decoded, and
+ * each chunk read from git is written as is. The error output of git is read apart, so it never ends up in the
+ * content.
+ */
+public class GitShowStreamParser extends RawParser {
+
+    /**
+     * The response.
+     */
+    private final GitShowResponse     response;
+
+    /**
+     * The output stream of the caller, or null.
+     */
+    private final OutputStream        out;
+
+    /**
+     * The output channel of the caller, or null.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The error output of git.
+     */
+    private String                    errorOutput = "";
+
+    /**
+     * The error raised by the output of the caller, which stops the parsing.
+     */
+    private IOException               writeError;
+
+    /**
+     * Constructor.
+     * 
+     * @param out The output stream receiving the content. It is not closed.
+     */
+    public GitShowStreamParser(OutputStream out) {
+        this.response = new GitShowResponse();
+        this.out = out;
+        this.channel = null;
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param channel The output channel receiving the content. It is not closed.
+     */
+    public GitShowStreamParser(WritableByteChannel channel) {
+        this.response = new GitShowResponse();
+        this.out = null;
+        this.channel = channel;
+    }
+
+    @Override
+    public void parse(byte[] buffer, int offset, int length) {
+        try {
+            if (null != out) {
+                out.write(buffer, offset, length);
+            }
+            else {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, offset, length);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+            response.setSize(response.getSize() + length);
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+
+    @Override
+    public boolean isComplete() {
+        // the caller can't receive the rest of the content (a closed connection for instance)
+        return null != writeError;
+    }
+
+    @Override
+    public boolean isErrorOutputSeparate() {
+        return true;
+    }
+
+    @Override
+    public void parseErrorOutput(String errorOutput) {
+        this.errorOutput = errorOutput;
+    }
+
+    @Override
+    public void processExitCode(int code) {
+        response.setProcessExitCode(code);
+    }
+
+    @Override
+    public GitShowResponse getResponse() throws JavaGitException {
+        if (null != writeError) {
+            throw new JavaGitException(436001, ExceptionMessageMap.getMessage("436001") + " { size=["
+                    + response.getSize() + "] }", writeError);
+        }
+        if (response.getProcessExitCode() != 0) {
+            throw new JavaGitException(436000, ExceptionMessageMap.getMessage("436000") + " { "
+                    + errorOutput.trim() + " }");
+        }
+        return response;
+    }
+}
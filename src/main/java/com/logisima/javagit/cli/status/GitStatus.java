@@ -69,7 +69,10 @@ public class GitStatus {
     }
 
     /**
-     * Parses options provided by the <code>GitStatusOptions</code> object and adds them to the command.
+     * Parses options provided by the <code>GitStatusOptions</code> object and adds them to the command. The status is
+     * requested in the porcelain v2 format, whose records are NUL terminated and don't depend on the git version nor on
+     * the language. The options of git-commit kept by <code>GitStatusOptions</code> are not accepted by git-status
+     * anymore and are ignored.
      * 
      * @param options <code>GitStatusOptions</code> provided by &lt;gitclipse&gt;.
      * @param paths List of file paths.
@@ -80,49 +83,18 @@ public class GitStatus {
 
         command.add(JavaGitConfiguration.getGitCommand());
         command.add("status");
+        command.add("--porcelain=v2");
+        command.add("-z");
+        command.add("--branch");
 
         if (options != null) {
-            if (options.isOptAll()) {
-                command.add("-a");
-            }
-            if (options.isOptQuiet()) {
-                command.add("-q");
-            }
-            if (options.isOptVerbose()) {
-                command.add("-v");
-            }
-            if (options.isOptSignOff()) {
-                command.add("-s");
-            }
-            if (options.isOptEdit()) {
-                command.add("-e");
-            }
-            if (options.isOptInclude()) {
-                command.add("-i");
-            }
-            if (options.isOptOnly()) {
-                command.add("-o");
-            }
-            if (options.isOptNoVerify()) {
-                command.add("-n");
-            }
             if (options.isOptUntrackedFiles()) {
                 command.add("--untracked-files");
             }
-            if (options.isOptAllowEmpty()) {
-                command.add("--allow-empty");
-            }
-            if (!options.isOptReadFromLogFileNull()) {
-                command.add("-F");
-                command.add(options.getOptReadFromLogFile().getPath());
-            }
-            if (!options.isAuthorNull()) {
-                command.add("--author");
-                command.add(options.getAuthor());
-            }
         }
 
-        if (paths != null) {
+        if (paths != null && !paths.isEmpty()) {
+            command.add("--");
             for (File file : paths) {
                 command.add(file.getPath());
             }
@@ -20,54 +20,55 @@
 package com.logisima.javagit.cli.status;
 
 import java.io.File;
-import java.util.Scanner;
-import java.util.StringTokenizer;
+import java.util.List;
 
 import com.logisima.javagit.JavaGitException;
-import com.logisima.javagit.cli.Parser;
+import com.logisima.javagit.cli.RawParser;
 import com.logisima.javagit.object.GitFileSystemObject.Status;
 import com.logisima.javagit.object.OutputErrorOrWarn;
 import com.logisima.javagit.object.Ref;
 import com.logisima.javagit.utilities.ExceptionMessageMap;
 
-public class GitStatusParser extends Parser {
-
-    private enum State {
-        FILES_TO_COMMIT, NOT_UPDATED, UNTRACKED_FILES
-    }
-
-    /**
-     * Patterns for matching lines for deleted files, modified files, new files and empty lines.
-     */
-    public static enum Patterns {
-        DELETED("^#\\s+deleted:\\s+.*"), MODIFIED("^#\\s+modified:\\s+.*"), NEW_FILE("^#\\s+new file:\\s+.*"), EMPTY_HASH_LINE(
-                "^#\\s*$"), RENAMED("^#\\s+renamed:\\s+.*");
-
-        String pattern;
-
-        Patterns(String pattern) {
-            this.pattern = pattern;
-        }
+/**
+ * Parser of the output of &lt;git status --porcelain=v2 -z --branch&gt;. Each entry is a NUL terminated record, whose
+ * first character gives its type:
+ * <ul>
+ * <li>"# branch.head name": the current branch;</li>
+ * <li>"1 XY sub mH mI mW hH hI path": a changed entry;</li>
+ * <li>"2 XY sub mH mI mW hH hI Xscore path", followed by the original path record: a renamed or copied entry;</li>
+ * <li>"u XY sub m1 m2 m3 mW h1 h2 h3 path": an unmerged entry;</li>
+ * <li>"? path": an untracked file or directory.</li>
+ * </ul>
+ * X is the status in the index and Y the status in the working tree. The records are scanned as bytes, and a record is
+ * only copied when it spans two chunks of the output.
+ */
+public class GitStatusParser extends RawParser {
 
-        public boolean matches(String line) {
-            return line.matches(this.pattern);
-        }
-    }
+    // Number of fields before the path of the records of type 1, 2 and u.
+    private static final int  ORDINARY_FIELDS = 8;
+    private static final int  RENAMED_FIELDS  = 9;
+    private static final int  UNMERGED_FIELDS = 10;
 
-    private State             outputState;
+    // Initial size of the buffer of a record spanning two chunks.
+    private static final int  PENDING_SIZE    = 1024;
 
     /**
      * The response.
      */
     private GitStatusResponse response;
 
-    private File              inputFile = null;
-
     /**
      * The working directory for the command that was run.
      */
     private String            workingDirectory;
 
+    // The start of a record spanning two chunks.
+    private byte[]            pending;
+    private int               pendingLength;
+
+    // true if the next record is the original path of a renamed entry.
+    private boolean           originalPath;
+
     /**
      * Constructor.
      * 
@@ -77,186 +78,210 @@ public class GitStatusParser extends Parser {
         super();
         this.workingDirectory = workingDirectory;
         response = new GitStatusResponse(workingDirectory);
-    }
-
-    @Override
-    public void parseLine(String line) {
-        // System.out.println(line);
-        if (line == null || line.length() == 0) {
-            return;
-        }
-        ++numLinesParsed;
-        if (isError(line)) {
-            return;
-        }
-        if (numLinesParsed == 1) {
-            parseLineOne(line);
-        }
-        else {
-            parseOtherLines(line);
-        }
+        pending = new byte[PENDING_SIZE];
+        pendingLength = 0;
+        originalPath = false;
     }
 
     /**
-     * Seems like a valid ( non-error ) line 1 always start with a '#' and contains the branch name.
+     * Parses a chunk of the output, record by record.
      */
-    private void parseLineOne(String line) {
-        if (!line.startsWith("#")) {
-            return;
-        }
-        String branch = getBranch(line);
-        if (branch != null) {
-            String branchName = getBranch(line);
-            response.setBranch(Ref.createBranchRef(branchName));
+    public void parse(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] != 0) {
+                continue;
+            }
+            if (pendingLength > 0) {
+                append(buffer, start, i - start);
+                parseRecord(pending, 0, pendingLength);
+                pendingLength = 0;
+            }
+            else {
+                parseRecord(buffer, start, i);
+            }
+            start = i + 1;
         }
+        append(buffer, start, end - start);
     }
 
-    private void parseOtherLines(String line) {
-        if (line.contains("Changes to be committed")) {
-            outputState = State.FILES_TO_COMMIT;
-            return;
+    private void append(byte[] buffer, int offset, int length) {
+        if (pendingLength + length > pending.length) {
+            byte[] larger = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, larger, 0, pendingLength);
+            pending = larger;
         }
-        else if (line.contains("Changed but not updated")) {
-            outputState = State.NOT_UPDATED;
+        System.arraycopy(buffer, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /**
+     * Parses the record between <code>start</code> and <code>end</code>.
+     */
+    private void parseRecord(byte[] record, int start, int end) {
+        if (originalPath) {
+            // the original path of a rename isn't reported
+            originalPath = false;
             return;
         }
-        else {
-            if (line.contains("Untracked files")) {
-                outputState = State.UNTRACKED_FILES;
+        if (!isRecord(record, start, end)) {
+            // the messages of git (on stderr) have no NUL terminator: they end up at the start of the next record
+            int lineEnd = lastIndexOf(record, (byte) '\n', start, end);
+            if (lineEnd < 0) {
+                parseMessages(record, start, end);
                 return;
             }
-        }
-        if (ignoreOutput(line)) {
-            return;
-        }
-        if (Patterns.DELETED.matches(line)) {
-            String deletedFile = getFilename(line);
-            if ((inputFile != null) && (!deletedFile.matches(inputFile.getName())))
-                return;
-            addDeletedFile(deletedFile);
-            return;
-        }
-        if (Patterns.MODIFIED.matches(line)) {
-            String modifiedFile = getFilename(line);
-            if ((inputFile != null) && (!modifiedFile.matches(inputFile.getName())))
+            parseMessages(record, start, lineEnd);
+            start = lineEnd + 1;
+            if (!isRecord(record, start, end)) {
+                if (end > start) {
+                    parseMessages(record, start, end);
+                }
                 return;
-            addModifiedFile(modifiedFile);
-            return;
-        }
-        if (Patterns.NEW_FILE.matches(line)) {
-            String newFile = getFilename(line);
-            if ((inputFile != null) && (!newFile.matches(inputFile.getName())))
-                return;
-            addNewFile(newFile);
-            return;
-        }
-        if (outputState == State.UNTRACKED_FILES) {
-            String untrackedFile = getFilename(line);
-            if ((inputFile != null) && (!untrackedFile.matches(inputFile.getName())))
-                return;
-            addUntrackedFile(untrackedFile);
+            }
         }
-        if (Patterns.RENAMED.matches(line)) {
-            String renamedFile = getFilename(line);
-            if ((inputFile != null) && (!renamedFile.matches(inputFile.getName())))
-                return;
-            addRenamedFileToCommit(renamedFile);
+        switch (record[start]) {
+            case '#':
+                parseHeader(record, start + 2, end);
+                break;
+            case '1':
+                parseChange(record, start, end, ORDINARY_FIELDS);
+                break;
+            case '2':
+                parseChange(record, start, end, RENAMED_FIELDS);
+                originalPath = true;
+                break;
+            case 'u':
+                int path = skipFields(record, start, end, UNMERGED_FIELDS);
+                if (path >= 0) {
+                    addFile(record, path, end, response.getModifiedFilesNotUpdated(), Status.MODIFIED);
+                }
+                break;
+            case '?':
+                addFile(record, start + 2, end, response.getUntrackedFiles(), Status.UNTRACKED);
+                break;
+            default:
+                // ignored files, or records of a newer git
+                break;
         }
     }
 
-    private boolean isError(String line) {
-        if (line.startsWith("fatal") || line.startsWith("Error") || line.startsWith("error")) {
-            this.errors.add(new OutputErrorOrWarn(numLinesParsed, line));
-            return true;
+    private void parseHeader(byte[] record, int start, int end) {
+        String header = decode(record, start, end);
+        if (header.startsWith("branch.head ")) {
+            String branchName = header.substring("branch.head ".length());
+            if (!"(detached)".equals(branchName)) {
+                response.setBranch(Ref.createBranchRef(branchName));
+            }
         }
-        return false;
     }
 
-    private void addNewFile(String filename) {
-        File file = new File(workingDirectory + filename);
-        response.getNewFilesToCommit().add(file);
-        response.fileToStatus.put(file, Status.NEW_TO_COMMIT);
-    }
-
-    private void addDeletedFile(String filename) {
-        File file = new File(workingDirectory + filename);
-        switch (outputState) {
-            case FILES_TO_COMMIT:
-                response.getDeletedFilesToCommit().add(file);
-                response.fileToStatus.put(file, Status.DELETED_TO_COMMIT);
+    /**
+     * Parses a record of type 1 or 2: the XY status is at the position 2 and 3.
+     */
+    private void parseChange(byte[] record, int start, int end, int fields) {
+        int path = skipFields(record, start, end, fields);
+        if (path < 0 || end - start < 4) {
+            return;
+        }
+        switch (record[start + 2]) {
+            case 'A':
+            case 'C':
+                addFile(record, path, end, response.getNewFilesToCommit(), Status.NEW_TO_COMMIT);
                 break;
-
-            case NOT_UPDATED:
-                response.getDeletedFilesNotUpdated().add(file);
-                response.fileToStatus.put(file, Status.DELETED);
+            case 'M':
+            case 'T':
+                addFile(record, path, end, response.getModifiedFilesToCommit(), Status.MODIFIED_TO_COMMIT);
+                break;
+            case 'D':
+                addFile(record, path, end, response.getDeletedFilesToCommit(), Status.DELETED_TO_COMMIT);
+                break;
+            case 'R':
+                addFile(record, path, end, response.getRenamedFilesToCommit(), Status.RENAMED_TO_COMMIT);
+                break;
+            default:
                 break;
         }
-    }
-
-    private void addModifiedFile(String filename) {
-        File file = new File(workingDirectory + filename);
-        switch (outputState) {
-            case FILES_TO_COMMIT:
-                response.getModifiedFilesToCommit().add(file);
-                response.fileToStatus.put(file, Status.MODIFIED_TO_COMMIT);
+        switch (record[start + 3]) {
+            case 'M':
+            case 'T':
+                addFile(record, path, end, response.getModifiedFilesNotUpdated(), Status.MODIFIED);
                 break;
-
-            case NOT_UPDATED:
-                response.getModifiedFilesNotUpdated().add(file);
-                response.fileToStatus.put(file, Status.MODIFIED);
+            case 'D':
+                addFile(record, path, end, response.getDeletedFilesNotUpdated(), Status.DELETED);
+                break;
+            default:
                 break;
         }
     }
 
-    private void addRenamedFileToCommit(String renamedFile) {
-        File file = new File(workingDirectory + renamedFile);
-        response.getRenamedFilesToCommit().add(file);
-        response.fileToStatus.put(file, Status.RENAMED_TO_COMMIT);
+    /**
+     * Adds a file to a list of the response. The status of the working tree, added last, is the one kept in the map.
+     */
+    private void addFile(byte[] record, int start, int end, List<File> list, Status status) {
+        File file = new File(workingDirectory + decode(record, start, end));
+        list.add(file);
+        response.fileToStatus.put(file, status);
     }
 
-    private void addUntrackedFile(String filename) {
-        File file = new File(workingDirectory + filename);
-        response.getUntrackedFiles().add(file);
-        response.fileToStatus.put(file, Status.UNTRACKED);
+    /**
+     * Keeps the error messages of git.
+     */
+    private void parseMessages(byte[] record, int start, int end) {
+        int lineStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || record[i] == '\n') {
+                String line = decode(record, lineStart, i);
+                ++numLinesParsed;
+                if (line.startsWith("fatal") || line.startsWith("Error") || line.startsWith("error")) {
+                    this.errors.add(new OutputErrorOrWarn(numLinesParsed, line));
+                }
+                lineStart = i + 1;
+            }
+        }
     }
 
-    private String getBranch(String line) {
-        StringTokenizer st = new StringTokenizer(line);
-        String last = null;
-        while (st.hasMoreTokens()) {
-            last = st.nextToken();
+    /**
+     * @return The position after the <code>fields</code> first space separated fields, or -1 if there are less fields.
+     */
+    private static int skipFields(byte[] record, int start, int end, int fields) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (record[i] == ' ' && ++count == fields) {
+                return i + 1;
+            }
         }
-        return last;
+        return -1;
     }
 
-    //
-
-    public String getFilename(String line) {
-        String filename = null;
-        Scanner scanner = new Scanner(line);
-        while (scanner.hasNext()) {
-            filename = scanner.next();
+    private static boolean isRecord(byte[] record, int start, int end) {
+        if (end - start < 2 || record[start + 1] != ' ') {
+            return false;
         }
-        return filename;
+        byte type = record[start];
+        return type == '#' || type == '1' || type == '2' || type == 'u' || type == '?' || type == '!';
     }
 
-    private boolean ignoreOutput(String line) {
-        if (line.contains("(use \"git reset")) {
-            return true;
-        }
-        if (line.contains("(use \"git add ")) {
-            return true;
-        }
-        if (line.contains("(use \"git add/rm")) {
-            return true;
-        }
-        if (Patterns.EMPTY_HASH_LINE.matches(line)) {
-            return true;
+    private static int lastIndexOf(byte[] record, byte b, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (record[i] == b) {
+                return i;
+            }
         }
-        return false;
+        return -1;
+    }
+
+    private static String decode(byte[] record, int start, int end) {
+        return new String(record, start, end - start, UTF8);
     }
 
     public GitStatusResponse getResponse() throws JavaGitException {
+        if (pendingLength > 0) {
+            // the output of a failing git has no NUL terminator
+            parseMessages(pending, 0, pendingLength);
+            pendingLength = 0;
+        }
         if (this.errors.size() != 0) {
             throw new JavaGitException(438000, ExceptionMessageMap.getMessage("438000")
                     + " - git status error message: { " + this.getError() + " }");
@@ -127,6 +127,14 @@ public class GitStatusResponse extends Response {
             return fileToStatus.get(argumentFile);
         }
 
+        // the content of an untracked directory is untracked: git only reports the directory
+        for (File parent = relativeFile.getParentFile(); null != parent; parent = parent.getParentFile()) {
+            File parentFile = new File(repository.getPath() + File.separator + parent.getPath());
+            if (Status.UNTRACKED == fileToStatus.get(parentFile)) {
+                return Status.UNTRACKED;
+            }
+        }
+
         // default
         return Status.IN_REPOSITORY;
     }
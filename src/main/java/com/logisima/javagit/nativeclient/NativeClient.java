@@ -0,0 +1,59 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.nativeclient;
+
+import java.io.File;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.branch.GitBranch;
+import com.logisima.javagit.cli.client.Client;
+import com.logisima.javagit.cli.log.GitLog;
+import com.logisima.javagit.cli.status.GitStatus;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.object.db.ObjectReader;
+
+/**
+ * Pure Java implementation of the <code>IClient</code> interface. Read-only commands read the git directory of the
+ * repository directly instead of starting a git process; the other commands, and the options the native
+ * implementations don't support, are delegated to the command-line client.
+ */
+public class NativeClient extends Client {
+
+    @Override
+    public GitLog getGitLogInstance() {
+        return new NativeGitLog();
+    }
+
+    @Override
+    public GitBranch getGitBranchInstance() {
+        return new NativeGitBranch();
+    }
+
+    @Override
+    public GitStatus getGitStatusInstance() {
+        return new NativeGitStatus();
+    }
+
+    @Override
+    public ObjectReader getObjectReaderInstance(File repositoryPath) throws JavaGitException {
+        return ObjectDatabase.getInstance(repositoryPath);
+    }
+
+}
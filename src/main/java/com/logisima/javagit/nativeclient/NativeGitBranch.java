@@ -0,0 +1,135 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.nativeclient;
+
+import java.io.File;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.branch.GitBranch;
+import com.logisima.javagit.cli.branch.GitBranchOptions;
+import com.logisima.javagit.cli.branch.GitBranchResponse;
+import com.logisima.javagit.cli.branch.GitBranchResponse.responseType;
+import com.logisima.javagit.object.BranchRecord;
+import com.logisima.javagit.object.Ref;
+import com.logisima.javagit.object.db.CommitObject;
+import com.logisima.javagit.object.db.GitObject;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.object.db.ObjectType;
+import com.logisima.javagit.object.db.RefDatabase;
+import com.logisima.javagit.utilities.CheckUtilities;
+
+/**
+ * Pure Java implementation of the branch listing of git branch. Branches are read from the refs of the repository;
+ * creating, deleting and renaming branches, the listing options which need the commit graph (--contains, --merged,
+ * --no-merged) and a detached <code>HEAD</code> are delegated to the command-line implementation.
+ */
+public class NativeGitBranch extends GitBranch {
+
+    private static final String HEADS_PREFIX   = "refs/heads/";
+
+    private static final String REMOTES_PREFIX = "refs/remotes/";
+
+    @Override
+    public GitBranchResponse branch(File repoPath, GitBranchOptions options) throws JavaGitException {
+        CheckUtilities.checkNullArgument(repoPath, "repository path");
+        if (!isSupported(options)) {
+            return super.branch(repoPath, options);
+        }
+        ObjectDatabase db = ObjectDatabase.getInstance(repoPath);
+        RefDatabase refs = db.getRefDatabase();
+        String currentBranch = refs.getFullBranch();
+        if (null == currentBranch) {
+            // detached HEAD: the command line prints the detached position as a branch
+            return super.branch(repoPath, options);
+        }
+
+        boolean remotes = null != options && (options.isOptR() || options.isOptA());
+        boolean locals = null == options || !options.isOptR() || options.isOptA();
+        boolean verbose = null != options && options.isOptVerbose();
+        int abbrev = GitBranchOptions.DEFAULT_ABBREV_LEN;
+        if (null != options && options.isOptNoAbbrev()) {
+            abbrev = 40;
+        }
+        else if (null != options && options.isOptAbbrev()) {
+            abbrev = options.getOptAbbrevLen();
+        }
+
+        GitBranchResponse response = new GitBranchResponse();
+        if (locals) {
+            addBranches(db, response, refs.getRefs(HEADS_PREFIX), HEADS_PREFIX, "", currentBranch, verbose, abbrev);
+        }
+        if (remotes) {
+            // with -a, remote branches are displayed with their "remotes/" prefix
+            String displayPrefix = (null != options && options.isOptA()) ? "remotes/" : "";
+            addBranches(db, response, refs.getRefs(REMOTES_PREFIX), REMOTES_PREFIX, displayPrefix, currentBranch,
+                    verbose, abbrev);
+        }
+        return response;
+    }
+
+    /**
+     * Checks if the options only ask for a listing the native implementation can produce.
+     */
+    private boolean isSupported(GitBranchOptions options) {
+        if (null == options) {
+            return true;
+        }
+        return null == options.getOptContains() && !options.isOptMerged() && !options.isOptNoMerged()
+                && !options.isOptDLower() && !options.isOptDUpper() && !options.isOptMLower()
+                && !options.isOptMUpper() && !options.isOptF() && !options.isOptL() && !options.isOptTrack()
+                && !options.isOptNoTrack() && !options.isOptColor();
+    }
+
+    private void addBranches(ObjectDatabase db, GitBranchResponse response, SortedMap<String, String> branches,
+            String refPrefix, String displayPrefix, String currentBranch, boolean verbose, int abbrev)
+            throws JavaGitException {
+        for (Map.Entry<String, String> entry : branches.entrySet()) {
+            String name = displayPrefix + entry.getKey().substring(refPrefix.length());
+            boolean isCurrent = entry.getKey().equals(currentBranch);
+            Ref branch = Ref.createBranchRef(name);
+            response.setResponseType(responseType.BRANCH_LIST);
+            response.getBranchList().add(branch);
+            if (isCurrent) {
+                response.setCurrentBranch(branch);
+            }
+            if (verbose) {
+                String sha1 = entry.getValue();
+                Ref sha1Ref = Ref.createSha1Ref(sha1.substring(0, Math.min(Math.max(abbrev, 4), sha1.length())));
+                response.getListOfBranchRecord().add(
+                        new BranchRecord(branch, sha1Ref, getSubject(db, sha1), isCurrent));
+            }
+        }
+    }
+
+    /**
+     * Gets the first line of the message of a commit, as displayed by git branch -v.
+     */
+    private String getSubject(ObjectDatabase db, String sha1) throws JavaGitException {
+        GitObject object = db.open(sha1);
+        if (null == object || ObjectType.COMMIT != object.getType()) {
+            return "";
+        }
+        String message = CommitObject.parse(object).getMessage();
+        int eol = message.indexOf('\n');
+        return (eol < 0) ? message : message.substring(0, eol);
+    }
+}
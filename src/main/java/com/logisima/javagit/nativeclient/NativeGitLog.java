@@ -0,0 +1,217 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.nativeclient;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SimpleTimeZone;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.log.GitLog;
+import com.logisima.javagit.cli.log.GitLogHandler;
+import com.logisima.javagit.cli.log.GitLogOptions;
+import com.logisima.javagit.cli.log.GitLogResponse;
+import com.logisima.javagit.cli.log.GitLogResponse.Commit;
+import com.logisima.javagit.object.Ref;
+import com.logisima.javagit.object.db.CommitObject;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.utilities.CheckUtilities;
+
+/**
+ * Pure Java implementation of git log. The commits reachable from <code>HEAD</code> are walked in the object database,
+ * newest committer date first, as git does without ordering option.
+ * 
+ * Only the limiting options which don't need diffs or pattern matching are supported natively (max count, skip,
+ * no-merges, first-parent, date order and reverse); any other option, and the log of paths, is delegated to the
+ * command-line implementation.
+ */
+public class NativeGitLog extends GitLog {
+
+    @Override
+    public GitLogResponse log(File repositoryPath, GitLogOptions options) throws JavaGitException {
+        if (!isSupported(options)) {
+            return super.log(repositoryPath, options);
+        }
+        final GitLogResponse response = new GitLogResponse();
+        walk(repositoryPath, options, new GitLogHandler() {
+
+            public boolean handleCommit(Commit commit) {
+                response.getCommitList().add(commit);
+                return true;
+            }
+        });
+        return response;
+    }
+
+    @Override
+    public GitLogResponse log(File repositoryPath, GitLogOptions options, List<File> paths) throws JavaGitException {
+        if (null != paths) {
+            return super.log(repositoryPath, options, paths);
+        }
+        return log(repositoryPath, options);
+    }
+
+    @Override
+    public void log(File repositoryPath, GitLogOptions options, List<File> paths, GitLogHandler handler)
+            throws JavaGitException {
+        if (null != paths || !isSupported(options)) {
+            super.log(repositoryPath, options, paths, handler);
+            return;
+        }
+        CheckUtilities.checkNullArgument(handler, "handler");
+        walk(repositoryPath, options, handler);
+    }
+
+    /**
+     * Walks the commits reachable from <code>HEAD</code>, giving them to the handler in walk order. Commits are read
+     * only when they are needed, so a handler stopping early stops the walk. With the reverse option, the last commit
+     * comes first, so the commits are collected before being given to the handler.
+     */
+    private void walk(File repositoryPath, GitLogOptions options, GitLogHandler handler) throws JavaGitException {
+        ObjectDatabase db = ObjectDatabase.getInstance(repositoryPath);
+        String head = db.resolve(Ref.HEAD);
+        if (null == head) {
+            // no commit yet
+            return;
+        }
+
+        int skip = (null != options && options.isOptLimitCommitSkip()) ? options.getOptLimitSkip() : 0;
+        int max = (null != options && options.isOptLimitCommitMax()) ? options.getOptLimitMax() : -1;
+        boolean noMerges = null != options && options.isOptLimitNoMerges();
+        boolean firstParent = null != options && options.isOptLimitFirstParent();
+        boolean reverse = null != options && options.isOptOrderingReverse();
+
+        PriorityQueue<WalkEntry> queue = new PriorityQueue<WalkEntry>();
+        Set<String> seen = new HashSet<String>();
+        long sequence = 0;
+        queue.add(new WalkEntry(db.readCommit(head), sequence++));
+        seen.add(head);
+
+        List<Commit> reversed = reverse ? new ArrayList<Commit>() : null;
+        int count = 0;
+        while (!queue.isEmpty() && (max < 0 || count < max)) {
+            CommitObject commit = queue.poll().commit;
+            List<String> parents = commit.getParents();
+            for (int i = 0; i < parents.size() && !(firstParent && i > 0); i++) {
+                String parent = parents.get(i);
+                if (seen.add(parent)) {
+                    queue.add(new WalkEntry(db.readCommit(parent), sequence++));
+                }
+            }
+            if (noMerges && parents.size() > 1) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            count++;
+            if (reverse) {
+                reversed.add(toResponseCommit(commit));
+            }
+            else if (!handler.handleCommit(toResponseCommit(commit))) {
+                return;
+            }
+        }
+
+        if (reverse) {
+            Collections.reverse(reversed);
+            for (Commit commit : reversed) {
+                if (!handler.handleCommit(commit)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the options can be handled without the command line.
+     */
+    private boolean isSupported(GitLogOptions options) {
+        if (null == options) {
+            return true;
+        }
+        return !(options.isOptBreakRewriteChanges() || options.isOptDetectRenames() || options.isOptFindCopies()
+                || options.isOptFindCopiesHarder() || options.isOptFileDetails() || options.isOptRelative()
+                || options.isOptLimitCommitSince() || options.isOptLimitCommitAfter()
+                || options.isOptLimitCommitUntil() || options.isOptLimitCommitBefore() || options.isOptLimitAuthor()
+                || options.isOptLimitCommitterPattern() || options.isOptLimitGrep()
+                || options.isOptLimitRemoveEmpty() || options.isOptLimitFullHistory() || options.isOptLimitAll()
+                || options.isOptLimiCherryPick() || options.isOptOrderingTopological());
+    }
+
+    /**
+     * Builds the <code>Commit</code> of the response, with the same values as the ones parsed from the default git log
+     * output. Merge details hold the full SHA1s of the parents.
+     */
+    private Commit toResponseCommit(CommitObject commit) {
+        List<String> mergeDetails = null;
+        if (commit.getParents().size() > 1) {
+            mergeDetails = new ArrayList<String>(commit.getParents());
+        }
+        CommitObject.Identity author = commit.getAuthor();
+        String message = commit.getMessage();
+        while (message.endsWith("\n")) {
+            message = message.substring(0, message.length() - 1);
+        }
+        return new Commit(commit.getSha1(), mergeDetails, author.toString(), formatDate(author), message, null);
+    }
+
+    /**
+     * Formats a date like git's default format, in the timezone of the identity: "Tue Oct 18 10:00:00 2026 +0200".
+     */
+    private String formatDate(CommitObject.Identity identity) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+        format.setTimeZone(new SimpleTimeZone(identity.getTimeZoneOffset() * 60 * 1000, "GIT"));
+        return format.format(new Date(identity.getTime() * 1000));
+    }
+
+    /**
+     * A commit waiting in the walk queue. The newest committer date comes first, then the first queued.
+     */
+    private static final class WalkEntry implements Comparable<WalkEntry> {
+
+        final CommitObject commit;
+
+        final long         sequence;
+
+        WalkEntry(CommitObject commit, long sequence) {
+            this.commit = commit;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(WalkEntry o) {
+            long t1 = commit.getCommitter().getTime();
+            long t2 = o.commit.getCommitter().getTime();
+            if (t1 != t2) {
+                return (t1 > t2) ? -1 : 1;
+            }
+            return (sequence < o.sequence) ? -1 : ((sequence == o.sequence) ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.nativeclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.status.GitStatus;
+import com.logisima.javagit.cli.status.GitStatusOptions;
+import com.logisima.javagit.cli.status.GitStatusResponse;
+import com.logisima.javagit.object.GitFileSystemObject;
+import com.logisima.javagit.object.GitFileSystemObject.Status;
+import com.logisima.javagit.object.IgnoreMatcher;
+import com.logisima.javagit.object.Ref;
+import com.logisima.javagit.object.db.DirCache;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.object.db.TreeObject;
+import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
+/**
+ * Pure Java implementation of git status. The index is compared with the tree of <code>HEAD</code> for the changes to
+ * commit, and with the working tree, scanned in parallel by a <code>WorkingTreeScanner</code>, for the changes not
+ * updated and the untracked files. The response holds the same statuses as the one of the command line, except that
+ * renames are not detected: a renamed file is a deleted file and a new file. Untracked files are filtered by the
+ * rules of an <code>IgnoreMatcher</code>.
+ * 
+ * The paths given to limit the status are files or directories: pathspecs with wildcards are delegated to the
+ * command-line implementation.
+ */
+public class NativeGitStatus extends GitStatus {
+
+    private static final String HEADS_PREFIX = "refs/heads/";
+
+    @Override
+    public GitStatusResponse status(File repositoryPath, GitStatusOptions options, List<File> paths)
+            throws JavaGitException {
+        CheckUtilities.checkNullArgument(repositoryPath, "repository path");
+        List<String> pathspecs = null;
+        if (null != paths && !paths.isEmpty()) {
+            pathspecs = toPathspecs(repositoryPath, paths);
+            if (null == pathspecs) {
+                return super.status(repositoryPath, options, paths);
+            }
+            if (pathspecs.isEmpty()) {
+                pathspecs = null;
+            }
+        }
+        ObjectDatabase db = ObjectDatabase.getInstance(repositoryPath);
+        DirCache index;
+        try {
+            index = DirCache.read(repositoryPath);
+        } catch (IOException e) {
+            throw new JavaGitException(438001, ExceptionMessageMap.getMessage("438001") + " { path=["
+                    + repositoryPath.getPath() + "] }", e);
+        }
+        boolean allUntracked = null != options && options.isOptUntrackedFiles();
+        WorkingTreeScanner scanner = new WorkingTreeScanner(repositoryPath, index, IgnoreMatcher
+                .getInstance(repositoryPath), allUntracked);
+        if (null == pathspecs) {
+            scanner.scan();
+        }
+        else {
+            scanner.scan(pathspecs);
+        }
+
+        GitStatusResponse response = new GitStatusResponse(repositoryPath.getPath());
+        String workingDirectory = repositoryPath.getPath() + File.separator;
+        String branch = db.getRefDatabase().getFullBranch();
+        if (null != branch && branch.startsWith(HEADS_PREFIX)) {
+            response.setBranch(Ref.createBranchRef(branch.substring(HEADS_PREFIX.length())));
+        }
+
+        // the changes to commit, as the parser adds them first
+        SortedMap<String, TreeObject.Entry> head = readHead(db);
+        if (null != index) {
+            DirCache.Entry entry = index.newEntry();
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                entry.moveTo(i);
+                String path = entry.getPath();
+                TreeObject.Entry headEntry = head.remove(path);
+                if (entry.getStage() != 0 || entry.isIntentToAdd() || !matches(path, pathspecs)) {
+                    continue;
+                }
+                if (null == headEntry) {
+                    addFile(response, workingDirectory, path, response.getNewFilesToCommit(), Status.NEW_TO_COMMIT);
+                }
+                else if (headEntry.getMode() != entry.getMode() || !headEntry.getSha1().equals(entry.getObjectId())) {
+                    addFile(response, workingDirectory, path, response.getModifiedFilesToCommit(),
+                            Status.MODIFIED_TO_COMMIT);
+                }
+            }
+        }
+        for (String path : head.keySet()) {
+            if (!matches(path, pathspecs)) {
+                continue;
+            }
+            addFile(response, workingDirectory, path, response.getDeletedFilesToCommit(), Status.DELETED_TO_COMMIT);
+        }
+
+        // the changes of the working tree
+        for (Map.Entry<String, Status> change : scanner.getChanges().entrySet()) {
+            List<File> list = (Status.DELETED == change.getValue()) ? response.getDeletedFilesNotUpdated() : response
+                    .getModifiedFilesNotUpdated();
+            addFile(response, workingDirectory, change.getKey(), list, change.getValue());
+        }
+        for (String path : scanner.getUntracked()) {
+            addFile(response, workingDirectory, path, response.getUntrackedFiles(), Status.UNTRACKED);
+        }
+        return response;
+    }
+
+    /**
+     * Converts the paths to pathspecs relative to the working tree, with "/" separators.
+     * 
+     * @return The pathspecs, an empty list if one of them is the whole working tree, null if one of them has wildcards
+     *         or relative components.
+     */
+    private List<String> toPathspecs(File repositoryPath, List<File> paths) throws JavaGitException {
+        List<String> pathspecs = new ArrayList<String>(paths.size());
+        for (File path : paths) {
+            File relativePath = GitFileSystemObject.getRelativePath(path, repositoryPath);
+            String pathspec = relativePath.getPath().replace(File.separatorChar, '/');
+            while (pathspec.endsWith("/")) {
+                pathspec = pathspec.substring(0, pathspec.length() - 1);
+            }
+            if (relativePath.isAbsolute() || pathspec.length() == 0 || ".".equals(pathspec)) {
+                // the whole working tree
+                return new ArrayList<String>();
+            }
+            if (pathspec.startsWith("./") || pathspec.contains("/./") || pathspec.contains("..")
+                    || pathspec.startsWith(":") || pathspec.indexOf('*') >= 0 || pathspec.indexOf('?') >= 0
+                    || pathspec.indexOf('[') >= 0) {
+                return null;
+            }
+            pathspecs.add(pathspec);
+        }
+        return pathspecs;
+    }
+
+    /**
+     * Checks if a path is matched by one of the pathspecs: it is one of them, or is in one of them.
+     */
+    private boolean matches(String path, List<String> pathspecs) {
+        if (null == pathspecs) {
+            return true;
+        }
+        for (String pathspec : pathspecs) {
+            if (path.startsWith(pathspec)
+                    && (path.length() == pathspec.length() || path.charAt(pathspec.length()) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the files of the tree of <code>HEAD</code>, by path. The map is empty if there is no commit yet.
+     */
+    private SortedMap<String, TreeObject.Entry> readHead(ObjectDatabase db) throws JavaGitException {
+        SortedMap<String, TreeObject.Entry> files = new TreeMap<String, TreeObject.Entry>();
+        String head = db.resolve(Ref.HEAD);
+        if (null != head) {
+            addTree(db, db.readCommit(head).getTree(), "", files);
+        }
+        return files;
+    }
+
+    private void addTree(ObjectDatabase db, String tree, String prefix, Map<String, TreeObject.Entry> files)
+            throws JavaGitException {
+        for (TreeObject.Entry entry : db.readTree(tree).getEntries()) {
+            if (entry.isTree()) {
+                addTree(db, entry.getSha1(), prefix + entry.getName() + "/", files);
+            }
+            else {
+                files.put(prefix + entry.getName(), entry);
+            }
+        }
+    }
+
+    /**
+     * Adds a file to a list of the response. As with the parser, the last status added is the one kept in the map.
+     */
+    private void addFile(GitStatusResponse response, String workingDirectory, String path, List<File> list,
+            Status status) {
+        File file = new File(workingDirectory + path);
+        list.add(file);
+        response.getFileToStatus().put(file, status);
+    }
+}
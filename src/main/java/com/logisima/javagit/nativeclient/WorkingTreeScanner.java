@@ -0,0 +1,644 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.nativeclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.object.GitFileSystemObject.Status;
+import com.logisima.javagit.object.IgnoreMatcher;
+import com.logisima.javagit.object.IgnoreMatcher.Frame;
+import com.logisima.javagit.object.db.DirCache;
+import com.logisima.javagit.object.db.ObjectId;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
+/**
+ * <code>WorkingTreeScanner</code> compares the working tree with the index. Directories are read in parallel, one
+ * fork/join task per directory, and each file is compared with its index entry by its stat data: a different type,
+ * size or executable bit means the file is modified, the same size and modification time mean it isn't. Only the files
+ * whose stat data is ambiguous (a different modification time or inode, or a modification in the same second as the
+ * index, see "racy git") are hashed and compared with the SHA1 of the entry.
+ * 
+ * As git status without option, a directory without tracked file is reported as a whole, with a trailing "/", unless
+ * all the untracked files are asked for. Ignored files are not reported, and ignored directories without tracked file
+ * are not read. Clean and smudge filters and line ending conversions are not applied: a file
+ * whose stat data is ambiguous and which is converted by git is reported as modified.
+ */
+final class WorkingTreeScanner {
+
+    // Type bits of a mode, and the types of files.
+    private static final int       TYPE_MASK       = 0170000;
+    private static final int       TYPE_FILE       = 0100000;
+    private static final int       TYPE_LINK       = 0120000;
+    private static final int       TYPE_DIRECTORY  = 0040000;
+    private static final int       TYPE_GITLINK    = 0160000;
+    private static final int       TYPE_OTHER      = 0;
+
+    // Executable bit of the owner.
+    private static final int       EXECUTABLE      = 0100;
+
+    // The attributes read with the "unix" view, in one call.
+    private static final String    UNIX_ATTRIBUTES = "unix:mode,ino,size,lastModifiedTime";
+
+    // true if the "unix" attribute view is available, giving the mode and the inode of the files.
+    private static final boolean   UNIX            = FileSystems.getDefault().supportedFileAttributeViews()
+                                                           .contains("unix");
+
+    private static final Charset   UTF8            = Charset.forName("UTF-8");
+
+    // The pool running the scans, created on first use.
+    private static ForkJoinPool    pool;
+
+    // The root of the working tree.
+    private final Path             root;
+
+    // The index, null if the repository has no index.
+    private final DirCache         index;
+
+    // The ignore rules of the working tree.
+    private final IgnoreMatcher    ignoreMatcher;
+
+    // true to report all the untracked files, instead of their top directory.
+    private final boolean          allUntracked;
+
+    // The modification time of the index, in seconds.
+    private final long             indexSeconds;
+
+    // The index entries found in the working tree. Each position is written by one task only.
+    private final boolean[]        seen;
+
+    // The modified and deleted files, and the unmerged paths, by path.
+    private final SortedMap<String, Status> changes;
+
+    // The untracked files and directories.
+    private final SortedSet<String> untracked;
+
+    /**
+     * Constructor.
+     * 
+     * @param repositoryPath The path to the working tree.
+     * @param index The index of the repository, or null if it has no index.
+     * @param ignoreMatcher The ignore rules of the working tree.
+     * @param allUntracked true to report all the untracked files, false to report an untracked directory as a whole.
+     */
+    WorkingTreeScanner(File repositoryPath, DirCache index, IgnoreMatcher ignoreMatcher, boolean allUntracked) {
+        this.root = repositoryPath.toPath();
+        this.index = index;
+        this.ignoreMatcher = ignoreMatcher;
+        this.allUntracked = allUntracked;
+        this.indexSeconds = (null == index) ? Long.MAX_VALUE : index.getLastModified() / 1000;
+        this.seen = new boolean[(null == index) ? 0 : index.getEntryCount()];
+        this.changes = new ConcurrentSkipListMap<String, Status>();
+        this.untracked = new ConcurrentSkipListSet<String>();
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (null == pool) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    /**
+     * Scans the working tree.
+     * 
+     * @throws JavaGitException Thrown if a directory or a file can't be read.
+     */
+    void scan() throws JavaGitException {
+        ignoreMatcher.refresh();
+        invoke(new DirectoryTask(root, "", false, ignoreMatcher.getFrame(""), false));
+        if (null != index) {
+            checkEntries(0, index.getEntryCount(), null);
+        }
+    }
+
+    /**
+     * Scans some paths of the working tree only. A path is a file or a directory, as a git pathspec without magic: as
+     * with git status, an untracked file is reported by its path, even when its directory has no tracked file.
+     * 
+     * @param paths The paths, relative to the working tree, with "/" separators.
+     * @throws JavaGitException Thrown if a directory or a file can't be read.
+     */
+    void scan(Collection<String> paths) throws JavaGitException {
+        ignoreMatcher.refresh();
+        invoke(new PathsTask(paths));
+        if (null != index) {
+            for (String path : paths) {
+                checkEntries(index.findFirst(path), index.getEntryCount(), path);
+                checkEntries(index.findFirst(path + "/"), index.getEntryCount(), path + "/");
+            }
+        }
+    }
+
+    private void invoke(RecursiveAction task) throws JavaGitException {
+        try {
+            getPool().invoke(task);
+        } catch (ScanException e) {
+            throw new JavaGitException(438001, ExceptionMessageMap.getMessage("438001") + " { path=["
+                    + root.toString() + "] }", e.getCause());
+        }
+    }
+
+    /**
+     * Reports the unmerged entries, and the entries not found in the working tree, once the tasks have written all the
+     * seen flags.
+     * 
+     * @param from The position of the first entry.
+     * @param to The position after the last entry.
+     * @param prefix The path of the entries to check, or their beginning if it ends by "/"; null for all the entries.
+     */
+    private void checkEntries(int from, int to, String prefix) {
+        DirCache.Entry entry = index.newEntry();
+        String unmerged = null;
+        for (int i = from; i < to; i++) {
+            entry.moveTo(i);
+            String path = entry.getPath();
+            if (null != prefix && !(prefix.endsWith("/") ? path.startsWith(prefix) : path.equals(prefix))) {
+                break;
+            }
+            if (entry.getStage() != 0) {
+                if (!path.equals(unmerged)) {
+                    changes.put(path, Status.MODIFIED);
+                    unmerged = path;
+                }
+            }
+            else if (!seen[i] && !entry.isSkipWorktree() && !entry.isIntentToAdd() && !entry.isAssumeValid()) {
+                changes.put(path, Status.DELETED);
+            }
+        }
+    }
+
+    /**
+     * @return the files modified or deleted in the working tree, and the unmerged paths, sorted by path
+     */
+    SortedMap<String, Status> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the untracked files and directories, sorted by path
+     */
+    SortedSet<String> getUntracked() {
+        return untracked;
+    }
+
+    /**
+     * Scans the entries of one directory, and forks a task for each of its sub-directories.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // The directory.
+        private final Path        directory;
+
+        // The path of the directory relative to the working tree, "" or ending by "/".
+        private final String      prefix;
+
+        // true if the directory has no tracked file.
+        private final boolean     untrackedDirectory;
+
+        // The ignore rules of the directory.
+        private final Frame       frame;
+
+        // true if the directory is ignored: its untracked files are ignored.
+        private final boolean     ignored;
+
+        DirectoryTask(Path directory, String prefix, boolean untrackedDirectory, Frame frame, boolean ignored) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.untrackedDirectory = untrackedDirectory;
+            this.frame = frame;
+            this.ignored = ignored;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<DirectoryTask>();
+            try {
+                scanDirectory(subdirectories);
+            } catch (IOException e) {
+                throw new ScanException(e);
+            }
+            invokeAll(subdirectories);
+        }
+
+        private void scanDirectory(List<DirectoryTask> subdirectories) throws IOException {
+            DirectoryStream<Path> stream;
+            try {
+                stream = Files.newDirectoryStream(directory);
+            } catch (NoSuchFileException e) {
+                // removed since its parent was read
+                return;
+            } catch (NotDirectoryException e) {
+                return;
+            } catch (AccessDeniedException e) {
+                // git skips the directories it can't read too
+                return;
+            }
+            ChildScanner scanner = new ChildScanner(subdirectories, frame, ignored);
+            try {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    if (".git".equals(name)) {
+                        continue;
+                    }
+                    Stat stat = Stat.read(child);
+                    if (null == stat) {
+                        continue;
+                    }
+                    String path = prefix + name;
+                    if (untrackedDirectory) {
+                        scanner.scanUntracked(child, path, name, stat);
+                    }
+                    else {
+                        scanner.scan(child, path, name, stat);
+                    }
+                }
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Scans a list of paths, and forks a task for each directory among them.
+     */
+    private final class PathsTask extends RecursiveAction {
+
+        private static final long        serialVersionUID = 1L;
+
+        // The paths to scan.
+        private final Collection<String> paths;
+
+        PathsTask(Collection<String> paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<DirectoryTask>();
+            try {
+                for (String path : paths) {
+                    Path child = root.resolve(path);
+                    Stat stat = Stat.read(child);
+                    if (null == stat) {
+                        continue;
+                    }
+                    int slash = path.lastIndexOf('/');
+                    String parent = (slash < 0) ? "" : path.substring(0, slash);
+                    boolean ignored = parent.length() > 0 && ignoreMatcher.isIgnored(parent, true);
+                    ChildScanner scanner = new ChildScanner(subdirectories, ignoreMatcher.getFrame(parent), ignored);
+                    scanner.scan(child, path, path.substring(slash + 1), stat);
+                }
+            } catch (IOException e) {
+                throw new ScanException(e);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    /**
+     * Compares the children of a directory with the index, collecting the sub-directories to scan. A
+     * <code>ChildScanner</code> is used by one task only.
+     */
+    private final class ChildScanner {
+
+        // The sub-directories to scan.
+        private final List<DirectoryTask> subdirectories;
+
+        // The cursor on the index entries.
+        private final DirCache.Entry      entry;
+
+        // The ignore rules of the directory.
+        private final Frame               frame;
+
+        // true if the directory is ignored.
+        private final boolean             ignored;
+
+        // The buffer used to hash files, allocated on first use.
+        private byte[]                    buffer;
+
+        ChildScanner(List<DirectoryTask> subdirectories, Frame frame, boolean ignored) {
+            this.subdirectories = subdirectories;
+            this.entry = (null == index) ? null : index.newEntry();
+            this.frame = frame;
+            this.ignored = ignored;
+        }
+
+        /**
+         * Checks if an untracked child is ignored.
+         */
+        private boolean isIgnored(String name, boolean isDirectory) {
+            return ignored || frame.isIgnored(name, isDirectory);
+        }
+
+        /**
+         * Scans a child of a directory which has tracked files. Tracked files are never ignored.
+         */
+        void scan(Path child, String path, String name, Stat stat) throws IOException {
+            int position = (null == index) ? -1 : index.findEntry(path);
+            if (stat.type == TYPE_DIRECTORY) {
+                if (position >= 0) {
+                    entry.moveTo(position);
+                    if ((entry.getMode() & TYPE_MASK) == TYPE_GITLINK) {
+                        // a submodule: its content belongs to another repository
+                        seen[position] = true;
+                        return;
+                    }
+                }
+                if (null != index && index.hasEntriesIn(path)) {
+                    subdirectories.add(new DirectoryTask(child, path + "/", false, frame.getChild(name), isIgnored(
+                            name, true)));
+                }
+                else if (isIgnored(name, true)) {
+                    // pruned without being read
+                    return;
+                }
+                else if (allUntracked && !isRepository(child)) {
+                    subdirectories.add(new DirectoryTask(child, path + "/", true, frame.getChild(name), false));
+                }
+                else if (containsFiles(child, frame.getChild(name))) {
+                    untracked.add(path + "/");
+                }
+            }
+            else if (position < 0) {
+                if (!isIgnored(name, false)) {
+                    untracked.add(path);
+                }
+            }
+            else {
+                entry.moveTo(position);
+                if (entry.getStage() != 0) {
+                    // unmerged, reported once the scan is done
+                    return;
+                }
+                seen[position] = true;
+                if (entry.isSkipWorktree() || entry.isIntentToAdd() || entry.isAssumeValid()) {
+                    return;
+                }
+                if (isModified(entry, stat)) {
+                    changes.put(path, Status.MODIFIED);
+                }
+                else if (isAmbiguous(entry, stat)) {
+                    if (null == buffer) {
+                        buffer = new byte[8192];
+                    }
+                    if (!hasSameContent(entry, child, stat, buffer)) {
+                        changes.put(path, Status.MODIFIED);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Scans a child of a directory which has no tracked file, when all the untracked files are reported.
+         */
+        void scanUntracked(Path child, String path, String name, Stat stat) throws IOException {
+            boolean isDirectory = stat.type == TYPE_DIRECTORY;
+            if (isIgnored(name, isDirectory)) {
+                return;
+            }
+            if (!isDirectory) {
+                untracked.add(path);
+            }
+            else if (!isRepository(child)) {
+                subdirectories.add(new DirectoryTask(child, path + "/", true, frame.getChild(name), false));
+            }
+            else {
+                untracked.add(path + "/");
+            }
+        }
+    }
+
+    /**
+     * Checks if the stat data of a file proves it differs from its entry.
+     */
+    private boolean isModified(DirCache.Entry entry, Stat stat) {
+        int mode = entry.getMode();
+        int type = mode & TYPE_MASK;
+        if (type != stat.type) {
+            return true;
+        }
+        if (type == TYPE_FILE && stat.mode >= 0 && ((stat.mode & EXECUTABLE) != 0) != ((mode & EXECUTABLE) != 0)) {
+            return true;
+        }
+        // the index keeps the size truncated to 32 bits
+        return (stat.size & 0xffffffffL) != entry.getLength();
+    }
+
+    /**
+     * Checks if the stat data of a file doesn't tell if it has changed since its entry was written.
+     */
+    private boolean isAmbiguous(DirCache.Entry entry, Stat stat) {
+        if (stat.seconds != (entry.getLastModifiedSeconds() & 0xffffffffL)) {
+            return true;
+        }
+        if (stat.inode >= 0 && (int) stat.inode != entry.getInode()) {
+            return true;
+        }
+        // racily clean: modified in the same second as the index, possibly after it was written
+        return stat.seconds >= indexSeconds;
+    }
+
+    /**
+     * Hashes a file as a blob and compares it with the SHA1 of its entry. The target of a symbolic link is hashed
+     * instead of its content.
+     */
+    private static boolean hasSameContent(DirCache.Entry entry, Path path, Stat stat, byte[] buffer)
+            throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always supported
+            throw new IllegalStateException(e);
+        }
+        if (stat.type == TYPE_LINK) {
+            byte[] target = Files.readSymbolicLink(path).toString().getBytes(UTF8);
+            digest.update(("blob " + target.length + "\0").getBytes(UTF8));
+            digest.update(target);
+        }
+        else {
+            digest.update(("blob " + stat.size + "\0").getBytes(UTF8));
+            long length = 0;
+            InputStream in;
+            try {
+                in = Files.newInputStream(path);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            try {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                    length += read;
+                }
+            } finally {
+                in.close();
+            }
+            if (length != stat.size) {
+                // modified while it was read
+                return false;
+            }
+        }
+        byte[] id = new byte[ObjectId.RAW_LENGTH];
+        entry.getObjectId(id, 0);
+        return MessageDigest.isEqual(id, digest.digest());
+    }
+
+    /**
+     * Checks if a directory is a nested repository, which is reported as a whole even when all the untracked files are
+     * asked for.
+     */
+    private static boolean isRepository(Path directory) {
+        return Files.exists(directory.resolve(".git"), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Checks if a directory contains at least one file which is not ignored, in any of its sub-directories. The ignored
+     * sub-directories are not read.
+     */
+    private static boolean containsFiles(Path directory, Frame frame) throws IOException {
+        DirectoryStream<Path> stream;
+        try {
+            stream = Files.newDirectoryStream(directory);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (AccessDeniedException e) {
+            return false;
+        }
+        try {
+            for (Path child : stream) {
+                String name = child.getFileName().toString();
+                if (".git".equals(name)) {
+                    // a nested repository
+                    return true;
+                }
+                boolean isDirectory = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+                if (frame.isIgnored(name, isDirectory)) {
+                    continue;
+                }
+                if (!isDirectory || containsFiles(child, frame.getChild(name))) {
+                    return true;
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        return false;
+    }
+
+    /**
+     * The stat data of a file, read in one call. The mode and the inode are -1 when the file system doesn't give them.
+     */
+    private static final class Stat {
+
+        int  type;
+
+        int  mode  = -1;
+
+        long inode = -1;
+
+        long size;
+
+        long seconds;
+
+        /**
+         * Reads the stat data of a file, without following symbolic links.
+         * 
+         * @return The stat data, or null if the file doesn't exist anymore.
+         */
+        static Stat read(Path path) throws IOException {
+            Stat stat = new Stat();
+            try {
+                if (UNIX) {
+                    Map<String, Object> attributes = Files.readAttributes(path, UNIX_ATTRIBUTES,
+                            LinkOption.NOFOLLOW_LINKS);
+                    stat.mode = ((Integer) attributes.get("mode")).intValue();
+                    stat.inode = ((Long) attributes.get("ino")).longValue();
+                    stat.size = ((Long) attributes.get("size")).longValue();
+                    stat.seconds = ((FileTime) attributes.get("lastModifiedTime")).to(TimeUnit.SECONDS);
+                    int type = stat.mode & TYPE_MASK;
+                    stat.type = (type == TYPE_FILE || type == TYPE_LINK || type == TYPE_DIRECTORY) ? type : TYPE_OTHER;
+                }
+                else {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    stat.size = attributes.size();
+                    stat.seconds = attributes.lastModifiedTime().to(TimeUnit.SECONDS);
+                    if (attributes.isRegularFile()) {
+                        stat.type = TYPE_FILE;
+                    }
+                    else if (attributes.isSymbolicLink()) {
+                        stat.type = TYPE_LINK;
+                    }
+                    else if (attributes.isDirectory()) {
+                        stat.type = TYPE_DIRECTORY;
+                    }
+                    else {
+                        stat.type = TYPE_OTHER;
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            return stat;
+        }
+    }
+
+    /**
+     * Carries an <code>IOException</code> out of a fork/join task.
+     */
+    private static final class ScanException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ScanException(IOException cause) {
+            super(cause);
+        }
+    }
+}
@@ -21,6 +21,11 @@ package com.logisima.javagit.object;
 
 import java.util.List;
 
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.object.db.CommitObject;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
 /**
  * <code>Commit</code> represents information about a commit to a git repository.
  * 
@@ -101,6 +106,25 @@ public final class Commit {
         return comment;
     }
 
+    /**
+     * Reads this commit from the object database of a repository, without starting a git process.
+     * 
+     * @param dotGit The repository containing the commit.
+     * @return The parsed commit.
+     * @throws JavaGitException Thrown if the name of the commit can't be resolved, or the commit can't be read.
+     */
+    public CommitObject read(DotGit dotGit) throws JavaGitException {
+        ObjectDatabase db = dotGit.getObjectDatabase();
+        String sha1 = db.resolve(commitName);
+        if (null == sha1) {
+            throw new JavaGitException(100101, ExceptionMessageMap.getMessage("100101") + " { commit=["
+                    + commitName + "] }");
+        }
+        CommitObject commit = db.readCommit(sha1);
+        comment = commit.getMessage();
+        return commit;
+    }
+
     /**
      * Returns differences for this commit
      * 
@@ -0,0 +1,406 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.Parser;
+import com.logisima.javagit.cli.Response;
+import com.logisima.javagit.object.db.GitDir;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.object.db.ObjectId;
+import com.logisima.javagit.object.db.ObjectType;
+import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+import com.logisima.javagit.utilities.ProcessUtilities;
+
+/**
+ * <code>CommitBuilder</code> creates a commit on a branch with the git plumbing commands, without the index and the
+ * working tree of the repository: the tree of the commit is built in a temporary index (<code>GIT_INDEX_FILE</code>),
+ * and the branch is moved with a compare-and-swap &lt;git-update-ref&gt;. Several writers can create commits on
+ * different branches of a repository at the same time, without waiting for <code>index.lock</code>.
+ * 
+ * A builder is used once: the changes are added, then <code>commit()</code> creates the commit.
+ */
+public class CommitBuilder {
+
+    // The mode of the regular files.
+    private static final String       REGULAR_FILE    = "100644";
+
+    // The mode of the executable files.
+    private static final String       EXECUTABLE_FILE = "100755";
+
+    // The SHA1 meaning "no object" for update-ref and update-index.
+    private static final String       ZERO_ID         = "0000000000000000000000000000000000000000";
+
+    // The path to the repository.
+    private final File                repositoryPath;
+
+    // The branch receiving the commit.
+    private final Ref                 branch;
+
+    // The changes, by path in the tree: "<mode> <sha1>" of a blob, or null for a removal.
+    private final Map<String, String> entries         = new LinkedHashMap<String, String>();
+
+    // The files of the working tree to write in the object database on commit, by path in the tree.
+    private final Map<String, File>   files           = new LinkedHashMap<String, File>();
+
+    // The environment of commit-tree, with the identities of the author and the committer.
+    private final Map<String, String> identity        = new HashMap<String, String>();
+
+    // The parent of the commit, or null to use the tip of the branch.
+    private String                    parent;
+
+    /**
+     * Constructor.
+     * 
+     * @param repositoryPath The path to the repository.
+     * @param branch The branch receiving the commit. It is created by the commit if it doesn't exist.
+     */
+    public CommitBuilder(File repositoryPath, Ref branch) {
+        CheckUtilities.checkNullArgument(repositoryPath, "repository path");
+        CheckUtilities.validateArgumentRefType(branch, Ref.RefType.BRANCH, "branch");
+        this.repositoryPath = repositoryPath;
+        this.branch = branch;
+    }
+
+    /**
+     * Adds or replaces a file with the given content. The content is written in the object database right away, without
+     * running git.
+     * 
+     * @param path The path of the file in the tree, with '/' separators.
+     * @param content The content of the file.
+     * @return This builder.
+     * @throws JavaGitException Thrown if the content can't be written.
+     */
+    public CommitBuilder add(String path, byte[] content) throws JavaGitException {
+        checkPath(path);
+        CheckUtilities.checkNullArgument(content, "content");
+        String sha1 = ObjectDatabase.getInstance(repositoryPath).getObjectWriter().write(ObjectType.BLOB, content);
+        files.remove(path);
+        entries.put(path, REGULAR_FILE + " " + sha1);
+        return this;
+    }
+
+    /**
+     * Adds or replaces a file with the content of a file of the file system. All the files are written in the object
+     * database by a single process, when the commit is created.
+     * 
+     * @param path The path of the file in the tree, with '/' separators.
+     * @param file The file to read, relative to the repository or absolute.
+     * @return This builder.
+     */
+    public CommitBuilder add(String path, File file) {
+        checkPath(path);
+        CheckUtilities.checkNullArgument(file, "file");
+        if (!file.isAbsolute()) {
+            file = new File(repositoryPath, file.getPath());
+        }
+        entries.remove(path);
+        files.put(path, file);
+        return this;
+    }
+
+    /**
+     * Removes a file from the tree.
+     * 
+     * @param path The path of the file in the tree, with '/' separators.
+     * @return This builder.
+     */
+    public CommitBuilder remove(String path) {
+        checkPath(path);
+        files.remove(path);
+        entries.put(path, null);
+        return this;
+    }
+
+    /**
+     * Sets the author of the commit. By default, it is read from the git configuration.
+     * 
+     * @param name The name of the author.
+     * @param email The email of the author.
+     * @return This builder.
+     */
+    public CommitBuilder setAuthor(String name, String email) {
+        CheckUtilities.checkStringArgument(name, "name");
+        CheckUtilities.checkStringArgument(email, "email");
+        identity.put("GIT_AUTHOR_NAME", name);
+        identity.put("GIT_AUTHOR_EMAIL", email);
+        return this;
+    }
+
+    /**
+     * Sets the committer of the commit. By default, it is read from the git configuration.
+     * 
+     * @param name The name of the committer.
+     * @param email The email of the committer.
+     * @return This builder.
+     */
+    public CommitBuilder setCommitter(String name, String email) {
+        CheckUtilities.checkStringArgument(name, "name");
+        CheckUtilities.checkStringArgument(email, "email");
+        identity.put("GIT_COMMITTER_NAME", name);
+        identity.put("GIT_COMMITTER_EMAIL", email);
+        return this;
+    }
+
+    /**
+     * Sets the parent of the commit. The branch is only moved if it is still on this commit, so a writer can build a
+     * commit from the state it read, and find out that another writer moved the branch in the meantime. By default,
+     * the parent is the tip of the branch when <code>commit()</code> is called.
+     * 
+     * @param sha1 The SHA1 of the parent commit.
+     * @return This builder.
+     */
+    public CommitBuilder setParent(String sha1) {
+        if (!ObjectId.isId(sha1)) {
+            throw new IllegalArgumentException(ExceptionMessageMap.getMessage("100101") + " { sha1=[" + sha1 + "] }");
+        }
+        this.parent = sha1.toLowerCase();
+        return this;
+    }
+
+    /**
+     * Creates the commit and moves the branch on it, if the branch is still on the parent of the commit.
+     * 
+     * @param message The message of the commit.
+     * @return The SHA1 of the new commit.
+     * @throws IOException Thrown if git can't be run.
+     * @throws JavaGitException Thrown with the code <code>JavaGitException.REF_CONFLICT</code> if the branch was moved
+     *         by another writer: the commit exists but no branch points on it, it can be built again on the new tip.
+     */
+    public String commit(String message) throws IOException, JavaGitException {
+        CheckUtilities.checkStringArgument(message, "message");
+        String refName = "refs/heads/" + branch.getName();
+        String expected = (null == parent) ? readBranch(refName) : parent;
+
+        String tree = writeTree(expected);
+
+        List<String> command = newCommand("commit-tree");
+        command.add(tree);
+        if (null != expected) {
+            command.add("-p");
+            command.add(expected);
+        }
+        String commit = runForObjectId(command, identity, message.getBytes("UTF-8"));
+
+        command = newCommand("update-ref");
+        command.add("-m");
+        command.add("commit: " + firstLine(message));
+        command.add(refName);
+        command.add(commit);
+        command.add((null == expected) ? ZERO_ID : expected);
+        PlumbingResponse response = run(command, null, null);
+        if (response.getProcessExitCode() != 0) {
+            throw new JavaGitException(JavaGitException.REF_CONFLICT, ExceptionMessageMap.getMessage("410101")
+                    + " { branch=[" + branch.getName() + "], expected=[" + expected + "], output=["
+                    + response.getProcessOutput() + "] }");
+        }
+        return commit;
+    }
+
+    /**
+     * Builds the tree of the commit in a temporary index, initialized with the tree of the parent.
+     */
+    private String writeTree(String expected) throws IOException, JavaGitException {
+        hashFiles();
+
+        File index = new File(GitDir.find(repositoryPath), "index.javagit-" + Thread.currentThread().getId() + "-"
+                + System.nanoTime());
+        Map<String, String> environment = new HashMap<String, String>();
+        environment.put("GIT_INDEX_FILE", index.getAbsolutePath());
+        try {
+            if (null != expected) {
+                List<String> command = newCommand("read-tree");
+                command.add(expected);
+                check(command, run(command, environment, null));
+            }
+
+            // "<mode> <sha1>\t<path>" lines, the mode 0 removes the path
+            ByteArrayOutputStream indexInfo = new ByteArrayOutputStream();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                String value = (null == entry.getValue()) ? "0 " + ZERO_ID : entry.getValue();
+                indexInfo.write((value + "\t" + entry.getKey()).getBytes("UTF-8"));
+                indexInfo.write(0);
+            }
+            List<String> command = newCommand("update-index");
+            command.add("-z");
+            command.add("--index-info");
+            check(command, run(command, environment, indexInfo.toByteArray()));
+
+            return runForObjectId(newCommand("write-tree"), environment, null);
+        } finally {
+            index.delete();
+            new File(index.getPath() + ".lock").delete();
+        }
+    }
+
+    /**
+     * Writes the files of the file system in the object database, with a single &lt;git-hash-object&gt;.
+     */
+    private void hashFiles() throws IOException, JavaGitException {
+        if (files.isEmpty()) {
+            return;
+        }
+        StringBuilder paths = new StringBuilder();
+        for (File file : files.values()) {
+            paths.append(file.getAbsolutePath()).append('\n');
+        }
+        List<String> command = newCommand("hash-object");
+        command.add("-w");
+        command.add("--stdin-paths");
+        PlumbingResponse response = run(command, null, paths.toString().getBytes("UTF-8"));
+        check(command, response);
+
+        List<String> ids = response.getLines();
+        if (ids.size() != files.size()) {
+            throw new JavaGitException(410100, ExceptionMessageMap.getMessage("410100") + " { command=[" + command
+                    + "], output=[" + response.getProcessOutput() + "] }");
+        }
+        int i = 0;
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            String mode = entry.getValue().canExecute() ? EXECUTABLE_FILE : REGULAR_FILE;
+            entries.put(entry.getKey(), mode + " " + ids.get(i++));
+        }
+        files.clear();
+    }
+
+    /**
+     * Reads the tip of the branch.
+     * 
+     * @return The SHA1 of the tip, or null if the branch doesn't exist.
+     */
+    private String readBranch(String refName) throws IOException, JavaGitException {
+        List<String> command = newCommand("rev-parse");
+        command.add("--verify");
+        command.add("-q");
+        command.add(refName + "^{commit}");
+        PlumbingResponse response = run(command, null, null);
+        if (response.getProcessExitCode() != 0) {
+            return null;
+        }
+        return objectId(command, response);
+    }
+
+    private String runForObjectId(List<String> command, Map<String, String> environment, byte[] input)
+            throws IOException, JavaGitException {
+        PlumbingResponse response = run(command, environment, input);
+        check(command, response);
+        return objectId(command, response);
+    }
+
+    private PlumbingResponse run(List<String> command, Map<String, String> environment, byte[] input)
+            throws IOException, JavaGitException {
+        return (PlumbingResponse) ProcessUtilities.runCommand(repositoryPath, command, environment, input,
+                new PlumbingParser(command));
+    }
+
+    private static void check(List<String> command, PlumbingResponse response) throws JavaGitException {
+        if (response.getProcessExitCode() != 0) {
+            throw new JavaGitException(410100, ExceptionMessageMap.getMessage("410100") + " { command=[" + command
+                    + "], output=[" + response.getProcessOutput() + "] }");
+        }
+    }
+
+    private static String objectId(List<String> command, PlumbingResponse response) throws JavaGitException {
+        List<String> lines = response.getLines();
+        if (lines.size() != 1 || !ObjectId.isId(lines.get(0))) {
+            throw new JavaGitException(410100, ExceptionMessageMap.getMessage("410100") + " { command=[" + command
+                    + "], output=[" + response.getProcessOutput() + "] }");
+        }
+        return lines.get(0);
+    }
+
+    private static List<String> newCommand(String gitCommand) {
+        List<String> command = new ArrayList<String>();
+        command.add(JavaGitConfiguration.getGitCommand());
+        command.add(gitCommand);
+        return command;
+    }
+
+    private static void checkPath(String path) {
+        CheckUtilities.checkStringArgument(path, "path");
+        if (path.startsWith("/") || path.endsWith("/") || path.indexOf('\0') >= 0 || path.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException(ExceptionMessageMap.getMessage("410102") + " { path=[" + path + "] }");
+        }
+    }
+
+    private static String firstLine(String message) {
+        int eol = message.indexOf('\n');
+        return (eol < 0) ? message : message.substring(0, eol);
+    }
+
+    /**
+     * Collects the output lines of a plumbing command.
+     */
+    private static final class PlumbingParser extends Parser {
+
+        private final PlumbingResponse response;
+
+        PlumbingParser(List<String> command) {
+            this.response = new PlumbingResponse(command);
+        }
+
+        @Override
+        public void parseLine(String line) {
+            ++numLinesParsed;
+            response.lines.add(line);
+        }
+
+        @Override
+        public Response getResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * The output lines and the exit code of a plumbing command.
+     */
+    private static final class PlumbingResponse extends Response {
+
+        private final List<String> lines = new ArrayList<String>();
+
+        PlumbingResponse(List<String> command) {
+            this.command = command;
+        }
+
+        List<String> getLines() {
+            return lines;
+        }
+
+        @Override
+        public String getProcessOutput() {
+            StringBuilder output = new StringBuilder();
+            for (String line : lines) {
+                output.append(line).append('\n');
+            }
+            return output.toString().trim();
+        }
+    }
+}
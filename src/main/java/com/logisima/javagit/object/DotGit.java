@@ -21,18 +21,20 @@ package com.logisima.javagit.object;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.branch.GitBranch;
 import com.logisima.javagit.cli.branch.GitBranchOptions;
 import com.logisima.javagit.cli.branch.GitBranchResponse;
+import com.logisima.javagit.cli.client.ClientManager;
 import com.logisima.javagit.cli.log.GitLog;
 import com.logisima.javagit.cli.log.GitLogOptions;
 import com.logisima.javagit.cli.log.GitLogResponse;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.object.db.ObjectReader;
 import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.InstanceRegistry;
 
 /**
  * The <code>DotGit</code> represents the .git directory.
@@ -42,18 +44,18 @@ public final class DotGit {
     /**
      * This guy's a per-repository singleton, so we need a static place to store our instances.
      */
-    private static final Map<String, DotGit> INSTANCES = new HashMap<String, DotGit>();
+    private static final InstanceRegistry<DotGit> INSTANCES = new InstanceRegistry<DotGit>();
 
     /**
      * The directory that contains the .git in question.
      */
-    private final File                       path;
+    private final File                            path;
 
     /**
      * The canonical pathname from this file. Store this here so that we don't need to continually hit the filesystem to
      * resolve it.
      */
-    private final String                     canonicalPath;
+    private final String                          canonicalPath;
 
     /**
      * The constructor. Private because this singleton-ish (per each repository) class is only available via the
@@ -73,7 +75,7 @@ public final class DotGit {
      * @param path <code>File</code> object representing the path to the repository.
      * @return true if exits, false otherwise;
      */
-    public static synchronized boolean existsInstance(File path) {
+    public static boolean existsInstance(File path) {
         String canonicalPath = "";
 
         try {
@@ -83,7 +85,7 @@ public final class DotGit {
             return false;
         }
 
-        return INSTANCES.containsKey(canonicalPath);
+        return null != INSTANCES.get(canonicalPath);
     }
 
     /**
@@ -92,7 +94,7 @@ public final class DotGit {
      * @param path <code>File</code> object representing the path to the repository.
      * @return The <code>DotGit</code> instance for this path
      */
-    public static synchronized DotGit getInstance(File path) {
+    public static DotGit getInstance(File path) {
         DotGit dotGit;
 
         // TODO (rs2705): make sure that path is valid
@@ -115,12 +117,9 @@ public final class DotGit {
             return null;
         }
 
-        if (!(INSTANCES.containsKey(canonicalPath))) {
-            dotGit = new DotGit(path, canonicalPath);
-            INSTANCES.put(canonicalPath, dotGit);
-        }
-        else {
-            dotGit = INSTANCES.get(canonicalPath);
+        dotGit = INSTANCES.get(canonicalPath);
+        if (null == dotGit) {
+            dotGit = INSTANCES.putIfAbsent(canonicalPath, new DotGit(path, canonicalPath));
         }
 
         return dotGit;
@@ -170,6 +169,16 @@ public final class DotGit {
         return newBranch;
     }
 
+    /**
+     * Starts a commit on a branch, built without the index of the repository (see <code>CommitBuilder</code>).
+     * 
+     * @param branch The branch receiving the commit.
+     * @return The builder of the commit.
+     */
+    public CommitBuilder newCommit(Ref branch) {
+        return new CommitBuilder(path, branch);
+    }
+
     /**
      * Deletes a branch
      * 
@@ -202,12 +211,13 @@ public final class DotGit {
     }
 
     /**
-     * Gets a list of the branches in the repository.
+     * Gets a list of the branches in the repository, with the preferred client: the native client reads them from a
+     * cached snapshot of the refs.
      * 
      * @return The branches in the repository.
      */
     public List<Ref> getBranches() throws IOException, JavaGitException {
-        GitBranch gitBranch = new GitBranch();
+        GitBranch gitBranch = ClientManager.getInstance().getPreferredClient().getGitBranchInstance();
         GitBranchOptions options = new GitBranchOptions();
         GitBranchResponse response = gitBranch.branch(path, options);
         return response.getBranchList();
@@ -241,6 +251,27 @@ public final class DotGit {
         return WorkingTree.getInstance(path);
     }
 
+    /**
+     * Gets the reader of the object database of this repository.
+     * 
+     * @return The <code>ObjectReader</code> of this repository.
+     * @throws JavaGitException Thrown if the repository path can't be resolved.
+     */
+    public ObjectReader getObjectReader() throws JavaGitException {
+        return ClientManager.getInstance().getPreferredClient().getObjectReaderInstance(path);
+    }
+
+    /**
+     * Gets the pure Java object database of this repository, whatever the preferred client type. Its packs are
+     * memory-mapped, so it suits the code resolving many objects, like history walks.
+     * 
+     * @return The <code>ObjectDatabase</code> of this repository.
+     * @throws JavaGitException Thrown if the path is not a git repository.
+     */
+    public ObjectDatabase getObjectDatabase() throws JavaGitException {
+        return ObjectDatabase.getInstance(path);
+    }
+
     @Override
     public int hashCode() {
         return canonicalPath.hashCode();
@@ -21,8 +21,22 @@ package com.logisima.javagit.object;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.log.GitLog;
@@ -55,6 +69,10 @@ public class GitDirectory extends GitFileSystemObject {
         return super.equals(gitObj);
     }
 
+    GitDirectory(File dir, File relativePath, WorkingTree workingTree) {
+        super(dir, relativePath, workingTree);
+    }
+
     /**
      * Gets the children of this directory.
      * 
@@ -62,26 +80,131 @@ public class GitDirectory extends GitFileSystemObject {
      */
     public List<GitFileSystemObject> getChildren() throws IOException, JavaGitException {
         List<GitFileSystemObject> children = new ArrayList<GitFileSystemObject>();
-
-        // get all of the file system objects currently located under this directory
-        for (File memberFile : file.listFiles()) {
-            // check if this file is hidden also some times the .git and
-            // other unix hidden directories are not hidden in Windows
-            if (memberFile.isHidden() || memberFile.getName().startsWith(".")) {
-                // ignore (could be .git directory)
-                continue;
+        DirectoryStream<GitFileSystemObject> stream = openChildren();
+        try {
+            for (GitFileSystemObject child : stream) {
+                children.add(child);
             }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        } finally {
+            stream.close();
+        }
+        return children;
+    }
 
-            // now, just check for the type of the filesystem object
-            if (memberFile.isDirectory()) {
-                children.add(new GitDirectory(memberFile, workingTree));
-            }
-            else {
-                children.add(new GitFile(memberFile, workingTree));
-            }
+    /**
+     * Opens a lazy stream on the children of this directory: each child is built when the iteration reaches it, from
+     * the attributes read once for its directory entry. Hidden files are skipped, as with <code>getChildren()</code>.
+     * The stream must be closed, and an I/O error during the iteration is thrown as a
+     * <code>DirectoryIteratorException</code>.
+     * 
+     * @return The stream of the children of this directory.
+     * @throws IOException Thrown if the directory can't be read.
+     */
+    public DirectoryStream<GitFileSystemObject> openChildren() throws IOException {
+        return new ChildStream(Files.newDirectoryStream(file.toPath()), getChildBase());
+    }
+
+    /**
+     * Walks depth-first through all the files and directories under this directory, without building the whole tree.
+     * Hidden files and directories are skipped, and so are the directories which can't be read.
+     * 
+     * @param visitor The visitor called for each file and directory.
+     * @throws IOException Thrown if the walk or the visitor fails.
+     * @throws JavaGitException Thrown if the visitor fails.
+     */
+    public void walk(final Visitor visitor) throws IOException, JavaGitException {
+        // the relative paths of the directories being walked
+        final List<File> relativePaths = new ArrayList<File>();
+        try {
+            Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (relativePaths.isEmpty()) {
+                        relativePaths.add(getChildBase());
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String name = dir.getFileName().toString();
+                    if (isHidden(name, attrs)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    File relative = new File(relativePaths.get(relativePaths.size() - 1), name);
+                    FileVisitResult result;
+                    try {
+                        result = visitor.visitDirectory(new GitDirectory(dir.toFile(), relative, workingTree));
+                    } catch (JavaGitException e) {
+                        throw new VisitorException(e);
+                    }
+                    if (result == FileVisitResult.CONTINUE) {
+                        relativePaths.add(relative);
+                    }
+                    return result;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+                    String name = path.getFileName().toString();
+                    if (isHidden(name, attrs)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    File relative = new File(relativePaths.get(relativePaths.size() - 1), name);
+                    try {
+                        return visitor.visitFile(new GitFile(path.toFile(), relative, workingTree));
+                    } catch (JavaGitException e) {
+                        throw new VisitorException(e);
+                    }
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) throws IOException {
+                    if (e instanceof AccessDeniedException || e instanceof NoSuchFileException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw e;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    relativePaths.remove(relativePaths.size() - 1);
+                    if (null != e && !(e instanceof AccessDeniedException)) {
+                        throw e;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (VisitorException e) {
+            throw e.getCause();
         }
+    }
 
-        return children;
+    /**
+     * Gets the path to which the names of the children are appended to get their relative path: the relative path of
+     * the root of the working tree is not an empty path.
+     */
+    private File getChildBase() {
+        if (file.getAbsoluteFile().equals(workingTree.getPath().getAbsoluteFile())) {
+            return null;
+        }
+        return relativePath;
+    }
+
+    /**
+     * Checks if a file is hidden, from its name or, on Windows, from the attributes already read.
+     */
+    private static boolean isHidden(String name, BasicFileAttributes attrs) {
+        // some times the .git and other unix hidden directories are not hidden in Windows
+        return name.startsWith(".") || (attrs instanceof DosFileAttributes && ((DosFileAttributes) attrs).isHidden());
+    }
+
+    /**
+     * Gets the status of the children of this directory, with a single status of the working tree.
+     * 
+     * @return The status of each child of this directory.
+     */
+    public Map<GitFileSystemObject, Status> getChildrenStatuses() throws IOException, JavaGitException {
+        return workingTree.getStatuses(getChildren());
     }
 
     /**
@@ -107,4 +230,121 @@ public class GitDirectory extends GitFileSystemObject {
         GitLog gitLog = new GitLog();
         return gitLog.log(this.file, options);
     }
+
+    /**
+     * <code>Visitor</code> is called by <code>walk()</code> for each file and directory of the walk. Returning
+     * <code>SKIP_SUBTREE</code> for a directory skips its content, and <code>TERMINATE</code> stops the walk.
+     */
+    public interface Visitor {
+
+        /**
+         * Called for a directory, before its content.
+         * 
+         * @param directory The directory.
+         * @return How to continue the walk.
+         */
+        FileVisitResult visitDirectory(GitDirectory directory) throws IOException, JavaGitException;
+
+        /**
+         * Called for a file.
+         * 
+         * @param file The file.
+         * @return How to continue the walk.
+         */
+        FileVisitResult visitFile(GitFile file) throws IOException, JavaGitException;
+    }
+
+    /**
+     * Carries a <code>JavaGitException</code> of the visitor through <code>Files.walkFileTree</code>.
+     */
+    private static final class VisitorException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        VisitorException(JavaGitException cause) {
+            super(cause);
+        }
+
+        @Override
+        public JavaGitException getCause() {
+            return (JavaGitException) super.getCause();
+        }
+    }
+
+    /**
+     * The lazy stream returned by <code>openChildren()</code>.
+     */
+    private final class ChildStream implements DirectoryStream<GitFileSystemObject> {
+
+        private final DirectoryStream<Path> stream;
+
+        private final File                  base;
+
+        ChildStream(DirectoryStream<Path> stream, File base) {
+            this.stream = stream;
+            this.base = base;
+        }
+
+        @Override
+        public Iterator<GitFileSystemObject> iterator() {
+            final Iterator<Path> paths = stream.iterator();
+            return new Iterator<GitFileSystemObject>() {
+
+                private GitFileSystemObject next;
+
+                @Override
+                public boolean hasNext() {
+                    while (null == next && paths.hasNext()) {
+                        next = newChild(paths.next());
+                    }
+                    return null != next;
+                }
+
+                @Override
+                public GitFileSystemObject next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    GitFileSystemObject child = next;
+                    next = null;
+                    return child;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+        /**
+         * Builds a child, or returns null if the child is hidden or was deleted.
+         */
+        private GitFileSystemObject newChild(Path path) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(".")) {
+                return null;
+            }
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                throw new DirectoryIteratorException(e);
+            }
+            if (isHidden(name, attrs)) {
+                return null;
+            }
+            if (attrs.isDirectory()) {
+                return new GitDirectory(path.toFile(), new File(base, name), workingTree);
+            }
+            return new GitFile(path.toFile(), new File(base, name), workingTree);
+        }
+    }
 }
@@ -45,6 +45,10 @@ public class GitFile extends GitFileSystemObject {
         super(file, workingTree);
     }
 
+    GitFile(File file, File relativePath, WorkingTree workingTree) {
+        super(file, relativePath, workingTree);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof GitFile)) {
@@ -56,14 +60,21 @@ public class GitFile extends GitFileSystemObject {
     }
 
     /**
-     * Show object's status in the working directory
+     * Show object's status in the working directory. When the working tree is watched (see
+     * <code>WorkingTree.startStatusWatcher()</code>), the status comes from its cached status, which is kept up to date.
      * 
      * @return Object's status in the working directory (untracked, changed but not updated, etc).
      */
     public Status getStatus() throws IOException, JavaGitException {
-        GitStatus gitStatus = new GitStatus();
-        // run git-status command
-        GitStatusResponse response = gitStatus.status(workingTree.getPath(), null, relativePath);
+        GitStatusResponse response;
+        if (workingTree.isStatusWatched()) {
+            response = workingTree.getCachedStatus();
+        }
+        else {
+            GitStatus gitStatus = new GitStatus();
+            // run git-status command
+            response = gitStatus.status(workingTree.getPath(), null, relativePath);
+        }
         return response.getFileStatus(file);
     }
 
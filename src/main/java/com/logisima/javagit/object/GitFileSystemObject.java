@@ -33,6 +33,7 @@ import com.logisima.javagit.cli.mv.GitMv;
 import com.logisima.javagit.cli.mv.GitMvResponse;
 import com.logisima.javagit.cli.rm.GitRm;
 import com.logisima.javagit.cli.rm.GitRmResponse;
+import com.logisima.javagit.object.db.DirCache;
 import com.logisima.javagit.utilities.CheckUtilities;
 
 /**
@@ -83,6 +84,18 @@ public abstract class GitFileSystemObject {
         this.relativePath = getRelativePath(file, workingTree.getPath());
     }
 
+    /**
+     * The constructor used when the relative path is already known, as for the children of a directory.
+     * 
+     * @param file underlying <code>java.io.File</code> object
+     * @param relativePath path, relative to working directory
+     */
+    GitFileSystemObject(File file, File relativePath, WorkingTree workingTree) {
+        this.workingTree = workingTree;
+        this.file = file;
+        this.relativePath = relativePath;
+    }
+
     /**
      * Returns a file, with path relative to git working tree
      * 
@@ -172,8 +185,19 @@ public abstract class GitFileSystemObject {
         List<File> list = new ArrayList<File>();
         File relativeFilePath;
         if (relativePath.isDirectory()) {
+            // git refuses to add ignored files which are not tracked
+            String directory = relativePath.getPath().replace(File.separatorChar, '/');
+            IgnoreMatcher matcher = IgnoreMatcher.getInstance(workingTree.getPath());
+            matcher.refresh();
+            IgnoreMatcher.Frame frame = matcher.getFrame(directory);
+            DirCache index = DirCache.read(workingTree.getPath());
             for (File f : relativePath.listFiles()) {
                 if (!f.isHidden() && !f.getName().startsWith(".")) {
+                    String path = directory + "/" + f.getName();
+                    if (frame.isIgnored(f.getName(), f.isDirectory())
+                            && (null == index || (index.findEntry(path) < 0 && !index.hasEntriesIn(path)))) {
+                        continue;
+                    }
                     relativeFilePath = this.getRelativePath(f, this.getWorkingTree().getPath());
                     list.add(relativeFilePath);
                 }
@@ -0,0 +1,445 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.object.db.GitDir;
+import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.InstanceRegistry;
+
+/**
+ * <code>IgnoreMatcher</code> tells if the untracked files of a working tree are ignored, with the rules of the
+ * <code>.gitignore</code> files, of <code>.git/info/exclude</code> and of the file set by <code>core.excludesFile</code>
+ * . As with git, a rule of a deeper <code>.gitignore</code> wins over the rules of its parents, which win over the
+ * exclude file, which wins over the global file; in a file, the last matching rule wins.
+ * 
+ * Each rule file is compiled once: the patterns without wildcard are found by a hash lookup of the name or of the path,
+ * the patterns <code>*.ext</code> by a hash lookup of the extension, and only the other patterns are matched one by
+ * one. The compiled files are cached, and compiled again when they are modified. The exclude file and the global file
+ * are only checked again by <code>refresh()</code>, once per scan of the working tree.
+ * 
+ * The rules are applied directory by directory through a <code>Frame</code>: a walk of the working tree gets the frame
+ * of a sub-directory from the frame of its parent, and stops at the ignored directories, whose content is ignored.
+ */
+public final class IgnoreMatcher {
+
+    // This guy's a per-repository singleton, so we need a static place to store our instances.
+    private static final InstanceRegistry<IgnoreMatcher> INSTANCES = new InstanceRegistry<IgnoreMatcher>();
+
+    // The root of the working tree.
+    private final File                                   root;
+
+    // The git directory of the repository.
+    private final File                                   gitDir;
+
+    // The compiled .gitignore files, by directory ("" for the root).
+    private final Map<String, Rules>                     gitignores;
+
+    // The compiled exclude file and global file, null until they are read.
+    private volatile Rules[]                             repositoryRules;
+
+    private IgnoreMatcher(File root, File gitDir) {
+        this.root = root;
+        this.gitDir = gitDir;
+        this.gitignores = new ConcurrentHashMap<String, Rules>();
+    }
+
+    /**
+     * Static factory method for retrieving the instance of this class for a repository.
+     * 
+     * @param repositoryPath <code>File</code> object representing the path to the working tree.
+     * @return The <code>IgnoreMatcher</code> instance for this path.
+     * @throws JavaGitException Thrown if the path is not a git repository.
+     */
+    public static IgnoreMatcher getInstance(File repositoryPath) throws JavaGitException {
+        CheckUtilities.checkNullArgument(repositoryPath, "repository path");
+        String canonicalPath;
+        try {
+            canonicalPath = repositoryPath.getCanonicalPath();
+        } catch (IOException e) {
+            throw new JavaGitException(JavaGitException.REPOSITORY_ERROR, e.getMessage(), e);
+        }
+
+        IgnoreMatcher matcher = INSTANCES.get(canonicalPath);
+        if (null == matcher) {
+            File root = new File(canonicalPath);
+            // info/exclude and the configuration are shared by the linked working trees
+            File gitDir = GitDir.findCommon(GitDir.find(root));
+            matcher = INSTANCES.putIfAbsent(canonicalPath, new IgnoreMatcher(root, gitDir));
+        }
+        return matcher;
+    }
+
+    /**
+     * Compiles the exclude file and the global file again if they were modified. Their rules are kept from one lookup
+     * to the next: call this method before each scan of the working tree, so a scan sees the current rules.
+     */
+    public synchronized void refresh() {
+        Rules[] rules = repositoryRules;
+        File excludeFile = new File(gitDir, "info" + File.separator + "exclude");
+        Rules exclude = (null == rules || !rules[0].isUpToDate(excludeFile)) ? Rules.compile(excludeFile, "")
+                : rules[0];
+        File globalFile = getGlobalFile();
+        Rules global = (null == rules || !rules[1].isUpToDate(globalFile)) ? Rules.compile(globalFile, "") : rules[1];
+        if (null == rules || exclude != rules[0] || global != rules[1]) {
+            repositoryRules = new Rules[] { exclude, global };
+        }
+    }
+
+    /**
+     * Gets the frame of a directory of the working tree, to check the names of its children. The directories
+     * containing <code>directory</code> are not checked.
+     * 
+     * @param directory The path of the directory relative to the working tree, with "/" separators ("" for the root).
+     * @return The frame of the directory.
+     */
+    public Frame getFrame(String directory) {
+        Frame frame = getRootFrame();
+        if (directory.length() > 0) {
+            for (String name : directory.split("/")) {
+                frame = frame.getChild(name);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Checks if a path of the working tree is ignored, itself or because one of the directories containing it is
+     * ignored.
+     * 
+     * @param path The path relative to the working tree, with "/" separators.
+     * @param directory true if the path is a directory.
+     * @return true if the path is ignored.
+     */
+    public boolean isIgnored(String path, boolean directory) {
+        Frame frame = getRootFrame();
+        String[] names = path.split("/");
+        for (int i = 0; i < names.length - 1; i++) {
+            if (frame.isIgnored(names[i], true)) {
+                return true;
+            }
+            frame = frame.getChild(names[i]);
+        }
+        return frame.isIgnored(names[names.length - 1], directory);
+    }
+
+    private Frame getRootFrame() {
+        return new Frame(null, "", getRules(""), getRepositoryRules());
+    }
+
+    /**
+     * Gets the compiled .gitignore of a directory, compiling it again if it was modified.
+     */
+    private Rules getRules(String directory) {
+        File file = new File(root, (directory.length() == 0) ? ".gitignore" : directory + "/.gitignore");
+        Rules rules = gitignores.get(directory);
+        if (null == rules || !rules.isUpToDate(file)) {
+            rules = Rules.compile(file, directory);
+            gitignores.put(directory, rules);
+        }
+        return rules;
+    }
+
+    /**
+     * Gets the compiled exclude file and global file, as read by the last <code>refresh()</code>.
+     */
+    private Rules[] getRepositoryRules() {
+        Rules[] rules = repositoryRules;
+        if (null == rules) {
+            refresh();
+            rules = repositoryRules;
+        }
+        return rules;
+    }
+
+    /**
+     * Finds the global ignore file: <code>core.excludesFile</code> of the repository configuration or of the user
+     * configuration, else <code>$XDG_CONFIG_HOME/git/ignore</code>.
+     */
+    private File getGlobalFile() {
+        String home = System.getProperty("user.home");
+        String path = readExcludesFile(new File(gitDir, "config"));
+        if (null == path) {
+            path = readExcludesFile(new File(home, ".gitconfig"));
+        }
+        if (null != path) {
+            if (path.startsWith("~/")) {
+                return new File(home, path.substring(2));
+            }
+            File file = new File(path);
+            return file.isAbsolute() ? file : new File(root, path);
+        }
+        String xdgConfig = System.getenv("XDG_CONFIG_HOME");
+        File configDir = (null == xdgConfig || xdgConfig.length() == 0) ? new File(home, ".config") : new File(
+                xdgConfig);
+        return new File(configDir, "git" + File.separator + "ignore");
+    }
+
+    /**
+     * Reads <code>core.excludesFile</code> in a git configuration file.
+     * 
+     * @return The value, or null if the file doesn't set it.
+     */
+    private static String readExcludesFile(File config) {
+        if (!config.isFile()) {
+            return null;
+        }
+        String value = null;
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(config), "UTF-8"));
+            try {
+                boolean core = false;
+                String line;
+                while (null != (line = br.readLine())) {
+                    line = line.trim();
+                    if (line.startsWith("[")) {
+                        core = line.toLowerCase().matches("\\[\\s*core\\s*\\]");
+                    }
+                    else if (core && line.toLowerCase().startsWith("excludesfile")) {
+                        int equals = line.indexOf('=');
+                        if (equals > 0 && line.substring(0, equals).trim().equalsIgnoreCase("excludesfile")) {
+                            value = line.substring(equals + 1).trim();
+                            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                                value = value.substring(1, value.length() - 1);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            // an unreadable configuration sets nothing
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * The rules applying to the children of a directory: the .gitignore of the directory and of its parents, then the
+     * exclude file and the global file.
+     */
+    public final class Frame {
+
+        // The frame of the parent directory, null for the root.
+        private final Frame   parent;
+
+        // The path of the directory, "" for the root.
+        private final String  directory;
+
+        // The compiled .gitignore of the directory.
+        private final Rules   rules;
+
+        // The compiled exclude file and global file, as read when the root frame was created.
+        private final Rules[] repositoryRules;
+
+        private Frame(Frame parent, String directory, Rules rules, Rules[] repositoryRules) {
+            this.parent = parent;
+            this.directory = directory;
+            this.rules = rules;
+            this.repositoryRules = repositoryRules;
+        }
+
+        /**
+         * Gets the frame of a sub-directory.
+         * 
+         * @param name The name of the sub-directory.
+         * @return The frame of the sub-directory.
+         */
+        public Frame getChild(String name) {
+            String path = (directory.length() == 0) ? name : directory + "/" + name;
+            return new Frame(this, path, getRules(path), repositoryRules);
+        }
+
+        /**
+         * Checks if a child of the directory is ignored.
+         * 
+         * @param name The name of the child.
+         * @param isDirectory true if the child is a directory.
+         * @return true if the child is ignored.
+         */
+        public boolean isIgnored(String name, boolean isDirectory) {
+            String path = (directory.length() == 0) ? name : directory + "/" + name;
+            for (Frame frame = this; null != frame; frame = frame.parent) {
+                int match = frame.rules.match(path, name, isDirectory);
+                if (match != 0) {
+                    return match > 0;
+                }
+            }
+            for (Rules fileRules : repositoryRules) {
+                int match = fileRules.match(path, name, isDirectory);
+                if (match != 0) {
+                    return match > 0;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A compiled rule file.
+     */
+    private static final class Rules {
+
+        // The modification time and the length of the file when it was compiled (0 if it doesn't exist).
+        private final long                                 modified;
+        private final long                                 length;
+
+        // The directory of the file, "" for the root: the anchored patterns are relative to it.
+        private final String                               base;
+
+        // The patterns without wildcard nor slash, by name, and without wildcard with a slash, by path.
+        private final Map<String, List<IgnorePattern>> names;
+        private final Map<String, List<IgnorePattern>> paths;
+
+        // The patterns "*.ext", by extension.
+        private final Map<String, List<IgnorePattern>> extensions;
+
+        // The other patterns.
+        private final List<IgnorePattern>               others;
+
+        private Rules(long modified, long length, String base) {
+            this.modified = modified;
+            this.length = length;
+            this.base = base;
+            this.names = new HashMap<String, List<IgnorePattern>>();
+            this.paths = new HashMap<String, List<IgnorePattern>>();
+            this.extensions = new HashMap<String, List<IgnorePattern>>();
+            this.others = new ArrayList<IgnorePattern>();
+        }
+
+        boolean isUpToDate(File file) {
+            return file.lastModified() == modified && file.length() == length;
+        }
+
+        /**
+         * Compiles a rule file. A missing or unreadable file has no rule.
+         */
+        static Rules compile(File file, String base) {
+            Rules rules = new Rules(file.lastModified(), file.length(), base);
+            if (!file.isFile()) {
+                return rules;
+            }
+            List<IgnorePattern> patterns = new ArrayList<IgnorePattern>();
+            try {
+                BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                try {
+                    String line;
+                    while (null != (line = br.readLine())) {
+                        IgnorePattern pattern = IgnorePattern.parse(line, patterns.size());
+                        if (null != pattern) {
+                            patterns.add(pattern);
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+            } catch (IOException e) {
+                // git ignores the files it can't read
+                return rules;
+            }
+            // the last pattern comes first in each list, as the last matching pattern wins
+            for (int i = patterns.size() - 1; i >= 0; i--) {
+                IgnorePattern pattern = patterns.get(i);
+                if (pattern.isLiteral()) {
+                    add(pattern.isAnchored() ? rules.paths : rules.names, pattern.getText(), pattern);
+                }
+                else if (null != pattern.getExtension()) {
+                    add(rules.extensions, pattern.getExtension(), pattern);
+                }
+                else {
+                    rules.others.add(pattern);
+                }
+            }
+            return rules;
+        }
+
+        private static void add(Map<String, List<IgnorePattern>> map, String key, IgnorePattern pattern) {
+            List<IgnorePattern> list = map.get(key);
+            if (null == list) {
+                list = new ArrayList<IgnorePattern>(1);
+                map.put(key, list);
+            }
+            list.add(pattern);
+        }
+
+        /**
+         * Finds the last pattern matching a path.
+         * 
+         * @param path The path relative to the working tree.
+         * @param name The name of the path.
+         * @param isDirectory true if the path is a directory.
+         * @return 1 if the path is ignored, -1 if it is re-included by a negated pattern, 0 if no pattern matches.
+         */
+        int match(String path, String name, boolean isDirectory) {
+            if (others.isEmpty() && names.isEmpty() && paths.isEmpty() && extensions.isEmpty()) {
+                return 0;
+            }
+            if (base.length() > 0) {
+                if (!path.startsWith(base + "/")) {
+                    return 0;
+                }
+                path = path.substring(base.length() + 1);
+            }
+            IgnorePattern best = null;
+            best = findLast(names.get(name), best, path, name, isDirectory);
+            best = findLast(paths.get(path), best, path, name, isDirectory);
+            int dot = name.lastIndexOf('.');
+            if (dot >= 0) {
+                best = findLast(extensions.get(name.substring(dot + 1)), best, path, name, isDirectory);
+            }
+            best = findLast(others, best, path, name, isDirectory);
+            if (null == best) {
+                return 0;
+            }
+            return best.isNegated() ? -1 : 1;
+        }
+
+        /**
+         * Finds the last matching pattern of a list sorted from the last pattern, if it comes after <code>best</code>.
+         */
+        private static IgnorePattern findLast(List<IgnorePattern> patterns, IgnorePattern best, String path,
+                String name, boolean isDirectory) {
+            if (null == patterns) {
+                return best;
+            }
+            for (IgnorePattern pattern : patterns) {
+                if (null != best && pattern.getIndex() < best.getIndex()) {
+                    break;
+                }
+                if (pattern.matches(path, name, isDirectory)) {
+                    return pattern;
+                }
+            }
+            return best;
+        }
+    }
+}
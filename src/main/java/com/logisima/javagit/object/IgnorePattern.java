@@ -0,0 +1,301 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object;
+
+/**
+ * <code>IgnorePattern</code> is a pattern of a gitignore file, with the syntax of gitignore(5): "!" negates the
+ * pattern, a trailing "/" matches directories only, a pattern with a "/" is relative to the directory of its file
+ * (else it matches a name at any depth), "*", "?" and "[...]" don't match "/", and "**" matches any number of
+ * directories.
+ */
+final class IgnorePattern {
+
+    // The position of the pattern in its file.
+    private final int     index;
+
+    // The pattern, without "!", leading "/" and trailing "/".
+    private final String  text;
+
+    // The pattern as an array, for the wildcard matching.
+    private final char[]  glob;
+
+    // true if the pattern is negated with "!".
+    private final boolean negated;
+
+    // true if the pattern matches directories only.
+    private final boolean directoryOnly;
+
+    // true if the pattern is matched against the path relative to the directory of its file.
+    private final boolean anchored;
+
+    // true if the pattern has no wildcard.
+    private final boolean literal;
+
+    // The extension of a pattern "*.ext", null for the other patterns.
+    private final String  extension;
+
+    private IgnorePattern(int index, String text, boolean negated, boolean directoryOnly, boolean anchored) {
+        this.index = index;
+        this.text = text;
+        this.glob = text.toCharArray();
+        this.negated = negated;
+        this.directoryOnly = directoryOnly;
+        this.anchored = anchored;
+        this.literal = !hasWildcard(text, 0);
+        if (!anchored && text.startsWith("*.") && !hasWildcard(text, 1)) {
+            this.extension = text.substring(text.lastIndexOf('.') + 1);
+        }
+        else {
+            this.extension = null;
+        }
+    }
+
+    /**
+     * Parses a line of a gitignore file.
+     * 
+     * @param line The line.
+     * @param index The position of the pattern in its file.
+     * @return The pattern, or null if the line is blank or a comment.
+     */
+    static IgnorePattern parse(String line, int index) {
+        if (line.startsWith("#")) {
+            return null;
+        }
+        // trailing spaces are ignored, unless escaped
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ' && !(end > 1 && line.charAt(end - 2) == '\\')) {
+            end--;
+        }
+        String text = line.substring(0, end);
+        boolean negated = text.startsWith("!");
+        if (negated) {
+            text = text.substring(1);
+        }
+        boolean directoryOnly = text.endsWith("/");
+        if (directoryOnly) {
+            text = text.substring(0, text.length() - 1);
+        }
+        boolean anchored = text.indexOf('/') >= 0;
+        if (text.startsWith("/")) {
+            text = text.substring(1);
+        }
+        if (text.length() == 0) {
+            return null;
+        }
+        return new IgnorePattern(index, text, negated, directoryOnly, anchored);
+    }
+
+    private static boolean hasWildcard(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the position of the pattern in its file
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the pattern, without "!", leading "/" and trailing "/"
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @return true if the pattern is negated with "!"
+     */
+    boolean isNegated() {
+        return negated;
+    }
+
+    /**
+     * @return true if the pattern is matched against the path relative to the directory of its file
+     */
+    boolean isAnchored() {
+        return anchored;
+    }
+
+    /**
+     * @return true if the pattern has no wildcard
+     */
+    boolean isLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return the extension of a pattern "*.ext", null for the other patterns
+     */
+    String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Checks if the pattern matches a path.
+     * 
+     * @param path The path relative to the directory of the file of the pattern.
+     * @param name The name of the path.
+     * @param isDirectory true if the path is a directory.
+     * @return true if the pattern matches.
+     */
+    boolean matches(String path, String name, boolean isDirectory) {
+        if (directoryOnly && !isDirectory) {
+            return false;
+        }
+        String target = anchored ? path : name;
+        if (literal) {
+            return text.equals(target);
+        }
+        if (null != extension) {
+            return name.endsWith(text.substring(1));
+        }
+        return wildmatch(glob, 0, target, 0);
+    }
+
+    /**
+     * Matches a text against a glob from given positions, as git's wildmatch with the pathname flag.
+     */
+    private static boolean wildmatch(char[] p, int pi, String t, int ti) {
+        while (pi < p.length) {
+            char c = p[pi];
+            if (c == '*') {
+                if (pi + 1 < p.length && p[pi + 1] == '*' && (pi == 0 || p[pi - 1] == '/')
+                        && (pi + 2 == p.length || p[pi + 2] == '/')) {
+                    if (pi + 2 == p.length) {
+                        // a trailing "/**" matches everything inside
+                        return true;
+                    }
+                    // "**/" matches zero or more directories
+                    for (int i = ti;;) {
+                        if (wildmatch(p, pi + 3, t, i)) {
+                            return true;
+                        }
+                        int slash = t.indexOf('/', i);
+                        if (slash < 0) {
+                            return false;
+                        }
+                        i = slash + 1;
+                    }
+                }
+                int rest = pi + 1;
+                while (rest < p.length && p[rest] == '*') {
+                    rest++;
+                }
+                // "*" matches any characters but "/"
+                for (int i = ti;; i++) {
+                    if (wildmatch(p, rest, t, i)) {
+                        return true;
+                    }
+                    if (i == t.length() || t.charAt(i) == '/') {
+                        return false;
+                    }
+                }
+            }
+            if (ti == t.length()) {
+                return false;
+            }
+            char tc = t.charAt(ti);
+            if (c == '?') {
+                if (tc == '/') {
+                    return false;
+                }
+            }
+            else if (c == '[' && classEnd(p, pi) > 0) {
+                int end = classEnd(p, pi);
+                if (tc == '/' || !matchesClass(p, pi + 1, end, tc)) {
+                    return false;
+                }
+                pi = end;
+            }
+            else {
+                if (c == '\\' && pi + 1 < p.length) {
+                    c = p[++pi];
+                }
+                if (c != tc) {
+                    return false;
+                }
+            }
+            pi++;
+            ti++;
+        }
+        return ti == t.length();
+    }
+
+    /**
+     * @return the position of the "]" closing the class opened at <code>start</code>, or -1 if it isn't closed
+     */
+    private static int classEnd(char[] p, int start) {
+        int i = start + 1;
+        if (i < p.length && (p[i] == '!' || p[i] == '^')) {
+            i++;
+        }
+        if (i < p.length && p[i] == ']') {
+            // a "]" first is a member of the class
+            i++;
+        }
+        for (; i < p.length; i++) {
+            if (p[i] == '\\') {
+                i++;
+            }
+            else if (p[i] == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesClass(char[] p, int from, int end, char c) {
+        boolean negated = p[from] == '!' || p[from] == '^';
+        int i = negated ? from + 1 : from;
+        boolean matched = false;
+        boolean first = true;
+        while (i < end) {
+            char low = p[i];
+            if (low == '\\' && i + 1 < end) {
+                low = p[++i];
+            }
+            else if (low == ']' && !first) {
+                break;
+            }
+            first = false;
+            char high = low;
+            if (i + 2 < end && p[i + 1] == '-') {
+                high = p[i + 2];
+                if (high == '\\' && i + 3 < end) {
+                    high = p[i + 3];
+                    i++;
+                }
+                i += 2;
+            }
+            if (c >= low && c <= high) {
+                matched = true;
+            }
+            i++;
+        }
+        return matched != negated;
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.logisima.javagit.cli.status.GitStatusResponse;
+import com.logisima.javagit.object.GitFileSystemObject.Status;
+
+/**
+ * <code>StatusWatcher</code> watches the directories of a working tree with a <code>WatchService</code>, and collects
+ * the paths changed since the last status. A <code>WorkingTree</code> uses it to update its cached status for these
+ * paths only, instead of reading the status of the whole working tree.
+ * 
+ * The git directory is not watched: a change of the index or of <code>HEAD</code> is detected by the
+ * <code>WorkingTree</code> itself. The events are delivered asynchronously by the file system, so a change made just
+ * before a status may only be seen by the next one.
+ */
+final class StatusWatcher {
+
+    // The root of the working tree.
+    private final Path                 root;
+
+    // The service watching the directories.
+    private final WatchService         watchService;
+
+    // The watched directories, by key.
+    private final Map<WatchKey, Path>  directories;
+
+    // The paths changed since the last call to pollChanges().
+    private Set<String>                changes;
+
+    // true if events were lost since the last call to pollChanges().
+    private boolean                    overflow;
+
+    // The changes of the working tree of the cached status, sorted by path.
+    private TreeMap<String, Status>    worktreeStatus;
+
+    // The changes to commit of the cached status, which don't change until the index is read again.
+    private Map<File, Status>          indexStatus;
+
+    /**
+     * Constructor. Registers all the directories of the working tree.
+     * 
+     * @param workingTree The root of the working tree.
+     * @throws IOException Thrown if the directories can't be watched (for example when the limit of watches of the
+     *         system is reached).
+     */
+    StatusWatcher(File workingTree) throws IOException {
+        this.root = workingTree.getAbsoluteFile().toPath();
+        this.watchService = root.getFileSystem().newWatchService();
+        this.directories = new HashMap<WatchKey, Path>();
+        this.changes = new TreeSet<String>();
+        try {
+            register(root);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Registers a directory and its sub-directories, except the git directory.
+     */
+    private void register(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                    throws IOException {
+                if (isGitDirectory(directory)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // removed while the tree was walked
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private boolean isGitDirectory(Path path) {
+        return ".git".equals(path.getFileName().toString()) && !path.equals(root);
+    }
+
+    /**
+     * Reads the pending events, and returns the paths changed since the last call.
+     * 
+     * @return The changed paths, relative to the working tree with "/" separators, or null if events were lost and the
+     *         whole working tree has to be read again.
+     */
+    Set<String> pollChanges() {
+        WatchKey key;
+        while (null != (key = watchService.poll())) {
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (StandardWatchEventKinds.OVERFLOW == event.kind() || null == directory) {
+                    overflow = true;
+                    continue;
+                }
+                Path child = directory.resolve((Path) event.context());
+                if (isGitDirectory(child)) {
+                    continue;
+                }
+                changes.add(root.relativize(child).toString().replace(File.separatorChar, '/'));
+                if (StandardWatchEventKinds.ENTRY_CREATE == event.kind()
+                        && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        register(child);
+                    } catch (IOException e) {
+                        // the new directory can't be watched: the next status reads the whole working tree
+                        overflow = true;
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // the directory was deleted
+                directories.remove(key);
+            }
+        }
+        Set<String> polled = overflow ? null : changes;
+        changes = new TreeSet<String>();
+        overflow = false;
+        return polled;
+    }
+
+    /**
+     * Stops watching the working tree.
+     * 
+     * @throws IOException Thrown if the watch service can't be closed.
+     */
+    void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Indexes the changes of the working tree of a status read for the whole working tree, so the next updates only
+     * replace the entries of the changed paths.
+     * 
+     * @param status The status of the whole working tree.
+     */
+    void index(GitStatusResponse status) {
+        worktreeStatus = new TreeMap<String, Status>();
+        indexStatus = new HashMap<File, Status>();
+        putFiles(indexStatus, status.getNewFilesToCommit(), Status.NEW_TO_COMMIT);
+        putFiles(indexStatus, status.getModifiedFilesToCommit(), Status.MODIFIED_TO_COMMIT);
+        putFiles(indexStatus, status.getDeletedFilesToCommit(), Status.DELETED_TO_COMMIT);
+        putFiles(indexStatus, status.getRenamedFilesToCommit(), Status.RENAMED_TO_COMMIT);
+        putPaths(worktreeStatus, status.getModifiedFilesNotUpdated(), Status.MODIFIED);
+        putPaths(worktreeStatus, status.getDeletedFilesNotUpdated(), Status.DELETED);
+        putPaths(worktreeStatus, status.getUntrackedFiles(), Status.UNTRACKED);
+    }
+
+    /**
+     * Merges the status of some paths of the working tree into the status of the whole working tree, which must have
+     * been indexed. The index has not changed, so the changes to commit are kept; the changes of the working tree under
+     * the paths are replaced. Only the entries under the paths are looked up, the other ones are copied in order.
+     * 
+     * @param status The status of the whole working tree.
+     * @param update The status of the paths.
+     * @param paths The paths, as given to git status.
+     * @return The merged status.
+     */
+    GitStatusResponse merge(GitStatusResponse status, GitStatusResponse update, Collection<File> paths) {
+        Map<File, Status> fileToStatus = new HashMap<File, Status>(status.getFileToStatus());
+        for (File path : paths) {
+            String prefix = path.getPath();
+            // the paths under the prefix sort between "<prefix>/" and "<prefix>0", '0' following the separator
+            SortedMap<String, Status> under = worktreeStatus.subMap(prefix + File.separatorChar, prefix
+                    + (char) (File.separatorChar + 1));
+            for (String removed : under.keySet()) {
+                restore(fileToStatus, new File(removed));
+            }
+            under.clear();
+            if (null != worktreeStatus.remove(prefix)) {
+                restore(fileToStatus, path);
+            }
+        }
+        putPaths(worktreeStatus, update.getModifiedFilesNotUpdated(), Status.MODIFIED);
+        putPaths(worktreeStatus, update.getDeletedFilesNotUpdated(), Status.DELETED);
+        putPaths(worktreeStatus, update.getUntrackedFiles(), Status.UNTRACKED);
+        putFiles(fileToStatus, update.getModifiedFilesNotUpdated(), Status.MODIFIED);
+        putFiles(fileToStatus, update.getDeletedFilesNotUpdated(), Status.DELETED);
+        putFiles(fileToStatus, update.getUntrackedFiles(), Status.UNTRACKED);
+
+        GitStatusResponse merged = new GitStatusResponse(status.getRepository().getPath());
+        merged.setBranch(status.getBranch());
+        merged.setFileToStatus(fileToStatus);
+        merged.getNewFilesToCommit().addAll(status.getNewFilesToCommit());
+        merged.getModifiedFilesToCommit().addAll(status.getModifiedFilesToCommit());
+        merged.getDeletedFilesToCommit().addAll(status.getDeletedFilesToCommit());
+        merged.getRenamedFilesToCommit().addAll(status.getRenamedFilesToCommit());
+        // the files are sorted, as in git status
+        for (Map.Entry<String, Status> entry : worktreeStatus.entrySet()) {
+            File file = new File(entry.getKey());
+            switch (entry.getValue()) {
+                case MODIFIED:
+                    merged.getModifiedFilesNotUpdated().add(file);
+                    break;
+                case DELETED:
+                    merged.getDeletedFilesNotUpdated().add(file);
+                    break;
+                default:
+                    merged.getUntrackedFiles().add(file);
+                    break;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Gives back its change to commit to a file whose change of the working tree is removed, if it has one.
+     */
+    private void restore(Map<File, Status> fileToStatus, File file) {
+        Status status = indexStatus.get(file);
+        if (null == status) {
+            fileToStatus.remove(file);
+        }
+        else {
+            fileToStatus.put(file, status);
+        }
+    }
+
+    private static void putPaths(Map<String, Status> statuses, List<File> files, Status status) {
+        for (File file : files) {
+            statuses.put(file.getPath(), status);
+        }
+    }
+
+    private static void putFiles(Map<File, Status> statuses, List<File> files, Status status) {
+        for (File file : files) {
+            statuses.put(file, status);
+        }
+    }
+}
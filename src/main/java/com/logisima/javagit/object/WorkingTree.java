@@ -21,22 +21,34 @@ package com.logisima.javagit.object;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.logisima.javagit.JavaGitConfiguration;
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.add.GitAddResponse;
 import com.logisima.javagit.cli.branch.GitBranch;
 import com.logisima.javagit.cli.branch.GitBranchOptions;
 import com.logisima.javagit.cli.branch.GitBranchResponse;
 import com.logisima.javagit.cli.checkout.GitCheckout;
+import com.logisima.javagit.cli.client.ClientManager;
 import com.logisima.javagit.cli.commit.GitCommit;
 import com.logisima.javagit.cli.commit.GitCommitOptions;
 import com.logisima.javagit.cli.commit.GitCommitResponse;
 import com.logisima.javagit.cli.status.GitStatus;
 import com.logisima.javagit.cli.status.GitStatusResponse;
+import com.logisima.javagit.object.GitFileSystemObject.Status;
+import com.logisima.javagit.object.db.DirCache;
+import com.logisima.javagit.object.db.GitDir;
 import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.InstanceRegistry;
 
 /**
  * The <code>WorkingTree</code> represents the working copy of the files in the current branch.
@@ -45,19 +57,37 @@ import com.logisima.javagit.utilities.CheckUtilities;
 public final class WorkingTree {
 
     // This guy's a per-repository singleton, so we need a static place to store our instances.
-    private static final Map<String, WorkingTree> INSTANCES = new HashMap<String, WorkingTree>();
+    private static final InstanceRegistry<WorkingTree> INSTANCES = new InstanceRegistry<WorkingTree>();
+
+    // The working trees whose status is watched: they are kept as long as their watcher runs.
+    private static final Set<WorkingTree>              WATCHED   = Collections.newSetFromMap(
+            new ConcurrentHashMap<WorkingTree, Boolean>());
 
     // The directory that contains the .git in question.
-    private final File                            path;
+    private final File                                 path;
 
     /*
      * The canonical pathname from this file. Store this here so that we don't need to continually hit the filesystem to
      * resolve it.
      */
-    private final String                          canonicalPath;
+    private final String                               canonicalPath;
 
     // A git-specific representation of the same place this class is pointing.
-    private GitDirectory                          rootDir;
+    private GitDirectory                               rootDir;
+
+    // The last status of the working tree, null if it has to be read again.
+    private GitStatusResponse                          cachedStatus;
+
+    // The state of the index and of HEAD when the cached status was read.
+    private long                                       cachedIndexModified;
+    private long                                       cachedIndexLength;
+    private long                                       cachedHeadModified;
+
+    // The watcher of the working tree, null if the status is not watched.
+    private StatusWatcher                              statusWatcher;
+
+    // The index when the cached status was read, used when the status is watched.
+    private DirCache                                   cachedIndex;
 
     /**
      * The constructor. Private because this singleton-ish (per each repository) class is only available via the
@@ -82,7 +112,7 @@ public final class WorkingTree {
      * @param path <code>File</code> object representing the path to the repository.
      * @return The <code>WorkingTree</code> instance for this path
      */
-    public static synchronized WorkingTree getInstance(File path) {
+    public static WorkingTree getInstance(File path) {
         WorkingTree workingTree;
 
         // TODO (rs2705): make sure that path is valid
@@ -103,12 +133,9 @@ public final class WorkingTree {
             return null; // Temporary placeholder
         }
 
-        if (!(INSTANCES.containsKey(canonicalPath))) {
-            workingTree = new WorkingTree(path, canonicalPath);
-            INSTANCES.put(canonicalPath, workingTree);
-        }
-        else {
-            workingTree = INSTANCES.get(canonicalPath);
+        workingTree = INSTANCES.get(canonicalPath);
+        if (null == workingTree) {
+            workingTree = INSTANCES.putIfAbsent(canonicalPath, new WorkingTree(path, canonicalPath));
         }
 
         return workingTree;
@@ -208,12 +235,13 @@ public final class WorkingTree {
     }
 
     /**
-     * Gets the currently checked-out branch of the working directory.
+     * Gets the currently checked-out branch of the working directory, with the preferred client: the native client
+     * reads it from a cached snapshot of the refs.
      * 
      * @return The currently checked-out branch of the working directory.
      */
     public Ref getCurrentBranch() throws IOException, JavaGitException {
-        GitBranch gitBranch = new GitBranch();
+        GitBranch gitBranch = ClientManager.getInstance().getPreferredClient().getGitBranchInstance();
         GitBranchOptions options = new GitBranchOptions();
         GitBranchResponse response = gitBranch.branch(path, options);
         return response.getCurrentBranch();
@@ -277,8 +305,26 @@ public final class WorkingTree {
      * @throws JavaGitException File path specified does not belong to git repo/ working tree
      */
     public List<GitFileSystemObject> getTree() throws IOException, JavaGitException {
-        // TODO (rs2705): Make this work - will throw NullPointerException
-        return new GitDirectory(path, this).getChildren();
+        return getRoot().getChildren();
+    }
+
+    /**
+     * Walks depth-first through all the files and directories of the working tree, without building the whole tree.
+     * Hidden files and directories, as the .git directory, are skipped.
+     * 
+     * @param visitor The visitor called for each file and directory.
+     * @throws IOException Thrown if the walk or the visitor fails.
+     * @throws JavaGitException Thrown if the visitor fails.
+     */
+    public void walk(GitDirectory.Visitor visitor) throws IOException, JavaGitException {
+        getRoot().walk(visitor);
+    }
+
+    /**
+     * Gets the root directory of the working tree.
+     */
+    private GitDirectory getRoot() {
+        return new GitDirectory(path, path, this);
     }
 
     @Override
@@ -312,15 +358,165 @@ public final class WorkingTree {
     }
 
     /**
-     * Gets the status of all files in the working directory
+     * Gets the status of all files in the working directory, with the preferred client: the native client computes it
+     * without starting git.
      * 
      * @return <code>GitStatusResponse</code> object
      * @throws IOException Exception is thrown if any of the IO operations fail.
      * @throws JavaGitException Exception thrown if the repositoryPath is null
      */
     public GitStatusResponse getStatus() throws IOException, JavaGitException {
-        GitStatus gitStatus = new GitStatus();
+        GitStatus gitStatus = ClientManager.getInstance().getPreferredClient().getGitStatusInstance();
         return gitStatus.status(path, null);
     }
 
+    /**
+     * Gets the status of all files in the working directory, from a cache. The status is read again when the index or
+     * HEAD have changed since the last read (their modification time or size), or after a call to
+     * <code>invalidateStatus()</code>. A file modified in the working tree without touching the index isn't detected,
+     * unless the status is watched (see <code>startStatusWatcher()</code>): call <code>invalidateStatus()</code> when
+     * it matters.
+     * 
+     * @return <code>GitStatusResponse</code> object
+     * @throws IOException Exception is thrown if any of the IO operations fail.
+     * @throws JavaGitException Exception thrown if the status can't be read.
+     */
+    public synchronized GitStatusResponse getCachedStatus() throws IOException, JavaGitException {
+        File gitDir = GitDir.find(path);
+        File index = new File(gitDir, "index");
+        File head = new File(gitDir, "HEAD");
+        // read before running git, so a change made while git runs is detected next time
+        long indexModified = index.lastModified();
+        long indexLength = index.length();
+        long headModified = head.lastModified();
+        if (null == cachedStatus || indexModified != cachedIndexModified || indexLength != cachedIndexLength
+                || headModified != cachedHeadModified) {
+            if (null != statusWatcher) {
+                // the changes made until now are in the new status
+                statusWatcher.pollChanges();
+                cachedIndex = DirCache.read(path);
+            }
+            cachedStatus = getWatchedStatus();
+            cachedIndexModified = indexModified;
+            cachedIndexLength = indexLength;
+            cachedHeadModified = headModified;
+        }
+        else if (null != statusWatcher) {
+            Set<String> changes = statusWatcher.pollChanges();
+            if (null == changes) {
+                // events were lost
+                cachedStatus = getWatchedStatus();
+            }
+            else if (!changes.isEmpty()) {
+                cachedStatus = updateStatus(changes);
+            }
+        }
+        return cachedStatus;
+    }
+
+    /**
+     * Reads the status of the whole working tree, and indexes it in the watcher, if any.
+     */
+    private GitStatusResponse getWatchedStatus() throws IOException, JavaGitException {
+        GitStatusResponse status = getStatus();
+        if (null != statusWatcher) {
+            statusWatcher.index(status);
+        }
+        return status;
+    }
+
+    /**
+     * Updates the cached status for the paths changed in the working tree. As git status reports a directory without
+     * tracked file as a whole, a path in such a directory is replaced by the directory. When the paths are longer than
+     * <code>JavaGitConfiguration.getMaxPathspecLength()</code>, the whole working tree is read instead: git status
+     * can't read the paths on its standard input.
+     */
+    private GitStatusResponse updateStatus(Set<String> changes) throws IOException, JavaGitException {
+        Set<File> paths = new LinkedHashSet<File>();
+        int length = 0;
+        for (String change : changes) {
+            String reported = change;
+            for (int slash = change.indexOf('/'); slash >= 0; slash = change.indexOf('/', slash + 1)) {
+                String directory = change.substring(0, slash);
+                if (null == cachedIndex || !cachedIndex.hasEntriesIn(directory)) {
+                    reported = directory;
+                    break;
+                }
+            }
+            File file = new File(path, reported);
+            if (paths.add(file)) {
+                length += file.getPath().length() + 1;
+                if (length > JavaGitConfiguration.getMaxPathspecLength()) {
+                    return getWatchedStatus();
+                }
+            }
+        }
+        GitStatus gitStatus = ClientManager.getInstance().getPreferredClient().getGitStatusInstance();
+        GitStatusResponse update = gitStatus.status(path, null, new ArrayList<File>(paths));
+        return statusWatcher.merge(cachedStatus, update, paths);
+    }
+
+    /**
+     * Forgets the cached status, so the next call to <code>getCachedStatus()</code> runs git status.
+     */
+    public synchronized void invalidateStatus() {
+        cachedStatus = null;
+    }
+
+    /**
+     * Starts watching the working tree, so the cached status is updated for the changed paths only, instead of being
+     * read again for the whole working tree. Changes made in the working tree without touching the index are seen too.
+     * Does nothing if the status is already watched.
+     * 
+     * @throws IOException Thrown if the working tree can't be watched, for example when the limit of watches of the
+     *         system is reached.
+     */
+    public synchronized void startStatusWatcher() throws IOException {
+        if (null == statusWatcher) {
+            statusWatcher = new StatusWatcher(path);
+            cachedStatus = null;
+            WATCHED.add(this);
+        }
+    }
+
+    /**
+     * Stops watching the working tree.
+     * 
+     * @throws IOException Thrown if the watch service can't be closed.
+     */
+    public synchronized void stopStatusWatcher() throws IOException {
+        if (null != statusWatcher) {
+            StatusWatcher watcher = statusWatcher;
+            statusWatcher = null;
+            cachedIndex = null;
+            WATCHED.remove(this);
+            watcher.close();
+        }
+    }
+
+    /**
+     * @return true if the working tree is watched, see <code>startStatusWatcher()</code>
+     */
+    public synchronized boolean isStatusWatched() {
+        return null != statusWatcher;
+    }
+
+    /**
+     * Gets the status of several files or directories of the working tree, with a single status of the working tree.
+     * 
+     * @param objects The files and directories.
+     * @return The status of each object, in the order of the collection.
+     * @throws IOException Exception is thrown if any of the IO operations fail.
+     * @throws JavaGitException Exception thrown if the status can't be read.
+     */
+    public Map<GitFileSystemObject, Status> getStatuses(Collection<? extends GitFileSystemObject> objects)
+            throws IOException, JavaGitException {
+        GitStatusResponse response = getCachedStatus();
+        Map<GitFileSystemObject, Status> statuses = new LinkedHashMap<GitFileSystemObject, Status>();
+        for (GitFileSystemObject object : objects) {
+            statuses.put(object, response.getFileStatus(object.getFile()));
+        }
+        return statuses;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <code>CommitObject</code> is a parsed commit: its tree, parents, author, committer and message.
+ */
+public class CommitObject {
+
+    // The SHA1 of the commit.
+    private final String       sha1;
+
+    // The SHA1 of the tree of the commit.
+    private String             tree;
+
+    // The SHA1s of the parents, in order.
+    private final List<String> parents;
+
+    // The author of the commit.
+    private Identity           author;
+
+    // The committer of the commit.
+    private Identity           committer;
+
+    // The message of the commit.
+    private String             message;
+
+    private CommitObject(String sha1) {
+        this.sha1 = sha1;
+        this.parents = new ArrayList<String>(2);
+    }
+
+    /**
+     * Parses a commit object.
+     *
+     * @param object The object to parse.
+     * @return The parsed commit.
+     * @throws IllegalArgumentException Thrown if the object is not a commit, or is malformed.
+     */
+    public static CommitObject parse(GitObject object) {
+        if (ObjectType.COMMIT != object.getType()) {
+            throw new IllegalArgumentException("Not a commit { object=[" + object.getSha1() + "], type=["
+                    + object.getType() + "] }");
+        }
+        CommitObject commit = new CommitObject(object.getSha1());
+        byte[] data = object.getData();
+        int pos = 0;
+        while (pos < data.length) {
+            int end = indexOf(data, pos, (byte) '\n');
+            if (end == pos) {
+                // an empty line ends the headers
+                pos++;
+                break;
+            }
+            String line = decode(data, pos, end - pos);
+            pos = end + 1;
+            if (line.startsWith("tree ")) {
+                commit.tree = line.substring(5);
+            }
+            else if (line.startsWith("parent ")) {
+                commit.parents.add(line.substring(7));
+            }
+            else if (line.startsWith("author ")) {
+                commit.author = Identity.parse(line.substring(7));
+            }
+            else if (line.startsWith("committer ")) {
+                commit.committer = Identity.parse(line.substring(10));
+            }
+            // other headers (encoding, gpgsig and its continuation lines...) are ignored
+        }
+        commit.message = (pos < data.length) ? decode(data, pos, data.length - pos) : "";
+        if (null == commit.tree || null == commit.committer) {
+            throw new IllegalArgumentException("Malformed commit { object=[" + object.getSha1() + "] }");
+        }
+        if (null == commit.author) {
+            commit.author = commit.committer;
+        }
+        return commit;
+    }
+
+    /**
+     * @return the SHA1 of the commit
+     */
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * @return the SHA1 of the tree of the commit
+     */
+    public String getTree() {
+        return tree;
+    }
+
+    /**
+     * @return the SHA1s of the parents of the commit, in order
+     */
+    public List<String> getParents() {
+        return Collections.unmodifiableList(parents);
+    }
+
+    /**
+     * @return the author of the commit
+     */
+    public Identity getAuthor() {
+        return author;
+    }
+
+    /**
+     * @return the committer of the commit
+     */
+    public Identity getCommitter() {
+        return committer;
+    }
+
+    /**
+     * @return the full message of the commit
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    private static int indexOf(byte[] data, int from, byte b) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return data.length;
+    }
+
+    private static String decode(byte[] data, int offset, int length) {
+        try {
+            return new String(data, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The author or the committer of a commit.
+     */
+    public static class Identity {
+
+        // The name.
+        private final String name;
+
+        // The email address.
+        private final String email;
+
+        // The time, in seconds since the epoch.
+        private final long   time;
+
+        // The timezone offset, in minutes.
+        private final int    timeZoneOffset;
+
+        /**
+         * Constructor.
+         *
+         * @param name The name.
+         * @param email The email address.
+         * @param time The time, in seconds since the epoch.
+         * @param timeZoneOffset The timezone offset, in minutes.
+         */
+        public Identity(String name, String email, long time, int timeZoneOffset) {
+            this.name = name;
+            this.email = email;
+            this.time = time;
+            this.timeZoneOffset = timeZoneOffset;
+        }
+
+        /**
+         * Parses an identity header value: "Name &lt;email&gt; time +hhmm".
+         */
+        static Identity parse(String value) {
+            int lt = value.indexOf('<');
+            int gt = value.indexOf('>', lt + 1);
+            if (lt < 0 || gt < 0) {
+                throw new IllegalArgumentException("Malformed identity { value=[" + value + "] }");
+            }
+            String name = value.substring(0, lt).trim();
+            String email = value.substring(lt + 1, gt);
+            long time = 0;
+            int tz = 0;
+            String[] when = value.substring(gt + 1).trim().split(" ");
+            try {
+                if (when.length > 0 && when[0].length() > 0) {
+                    time = Long.parseLong(when[0]);
+                }
+                if (when.length > 1 && when[1].length() == 5) {
+                    int hhmm = Integer.parseInt(when[1].substring(1));
+                    tz = (hhmm / 100) * 60 + hhmm % 100;
+                    if (when[1].charAt(0) == '-') {
+                        tz = -tz;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed identity { value=[" + value + "] }");
+            }
+            return new Identity(name, email, time, tz);
+        }
+
+        /**
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the email address
+         */
+        public String getEmail() {
+            return email;
+        }
+
+        /**
+         * @return the time, in seconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return the timezone offset, in minutes
+         */
+        public int getTimeZoneOffset() {
+            return timeZoneOffset;
+        }
+
+        @Override
+        public String toString() {
+            return name + " <" + email + ">";
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>DeltaBaseCache</code> keeps the inflated bases of deltified pack entries, so objects sharing a delta chain (like
+ * the successive versions of a file) don't inflate and apply the same bases again. The cache is a LRU bounded by the
+ * total size of the cached contents, in bytes, not by a number of entries.
+ */
+public class DeltaBaseCache {
+
+    // The maximum total size of the cached contents.
+    private final long                          limit;
+
+    // The cached bases, least recently used first.
+    private final LinkedHashMap<Key, GitObject> entries;
+
+    // The total size of the cached contents.
+    private long                                size;
+
+    // Number of lookups which found their base.
+    private final AtomicLong                    hits;
+
+    // Number of lookups which didn't find their base.
+    private final AtomicLong                    misses;
+
+    /**
+     * Constructor.
+     *
+     * @param limit The maximum total size of the cached contents, in bytes. 0 disables the cache.
+     */
+    public DeltaBaseCache(long limit) {
+        this.limit = limit;
+        this.entries = new LinkedHashMap<Key, GitObject>(64, 0.75f, true);
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Gets a cached base.
+     *
+     * @param pack The pack containing the base.
+     * @param offset The offset of the base in the pack.
+     * @return The base, or null if it's not in the cache.
+     */
+    public GitObject get(PackFile pack, long offset) {
+        GitObject base = peek(pack, offset);
+        count(null != base);
+        return base;
+    }
+
+    /**
+     * Gets a cached base without counting the lookup. <code>PackFile</code> probes each base of a delta chain, and
+     * counts a single lookup for the object read with <code>count()</code>.
+     */
+    synchronized GitObject peek(PackFile pack, long offset) {
+        return entries.get(new Key(pack, offset));
+    }
+
+    /**
+     * Counts a lookup.
+     *
+     * @param hit true if the lookup found a base.
+     */
+    void count(boolean hit) {
+        if (hit) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stores a base. The least recently used bases are evicted to stay under the size limit; a base larger than the
+     * limit is not stored.
+     *
+     * @param pack The pack containing the base.
+     * @param offset The offset of the base in the pack.
+     * @param base The inflated base.
+     */
+    public synchronized void put(PackFile pack, long offset, GitObject base) {
+        long baseSize = base.getData().length;
+        if (baseSize > limit) {
+            return;
+        }
+        GitObject previous = entries.put(new Key(pack, offset), base);
+        if (null != previous) {
+            size -= previous.getData().length;
+        }
+        size += baseSize;
+        Iterator<GitObject> it = entries.values().iterator();
+        while (size > limit && it.hasNext()) {
+            size -= it.next().getData().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes the bases of a pack, when it's closed.
+     *
+     * @param pack The pack.
+     */
+    public synchronized void remove(PackFile pack) {
+        Iterator<Map.Entry<Key, GitObject>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, GitObject> entry = it.next();
+            if (entry.getKey().pack == pack) {
+                size -= entry.getValue().getData().length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Empties the cache. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * @return the maximum total size of the cached contents, in bytes
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the total size of the cached contents, in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of lookups which found their base
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups which didn't find their base
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DeltaBaseCache { size=[" + size + "], limit=[" + limit + "], hits=[" + hits.get() + "], misses=["
+                + misses.get() + "] }";
+    }
+
+    /**
+     * The key of a cached base: its pack and its offset in the pack.
+     */
+    private static final class Key {
+
+        final PackFile pack;
+
+        final long     offset;
+
+        Key(PackFile pack, long offset) {
+            this.pack = pack;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return pack == other.pack && offset == other.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(pack) * 31 + (int) (offset ^ (offset >>> 32));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+/**
+ * <code>DeltaDecoder</code> applies the git binary deltas stored in pack files (OFS_DELTA and REF_DELTA entries).
+ */
+public final class DeltaDecoder {
+
+    private DeltaDecoder() {
+    }
+
+    /**
+     * Reads the size of the object produced by a delta, without applying it.
+     *
+     * @param delta The delta.
+     * @return The size of the result object.
+     */
+    public static long getResultSize(byte[] delta) {
+        int pos = skipVarint(delta, 0);
+        return readVarint(delta, pos);
+    }
+
+    /**
+     * Applies a delta to its base object.
+     *
+     * @param base The content of the base object.
+     * @param delta The delta.
+     * @return The content of the result object.
+     * @throws IllegalArgumentException Thrown if the delta is corrupt or doesn't match the base.
+     */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int pos = 0;
+        long baseSize = readVarint(delta, pos);
+        pos = skipVarint(delta, pos);
+        if (baseSize != base.length) {
+            throw new IllegalArgumentException("Delta base size mismatch { expected=[" + baseSize + "], actual=["
+                    + base.length + "] }");
+        }
+        long resultSize = readVarint(delta, pos);
+        pos = skipVarint(delta, pos);
+
+        byte[] result = new byte[(int) resultSize];
+        int resultPos = 0;
+        while (pos < delta.length) {
+            int cmd = delta[pos++] & 0xff;
+            if ((cmd & 0x80) != 0) {
+                // copy from base: the low bits tell which offset and size bytes follow
+                int copyOffset = 0;
+                if ((cmd & 0x01) != 0) {
+                    copyOffset = delta[pos++] & 0xff;
+                }
+                if ((cmd & 0x02) != 0) {
+                    copyOffset |= (delta[pos++] & 0xff) << 8;
+                }
+                if ((cmd & 0x04) != 0) {
+                    copyOffset |= (delta[pos++] & 0xff) << 16;
+                }
+                if ((cmd & 0x08) != 0) {
+                    copyOffset |= (delta[pos++] & 0xff) << 24;
+                }
+                int copySize = 0;
+                if ((cmd & 0x10) != 0) {
+                    copySize = delta[pos++] & 0xff;
+                }
+                if ((cmd & 0x20) != 0) {
+                    copySize |= (delta[pos++] & 0xff) << 8;
+                }
+                if ((cmd & 0x40) != 0) {
+                    copySize |= (delta[pos++] & 0xff) << 16;
+                }
+                if (copySize == 0) {
+                    copySize = 0x10000;
+                }
+                System.arraycopy(base, copyOffset, result, resultPos, copySize);
+                resultPos += copySize;
+            }
+            else if (cmd != 0) {
+                // insert the next cmd bytes of the delta
+                System.arraycopy(delta, pos, result, resultPos, cmd);
+                pos += cmd;
+                resultPos += cmd;
+            }
+            else {
+                throw new IllegalArgumentException("Invalid delta command 0");
+            }
+        }
+        if (resultPos != result.length) {
+            throw new IllegalArgumentException("Delta result size mismatch { expected=[" + result.length
+                    + "], actual=[" + resultPos + "] }");
+        }
+        return result;
+    }
+
+    private static long readVarint(byte[] buffer, int pos) {
+        long value = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = buffer[pos++] & 0xff;
+            value |= ((long) (c & 0x7f)) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return value;
+    }
+
+    private static int skipVarint(byte[] buffer, int pos) {
+        while ((buffer[pos++] & 0x80) != 0) {
+            // skip
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+/**
+ * <code>DeltaEncoder</code> creates git binary deltas against a base, the reverse of <code>DeltaDecoder</code>. The
+ * base is indexed once, by blocks of 16 bytes, so an encoder can be kept to compute the deltas of several objects
+ * against the same base. The blocks of the target are found in the index with a rolling hash, and each match is
+ * extended in both directions.
+ */
+public final class DeltaEncoder {
+
+    // Size of the indexed blocks of the base, and of the smallest copy.
+    private static final int BLOCK         = 16;
+
+    // Largest size of a copy command: the copies of larger matches are split.
+    private static final int MAX_COPY      = 0x10000;
+
+    // Largest size of an insert command.
+    private static final int MAX_INSERT    = 0x7f;
+
+    // Number of candidates compared for a block, to bound the time spent on repetitive bases.
+    private static final int MAX_CHAIN     = 64;
+
+    // Multiplier of the rolling hash.
+    private static final int HASH_MULT     = 31;
+
+    // HASH_MULT^BLOCK, to remove the outgoing byte from the rolling hash.
+    private static final int HASH_MULT_OUT = power(HASH_MULT, BLOCK);
+
+    // The base.
+    private final byte[]     base;
+
+    // Hash table of the blocks of the base: first block position (+ 1) of each bucket, 0 if empty.
+    private final int[]      heads;
+
+    // Next block position (+ 1) of the same bucket.
+    private final int[]      next;
+
+    // Shift of the mixed hash giving the bucket number.
+    private final int        shift;
+
+    /**
+     * Constructor. Indexes the base.
+     *
+     * @param base The base of the deltas.
+     */
+    public DeltaEncoder(byte[] base) {
+        this.base = base;
+        int blocks = base.length / BLOCK;
+        int bits = 0;
+        while ((1 << bits) < blocks) {
+            bits++;
+        }
+        this.heads = new int[1 << bits];
+        this.next = new int[blocks];
+        this.shift = 32 - bits;
+        // the last blocks are first in their bucket, so that the candidates are compared from the end of the base
+        for (int i = 0; i < blocks; i++) {
+            int bucket = bucket(hash(base, i * BLOCK));
+            next[i] = heads[bucket];
+            heads[bucket] = i + 1;
+        }
+    }
+
+    /**
+     * @return the base of the deltas
+     */
+    public byte[] getBase() {
+        return base;
+    }
+
+    /**
+     * Computes a delta turning the base into a target.
+     *
+     * @param target The target.
+     * @param maxSize The largest delta worth having: the encoding stops past this size.
+     * @return The delta, or null if it would be larger than <code>maxSize</code>.
+     */
+    public byte[] encode(byte[] target, int maxSize) {
+        Output out = new Output(Math.min(maxSize, target.length / 2 + 32), maxSize);
+        out.writeVarint(base.length);
+        out.writeVarint(target.length);
+
+        int insertStart = 0;
+        int pos = 0;
+        int h = (next.length > 0 && target.length >= BLOCK) ? hash(target, 0) : 0;
+        while (next.length > 0 && pos + BLOCK <= target.length) {
+            int bestOffset = -1;
+            int bestLength = 0;
+            int chain = 0;
+            for (int block = heads[bucket(h)]; block != 0 && chain < MAX_CHAIN; block = next[block - 1], chain++) {
+                int offset = (block - 1) * BLOCK;
+                int length = matchLength(offset, target, pos);
+                if (length > bestLength) {
+                    bestOffset = offset;
+                    bestLength = length;
+                }
+            }
+            if (bestLength < BLOCK) {
+                if (pos + BLOCK < target.length) {
+                    h = h * HASH_MULT - (target[pos] & 0xff) * HASH_MULT_OUT + (target[pos + BLOCK] & 0xff);
+                }
+                pos++;
+                continue;
+            }
+
+            // the bytes before the match may match too
+            while (bestOffset > 0 && pos > insertStart && base[bestOffset - 1] == target[pos - 1]) {
+                bestOffset--;
+                pos--;
+                bestLength++;
+            }
+            if (!out.writeInserts(target, insertStart, pos) || !out.writeCopies(bestOffset, bestLength)) {
+                return null;
+            }
+            pos += bestLength;
+            insertStart = pos;
+            if (pos + BLOCK <= target.length) {
+                h = hash(target, pos);
+            }
+        }
+        if (!out.writeInserts(target, insertStart, target.length)) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    private int matchLength(int offset, byte[] target, int pos) {
+        int max = Math.min(base.length - offset, target.length - pos);
+        int length = 0;
+        while (length < max && base[offset + length] == target[pos + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Mixes the bits of a hash to pick its bucket: the low bits of the rolling hash alone are poorly distributed.
+     */
+    private int bucket(int h) {
+        return (int) (((h * 0x9E3779B1) & 0xffffffffL) >>> shift);
+    }
+
+    private static int hash(byte[] buffer, int pos) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            h = h * HASH_MULT + (buffer[pos + i] & 0xff);
+        }
+        return h;
+    }
+
+    private static int power(int value, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= value;
+        }
+        return result;
+    }
+
+    /**
+     * The delta being written, which gives up past its maximum size.
+     */
+    private static final class Output {
+
+        private final int maxSize;
+
+        private byte[]    buffer;
+
+        private int       length;
+
+        Output(int initialSize, int maxSize) {
+            this.buffer = new byte[Math.max(initialSize, 16)];
+            this.maxSize = maxSize;
+        }
+
+        void writeVarint(long value) {
+            while (value >= 0x80) {
+                write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        boolean writeInserts(byte[] target, int start, int end) {
+            while (start < end) {
+                int n = Math.min(MAX_INSERT, end - start);
+                if (length + 1 + n > maxSize) {
+                    return false;
+                }
+                write(n);
+                ensure(n);
+                System.arraycopy(target, start, buffer, length, n);
+                length += n;
+                start += n;
+            }
+            return true;
+        }
+
+        boolean writeCopies(int offset, int size) {
+            while (size > 0) {
+                int n = Math.min(MAX_COPY, size);
+                // command byte, up to 4 offset bytes and 3 size bytes: the zero bytes are omitted
+                if (length + 8 > maxSize) {
+                    return false;
+                }
+                int cmdPos = length;
+                int cmd = 0x80;
+                write(0);
+                for (int i = 0; i < 4; i++) {
+                    int b = (offset >>> (8 * i)) & 0xff;
+                    if (b != 0) {
+                        cmd |= 1 << i;
+                        write(b);
+                    }
+                }
+                for (int i = 0; i < 3; i++) {
+                    int b = (n >>> (8 * i)) & 0xff;
+                    if (b != 0) {
+                        cmd |= 0x10 << i;
+                        write(b);
+                    }
+                }
+                buffer[cmdPos] = (byte) cmd;
+                offset += n;
+                size -= n;
+            }
+            return true;
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        }
+
+        private void write(int b) {
+            ensure(1);
+            buffer[length++] = (byte) b;
+        }
+
+        private void ensure(int n) {
+            if (length + n > buffer.length) {
+                byte[] newBuffer = new byte[Math.max(buffer.length * 2, length + n)];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                buffer = newBuffer;
+            }
+        }
+    }
+}
@@ -0,0 +1,566 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import com.logisima.javagit.JavaGitException;
+
+/**
+ * <code>DirCache</code> reads the index of a repository (the <code>.git/index</code> file, versions 2, 3 and 4). The
+ * file is memory-mapped and parsed once to locate the entries. The fields of an entry are then read from the mapping on
+ * demand, through an {@link Entry} cursor which can be moved from entry to entry: reading the index allocates no object
+ * per entry.
+ * 
+ * In version 4, each path is compressed against the path of the previous entry. These paths are rebuilt in a single
+ * byte array when the index is parsed.
+ */
+public class DirCache {
+
+    // Signature of the index: "DIRC".
+    private static final int     SIGNATURE       = 0x44495243;
+
+    // Size of the header of the index.
+    private static final int     HEADER_SIZE     = 12;
+
+    // Size of the fixed fields of an entry, up to the flags included.
+    private static final int     ENTRY_FIXED     = 62;
+
+    // Flags of an entry.
+    private static final int     FLAG_VALID      = 0x8000;
+    private static final int     FLAG_EXTENDED   = 0x4000;
+    private static final int     STAGE_MASK      = 0x3000;
+    private static final int     STAGE_SHIFT     = 12;
+    private static final int     NAME_MASK       = 0x0fff;
+
+    // Extended flags of an entry (version 3 and later).
+    private static final int     FLAG_SKIP_WORKTREE = 0x4000;
+    private static final int     FLAG_INTENT_TO_ADD = 0x2000;
+
+    private static final Charset UTF8            = Charset.forName("UTF-8");
+
+    // The index file.
+    private final File           indexFile;
+
+    // The modification time of the index file when it was read.
+    private final long           lastModified;
+
+    // The content of the index file.
+    private final ByteBuffer     index;
+
+    // Version of the index (2, 3 or 4).
+    private final int            version;
+
+    // Number of entries.
+    private final int            entryCount;
+
+    // Offset of each entry in the index.
+    private final int[]          entryOffsets;
+
+    // The buffer holding the paths: the index itself, or the rebuilt paths in version 4.
+    private final ByteBuffer     paths;
+
+    // Offset and length of the path of each entry in <code>paths</code>.
+    private final int[]          pathOffsets;
+    private final int[]          pathLengths;
+
+    /**
+     * Constructor. Maps the index file in memory and locates its entries.
+     * 
+     * @param indexFile The index file.
+     * @throws IOException Thrown if the index can't be read, or is not a valid index.
+     */
+    public DirCache(File indexFile) throws IOException {
+        this.indexFile = indexFile;
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            lastModified = indexFile.lastModified();
+            FileChannel channel = raf.getChannel();
+            if (isWindows()) {
+                // git replaces the index by a rename, which Windows refuses while the file is mapped
+                index = ByteBuffer.allocate((int) raf.length());
+                while (index.hasRemaining() && channel.read(index) >= 0) {
+                    // read the whole file
+                }
+                index.flip();
+            }
+            else {
+                // the mapping stays valid once the channel is closed
+                index = channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+        } finally {
+            raf.close();
+        }
+        if (index.limit() < HEADER_SIZE || index.getInt(0) != SIGNATURE) {
+            throw new IOException("Invalid index { index=[" + indexFile.getPath() + "] }");
+        }
+        version = index.getInt(4);
+        if (version < 2 || version > 4) {
+            throw new IOException("Unsupported index version { index=[" + indexFile.getPath() + "], version=["
+                    + version + "] }");
+        }
+        entryCount = index.getInt(8);
+        entryOffsets = new int[entryCount];
+        pathOffsets = new int[entryCount];
+        pathLengths = new int[entryCount];
+        paths = (version == 4) ? readCompressedPaths() : readPaths();
+    }
+
+    /**
+     * Locates the entries of an index of version 2 or 3: the path follows the fixed fields, and the entry is padded
+     * with 1 to 8 NUL bytes to a multiple of 8 bytes.
+     */
+    private ByteBuffer readPaths() throws IOException {
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < entryCount; i++) {
+            entryOffsets[i] = offset;
+            int pathOffset = offset + fixedSize(offset);
+            int pathLength = pathLength(pathOffset);
+            pathOffsets[i] = pathOffset;
+            pathLengths[i] = pathLength;
+            int entryLength = pathOffset - offset + pathLength;
+            offset += (entryLength + 8) & ~7;
+        }
+        return index;
+    }
+
+    /**
+     * Locates the entries of an index of version 4: the path is a number of bytes to remove from the end of the
+     * previous path, and the NUL terminated suffix to append, without padding.
+     */
+    private ByteBuffer readCompressedPaths() throws IOException {
+        byte[] pool = new byte[Math.max(64, entryCount * 32)];
+        int poolLength = 0;
+        int previousOffset = 0;
+        int previousLength = 0;
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < entryCount; i++) {
+            entryOffsets[i] = offset;
+            int pos = offset + fixedSize(offset);
+            // variable length integer, with the offset encoding of git
+            int c = index.get(pos++) & 0xff;
+            int strip = c & 0x7f;
+            while ((c & 0x80) != 0) {
+                c = index.get(pos++) & 0xff;
+                strip = ((strip + 1) << 7) | (c & 0x7f);
+            }
+            if (strip > previousLength) {
+                throw new IOException("Corrupt index { index=[" + indexFile.getPath() + "], entry=[" + i + "] }");
+            }
+            int suffixLength = pathLength(pos);
+            int prefixLength = previousLength - strip;
+            int pathLength = prefixLength + suffixLength;
+            if (poolLength + pathLength > pool.length) {
+                byte[] larger = new byte[Math.max(pool.length * 2, poolLength + pathLength)];
+                System.arraycopy(pool, 0, larger, 0, poolLength);
+                pool = larger;
+            }
+            System.arraycopy(pool, previousOffset, pool, poolLength, prefixLength);
+            for (int j = 0; j < suffixLength; j++) {
+                pool[poolLength + prefixLength + j] = index.get(pos + j);
+            }
+            pathOffsets[i] = poolLength;
+            pathLengths[i] = pathLength;
+            previousOffset = poolLength;
+            previousLength = pathLength;
+            poolLength += pathLength;
+            offset = pos + suffixLength + 1;
+        }
+        return ByteBuffer.wrap(pool, 0, poolLength);
+    }
+
+    /**
+     * @return The size of the fixed fields of the entry, with the extended flags if present.
+     */
+    private int fixedSize(int offset) throws IOException {
+        if (offset + ENTRY_FIXED > index.limit()) {
+            throw new IOException("Truncated index { index=[" + indexFile.getPath() + "] }");
+        }
+        int flags = index.getShort(offset + ENTRY_FIXED - 2) & 0xffff;
+        return ((flags & FLAG_EXTENDED) != 0 && version >= 3) ? ENTRY_FIXED + 2 : ENTRY_FIXED;
+    }
+
+    /**
+     * @return The length of the NUL terminated path starting at <code>offset</code>.
+     */
+    private int pathLength(int offset) throws IOException {
+        int limit = index.limit();
+        for (int i = offset; i < limit; i++) {
+            if (index.get(i) == 0) {
+                return i - offset;
+            }
+        }
+        throw new IOException("Truncated index { index=[" + indexFile.getPath() + "] }");
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name").startsWith("Windows");
+    }
+
+    /**
+     * Reads the index of a repository.
+     * 
+     * @param repositoryPath The path to the working tree of the repository.
+     * @return The index, or null if the repository has no index yet.
+     * @throws IOException Thrown if the index can't be read, or is not a valid index.
+     * @throws JavaGitException Thrown if <code>repositoryPath</code> is not a git repository.
+     */
+    public static DirCache read(File repositoryPath) throws IOException, JavaGitException {
+        File indexFile = new File(GitDir.find(repositoryPath), "index");
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        return new DirCache(indexFile);
+    }
+
+    /**
+     * @return the index file
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * @return the modification time of the index file when it was read. An entry whose file was modified at the same
+     *         time or later is "racily clean": its stat data can't tell if the file has changed.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the version of the index (2, 3 or 4)
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Creates a cursor on the entries of the index, positioned on the first entry.
+     * 
+     * @return The cursor.
+     */
+    public Entry newEntry() {
+        return new Entry();
+    }
+
+    /**
+     * Finds the first entry of a path (the lowest stage). The entries are sorted by path, so this is a binary search.
+     * 
+     * @param path The path, relative to the working tree, with "/" separators.
+     * @return The position of the entry, or -1 if the index has no entry for this path.
+     */
+    public int findEntry(String path) {
+        byte[] name = path.getBytes(UTF8);
+        int position = findFirst(name);
+        return (position < entryCount && comparePath(position, name) == 0) ? position : -1;
+    }
+
+    /**
+     * Finds the first entry whose path is greater than or equal to a path, in the order of the index. With a
+     * directory path ending by "/", this is the first entry of the directory, if it has any.
+     * 
+     * @param path The path, relative to the working tree, with "/" separators.
+     * @return The position of the entry, or <code>getEntryCount()</code> if all the paths are lower.
+     */
+    public int findFirst(String path) {
+        return findFirst(path.getBytes(UTF8));
+    }
+
+    /**
+     * Checks if the index has entries in a directory.
+     * 
+     * @param directory The path of the directory, relative to the working tree, with "/" separators.
+     * @return true if a path of the index starts with <code>directory + "/"</code>.
+     */
+    public boolean hasEntriesIn(String directory) {
+        byte[] prefix = (directory + "/").getBytes(UTF8);
+        int position = findFirst(prefix);
+        if (position == entryCount || pathLengths[position] < prefix.length) {
+            return false;
+        }
+        int offset = pathOffsets[position];
+        for (int i = 0; i < prefix.length; i++) {
+            if (paths.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findFirst(byte[] name) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePath(mid, name) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int comparePath(int position, byte[] name) {
+        int offset = pathOffsets[position];
+        int length = pathLengths[position];
+        int n = Math.min(length, name.length);
+        for (int i = 0; i < n; i++) {
+            int a = paths.get(offset + i) & 0xff;
+            int b = name[i] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - name.length;
+    }
+
+    /**
+     * <code>Entry</code> is a cursor on the entries of the index: it reads the fields of the entry it is positioned
+     * on from the index. A cursor is not thread-safe, but any number of cursors can read the same index.
+     */
+    public final class Entry {
+
+        // Position of the entry.
+        private int position;
+
+        // Offset of the entry in the index.
+        private int offset;
+
+        private Entry() {
+            moveTo(0);
+        }
+
+        /**
+         * Moves the cursor to an entry.
+         * 
+         * @param position The position of the entry, from 0 to <code>getEntryCount() - 1</code>.
+         */
+        public void moveTo(int position) {
+            this.position = position;
+            this.offset = (position < entryCount) ? entryOffsets[position] : -1;
+        }
+
+        /**
+         * @return the position of the entry
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the path of the entry, relative to the working tree, with "/" separators
+         */
+        public String getPath() {
+            int length = pathLengths[position];
+            byte[] name = new byte[length];
+            for (int i = 0; i < length; i++) {
+                name[i] = paths.get(pathOffsets[position] + i);
+            }
+            return new String(name, UTF8);
+        }
+
+        /**
+         * @return the length in bytes of the path of the entry
+         */
+        public int getPathLength() {
+            return pathLengths[position];
+        }
+
+        /**
+         * Copies the path of the entry.
+         * 
+         * @param buffer The array receiving the UTF-8 bytes of the path, at least <code>getPathLength()</code> long.
+         * @param bufferOffset The position of the path in <code>buffer</code>.
+         */
+        public void getPathBytes(byte[] buffer, int bufferOffset) {
+            int start = pathOffsets[position];
+            int length = pathLengths[position];
+            for (int i = 0; i < length; i++) {
+                buffer[bufferOffset + i] = paths.get(start + i);
+            }
+        }
+
+        /**
+         * @return the last time the metadata of the file changed, in milliseconds
+         */
+        public long getCreationTime() {
+            return toMillis(offset);
+        }
+
+        /**
+         * @return the last time the content of the file changed, in milliseconds
+         */
+        public long getLastModified() {
+            return toMillis(offset + 8);
+        }
+
+        /**
+         * @return the seconds part of the modification time
+         */
+        public int getLastModifiedSeconds() {
+            return index.getInt(offset + 8);
+        }
+
+        /**
+         * @return the nanoseconds part of the modification time
+         */
+        public int getLastModifiedNanos() {
+            return index.getInt(offset + 12);
+        }
+
+        /**
+         * @return the device of the file
+         */
+        public int getDevice() {
+            return index.getInt(offset + 16);
+        }
+
+        /**
+         * @return the inode of the file
+         */
+        public int getInode() {
+            return index.getInt(offset + 20);
+        }
+
+        /**
+         * @return the mode of the entry (0100644, 0100755, 0120000 for a symbolic link, 0160000 for a submodule)
+         */
+        public int getMode() {
+            return index.getInt(offset + 24);
+        }
+
+        /**
+         * @return the size of the file, truncated to 32 bits
+         */
+        public long getLength() {
+            return index.getInt(offset + 36) & 0xffffffffL;
+        }
+
+        /**
+         * @return the SHA1 of the blob of the entry
+         */
+        public String getObjectId() {
+            byte[] id = new byte[ObjectId.RAW_LENGTH];
+            getObjectId(id, 0);
+            return ObjectId.toString(id, 0);
+        }
+
+        /**
+         * Copies the raw SHA1 of the blob of the entry.
+         * 
+         * @param id The array receiving the SHA1.
+         * @param idOffset The position of the SHA1 in <code>id</code>.
+         */
+        public void getObjectId(byte[] id, int idOffset) {
+            for (int i = 0; i < ObjectId.RAW_LENGTH; i++) {
+                id[idOffset + i] = index.get(offset + 40 + i);
+            }
+        }
+
+        /**
+         * @return the merge stage of the entry: 0 for a normal entry, 1 to 3 for an unmerged entry
+         */
+        public int getStage() {
+            return (getFlags() & STAGE_MASK) >>> STAGE_SHIFT;
+        }
+
+        /**
+         * @return true if the entry is marked "assume unchanged"
+         */
+        public boolean isAssumeValid() {
+            return (getFlags() & FLAG_VALID) != 0;
+        }
+
+        /**
+         * @return true if the entry is marked "skip worktree" (sparse checkout)
+         */
+        public boolean isSkipWorktree() {
+            return (getExtendedFlags() & FLAG_SKIP_WORKTREE) != 0;
+        }
+
+        /**
+         * @return true if the entry was added with <code>git add -N</code>
+         */
+        public boolean isIntentToAdd() {
+            return (getExtendedFlags() & FLAG_INTENT_TO_ADD) != 0;
+        }
+
+        private int getFlags() {
+            return index.getShort(offset + ENTRY_FIXED - 2) & 0xffff;
+        }
+
+        private int getExtendedFlags() {
+            if (version < 3 || (getFlags() & FLAG_EXTENDED) == 0) {
+                return 0;
+            }
+            return index.getShort(offset + ENTRY_FIXED) & 0xffff;
+        }
+
+        /**
+         * Compares the stat data of the entry with a file of the working tree. The content of the file is not read:
+         * a file whose size or modification time differs from the entry is modified, and a file modified at the same
+         * time as the index or later (racily clean) is reported as modified too.
+         * 
+         * @param file The file of the working tree.
+         * @return true if the file may differ from the entry.
+         */
+        public boolean isModified(File file) {
+            if (isAssumeValid()) {
+                return false;
+            }
+            long fileLength = file.length();
+            if (!file.isFile() || (fileLength & 0xffffffffL) != getLength()) {
+                return true;
+            }
+            long fileModified = file.lastModified();
+            // File.lastModified() may have only a second resolution
+            if (fileModified % 1000 == 0) {
+                if (fileModified / 1000 != (getLastModifiedSeconds() & 0xffffffffL)) {
+                    return true;
+                }
+            }
+            else if (fileModified != getLastModified()) {
+                return true;
+            }
+            return fileModified >= lastModified;
+        }
+
+        private long toMillis(int timeOffset) {
+            long seconds = index.getInt(timeOffset) & 0xffffffffL;
+            int nanos = index.getInt(timeOffset + 4);
+            return seconds * 1000 + nanos / 1000000;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
+/**
+ * <code>GitDir</code> locates the git directory (usually <code>.git</code>) of a repository.
+ */
+public final class GitDir {
+
+    private GitDir() {
+    }
+
+    /**
+     * Finds the git directory of a repository.
+     *
+     * @param repositoryPath The path to the working tree of the repository, or to a bare repository.
+     * @return The git directory.
+     * @throws JavaGitException Thrown if <code>repositoryPath</code> is not a git repository.
+     */
+    public static File find(File repositoryPath) throws JavaGitException {
+        File dotGit = new File(repositoryPath, ".git");
+        if (dotGit.isDirectory()) {
+            return dotGit;
+        }
+        if (dotGit.isFile()) {
+            // a "gitdir: <path>" file, as created for submodules and linked working trees
+            try {
+                BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(dotGit), "UTF-8"));
+                try {
+                    String line = br.readLine();
+                    if (null != line && line.startsWith("gitdir:")) {
+                        File gitDir = new File(line.substring("gitdir:".length()).trim());
+                        if (!gitDir.isAbsolute()) {
+                            gitDir = new File(repositoryPath, gitDir.getPath());
+                        }
+                        return gitDir;
+                    }
+                } finally {
+                    br.close();
+                }
+            } catch (IOException e) {
+                throw new JavaGitException(100100, ExceptionMessageMap.getMessage("100100") + " { path=["
+                        + dotGit.getPath() + "] }", e);
+            }
+        }
+        if (new File(repositoryPath, "objects").isDirectory() && new File(repositoryPath, "HEAD").isFile()) {
+            // bare repository
+            return repositoryPath;
+        }
+        throw new JavaGitException(100100, ExceptionMessageMap.getMessage("100100") + " { path=["
+                + repositoryPath.getPath() + "] }");
+    }
+
+    /**
+     * Finds the directory holding the objects, the refs and the configuration of a repository. The git directory of a
+     * linked working tree (created by <code>git worktree add</code>) only holds its <code>HEAD</code> and its index:
+     * its <code>commondir</code> file gives the git directory of the repository it shares.
+     *
+     * @param gitDir The git directory, as found by <code>find()</code>.
+     * @return The common directory, <code>gitDir</code> itself if it isn't a linked working tree.
+     * @throws JavaGitException Thrown if the <code>commondir</code> file can't be read.
+     */
+    public static File findCommon(File gitDir) throws JavaGitException {
+        File commonDirFile = new File(gitDir, "commondir");
+        if (!commonDirFile.isFile()) {
+            return gitDir;
+        }
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(commonDirFile),
+                    "UTF-8"));
+            try {
+                String line = br.readLine();
+                if (null == line || line.trim().length() == 0) {
+                    return gitDir;
+                }
+                File commonDir = new File(line.trim());
+                if (!commonDir.isAbsolute()) {
+                    commonDir = new File(gitDir, commonDir.getPath());
+                }
+                return commonDir;
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            throw new JavaGitException(100100, ExceptionMessageMap.getMessage("100100") + " { path=["
+                    + commonDirFile.getPath() + "] }", e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+/**
+ * <code>GitObject</code> is an object read from the object database, with its raw (inflated) content.
+ */
+public class GitObject extends ObjectInfo {
+
+    // The raw content of the object.
+    private final byte[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param sha1 The full SHA1 name of the object.
+     * @param type The type of the object.
+     * @param data The raw content of the object.
+     */
+    public GitObject(String sha1, ObjectType type, byte[] data) {
+        super(sha1, type, data.length);
+        this.data = data;
+    }
+
+    /**
+     * Gets the raw content of the object. The returned array is not copied, callers must not modify it.
+     *
+     * @return the raw content of the object
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
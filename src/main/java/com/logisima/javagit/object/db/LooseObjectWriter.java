@@ -0,0 +1,305 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
+/**
+ * <code>LooseObjectWriter</code> writes objects in the <code>objects</code> directory of a repository, without running
+ * git. The content is read once: it is hashed and deflated at the same time into a temporary file, which is then
+ * renamed to its final name. Several writers, in this JVM or not, can write the same object at the same time: they
+ * write the same bytes, and the rename is atomic. The objects which already exist, loose or packed, are not written
+ * again.
+ * 
+ * A writer has no state, it can be shared by all the threads.
+ */
+public class LooseObjectWriter {
+
+    // Size of the buffer used to read the content.
+    private static final int     BUFFER_SIZE = 64 * 1024;
+
+    // The object database of the repository, used to find the objects which already exist.
+    private final ObjectDatabase db;
+
+    // The objects directory of the repository.
+    private final File           objectsDir;
+
+    /**
+     * Constructor.
+     * 
+     * @param db The object database of the repository.
+     * @param objectsDir The objects directory of the repository.
+     */
+    LooseObjectWriter(ObjectDatabase db, File objectsDir) {
+        this.db = db;
+        this.objectsDir = objectsDir;
+    }
+
+    /**
+     * Computes the SHA1 of an object, without writing it.
+     * 
+     * @param type The type of the object.
+     * @param data The content of the object.
+     * @return The SHA1 of the object.
+     */
+    public static String computeId(ObjectType type, byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(header(type, data.length));
+        digest.update(data);
+        return ObjectId.toString(digest.digest(), 0);
+    }
+
+    /**
+     * Writes an object held in memory. Its SHA1 is computed first, so an existing object is not deflated.
+     * 
+     * @param type The type of the object.
+     * @param data The content of the object.
+     * @return The SHA1 of the object.
+     * @throws JavaGitException Thrown if the object can't be written.
+     */
+    public String write(ObjectType type, byte[] data) throws JavaGitException {
+        CheckUtilities.checkNullArgument(type, "type");
+        CheckUtilities.checkNullArgument(data, "data");
+        String sha1 = computeId(type, data);
+        if (db.has(sha1)) {
+            return sha1;
+        }
+        File tmp = createTempFile();
+        try {
+            OutputStream out = openDeflater(tmp);
+            try {
+                out.write(header(type, data.length));
+                out.write(data);
+            } finally {
+                out.close();
+            }
+            install(tmp, sha1);
+            return sha1;
+        } catch (IOException e) {
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { object=[" + sha1
+                    + "] }", e);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Writes an object read from a stream. The stream is read until <code>size</code> bytes are read, and is not
+     * closed.
+     * 
+     * @param type The type of the object.
+     * @param size The size of the content.
+     * @param in The content of the object.
+     * @return The SHA1 of the object.
+     * @throws JavaGitException Thrown if the object can't be written, or if the stream doesn't have
+     *         <code>size</code> bytes.
+     */
+    public String write(ObjectType type, long size, InputStream in) throws JavaGitException {
+        CheckUtilities.checkNullArgument(type, "type");
+        CheckUtilities.checkNullArgument(in, "input stream");
+        File tmp = createTempFile();
+        try {
+            MessageDigest digest = newDigest();
+            OutputStream out = openDeflater(tmp);
+            try {
+                byte[] header = header(type, size);
+                digest.update(header);
+                out.write(header);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = size;
+                while (remaining > 0) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) {
+                        throw new IOException("Content shorter than its size { size=[" + size + "] }");
+                    }
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            } finally {
+                out.close();
+            }
+            return install(tmp, ObjectId.toString(digest.digest(), 0));
+        } catch (IOException e) {
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { type=[" + type
+                    + "], size=[" + size + "] }", e);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Writes an object read from a channel, from its position to its end.
+     * 
+     * @param type The type of the object.
+     * @param channel The content of the object.
+     * @return The SHA1 of the object.
+     * @throws JavaGitException Thrown if the object can't be written.
+     */
+    public String write(ObjectType type, FileChannel channel) throws JavaGitException {
+        CheckUtilities.checkNullArgument(type, "type");
+        CheckUtilities.checkNullArgument(channel, "channel");
+        File tmp = createTempFile();
+        long size = -1;
+        try {
+            size = channel.size() - channel.position();
+            MessageDigest digest = newDigest();
+            OutputStream out = openDeflater(tmp);
+            try {
+                byte[] header = header(type, size);
+                digest.update(header);
+                out.write(header);
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                long remaining = size;
+                while (remaining > 0) {
+                    buffer.clear();
+                    if (remaining < buffer.capacity()) {
+                        buffer.limit((int) remaining);
+                    }
+                    int n = channel.read(buffer);
+                    if (n < 0) {
+                        throw new IOException("Content shorter than its size { size=[" + size + "] }");
+                    }
+                    digest.update(buffer.array(), 0, n);
+                    out.write(buffer.array(), 0, n);
+                    remaining -= n;
+                }
+            } finally {
+                out.close();
+            }
+            return install(tmp, ObjectId.toString(digest.digest(), 0));
+        } catch (IOException e) {
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { type=[" + type
+                    + "], size=[" + size + "] }", e);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Writes the content of a file as a blob. The content is written as is: the filters of the working tree
+     * (<code>core.autocrlf</code>, <code>.gitattributes</code>) are not applied.
+     * 
+     * @param file The file to write.
+     * @return The SHA1 of the blob.
+     * @throws JavaGitException Thrown if the file can't be read or the blob can't be written.
+     */
+    public String writeBlob(File file) throws JavaGitException {
+        CheckUtilities.checkNullArgument(file, "file");
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                return write(ObjectType.BLOB, in.getChannel());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { file=["
+                    + file.getPath() + "] }", e);
+        }
+    }
+
+    /**
+     * Moves a complete temporary file to the place of its object, unless the object already exists.
+     */
+    private String install(File tmp, String sha1) throws IOException, JavaGitException {
+        File dir = new File(objectsDir, sha1.substring(0, 2));
+        File target = new File(dir, sha1.substring(2));
+        if (target.isFile() || db.has(sha1)) {
+            return sha1;
+        }
+        // another writer may create the directory at the same time
+        if (!dir.mkdir() && !dir.isDirectory()) {
+            throw new IOException("Unable to create the directory { path=[" + dir.getPath() + "] }");
+        }
+        // loose objects are read-only, like the ones git writes
+        tmp.setReadOnly();
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // another writer won the race with the same content
+        }
+        return sha1;
+    }
+
+    private File createTempFile() throws JavaGitException {
+        try {
+            return File.createTempFile("tmp_obj_", null, objectsDir);
+        } catch (IOException e) {
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { path=["
+                    + objectsDir.getPath() + "] }", e);
+        }
+    }
+
+    private static OutputStream openDeflater(File tmp) throws IOException {
+        // the default compression of git for loose objects (core.looseCompression)
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        return new DeflaterOutputStream(new FileOutputStream(tmp), deflater, BUFFER_SIZE) {
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * The header of an object: "<type> <size>\0".
+     */
+    static byte[] header(ObjectType type, long size) {
+        String header = type.getName() + " " + size;
+        byte[] bytes = new byte[header.length() + 1];
+        for (int i = 0; i < header.length(); i++) {
+            bytes[i] = (byte) header.charAt(i);
+        }
+        return bytes;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is provided by every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,525 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.object.Ref;
+import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+import com.logisima.javagit.utilities.IdleReaper;
+import com.logisima.javagit.utilities.InstanceRegistry;
+
+/**
+ * Pure Java implementation of the <code>ObjectReader</code> interface. Objects are read directly from the
+ * <code>objects</code> directory of the repository: packed objects are found through the <code>.idx</code> file of
+ * their pack, loose objects are inflated. In a linked working tree, the objects and the refs are read from the
+ * repository it shares (see <code>GitDir.findCommon()</code>).
+ * 
+ * The packs are read without a lock: the pack directory is listed again only when an object isn't found, as git does.
+ * The packs are unmapped when nobody read the repository for <code>JavaGitConfiguration.getIdleTimeout()</code>, and
+ * mapped again on the next read.
+ */
+public class ObjectDatabase implements ObjectReader {
+
+    /**
+     * This guy's a per-repository singleton, so we need a static place to store our instances.
+     */
+    private static final InstanceRegistry<ObjectDatabase> INSTANCES = new InstanceRegistry<ObjectDatabase>();
+
+    // The canonical path of the repository, the key of this instance.
+    private final String                                  canonicalPath;
+
+    // The git directory of the repository.
+    private final File                                    gitDir;
+
+    // The objects directory of the repository.
+    private final File                                    objectsDir;
+
+    // The refs of the repository, used to resolve object names which are not SHA1.
+    private final RefDatabase                             refs;
+
+    // The resolver of the Ref objects, with its cache.
+    private final RefResolver                             refResolver;
+
+    // The cache of the inflated bases of deltified pack entries.
+    private final DeltaBaseCache                          deltaBaseCache;
+
+    // The writer of the loose objects.
+    private final LooseObjectWriter                       objectWriter;
+
+    // The packs of the repository: an immutable list, replaced when the pack directory is listed again.
+    private volatile List<PackFile>                       packs;
+
+    // The last modification time of the pack directory when the packs were listed.
+    private long                                          packDirModified;
+
+    // The time of the last read of the packs, as given by System.nanoTime().
+    private volatile long                                 lastRead;
+
+    // Unmaps the packs when the repository isn't read.
+    private final IdleReaper.Releasable                   idlePacks;
+
+    /**
+     * Constructor. Private because this class is only available via the getInstance method.
+     *
+     * @param canonicalPath The canonical path to the repository.
+     * @param gitDir The git directory of the repository.
+     * @param commonDir The directory of the objects and the refs, shared by the linked working trees.
+     */
+    private ObjectDatabase(String canonicalPath, File gitDir, File commonDir) {
+        this.canonicalPath = canonicalPath;
+        this.gitDir = gitDir;
+        this.objectsDir = new File(commonDir, "objects");
+        this.refs = new RefDatabase(gitDir, commonDir);
+        this.refResolver = new RefResolver(this, refs);
+        this.deltaBaseCache = new DeltaBaseCache(JavaGitConfiguration.getDeltaBaseCacheLimit());
+        this.objectWriter = new LooseObjectWriter(this, objectsDir);
+        this.packs = Collections.emptyList();
+        this.packDirModified = -1;
+        this.idlePacks = new IdleReaper.Releasable() {
+
+            public boolean releaseIfIdle(long idleSince) {
+                return releasePacksIfIdle(idleSince);
+            }
+        };
+    }
+
+    /**
+     * Static factory method for retrieving the instance of this class for a repository.
+     *
+     * @param repositoryPath <code>File</code> object representing the path to the repository.
+     * @return The <code>ObjectDatabase</code> instance for this path.
+     * @throws JavaGitException Thrown if the path is not a git repository.
+     */
+    public static ObjectDatabase getInstance(File repositoryPath) throws JavaGitException {
+        CheckUtilities.checkNullArgument(repositoryPath, "repository path");
+        String canonicalPath;
+        try {
+            canonicalPath = repositoryPath.getCanonicalPath();
+        } catch (IOException e) {
+            throw new JavaGitException(JavaGitException.REPOSITORY_ERROR, e.getMessage(), e);
+        }
+
+        ObjectDatabase db = INSTANCES.get(canonicalPath);
+        if (null == db) {
+            // the packs are mapped on the first read, and their mappings are released with the instance
+            File gitDir = GitDir.find(new File(canonicalPath));
+            db = INSTANCES.putIfAbsent(canonicalPath, new ObjectDatabase(canonicalPath, gitDir, GitDir
+                    .findCommon(gitDir)));
+        }
+        return db;
+    }
+
+    /**
+     * @return the git directory of the repository
+     */
+    public File getGitDir() {
+        return gitDir;
+    }
+
+    /**
+     * @return the cache of the inflated bases of deltified pack entries, with its hit and miss counters
+     */
+    public DeltaBaseCache getDeltaBaseCache() {
+        return deltaBaseCache;
+    }
+
+    /**
+     * @return the refs of the repository
+     */
+    public RefDatabase getRefDatabase() {
+        return refs;
+    }
+
+    /**
+     * @return the resolver of the <code>Ref</code> objects, with its hit and miss counters
+     */
+    public RefResolver getRefResolver() {
+        return refResolver;
+    }
+
+    /**
+     * @return the writer of the loose objects of the repository
+     */
+    public LooseObjectWriter getObjectWriter() {
+        return objectWriter;
+    }
+
+    /**
+     * Starts a new pack in the repository (see <code>PackWriter</code>).
+     *
+     * @return The writer of the pack.
+     * @throws JavaGitException Thrown if the pack can't be created.
+     */
+    public PackWriter newPackWriter() throws JavaGitException {
+        return new PackWriter(this, new File(objectsDir, "pack"));
+    }
+
+    public boolean has(String objectName) throws JavaGitException {
+        String sha1 = resolve(objectName);
+        if (null == sha1) {
+            return false;
+        }
+        for (List<PackFile> snapshot = getPacks(); null != snapshot; snapshot = rescanPacks(snapshot)) {
+            for (PackFile pack : snapshot) {
+                if (pack.findOffset(sha1) >= 0) {
+                    return true;
+                }
+            }
+            if (getLooseFile(sha1).isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ObjectInfo getInfo(String objectName) throws JavaGitException {
+        String sha1 = resolve(objectName);
+        if (null == sha1) {
+            return null;
+        }
+        try {
+            for (List<PackFile> snapshot = getPacks(); null != snapshot; snapshot = rescanPacks(snapshot)) {
+                for (PackFile pack : snapshot) {
+                    long offset = pack.findOffset(sha1);
+                    if (offset >= 0) {
+                        return pack.loadInfo(this, sha1, offset);
+                    }
+                }
+                File loose = getLooseFile(sha1);
+                if (loose.isFile()) {
+                    return readLoose(sha1, loose, false);
+                }
+            }
+        } catch (IOException e) {
+            throw new JavaGitException(100102, ExceptionMessageMap.getMessage("100102") + " { object=[" + sha1
+                    + "] }", e);
+        } catch (IllegalArgumentException e) {
+            throw new JavaGitException(100102, ExceptionMessageMap.getMessage("100102") + " { object=[" + sha1
+                    + "] }", e);
+        }
+        return null;
+    }
+
+    public GitObject open(String objectName) throws JavaGitException {
+        String sha1 = resolve(objectName);
+        if (null == sha1) {
+            return null;
+        }
+        try {
+            for (List<PackFile> snapshot = getPacks(); null != snapshot; snapshot = rescanPacks(snapshot)) {
+                for (PackFile pack : snapshot) {
+                    long offset = pack.findOffset(sha1);
+                    if (offset >= 0) {
+                        return pack.load(this, sha1, offset);
+                    }
+                }
+                File loose = getLooseFile(sha1);
+                if (loose.isFile()) {
+                    return (GitObject) readLoose(sha1, loose, true);
+                }
+            }
+        } catch (IOException e) {
+            throw new JavaGitException(100102, ExceptionMessageMap.getMessage("100102") + " { object=[" + sha1
+                    + "] }", e);
+        } catch (IllegalArgumentException e) {
+            throw new JavaGitException(100102, ExceptionMessageMap.getMessage("100102") + " { object=[" + sha1
+                    + "] }", e);
+        }
+        return null;
+    }
+
+    /**
+     * Unmaps the packs, and removes this database from the instances: the next <code>getInstance()</code> creates a
+     * new one. The packs are mapped again if this database is read after being closed.
+     */
+    public void close() {
+        INSTANCES.remove(canonicalPath, this);
+        releasePacks();
+    }
+
+    /**
+     * Resolves an object name to a SHA1.
+     *
+     * @param objectName A full SHA1, or a ref name (<code>HEAD</code>, <code>master</code>,
+     *        <code>refs/tags/v1</code>...).
+     * @return The SHA1, or null if the name can't be resolved.
+     * @throws JavaGitException Thrown if the refs can't be read.
+     */
+    public String resolve(String objectName) throws JavaGitException {
+        CheckUtilities.checkStringArgument(objectName, "object name");
+        if (ObjectId.isId(objectName)) {
+            return objectName.toLowerCase();
+        }
+        return refs.resolve(objectName);
+    }
+
+    /**
+     * Resolves a <code>Ref</code> to a SHA1. <code>HEAD</code> offsets are resolved by following the first parents. The
+     * results are cached until the refs change (see <code>RefResolver</code>).
+     *
+     * @param ref The ref to resolve.
+     * @return The SHA1, or null if the ref can't be resolved.
+     * @throws JavaGitException Thrown if the refs or the commits can't be read.
+     */
+    public String resolve(Ref ref) throws JavaGitException {
+        CheckUtilities.checkNullArgument(ref, "ref");
+        return refResolver.resolve(ref);
+    }
+
+    /**
+     * Reads and parses a commit.
+     *
+     * @param objectName The name of the commit: a SHA1 or a ref name.
+     * @return The parsed commit.
+     * @throws JavaGitException Thrown if the commit doesn't exist or is not a valid commit.
+     */
+    public CommitObject readCommit(String objectName) throws JavaGitException {
+        GitObject object = open(objectName);
+        if (null == object) {
+            throw new JavaGitException(100101, ExceptionMessageMap.getMessage("100101") + " { object=["
+                    + objectName + "] }");
+        }
+        try {
+            return CommitObject.parse(object);
+        } catch (IllegalArgumentException e) {
+            throw new JavaGitException(100102, ExceptionMessageMap.getMessage("100102") + " { object=["
+                    + objectName + "] }", e);
+        }
+    }
+
+    /**
+     * Reads and parses a tree.
+     *
+     * @param objectName The SHA1 of the tree.
+     * @return The parsed tree.
+     * @throws JavaGitException Thrown if the tree doesn't exist or is not a valid tree.
+     */
+    public TreeObject readTree(String objectName) throws JavaGitException {
+        GitObject object = open(objectName);
+        if (null == object) {
+            throw new JavaGitException(100101, ExceptionMessageMap.getMessage("100101") + " { object=["
+                    + objectName + "] }");
+        }
+        try {
+            return TreeObject.parse(object);
+        } catch (IllegalArgumentException e) {
+            throw new JavaGitException(100102, ExceptionMessageMap.getMessage("100102") + " { object=["
+                    + objectName + "] }", e);
+        }
+    }
+
+    /**
+     * Follows annotated tags to the object they point to.
+     */
+    String peel(String sha1) throws JavaGitException {
+        for (int depth = 0; null != sha1 && depth < 10; depth++) {
+            GitObject object = open(sha1);
+            if (null == object || ObjectType.TAG != object.getType()) {
+                return sha1;
+            }
+            // the first line of a tag is "object <sha1>"
+            byte[] data = object.getData();
+            if (data.length < 7 + ObjectId.STRING_LENGTH) {
+                return null;
+            }
+            try {
+                sha1 = new String(data, 7, ObjectId.STRING_LENGTH, "US-ASCII");
+            } catch (UnsupportedEncodingException e) {
+                // US-ASCII is always supported
+                throw new IllegalStateException(e);
+            }
+        }
+        return sha1;
+    }
+
+    /**
+     * Gets the packs of the repository, without a lock and without looking at the pack directory.
+     */
+    private List<PackFile> getPacks() {
+        lastRead = System.nanoTime();
+        return packs;
+    }
+
+    /**
+     * Lists the pack directory again after an object was found neither in the packs nor loose, so the packs created by
+     * a <code>git gc</code> or a fetch are found. The directory is only listed when it has been modified.
+     *
+     * @param snapshot The packs the object was looked for in.
+     * @return The new packs, or null if they didn't change since <code>snapshot</code>.
+     */
+    private synchronized List<PackFile> rescanPacks(List<PackFile> snapshot) throws JavaGitException {
+        if (packs != snapshot) {
+            // listed again by another thread
+            return packs;
+        }
+        File packDir = new File(objectsDir, "pack");
+        long modified = packDir.lastModified();
+        if (modified == packDirModified) {
+            return null;
+        }
+        List<PackFile> newPacks = new ArrayList<PackFile>();
+        File[] files = packDir.listFiles();
+        if (null != files) {
+            for (File idx : files) {
+                String name = idx.getName();
+                if (!name.endsWith(".idx")) {
+                    continue;
+                }
+                File pack = new File(packDir, name.substring(0, name.length() - 4) + ".pack");
+                if (!pack.isFile()) {
+                    continue;
+                }
+                newPacks.add(getPack(pack, idx));
+            }
+        }
+        for (PackFile old : packs) {
+            if (!newPacks.contains(old)) {
+                old.close();
+                deltaBaseCache.remove(old);
+            }
+        }
+        packs = Collections.unmodifiableList(newPacks);
+        packDirModified = modified;
+        if (!newPacks.isEmpty()) {
+            IdleReaper.register(idlePacks);
+        }
+        return packs;
+    }
+
+    /**
+     * Unmaps the packs. The pack directory is listed again on the next miss.
+     */
+    private synchronized void releasePacks() {
+        for (PackFile pack : packs) {
+            pack.close();
+        }
+        packs = Collections.emptyList();
+        packDirModified = -1;
+        deltaBaseCache.clear();
+    }
+
+    /**
+     * Unmaps the packs if they weren't read since a time.
+     */
+    private synchronized boolean releasePacksIfIdle(long idleSince) {
+        if (!packs.isEmpty() && lastRead - idleSince >= 0) {
+            return false;
+        }
+        releasePacks();
+        return true;
+    }
+
+    /**
+     * @return the number of packs mapped
+     */
+    int getMappedPackCount() {
+        return packs.size();
+    }
+
+    /**
+     * Gets an already opened pack, or opens it.
+     */
+    private PackFile getPack(File pack, File idx) throws JavaGitException {
+        for (PackFile p : packs) {
+            if (p.getPackFile().equals(pack)) {
+                return p;
+            }
+        }
+        try {
+            return new PackFile(pack, idx);
+        } catch (IOException e) {
+            throw new JavaGitException(100100, ExceptionMessageMap.getMessage("100100") + " { pack=["
+                    + pack.getPath() + "] }", e);
+        }
+    }
+
+    /**
+     * Forces the pack directory to be listed again on the next miss, when a pack was added by this JVM: the
+     * modification time of the directory may not change if another pack was added in the same second.
+     */
+    synchronized void packsChanged() {
+        packDirModified = -1;
+    }
+
+    private File getLooseFile(String sha1) {
+        return new File(objectsDir, sha1.substring(0, 2) + File.separatorChar + sha1.substring(2));
+    }
+
+    /**
+     * Reads a loose object: a zlib stream of "<type> <size>\0<content>".
+     *
+     * @param withData If false, only the header is inflated and an <code>ObjectInfo</code> is returned.
+     * @throws JavaGitException Thrown if the object is too large for an array.
+     */
+    private ObjectInfo readLoose(String sha1, File file, boolean withData) throws IOException, JavaGitException {
+        InputStream in = new InflaterInputStream(new FileInputStream(file));
+        try {
+            StringBuilder header = new StringBuilder();
+            int c;
+            while ((c = in.read()) > 0) {
+                header.append((char) c);
+            }
+            int space = header.indexOf(" ");
+            if (c < 0 || space < 0) {
+                throw new IOException("Invalid loose object header { file=[" + file.getPath() + "] }");
+            }
+            ObjectType type = ObjectType.fromName(header.substring(0, space));
+            long size = Long.parseLong(header.substring(space + 1));
+            if (null == type) {
+                throw new IOException("Invalid loose object type { file=[" + file.getPath() + "] }");
+            }
+            if (size < 0) {
+                throw new IOException("Invalid loose object size { file=[" + file.getPath() + "] }");
+            }
+            if (!withData) {
+                return new ObjectInfo(sha1, type, size);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new JavaGitException(100105, ExceptionMessageMap.getMessage("100105") + " { object=[" + sha1
+                        + "], size=[" + size + "] }");
+            }
+
+            byte[] data = new byte[(int) size];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    throw new IOException("Truncated loose object { file=[" + file.getPath() + "] }");
+                }
+                read += n;
+            }
+            return new GitObject(sha1, type, data);
+        } finally {
+            in.close();
+        }
+    }
+}
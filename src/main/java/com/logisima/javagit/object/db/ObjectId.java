@@ -0,0 +1,136 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+/**
+ * <code>ObjectId</code> contains methods to convert SHA1 object names between their hexadecimal form (40 characters)
+ * and their raw form (20 bytes).
+ */
+public final class ObjectId {
+
+    /**
+     * Length of a raw SHA1, in bytes.
+     */
+    public static final int      RAW_LENGTH    = 20;
+
+    /**
+     * Length of an hexadecimal SHA1, in characters.
+     */
+    public static final int      STRING_LENGTH = 40;
+
+    private static final char[] HEX           = "0123456789abcdef".toCharArray();
+
+    private ObjectId() {
+    }
+
+    /**
+     * Checks if a string is a full hexadecimal SHA1.
+     *
+     * @param name The string to check.
+     * @return true if the string has 40 hexadecimal characters.
+     */
+    public static boolean isId(String name) {
+        if (null == name || name.length() != STRING_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            if (hexValue(name.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts an hexadecimal SHA1 to its raw form.
+     *
+     * @param name The hexadecimal SHA1.
+     * @param raw The array receiving the 20 bytes of the SHA1.
+     * @param offset The position of the SHA1 in <code>raw</code>.
+     */
+    public static void toRaw(String name, byte[] raw, int offset) {
+        for (int i = 0; i < RAW_LENGTH; i++) {
+            int high = hexValue(name.charAt(2 * i));
+            int low = hexValue(name.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid SHA1 { name=[" + name + "] }");
+            }
+            raw[offset + i] = (byte) ((high << 4) | low);
+        }
+    }
+
+    /**
+     * Converts an hexadecimal SHA1 to its raw form.
+     *
+     * @param name The hexadecimal SHA1.
+     * @return The 20 bytes of the SHA1.
+     */
+    public static byte[] toRaw(String name) {
+        byte[] raw = new byte[RAW_LENGTH];
+        toRaw(name, raw, 0);
+        return raw;
+    }
+
+    /**
+     * Converts a raw SHA1 to its hexadecimal form.
+     *
+     * @param raw The array containing the SHA1.
+     * @param offset The position of the SHA1 in <code>raw</code>.
+     * @return The hexadecimal SHA1.
+     */
+    public static String toString(byte[] raw, int offset) {
+        char[] name = new char[STRING_LENGTH];
+        for (int i = 0; i < RAW_LENGTH; i++) {
+            int b = raw[offset + i] & 0xff;
+            name[2 * i] = HEX[b >>> 4];
+            name[2 * i + 1] = HEX[b & 0x0f];
+        }
+        return new String(name);
+    }
+
+    /**
+     * Gets a byte of the raw form of an hexadecimal SHA1, without converting the whole SHA1.
+     *
+     * @param name The hexadecimal SHA1.
+     * @param index The position of the byte in the raw SHA1.
+     * @return The byte, between 0 and 255.
+     */
+    static int rawByte(String name, int index) {
+        int high = hexValue(name.charAt(2 * index));
+        int low = hexValue(name.charAt(2 * index + 1));
+        if (high < 0 || low < 0) {
+            throw new IllegalArgumentException("Invalid SHA1 { name=[" + name + "] }");
+        }
+        return (high << 4) | low;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+/**
+ * <code>ObjectInfo</code> holds the header of an object stored in the object database: its name, type and size.
+ */
+public class ObjectInfo {
+
+    // The full SHA1 name of the object.
+    private final String     sha1;
+
+    // The type of the object.
+    private final ObjectType type;
+
+    // The size of the object content, in bytes.
+    private final long       size;
+
+    /**
+     * Constructor.
+     *
+     * @param sha1 The full SHA1 name of the object.
+     * @param type The type of the object.
+     * @param size The size of the object content, in bytes.
+     */
+    public ObjectInfo(String sha1, ObjectType type, long size) {
+        this.sha1 = sha1;
+        this.type = type;
+        this.size = size;
+    }
+
+    /**
+     * @return the full SHA1 name of the object
+     */
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * @return the type of the object
+     */
+    public ObjectType getType() {
+        return type;
+    }
+
+    /**
+     * @return the size of the object content, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return sha1 + " " + type + " " + size;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import com.logisima.javagit.JavaGitException;
+
+/**
+ * An interface to read objects from the object database of a repository. Implementations are long-lived and meant to
+ * be reused for any number of lookups, and must be safe to use from several threads.
+ */
+public interface ObjectReader {
+
+    /**
+     * Checks if an object exists in the object database.
+     *
+     * @param objectName The name of the object: a SHA1 or any revision understood by the reader.
+     * @return true if the object exists, false otherwise.
+     * @throws JavaGitException Thrown if the object database can't be read.
+     */
+    public boolean has(String objectName) throws JavaGitException;
+
+    /**
+     * Gets the type and the size of an object, without reading its content.
+     *
+     * @param objectName The name of the object: a SHA1 or any revision understood by the reader.
+     * @return The <code>ObjectInfo</code> of the object, or null if the object doesn't exist.
+     * @throws JavaGitException Thrown if the object database can't be read.
+     */
+    public ObjectInfo getInfo(String objectName) throws JavaGitException;
+
+    /**
+     * Reads an object.
+     *
+     * @param objectName The name of the object: a SHA1 or any revision understood by the reader.
+     * @return The <code>GitObject</code>, or null if the object doesn't exist.
+     * @throws JavaGitException Thrown if the object database can't be read.
+     */
+    public GitObject open(String objectName) throws JavaGitException;
+
+    /**
+     * Releases the resources (processes, files) held by the reader. The reader may be reused after being closed, it
+     * will then acquire its resources again.
+     */
+    public void close();
+
+}
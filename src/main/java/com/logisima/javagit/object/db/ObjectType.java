@@ -0,0 +1,92 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+/**
+ * An enumeration of the types of objects stored in a git object database.
+ */
+public enum ObjectType {
+
+    COMMIT("commit", 1), TREE("tree", 2), BLOB("blob", 3), TAG("tag", 4);
+
+    // The name of the type, as printed by git (ex: "blob").
+    private final String name;
+
+    // The type code used in pack files.
+    private final int    packCode;
+
+    ObjectType(String name, int packCode) {
+        this.name = name;
+        this.packCode = packCode;
+    }
+
+    /**
+     * Gets the name of the type, as printed by git.
+     *
+     * @return The name of the type.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the code of the type in pack files.
+     *
+     * @return The pack code of the type.
+     */
+    public int getPackCode() {
+        return packCode;
+    }
+
+    /**
+     * Gets the <code>ObjectType</code> from its name.
+     *
+     * @param name The name of the type (ex: "blob").
+     * @return The matching <code>ObjectType</code>, or null if the name is unknown.
+     */
+    public static ObjectType fromName(String name) {
+        for (ObjectType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the <code>ObjectType</code> from its pack code.
+     *
+     * @param packCode The pack code of the type.
+     * @return The matching <code>ObjectType</code>, or null if the code is not an object type (ex: a delta).
+     */
+    public static ObjectType fromPackCode(int packCode) {
+        for (ObjectType type : values()) {
+            if (type.packCode == packCode) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
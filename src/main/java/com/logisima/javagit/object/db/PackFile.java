@@ -0,0 +1,439 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.logisima.javagit.JavaGitException;
+
+/**
+ * <code>PackFile</code> reads the objects of a <code>.pack</code> file, located through its <code>PackIndex</code>.
+ * 
+ * The pack is memory-mapped, in segments of at most 1 GB so packs larger than the 2 GB limit of a mapping can be read;
+ * its content is never copied on the heap, except for the compressed bytes of the entry being inflated. Reads use
+ * absolute gets on the mappings, so a pack can be read by several threads without lock.
+ */
+public class PackFile {
+
+    // Pack entry types which are not object types.
+    static final int              OFS_DELTA         = 6;
+    static final int              REF_DELTA         = 7;
+
+    // Magic number of the pack header: "PACK".
+    private static final int      PACK_MAGIC        = 0x5041434b;
+
+    // Size of a mapped segment of the pack, as a power of 2.
+    private static final int      SEGMENT_SHIFT     = 30;
+
+    private static final long     SEGMENT_MASK      = (1L << SEGMENT_SHIFT) - 1;
+
+    // Maximum size of the header of a delta: two sizes of at most 10 bytes each.
+    private static final int      DELTA_HEADER_SIZE = 20;
+
+    // Size of the buffer used to feed the compressed bytes to the inflater.
+    private static final int      INPUT_SIZE        = 8192;
+
+    // The .pack file.
+    private final File            packFile;
+
+    // The index of the pack.
+    private final PackIndex       index;
+
+    // The mapped segments of the pack, or null if the pack is not mapped.
+    private volatile ByteBuffer[] segments;
+
+    // The size of the pack.
+    private long                  length;
+
+    /**
+     * Constructor. The index is mapped immediately, the pack on the first read.
+     *
+     * @param packFile The <code>.pack</code> file.
+     * @param indexFile The <code>.idx</code> file of the pack.
+     * @throws IOException Thrown if the index can't be read.
+     */
+    public PackFile(File packFile, File indexFile) throws IOException {
+        this.packFile = packFile;
+        this.index = new PackIndex(indexFile);
+    }
+
+    /**
+     * @return the .pack file
+     */
+    public File getPackFile() {
+        return packFile;
+    }
+
+    /**
+     * @return the index of the pack
+     */
+    public PackIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the number of objects in the pack
+     */
+    public int getObjectCount() {
+        return index.getObjectCount();
+    }
+
+    /**
+     * Finds the offset of an object in the pack.
+     *
+     * @param id The raw SHA1 of the object.
+     * @return The offset of the object in the pack, or -1 if the pack doesn't contain the object.
+     */
+    public long findOffset(byte[] id) {
+        return index.findOffset(id, 0);
+    }
+
+    /**
+     * Finds the offset of an object in the pack.
+     *
+     * @param sha1 The hexadecimal SHA1 of the object.
+     * @return The offset of the object in the pack, or -1 if the pack doesn't contain the object.
+     */
+    public long findOffset(String sha1) {
+        return index.findOffset(sha1);
+    }
+
+    /**
+     * Reads an object of the pack. Delta chains are resolved iteratively: the chain is followed down to a base which
+     * is not a delta, or which is in the delta base cache of <code>db</code>, then the deltas are applied back up,
+     * caching each intermediate result. Only the bases are looked up in the cache, and a deltified object counts a
+     * single hit or miss.
+     *
+     * @param db The object database containing the pack, used to read the bases of REF_DELTA entries.
+     * @param sha1 The SHA1 of the object.
+     * @param offset The offset of the object in the pack.
+     * @return The object.
+     * @throws IOException Thrown if the pack can't be read.
+     * @throws JavaGitException Thrown if the base of a REF_DELTA entry can't be read.
+     */
+    public GitObject load(ObjectDatabase db, String sha1, long offset) throws IOException, JavaGitException {
+        ByteBuffer[] pack = open();
+        Entry entry = readEntry(pack, offset);
+        if (entry.type != OFS_DELTA && entry.type != REF_DELTA) {
+            return new GitObject(sha1, getType(entry), inflate(pack, entry.dataOffset, entry.size));
+        }
+        DeltaBaseCache cache = db.getDeltaBaseCache();
+
+        // the deltas to apply, the requested entry first
+        List<Entry> chain = new ArrayList<Entry>();
+        GitObject base = null;
+        boolean cached = false;
+        while (entry.type == OFS_DELTA || entry.type == REF_DELTA) {
+            chain.add(entry);
+            long pos;
+            if (entry.type == OFS_DELTA) {
+                pos = entry.baseOffset;
+            }
+            else {
+                pos = index.findOffset(entry.baseId, 0);
+                if (pos < 0) {
+                    base = db.open(ObjectId.toString(entry.baseId, 0));
+                    if (null == base) {
+                        throw new IOException("Missing delta base { base=[" + ObjectId.toString(entry.baseId, 0)
+                                + "] }");
+                    }
+                    break;
+                }
+            }
+            base = cache.peek(this, pos);
+            if (null != base) {
+                cached = true;
+                break;
+            }
+            entry = readEntry(pack, pos);
+        }
+        cache.count(cached);
+        if (null == base) {
+            base = new GitObject(null, getType(entry), inflate(pack, entry.dataOffset, entry.size));
+            cache.put(this, entry.offset, base);
+        }
+
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Entry delta = chain.get(i);
+            byte[] data = DeltaDecoder.apply(base.getData(), inflate(pack, delta.dataOffset, delta.size));
+            base = new GitObject(null, base.getType(), data);
+            if (i > 0) {
+                cache.put(this, delta.offset, base);
+            }
+        }
+        return new GitObject(sha1, base.getType(), base.getData());
+    }
+
+    /**
+     * Reads the type and the size of an object of the pack. Only the header of the delta is inflated for a deltified
+     * object; its type is the one of the base at the end of its chain. The chain is followed through the headers of
+     * the mapped entries, which costs less than looking up the delta base cache.
+     *
+     * @param db The object database containing the pack, used to read the bases of REF_DELTA entries.
+     * @param sha1 The SHA1 of the object.
+     * @param offset The offset of the object in the pack.
+     * @return The <code>ObjectInfo</code> of the object.
+     * @throws IOException Thrown if the pack can't be read.
+     * @throws JavaGitException Thrown if the base of a REF_DELTA entry can't be read.
+     */
+    public ObjectInfo loadInfo(ObjectDatabase db, String sha1, long offset) throws IOException, JavaGitException {
+        ByteBuffer[] pack = open();
+        Entry entry = readEntry(pack, offset);
+        if (entry.type != OFS_DELTA && entry.type != REF_DELTA) {
+            return new ObjectInfo(sha1, getType(entry), entry.size);
+        }
+        long size = DeltaDecoder.getResultSize(inflateHeader(pack, entry.dataOffset));
+
+        while (entry.type == OFS_DELTA || entry.type == REF_DELTA) {
+            long pos;
+            if (entry.type == OFS_DELTA) {
+                pos = entry.baseOffset;
+            }
+            else {
+                pos = index.findOffset(entry.baseId, 0);
+                if (pos < 0) {
+                    ObjectInfo base = db.getInfo(ObjectId.toString(entry.baseId, 0));
+                    if (null == base) {
+                        throw new IOException("Missing delta base { base=[" + ObjectId.toString(entry.baseId, 0)
+                                + "] }");
+                    }
+                    return new ObjectInfo(sha1, base.getType(), size);
+                }
+            }
+            entry = readEntry(pack, pos);
+        }
+        return new ObjectInfo(sha1, getType(entry), size);
+    }
+
+    /**
+     * Releases the mapping of the pack. It will be mapped again on the next read; the memory is given back to the
+     * system when the mapping is garbage collected.
+     */
+    public synchronized void close() {
+        segments = null;
+    }
+
+    private Entry readEntry(ByteBuffer[] pack, long offset) throws IOException {
+        if (offset < 12 || offset >= length) {
+            throw new IOException("Invalid pack offset { pack=[" + packFile.getPath() + "], offset=[" + offset
+                    + "] }");
+        }
+        Entry entry = new Entry();
+        entry.offset = offset;
+        long pos = offset;
+
+        int c = get(pack, pos++);
+        entry.type = (c >> 4) & 0x07;
+        long size = c & 0x0f;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            c = get(pack, pos++);
+            size += ((long) (c & 0x7f)) << shift;
+            shift += 7;
+        }
+        entry.size = size;
+
+        if (entry.type == OFS_DELTA) {
+            c = get(pack, pos++);
+            long baseOffset = c & 0x7f;
+            while ((c & 0x80) != 0) {
+                c = get(pack, pos++);
+                baseOffset = ((baseOffset + 1) << 7) + (c & 0x7f);
+            }
+            entry.baseOffset = offset - baseOffset;
+        }
+        else if (entry.type == REF_DELTA) {
+            entry.baseId = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < ObjectId.RAW_LENGTH; i++) {
+                entry.baseId[i] = (byte) get(pack, pos++);
+            }
+        }
+        entry.dataOffset = pos;
+        return entry;
+    }
+
+    private byte[] inflate(ByteBuffer[] pack, long dataOffset, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Object is too large to be read in memory { size=[" + size + "] }");
+        }
+        byte[] result = new byte[(int) size];
+        byte[] input = new byte[INPUT_SIZE];
+        long pos = dataOffset;
+        Inflater inflater = new Inflater();
+        try {
+            int produced = 0;
+            while (!inflater.finished() && produced < result.length) {
+                if (inflater.needsInput()) {
+                    int n = read(pack, pos, input);
+                    if (n <= 0) {
+                        throw new IOException("Truncated pack file { pack=[" + packFile.getPath() + "] }");
+                    }
+                    pos += n;
+                    inflater.setInput(input, 0, n);
+                }
+                produced += inflater.inflate(result, produced, result.length - produced);
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Corrupt pack file { pack=[" + packFile.getPath() + "] }");
+                }
+            }
+            if (produced != result.length) {
+                throw new IOException("Corrupt pack file { pack=[" + packFile.getPath() + "] }");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            IOException toThrow = new IOException("Corrupt pack file { pack=[" + packFile.getPath() + "] }");
+            toThrow.initCause(e);
+            throw toThrow;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Inflates the beginning of a delta, enough to read the two sizes of its header.
+     */
+    private byte[] inflateHeader(ByteBuffer[] pack, long dataOffset) throws IOException {
+        byte[] header = new byte[DELTA_HEADER_SIZE];
+        byte[] input = new byte[DELTA_HEADER_SIZE];
+        Inflater inflater = new Inflater();
+        try {
+            int produced = 0;
+            long pos = dataOffset;
+            while (produced < header.length && !inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int n = read(pack, pos, input);
+                    if (n <= 0) {
+                        break;
+                    }
+                    pos += n;
+                    inflater.setInput(input, 0, n);
+                }
+                produced += inflater.inflate(header, produced, header.length - produced);
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Corrupt pack file { pack=[" + packFile.getPath() + "] }");
+                }
+            }
+            return header;
+        } catch (DataFormatException e) {
+            IOException toThrow = new IOException("Corrupt pack file { pack=[" + packFile.getPath() + "] }");
+            toThrow.initCause(e);
+            throw toThrow;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ObjectType getType(Entry entry) throws IOException {
+        ObjectType type = ObjectType.fromPackCode(entry.type);
+        if (null == type) {
+            throw new IOException("Invalid pack entry type { pack=[" + packFile.getPath() + "], type=["
+                    + entry.type + "] }");
+        }
+        return type;
+    }
+
+    /**
+     * Gets the mapped segments of the pack, mapping the pack if needed.
+     */
+    private ByteBuffer[] open() throws IOException {
+        ByteBuffer[] pack = segments;
+        if (null != pack) {
+            return pack;
+        }
+        synchronized (this) {
+            if (null == segments) {
+                RandomAccessFile raf = new RandomAccessFile(packFile, "r");
+                try {
+                    FileChannel channel = raf.getChannel();
+                    long size = channel.size();
+                    int count = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+                    ByteBuffer[] mapped = new ByteBuffer[count];
+                    for (int i = 0; i < count; i++) {
+                        long start = ((long) i) << SEGMENT_SHIFT;
+                        mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start,
+                                SEGMENT_MASK + 1));
+                    }
+                    if (size < 12 || mapped[0].getInt(0) != PACK_MAGIC) {
+                        throw new IOException("Not a pack file { pack=[" + packFile.getPath() + "] }");
+                    }
+                    length = size;
+                    segments = mapped;
+                } finally {
+                    // the mappings stay valid once the channel is closed
+                    raf.close();
+                }
+            }
+            return segments;
+        }
+    }
+
+    private static int get(ByteBuffer[] pack, long pos) {
+        return pack[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK)) & 0xff;
+    }
+
+    /**
+     * Copies bytes of the pack, up to the end of the buffer or of the segment containing <code>pos</code>.
+     *
+     * @return The number of bytes copied, 0 at the end of the pack.
+     */
+    private int read(ByteBuffer[] pack, long pos, byte[] buffer) {
+        int segment = (int) (pos >>> SEGMENT_SHIFT);
+        if (segment >= pack.length) {
+            return 0;
+        }
+        ByteBuffer view = pack[segment].duplicate();
+        view.position((int) (pos & SEGMENT_MASK));
+        int n = Math.min(buffer.length, view.remaining());
+        view.get(buffer, 0, n);
+        return n;
+    }
+
+    /**
+     * The header of an entry of the pack.
+     */
+    private static final class Entry {
+
+        // The offset of the entry.
+        long   offset;
+
+        // The type code of the entry.
+        int    type;
+
+        // The inflated size of the entry data.
+        long   size;
+
+        // The offset of the compressed data.
+        long   dataOffset;
+
+        // The offset of the base of an OFS_DELTA entry.
+        long   baseOffset;
+
+        // The raw SHA1 of the base of a REF_DELTA entry.
+        byte[] baseId;
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <code>PackIndex</code> is a memory-mapped <code>.idx</code> file (version 1 or 2). Objects are found with the fan-out
+ * table and a binary search over the sorted SHA1 table, reading the mapping with absolute gets: a lookup allocates
+ * nothing and needs no lock, so one index can be shared by any number of threads.
+ */
+public class PackIndex {
+
+    // Magic number of the version 2 index: "\377tOc".
+    private static final int       V2_MAGIC     = 0xff744f63;
+
+    // Size of the fan-out table.
+    private static final int       FANOUT_SIZE  = 256 * 4;
+
+    // The .idx file.
+    private final File             indexFile;
+
+    // The mapped content of the .idx file.
+    private final ByteBuffer       index;
+
+    // Version of the .idx file (1 or 2).
+    private final int              version;
+
+    // Number of objects in the pack.
+    private final int              objectCount;
+
+    // Offset of the fan-out table.
+    private final int              fanoutStart;
+
+    // Offset of the first SHA1 of the SHA1 table.
+    private final int              namesStart;
+
+    // Distance between two SHA1s of the SHA1 table.
+    private final int              nameStride;
+
+    // Offset of the 32 bits offsets table (v2 only).
+    private final int              offsetsStart;
+
+    // Offset of the 64 bits offsets table (v2 only).
+    private final int              largeOffsetsStart;
+
+    /**
+     * Constructor. Maps the index file in memory.
+     *
+     * @param indexFile The <code>.idx</code> file.
+     * @throws IOException Thrown if the index can't be mapped, or is not a valid index.
+     */
+    public PackIndex(File indexFile) throws IOException {
+        this.indexFile = indexFile;
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            // the mapping stays valid once the channel is closed
+            index = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if (index.capacity() < FANOUT_SIZE) {
+            throw new IOException("Truncated pack index { index=[" + indexFile.getPath() + "] }");
+        }
+
+        if (index.getInt(0) == V2_MAGIC) {
+            version = index.getInt(4);
+            if (version != 2) {
+                throw new IOException("Unsupported pack index version { index=[" + indexFile.getPath()
+                        + "], version=[" + version + "] }");
+            }
+            fanoutStart = 8;
+            objectCount = index.getInt(fanoutStart + 255 * 4);
+            namesStart = fanoutStart + FANOUT_SIZE;
+            nameStride = ObjectId.RAW_LENGTH;
+            // the CRC32 table sits between the SHA1 table and the offsets table
+            offsetsStart = namesStart + objectCount * (ObjectId.RAW_LENGTH + 4);
+            largeOffsetsStart = offsetsStart + objectCount * 4;
+        }
+        else {
+            version = 1;
+            fanoutStart = 0;
+            objectCount = index.getInt(fanoutStart + 255 * 4);
+            // each entry is a 4 bytes offset followed by the SHA1
+            namesStart = FANOUT_SIZE + 4;
+            nameStride = 4 + ObjectId.RAW_LENGTH;
+            offsetsStart = FANOUT_SIZE;
+            largeOffsetsStart = -1;
+        }
+        if (index.capacity() < namesStart + (long) objectCount * nameStride) {
+            throw new IOException("Truncated pack index { index=[" + indexFile.getPath() + "] }");
+        }
+    }
+
+    /**
+     * @return the .idx file
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * @return the version of the index (1 or 2)
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of objects in the pack
+     */
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * Finds the offset of an object in the pack.
+     *
+     * @param id An array containing the raw SHA1 of the object.
+     * @param idOffset The position of the SHA1 in <code>id</code>.
+     * @return The offset of the object in the pack, or -1 if the pack doesn't contain the object.
+     */
+    public long findOffset(byte[] id, int idOffset) {
+        int first = id[idOffset] & 0xff;
+        int low = (first == 0) ? 0 : index.getInt(fanoutStart + (first - 1) * 4);
+        int high = index.getInt(fanoutStart + first * 4);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareName(mid, id, idOffset);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid;
+            }
+            else {
+                return getOffset(mid);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the offset of an object in the pack.
+     *
+     * @param id The raw SHA1 of the object.
+     * @return The offset of the object in the pack, or -1 if the pack doesn't contain the object.
+     */
+    public long findOffset(byte[] id) {
+        return findOffset(id, 0);
+    }
+
+    /**
+     * Finds the offset of an object in the pack, comparing its hexadecimal SHA1 with the index: nothing is allocated.
+     *
+     * @param sha1 The hexadecimal SHA1 of the object.
+     * @return The offset of the object in the pack, or -1 if the pack doesn't contain the object.
+     */
+    public long findOffset(String sha1) {
+        int first = ObjectId.rawByte(sha1, 0);
+        int low = (first == 0) ? 0 : index.getInt(fanoutStart + (first - 1) * 4);
+        int high = index.getInt(fanoutStart + first * 4);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareName(mid, sha1);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid;
+            }
+            else {
+                return getOffset(mid);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the raw SHA1 of the n-th object of the index, in SHA1 order.
+     *
+     * @param position The position of the object in the index.
+     * @param id The array receiving the SHA1.
+     * @param idOffset The position of the SHA1 in <code>id</code>.
+     */
+    public void getObjectId(int position, byte[] id, int idOffset) {
+        int nameOffset = namesStart + position * nameStride;
+        for (int i = 0; i < ObjectId.RAW_LENGTH; i++) {
+            id[idOffset + i] = index.get(nameOffset + i);
+        }
+    }
+
+    /**
+     * Gets the offset in the pack of the n-th object of the index, in SHA1 order.
+     *
+     * @param position The position of the object in the index.
+     * @return The offset of the object in the pack.
+     */
+    public long getOffset(int position) {
+        if (version == 1) {
+            return index.getInt(offsetsStart + position * nameStride) & 0xffffffffL;
+        }
+        int offset = index.getInt(offsetsStart + position * 4);
+        if ((offset & 0x80000000) == 0) {
+            return offset;
+        }
+        // large offset: the value is the position in the 64 bits offsets table
+        return index.getLong(largeOffsetsStart + (offset & 0x7fffffff) * 8);
+    }
+
+    private int compareName(int position, byte[] id, int idOffset) {
+        int nameOffset = namesStart + position * nameStride;
+        for (int i = 0; i < ObjectId.RAW_LENGTH; i++) {
+            int a = index.get(nameOffset + i) & 0xff;
+            int b = id[idOffset + i] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    private int compareName(int position, String sha1) {
+        int nameOffset = namesStart + position * nameStride;
+        for (int i = 0; i < ObjectId.RAW_LENGTH; i++) {
+            int a = index.get(nameOffset + i) & 0xff;
+            int b = ObjectId.rawByte(sha1, i);
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,646 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.utilities.CheckUtilities;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
+/**
+ * <code>PackWriter</code> writes objects directly in a new pack of a repository (a <code>.pack</code> file and its
+ * version 2 <code>.idx</code> file), without running git. Importing many objects this way doesn't create a file per
+ * object, and they are found through a single index afterwards.
+ * 
+ * Each object is deflated and appended to a temporary pack as soon as it is added. An object can be stored as a delta
+ * (OFS_DELTA) against one of the last objects of the same type, kept in a window of
+ * <code>getDeltaWindow()</code> objects of at most <code>getMaxDeltaObjectSize()</code> bytes each: the memory used
+ * is bounded by these two settings, plus a few bytes by object for the index. Larger objects are streamed without
+ * delta. <code>finish()</code> completes the pack and the index, and moves them in <code>objects/pack</code>, the
+ * index last, so readers never see a pack without its index.
+ * 
+ * The objects which already exist in the repository, or in the pack, are not written again. A writer is used by one
+ * thread, and must be closed.
+ */
+public class PackWriter {
+
+    // Magic number of a pack: "PACK".
+    private static final int          PACK_MAGIC            = 0x5041434b;
+
+    // Magic number of the version 2 index: "\377tOc".
+    private static final int          IDX_V2_MAGIC          = 0xff744f63;
+
+    // Size of the buffers.
+    private static final int          BUFFER_SIZE           = 64 * 1024;
+
+    // Objects smaller than this size are not worth a delta.
+    private static final int          MIN_DELTA_OBJECT_SIZE = 64;
+
+    // The object database of the repository, used to find the objects which already exist.
+    private final ObjectDatabase      db;
+
+    // The pack directory of the repository.
+    private final File                packDir;
+
+    // The objects written in the pack, by SHA1.
+    private final Map<String, Entry>  entries               = new HashMap<String, Entry>();
+
+    // The last objects written, candidate bases for the deltas, the most recent first.
+    private final LinkedList<Base>    window                = new LinkedList<Base>();
+
+    // The deflater of the entries, reset between entries.
+    private final Deflater            deflater              = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    // The temporary pack.
+    private final File                packTmp;
+
+    // The channel of the temporary pack.
+    private final FileChannel         channel;
+
+    // The output of the entries, on the channel.
+    private final PackOutput          out;
+
+    // The number of objects kept as candidate bases.
+    private int                       deltaWindow           = 10;
+
+    // The size of the largest object kept as candidate base or stored as a delta.
+    private int                       maxDeltaObjectSize    = 1024 * 1024;
+
+    // The length of the longest delta chain.
+    private int                       maxDeltaDepth         = 50;
+
+    // true once the pack is finished or closed.
+    private boolean                   closed;
+
+    /**
+     * Constructor. Creates the temporary pack.
+     * 
+     * @param db The object database of the repository.
+     * @param packDir The pack directory of the repository.
+     * @throws JavaGitException Thrown if the temporary pack can't be created.
+     */
+    PackWriter(ObjectDatabase db, File packDir) throws JavaGitException {
+        this.db = db;
+        this.packDir = packDir;
+        try {
+            if (!packDir.mkdirs() && !packDir.isDirectory()) {
+                throw new IOException("Unable to create the directory { path=[" + packDir.getPath() + "] }");
+            }
+            this.packTmp = File.createTempFile("tmp_pack_", null, packDir);
+            this.channel = new RandomAccessFile(packTmp, "rw").getChannel();
+            this.out = new PackOutput(channel);
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(PACK_MAGIC);
+            header.writeInt(2);
+            // the number of objects is written by finish()
+            header.writeInt(0);
+        } catch (IOException e) {
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { path=["
+                    + packDir.getPath() + "] }", e);
+        }
+    }
+
+    /**
+     * @return the number of last objects kept as candidate bases of the deltas
+     */
+    public int getDeltaWindow() {
+        return deltaWindow;
+    }
+
+    /**
+     * Sets the number of last objects kept as candidate bases of the deltas. 0 disables the deltas.
+     * 
+     * @param deltaWindow The number of candidate bases.
+     */
+    public void setDeltaWindow(int deltaWindow) {
+        CheckUtilities.checkIntArgumentGreaterThan(deltaWindow, -1, "deltaWindow");
+        this.deltaWindow = deltaWindow;
+        while (window.size() > deltaWindow) {
+            window.removeLast();
+        }
+    }
+
+    /**
+     * @return the size of the largest object kept as candidate base or stored as a delta, in bytes
+     */
+    public int getMaxDeltaObjectSize() {
+        return maxDeltaObjectSize;
+    }
+
+    /**
+     * Sets the size of the largest object kept as candidate base or stored as a delta. The larger objects are streamed
+     * in the pack as they are read.
+     * 
+     * @param maxDeltaObjectSize The size, in bytes.
+     */
+    public void setMaxDeltaObjectSize(int maxDeltaObjectSize) {
+        CheckUtilities.checkIntArgumentGreaterThan(maxDeltaObjectSize, -1, "maxDeltaObjectSize");
+        this.maxDeltaObjectSize = maxDeltaObjectSize;
+    }
+
+    /**
+     * @return the number of objects written in the pack
+     */
+    public int getObjectCount() {
+        return entries.size();
+    }
+
+    /**
+     * Adds an object held in memory.
+     * 
+     * @param type The type of the object.
+     * @param data The content of the object.
+     * @return The SHA1 of the object.
+     * @throws JavaGitException Thrown if the object can't be written.
+     */
+    public String add(ObjectType type, byte[] data) throws JavaGitException {
+        CheckUtilities.checkNullArgument(type, "type");
+        CheckUtilities.checkNullArgument(data, "data");
+        checkOpen();
+        String sha1 = LooseObjectWriter.computeId(type, data);
+        if (entries.containsKey(sha1) || db.has(sha1)) {
+            return sha1;
+        }
+
+        boolean deltaCandidate = data.length >= MIN_DELTA_OBJECT_SIZE && data.length <= maxDeltaObjectSize;
+        Base base = null;
+        byte[] delta = null;
+        if (deltaCandidate) {
+            int maxSize = data.length / 2;
+            for (Base candidate : window) {
+                if (candidate.type != type || candidate.depth >= maxDeltaDepth) {
+                    continue;
+                }
+                byte[] d = candidate.getEncoder().encode(data, maxSize);
+                if (null != d) {
+                    base = candidate;
+                    delta = d;
+                    maxSize = d.length - 1;
+                }
+            }
+        }
+
+        long offset = out.getPosition();
+        try {
+            out.startEntry();
+            if (null == delta) {
+                writeEntryHeader(type.getPackCode(), data.length);
+                deflate(data);
+            }
+            else {
+                writeEntryHeader(PackFile.OFS_DELTA, delta.length);
+                writeBaseOffset(offset - base.offset);
+                deflate(delta);
+            }
+        } catch (IOException e) {
+            rollback(offset);
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { object=[" + sha1
+                    + "] }", e);
+        }
+        entries.put(sha1, new Entry(ObjectId.toRaw(sha1), offset, out.getCrc()));
+
+        if (deltaCandidate && deltaWindow > 0) {
+            window.addFirst(new Base(type, data, offset, (null == base) ? 0 : base.depth + 1));
+            if (window.size() > deltaWindow) {
+                window.removeLast();
+            }
+        }
+        return sha1;
+    }
+
+    /**
+     * Adds an object read from a stream. The stream is read until <code>size</code> bytes are read, and is not
+     * closed. An object larger than <code>getMaxDeltaObjectSize()</code> is streamed in the pack, it is never held
+     * in memory.
+     * 
+     * @param type The type of the object.
+     * @param size The size of the content.
+     * @param in The content of the object.
+     * @return The SHA1 of the object.
+     * @throws JavaGitException Thrown if the object can't be written, or if the stream doesn't have
+     *         <code>size</code> bytes. The writer can still be used.
+     */
+    public String add(ObjectType type, long size, InputStream in) throws JavaGitException {
+        CheckUtilities.checkNullArgument(type, "type");
+        CheckUtilities.checkNullArgument(in, "input stream");
+        checkOpen();
+        long offset = out.getPosition();
+        try {
+            if (size <= maxDeltaObjectSize) {
+                byte[] data = new byte[(int) size];
+                readFully(in, data, data.length);
+                return add(type, data);
+            }
+
+            MessageDigest digest = LooseObjectWriter.newDigest();
+            digest.update(LooseObjectWriter.header(type, size));
+            out.startEntry();
+            writeEntryHeader(type.getPackCode(), size);
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = size;
+            while (remaining > 0) {
+                int n = (int) Math.min(buffer.length, remaining);
+                readFully(in, buffer, n);
+                digest.update(buffer, 0, n);
+                deflated.write(buffer, 0, n);
+                remaining -= n;
+            }
+            deflated.finish();
+            deflater.reset();
+
+            String sha1 = ObjectId.toString(digest.digest(), 0);
+            if (entries.containsKey(sha1) || db.has(sha1)) {
+                // the object was known only once it was read
+                rollback(offset);
+            }
+            else {
+                entries.put(sha1, new Entry(ObjectId.toRaw(sha1), offset, out.getCrc()));
+            }
+            return sha1;
+        } catch (IOException e) {
+            rollback(offset);
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { type=[" + type
+                    + "], size=[" + size + "] }", e);
+        }
+    }
+
+    /**
+     * Completes the pack and its index, and moves them in the pack directory of the repository. The writer is closed.
+     * 
+     * @return The <code>.pack</code> file, or null if no object was written.
+     * @throws JavaGitException Thrown if the pack or its index can't be written.
+     */
+    public File finish() throws JavaGitException {
+        checkOpen();
+        if (entries.isEmpty()) {
+            close();
+            return null;
+        }
+        File idxTmp = null;
+        try {
+            out.flush();
+            ByteBuffer count = ByteBuffer.allocate(4);
+            count.putInt(0, entries.size());
+            channel.write(count, 8);
+            byte[] packChecksum = checksum();
+            channel.write(ByteBuffer.wrap(packChecksum), channel.size());
+            channel.close();
+
+            idxTmp = File.createTempFile("tmp_idx_", null, packDir);
+            writeIndex(idxTmp, packChecksum);
+
+            String name = "pack-" + ObjectId.toString(packChecksum, 0);
+            File pack = new File(packDir, name + ".pack");
+            File idx = new File(packDir, name + ".idx");
+            packTmp.setReadOnly();
+            idxTmp.setReadOnly();
+            Files.move(packTmp.toPath(), pack.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(idxTmp.toPath(), idx.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            db.packsChanged();
+            return pack;
+        } catch (IOException e) {
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { pack=["
+                    + packTmp.getPath() + "] }", e);
+        } finally {
+            close();
+            if (null != idxTmp) {
+                idxTmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Closes the writer. If the pack is not finished, it is deleted.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            window.clear();
+            deflater.end();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+        }
+        packTmp.delete();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The pack writer is closed { pack=[" + packTmp.getPath() + "] }");
+        }
+    }
+
+    /**
+     * Drops the end of the pack, from the given offset: an entry which failed, or which wasn't needed.
+     */
+    private void rollback(long offset) throws JavaGitException {
+        deflater.reset();
+        try {
+            out.truncate(offset);
+        } catch (IOException e) {
+            close();
+            throw new JavaGitException(100104, ExceptionMessageMap.getMessage("100104") + " { pack=["
+                    + packTmp.getPath() + "] }", e);
+        }
+    }
+
+    /**
+     * Writes the type and the inflated size of an entry: 3 bits of type and 4 bits of size, then 7 bits of size per
+     * byte.
+     */
+    private void writeEntryHeader(int typeCode, long size) throws IOException {
+        int c = (typeCode << 4) | (int) (size & 0x0f);
+        size >>>= 4;
+        while (size != 0) {
+            out.write(c | 0x80);
+            c = (int) (size & 0x7f);
+            size >>>= 7;
+        }
+        out.write(c);
+    }
+
+    /**
+     * Writes the distance to the base of an OFS_DELTA entry, in the encoding read by <code>PackFile</code>.
+     */
+    private void writeBaseOffset(long distance) throws IOException {
+        byte[] buffer = new byte[10];
+        int pos = buffer.length - 1;
+        buffer[pos] = (byte) (distance & 0x7f);
+        while ((distance >>>= 7) != 0) {
+            buffer[--pos] = (byte) (0x80 | (--distance & 0x7f));
+        }
+        out.write(buffer, pos, buffer.length - pos);
+    }
+
+    private void deflate(byte[] data) throws IOException {
+        DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+        deflated.write(data);
+        deflated.finish();
+        deflater.reset();
+    }
+
+    /**
+     * Computes the SHA1 of the whole pack, once its header is complete.
+     */
+    private byte[] checksum() throws IOException {
+        MessageDigest digest = LooseObjectWriter.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = 0;
+        while (true) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n < 0) {
+                break;
+            }
+            digest.update(buffer.array(), 0, n);
+            pos += n;
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Writes the version 2 index of the pack: the fan-out table, then the sorted SHA1s, the CRC32 of the entries, their
+     * offsets (with a table of 64 bits offsets for the offsets over 2 GB), the checksum of the pack and the checksum of
+     * the index.
+     */
+    private void writeIndex(File idxTmp, byte[] packChecksum) throws IOException {
+        List<Entry> sorted = new ArrayList<Entry>(entries.values());
+        Collections.sort(sorted);
+
+        MessageDigest digest = LooseObjectWriter.newDigest();
+        DigestOutputStream digestOut = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(idxTmp),
+                BUFFER_SIZE), digest);
+        DataOutputStream idx = new DataOutputStream(digestOut);
+        try {
+            idx.writeInt(IDX_V2_MAGIC);
+            idx.writeInt(2);
+
+            int[] fanout = new int[256];
+            for (Entry entry : sorted) {
+                fanout[entry.id[0] & 0xff]++;
+            }
+            int total = 0;
+            for (int i = 0; i < 256; i++) {
+                total += fanout[i];
+                idx.writeInt(total);
+            }
+            for (Entry entry : sorted) {
+                idx.write(entry.id);
+            }
+            for (Entry entry : sorted) {
+                idx.writeInt(entry.crc);
+            }
+            ByteArrayOutputStream largeOffsets = new ByteArrayOutputStream();
+            DataOutputStream large = new DataOutputStream(largeOffsets);
+            int largeCount = 0;
+            for (Entry entry : sorted) {
+                if (entry.offset > 0x7fffffffL) {
+                    idx.writeInt(0x80000000 | largeCount++);
+                    large.writeLong(entry.offset);
+                }
+                else {
+                    idx.writeInt((int) entry.offset);
+                }
+            }
+            largeOffsets.writeTo(idx);
+            idx.write(packChecksum);
+            idx.flush();
+            digestOut.on(false);
+            idx.write(digest.digest());
+        } finally {
+            idx.close();
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new IOException("Content shorter than its size");
+            }
+            read += n;
+        }
+    }
+
+    /**
+     * An object of the pack, for the index.
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        // The raw SHA1 of the object.
+        final byte[] id;
+
+        // The offset of the entry in the pack.
+        final long   offset;
+
+        // The CRC32 of the entry, as stored in the pack.
+        final int    crc;
+
+        Entry(byte[] id, long offset, int crc) {
+            this.id = id;
+            this.offset = offset;
+            this.crc = crc;
+        }
+
+        public int compareTo(Entry other) {
+            for (int i = 0; i < ObjectId.RAW_LENGTH; i++) {
+                int diff = (id[i] & 0xff) - (other.id[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * A candidate base of the deltas, in the window.
+     */
+    private static final class Base {
+
+        // The type of the object.
+        final ObjectType     type;
+
+        // The content of the object.
+        final byte[]         data;
+
+        // The offset of the entry in the pack.
+        final long           offset;
+
+        // The length of the delta chain of the entry.
+        final int            depth;
+
+        // The index of the content, created when the object is first used as a base.
+        private DeltaEncoder encoder;
+
+        Base(ObjectType type, byte[] data, long offset, int depth) {
+            this.type = type;
+            this.data = data;
+            this.offset = offset;
+            this.depth = depth;
+        }
+
+        DeltaEncoder getEncoder() {
+            if (null == encoder) {
+                encoder = new DeltaEncoder(data);
+            }
+            return encoder;
+        }
+    }
+
+    /**
+     * The buffered output of the pack entries, which keeps the position in the pack and the CRC32 of the current entry.
+     */
+    private static final class PackOutput extends OutputStream {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer  buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private final CRC32       crc    = new CRC32();
+
+        private long              position;
+
+        PackOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        void startEntry() {
+            crc.reset();
+        }
+
+        int getCrc() {
+            return (int) crc.getValue();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+            crc.update(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            position += len;
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void truncate(long offset) throws IOException {
+            flush();
+            channel.truncate(offset);
+            channel.position(offset);
+            position = offset;
+        }
+    }
+}
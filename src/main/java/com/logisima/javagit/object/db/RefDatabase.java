@@ -0,0 +1,442 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.utilities.ExceptionMessageMap;
+
+/**
+ * <code>RefDatabase</code> reads the refs of a repository directly from its git directory: <code>HEAD</code>, the
+ * loose refs under <code>refs/</code> and the <code>packed-refs</code> file.
+ * 
+ * The refs are read into an immutable <code>Snapshot</code>, which is kept until the modification time or the size of
+ * <code>HEAD</code>, <code>packed-refs</code> or of a directory under <code>refs/</code> changes. Git writes a ref
+ * into a lock file renamed over the ref, so every change of a loose ref changes the modification time of its
+ * directory: checking a snapshot costs a few stat calls, whatever the number of refs.
+ */
+public class RefDatabase {
+
+    // Prefix of a symbolic ref file.
+    private static final String SYMREF_PREFIX    = "ref: ";
+
+    // Maximum number of symbolic refs followed, to stop on cycles.
+    private static final int    MAX_SYMREF_DEPTH = 5;
+
+    /*
+     * A file modified less than this before a snapshot was read may be modified again in the same tick of its
+     * modification time, without any visible change: such a snapshot is read again on the next access.
+     */
+    private static final long   RACY_MARGIN      = 1000;
+
+    // The git directory of the repository, holding HEAD.
+    private final File          gitDir;
+
+    // The directory holding refs/ and packed-refs, shared by the linked working trees.
+    private final File          commonDir;
+
+    // The last snapshot of the refs, null if the refs were never read.
+    private volatile Snapshot   snapshot;
+
+    /**
+     * Constructor.
+     *
+     * @param gitDir The git directory of the repository.
+     */
+    public RefDatabase(File gitDir) {
+        this(gitDir, gitDir);
+    }
+
+    /**
+     * Constructor for a linked working tree: its <code>HEAD</code> is read from its own git directory, the other refs
+     * from the repository it shares.
+     *
+     * @param gitDir The git directory of the working tree.
+     * @param commonDir The git directory of the shared repository (see <code>GitDir.findCommon()</code>).
+     */
+    public RefDatabase(File gitDir, File commonDir) {
+        this.gitDir = gitDir;
+        this.commonDir = commonDir;
+    }
+
+    /**
+     * Gets a snapshot of the refs. The last snapshot is returned as long as the refs haven't changed.
+     *
+     * @return The snapshot of the refs.
+     * @throws JavaGitException Thrown if the refs can't be read.
+     */
+    public Snapshot getSnapshot() throws JavaGitException {
+        Snapshot current = snapshot;
+        if (null == current || current.isModified()) {
+            synchronized (this) {
+                current = snapshot;
+                if (null == current || current.isModified()) {
+                    current = readSnapshot();
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Gets the full name of the branch <code>HEAD</code> points to.
+     *
+     * @return The full name of the branch (for example <code>refs/heads/master</code>), or null if <code>HEAD</code> is
+     *         detached.
+     * @throws JavaGitException Thrown if <code>HEAD</code> can't be read.
+     */
+    public String getFullBranch() throws JavaGitException {
+        return getSnapshot().getFullBranch();
+    }
+
+    /**
+     * Resolves a ref name to a SHA1, following symbolic refs. Short names are searched with the same rules as git:
+     * <code>name</code>, <code>refs/name</code>, <code>refs/tags/name</code>, <code>refs/heads/name</code>,
+     * <code>refs/remotes/name</code> and <code>refs/remotes/name/HEAD</code>.
+     *
+     * @param name The name of the ref.
+     * @return The SHA1 the ref points to, or null if the ref doesn't exist.
+     * @throws JavaGitException Thrown if the refs can't be read.
+     */
+    public String resolve(String name) throws JavaGitException {
+        return resolve(getSnapshot(), name);
+    }
+
+    /**
+     * Resolves a ref name to a SHA1 with a snapshot of the refs.
+     */
+    String resolve(Snapshot refs, String name) throws JavaGitException {
+        String[] candidates = { name, "refs/" + name, "refs/tags/" + name, "refs/heads/" + name,
+                "refs/remotes/" + name, "refs/remotes/" + name + "/HEAD" };
+        for (String candidate : candidates) {
+            String value = readRef(refs, candidate);
+            for (int depth = 0; null != value && value.startsWith(SYMREF_PREFIX); depth++) {
+                if (depth == MAX_SYMREF_DEPTH) {
+                    return null;
+                }
+                value = readRef(refs, value.substring(SYMREF_PREFIX.length()).trim());
+            }
+            if (null != value && ObjectId.isId(value)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the refs whose full name starts with a prefix, with the SHA1 they point to. Symbolic refs (such as
+     * <code>refs/remotes/origin/HEAD</code>) are not returned.
+     *
+     * @param prefix The prefix of the refs, for example <code>refs/heads/</code>.
+     * @return The refs sorted by name.
+     * @throws JavaGitException Thrown if the refs can't be read.
+     */
+    public SortedMap<String, String> getRefs(String prefix) throws JavaGitException {
+        return getSnapshot().getRefs(prefix);
+    }
+
+    /**
+     * Reads the value of a ref: a SHA1, or the target of a symbolic ref prefixed with "ref: ". The refs outside of
+     * <code>refs/</code>, other than <code>HEAD</code> (such as <code>ORIG_HEAD</code>), are read from their file.
+     */
+    private String readRef(Snapshot refs, String name) throws JavaGitException {
+        if ("HEAD".equals(name)) {
+            return refs.head;
+        }
+        if (name.startsWith("refs/")) {
+            String target = refs.symbolicRefs.get(name);
+            return (null == target) ? refs.refs.get(name) : SYMREF_PREFIX + target;
+        }
+        File file = new File(gitDir, name);
+        return file.isFile() ? readRefFile(file) : null;
+    }
+
+    /**
+     * Reads all the refs. Each file or directory is stamped before it is read, so that a change made during the read is
+     * seen by the next check.
+     */
+    private Snapshot readSnapshot() throws JavaGitException {
+        long readTime = System.currentTimeMillis();
+        List<Path> stamped = new ArrayList<Path>();
+        List<long[]> stamps = new ArrayList<long[]>();
+        SortedMap<String, String> refs = new TreeMap<String, String>();
+        Map<String, String> peeled = new HashMap<String, String>();
+        Map<String, String> symbolicRefs = new HashMap<String, String>();
+
+        Path head = new File(gitDir, "HEAD").toPath();
+        stamp(head, stamped, stamps);
+        String headValue = readRefFile(head.toFile());
+
+        Path packedRefs = new File(commonDir, "packed-refs").toPath();
+        stamp(packedRefs, stamped, stamps);
+        readPackedRefs(packedRefs.toFile(), refs, peeled);
+
+        // loose refs override packed refs
+        scanLooseRefs(new File(commonDir, "refs").toPath(), "refs/", refs, peeled, symbolicRefs, stamped, stamps);
+
+        boolean racy = false;
+        for (long[] stamp : stamps) {
+            racy |= stamp[0] + RACY_MARGIN > readTime;
+        }
+        return new Snapshot(headValue, refs, peeled, symbolicRefs, stamped, stamps, racy);
+    }
+
+    private void scanLooseRefs(Path dir, String dirName, SortedMap<String, String> refs, Map<String, String> peeled,
+            Map<String, String> symbolicRefs, List<Path> stamped, List<long[]> stamps) throws JavaGitException {
+        stamp(dir, stamped, stamps);
+        try {
+            DirectoryStream<Path> stream;
+            try {
+                stream = Files.newDirectoryStream(dir);
+            } catch (NoSuchFileException e) {
+                return;
+            }
+            try {
+                for (Path child : stream) {
+                    String fileName = child.getFileName().toString();
+                    String name = dirName + fileName;
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        scanLooseRefs(child, name + "/", refs, peeled, symbolicRefs, stamped, stamps);
+                    }
+                    else if (!fileName.endsWith(".lock")) {
+                        String value = readRefFile(child.toFile());
+                        if (null != value && ObjectId.isId(value)) {
+                            refs.put(name, value);
+                            peeled.remove(name);
+                        }
+                        else if (null != value && value.startsWith(SYMREF_PREFIX)) {
+                            symbolicRefs.put(name, value.substring(SYMREF_PREFIX.length()).trim());
+                        }
+                    }
+                }
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new JavaGitException(100103, ExceptionMessageMap.getMessage("100103") + " { ref=[" + dir + "] }", e);
+        }
+    }
+
+    private String readRefFile(File file) throws JavaGitException {
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line = br.readLine();
+                return (null == line) ? null : line.trim();
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            if (!file.exists()) {
+                return null;
+            }
+            throw new JavaGitException(100103, ExceptionMessageMap.getMessage("100103") + " { ref=["
+                    + file.getPath() + "] }", e);
+        }
+    }
+
+    /**
+     * Reads the <code>packed-refs</code> file. A peeled line (starting with '^') gives the object the annotated tag of
+     * the previous line points to.
+     */
+    private void readPackedRefs(File file, SortedMap<String, String> refs, Map<String, String> peeled)
+            throws JavaGitException {
+        try {
+            BufferedReader br;
+            try {
+                br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            } catch (IOException e) {
+                if (!file.exists()) {
+                    return;
+                }
+                throw e;
+            }
+            try {
+                String line;
+                String last = null;
+                while (null != (line = br.readLine())) {
+                    if (line.length() == ObjectId.STRING_LENGTH + 1 && line.charAt(0) == '^' && null != last) {
+                        peeled.put(last, line.substring(1));
+                        continue;
+                    }
+                    last = null;
+                    if (line.length() <= ObjectId.STRING_LENGTH || line.charAt(0) == '#' || line.charAt(0) == '^') {
+                        continue;
+                    }
+                    last = line.substring(ObjectId.STRING_LENGTH + 1).trim();
+                    refs.put(last, line.substring(0, ObjectId.STRING_LENGTH));
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            throw new JavaGitException(100103, ExceptionMessageMap.getMessage("100103") + " { ref=["
+                    + file.getPath() + "] }", e);
+        }
+    }
+
+    /**
+     * Records the modification time and the size of a file, -1 if the file doesn't exist.
+     */
+    private static void stamp(Path path, List<Path> stamped, List<long[]> stamps) {
+        stamped.add(path);
+        stamps.add(readStamp(path));
+    }
+
+    private static long[] readStamp(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new long[] { attrs.lastModifiedTime().toMillis(), attrs.size() };
+        } catch (IOException e) {
+            return new long[] { -1, -1 };
+        }
+    }
+
+    /**
+     * <code>Snapshot</code> is an immutable view of the refs of a repository, sorted by name.
+     */
+    public static final class Snapshot {
+
+        // The content of HEAD.
+        private final String                    head;
+
+        // The SHA1 of each ref, by full name.
+        private final SortedMap<String, String> refs;
+
+        // The object each packed annotated tag points to, by full name.
+        private final Map<String, String>       peeled;
+
+        // The target of each symbolic ref under refs/, by full name.
+        private final Map<String, String>       symbolicRefs;
+
+        // The files and directories checked for changes, with their modification time and size.
+        private final Path[]                    stamped;
+        private final long[][]                  stamps;
+
+        // true if a file was modified just before the snapshot was read.
+        private final boolean                   racy;
+
+        Snapshot(String head, SortedMap<String, String> refs, Map<String, String> peeled,
+                Map<String, String> symbolicRefs, List<Path> stamped, List<long[]> stamps, boolean racy) {
+            this.head = head;
+            this.refs = Collections.unmodifiableSortedMap(refs);
+            this.peeled = peeled;
+            this.symbolicRefs = symbolicRefs;
+            this.stamped = stamped.toArray(new Path[stamped.size()]);
+            this.stamps = stamps.toArray(new long[stamps.size()][]);
+            this.racy = racy;
+        }
+
+        /**
+         * Checks if the refs may have changed since the snapshot was read.
+         *
+         * @return true if the snapshot has to be read again.
+         */
+        public boolean isModified() {
+            if (racy) {
+                return true;
+            }
+            for (int i = 0; i < stamped.length; i++) {
+                long[] stamp = readStamp(stamped[i]);
+                if (stamp[0] != stamps[i][0] || stamp[1] != stamps[i][1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets the full name of the branch <code>HEAD</code> points to.
+         *
+         * @return The full name of the branch, or null if <code>HEAD</code> is detached.
+         */
+        public String getFullBranch() {
+            if (null != head && head.startsWith(SYMREF_PREFIX)) {
+                return head.substring(SYMREF_PREFIX.length()).trim();
+            }
+            return null;
+        }
+
+        /**
+         * Gets the SHA1 a ref points to. Symbolic refs are not followed.
+         *
+         * @param name The full name of the ref, for example <code>refs/tags/v1.0</code>.
+         * @return The SHA1, or null if there is no such ref.
+         */
+        public String getObjectId(String name) {
+            return refs.get(name);
+        }
+
+        /**
+         * Gets the object an annotated tag points to, as recorded in <code>packed-refs</code>.
+         *
+         * @param name The full name of the tag.
+         * @return The SHA1 of the object the tag points to, or null if the tag is not a packed annotated tag.
+         */
+        public String getPeeledObjectId(String name) {
+            return peeled.get(name);
+        }
+
+        /**
+         * Gets the target of a symbolic ref under <code>refs/</code>, as <code>refs/remotes/origin/HEAD</code>.
+         *
+         * @param name The full name of the symbolic ref.
+         * @return The full name of the target, or null if the ref is not a symbolic ref.
+         */
+        public String getSymbolicRefTarget(String name) {
+            return symbolicRefs.get(name);
+        }
+
+        /**
+         * Gets the refs whose full name starts with a prefix. Symbolic refs are not returned.
+         *
+         * @param prefix The prefix of the refs, for example <code>refs/heads/</code>.
+         * @return A read-only view of the refs, sorted by name.
+         */
+        public SortedMap<String, String> getRefs(String prefix) {
+            return refs.subMap(prefix, prefix + Character.MAX_VALUE);
+        }
+    }
+}
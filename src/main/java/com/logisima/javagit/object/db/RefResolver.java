@@ -0,0 +1,160 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.object.Ref;
+
+/**
+ * <code>RefResolver</code> resolves <code>Ref</code> objects to the SHA1 of the object they name, and caches the
+ * results. The cache is tied to a snapshot of the refs (see <code>RefDatabase.getSnapshot()</code>): it is dropped as
+ * soon as a ref file changes, so a cached SHA1 is never stale. <code>HEAD~n</code> is resolved from the closest
+ * cached <code>HEAD~k</code>, and annotated tags are peeled with the peeled values of <code>packed-refs</code> when
+ * there are some.
+ */
+public class RefResolver {
+
+    // The objects of the repository, to follow parents and peel tags.
+    private final ObjectDatabase db;
+
+    // The refs of the repository.
+    private final RefDatabase    refs;
+
+    // The resolved refs, with the snapshot they were resolved with.
+    private volatile Cache       cache;
+
+    // Number of resolutions found in the cache.
+    private final AtomicLong     hits   = new AtomicLong();
+
+    // Number of resolutions not found in the cache.
+    private final AtomicLong     misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param db The objects of the repository.
+     * @param refs The refs of the repository.
+     */
+    public RefResolver(ObjectDatabase db, RefDatabase refs) {
+        this.db = db;
+        this.refs = refs;
+    }
+
+    /**
+     * Resolves a <code>Ref</code> to a SHA1. <code>HEAD</code> offsets are resolved by following the first parents, and
+     * tags are peeled to the object they point to.
+     *
+     * @param ref The ref to resolve.
+     * @return The SHA1, or null if the ref can't be resolved.
+     * @throws JavaGitException Thrown if the refs or the commits can't be read.
+     */
+    public String resolve(Ref ref) throws JavaGitException {
+        RefDatabase.Snapshot snapshot = refs.getSnapshot();
+        Cache current = cache;
+        if (null == current || current.snapshot != snapshot) {
+            current = new Cache(snapshot);
+            cache = current;
+        }
+        String sha1 = current.ids.get(ref);
+        if (null != sha1) {
+            hits.incrementAndGet();
+            return sha1;
+        }
+        misses.incrementAndGet();
+        sha1 = resolve(current, ref);
+        if (null != sha1) {
+            current.ids.put(ref, sha1);
+        }
+        return sha1;
+    }
+
+    /**
+     * @return the number of resolutions found in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of resolutions not found in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private String resolve(Cache current, Ref ref) throws JavaGitException {
+        RefDatabase.Snapshot snapshot = current.snapshot;
+        switch (ref.getRefType()) {
+        case HEAD:
+            // start from the closest cached ancestor, and cache the commits on the way
+            int offset = ref.getHeadOffset();
+            int depth = offset - 1;
+            String sha1 = null;
+            while (depth >= 0 && null == (sha1 = current.ids.get(Ref.createHeadRef(depth)))) {
+                depth--;
+            }
+            if (null == sha1) {
+                sha1 = refs.resolve(snapshot, "HEAD");
+                depth = 0;
+            }
+            while (depth < offset && null != sha1) {
+                current.ids.put(Ref.createHeadRef(depth), sha1);
+                List<String> parents = db.readCommit(sha1).getParents();
+                sha1 = parents.isEmpty() ? null : parents.get(0);
+                depth++;
+            }
+            return sha1;
+        case SHA1:
+            if (ObjectId.isId(ref.getName())) {
+                return ref.getName().toLowerCase();
+            }
+            return refs.resolve(snapshot, ref.getName());
+        case BRANCH:
+            return refs.resolve(snapshot, "refs/heads/" + ref.getName());
+        case TAG:
+            String name = "refs/tags/" + ref.getName();
+            String peeled = snapshot.getPeeledObjectId(name);
+            return (null != peeled) ? peeled : db.peel(refs.resolve(snapshot, name));
+        case REMOTE:
+            return refs.resolve(snapshot, "refs/remotes/" + ref.toString());
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * The SHA1 of the refs resolved with a snapshot of the refs.
+     */
+    private static final class Cache {
+
+        private final RefDatabase.Snapshot       snapshot;
+
+        private final ConcurrentMap<Ref, String> ids = new ConcurrentHashMap<Ref, String>();
+
+        Cache(RefDatabase.Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <code>TreeObject</code> is a parsed tree: the list of its entries, in the order of the tree.
+ */
+public class TreeObject {
+
+    /**
+     * Mode of a sub-tree.
+     */
+    public static final int   MODE_TREE    = 0040000;
+
+    /**
+     * Mode of a submodule (a commit of another repository).
+     */
+    public static final int   MODE_GITLINK = 0160000;
+
+    // The SHA1 of the tree.
+    private final String      sha1;
+
+    // The entries of the tree.
+    private final List<Entry> entries;
+
+    private TreeObject(String sha1) {
+        this.sha1 = sha1;
+        this.entries = new ArrayList<Entry>();
+    }
+
+    /**
+     * Parses a tree object. Each entry is an octal mode, a space, a NUL terminated name and a raw SHA1.
+     *
+     * @param object The object to parse.
+     * @return The parsed tree.
+     * @throws IllegalArgumentException Thrown if the object is not a tree, or is malformed.
+     */
+    public static TreeObject parse(GitObject object) {
+        if (ObjectType.TREE != object.getType()) {
+            throw new IllegalArgumentException("Not a tree { object=[" + object.getSha1() + "], type=["
+                    + object.getType() + "] }");
+        }
+        TreeObject tree = new TreeObject(object.getSha1());
+        byte[] data = object.getData();
+        int pos = 0;
+        while (pos < data.length) {
+            int mode = 0;
+            while (pos < data.length && data[pos] != ' ') {
+                mode = (mode << 3) + (data[pos++] - '0');
+            }
+            int nameStart = ++pos;
+            while (pos < data.length && data[pos] != 0) {
+                pos++;
+            }
+            if (pos + 1 + ObjectId.RAW_LENGTH > data.length) {
+                throw new IllegalArgumentException("Malformed tree { object=[" + object.getSha1() + "] }");
+            }
+            String name = decode(data, nameStart, pos - nameStart);
+            String entrySha1 = ObjectId.toString(data, pos + 1);
+            tree.entries.add(new Entry(mode, name, entrySha1));
+            pos += 1 + ObjectId.RAW_LENGTH;
+        }
+        return tree;
+    }
+
+    /**
+     * @return the SHA1 of the tree
+     */
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * @return the entries of the tree, in the order of the tree
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    private static String decode(byte[] data, int offset, int length) {
+        try {
+            return new String(data, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An entry of a tree: a blob, a symbolic link, a sub-tree or a submodule.
+     */
+    public static class Entry {
+
+        // The mode of the entry.
+        private final int    mode;
+
+        // The name of the entry.
+        private final String name;
+
+        // The SHA1 of the object of the entry.
+        private final String sha1;
+
+        Entry(int mode, String name, String sha1) {
+            this.mode = mode;
+            this.name = name;
+            this.sha1 = sha1;
+        }
+
+        /**
+         * @return the mode of the entry (0100644, 0100755, 0120000, 0040000 or 0160000)
+         */
+        public int getMode() {
+            return mode;
+        }
+
+        /**
+         * @return the name of the entry
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the SHA1 of the object of the entry
+         */
+        public String getSha1() {
+            return sha1;
+        }
+
+        /**
+         * @return true if the entry is a sub-tree
+         */
+        public boolean isTree() {
+            return mode == MODE_TREE;
+        }
+    }
+}
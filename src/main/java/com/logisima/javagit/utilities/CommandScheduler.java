@@ -0,0 +1,241 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
+
+/**
+ * <code>CommandScheduler</code> coordinates the git commands run on a repository: at most
+ * <code>JavaGitConfiguration.getMaxConcurrentReads()</code> read commands run at the same time, and the commands
+ * writing the index (add, commit, reset, ...) run one at a time, in their arrival order. Writers no longer fail on
+ * <code>index.lock</code> because of another command of the same JVM, and a burst of readers doesn't start more
+ * processes than the machine can run.
+ * 
+ * The scheduler is used by <code>ProcessUtilities.runCommand</code> for every command run in a repository. There is
+ * one scheduler per repository, whatever the directory of the repository the commands run in.
+ */
+public class CommandScheduler {
+
+    /**
+     * The git commands writing the index or the working tree.
+     */
+    private static final Set<String>                        WRITE_COMMANDS = new HashSet<String>(Arrays.asList(
+            "add", "am", "apply", "checkout", "cherry-pick", "commit", "merge", "mv", "pull", "read-tree", "rebase",
+            "reset", "revert", "rm", "stash", "update-index"));
+
+    /**
+     * This guy's a per-repository singleton, so we need a static place to store our instances.
+     */
+    private static final InstanceRegistry<CommandScheduler> INSTANCES      = new InstanceRegistry<CommandScheduler>();
+
+    // The number of read commands allowed to run at the same time.
+    private final int                                       maxReads;
+
+    // The permits of the read commands.
+    private final Semaphore                                 reads;
+
+    // The lock of the write commands.
+    private final ReentrantLock                             write;
+
+    // The number of commands completed.
+    private final AtomicLong                                completed;
+
+    /**
+     * Constructor. Private because this class is only available via the getInstance method.
+     * 
+     * @param maxReads The number of read commands allowed to run at the same time.
+     */
+    private CommandScheduler(int maxReads) {
+        this.maxReads = maxReads;
+        this.reads = new Semaphore(maxReads, true);
+        this.write = new ReentrantLock(true);
+        this.completed = new AtomicLong();
+    }
+
+    /**
+     * Static factory method for retrieving the scheduler of a repository.
+     * 
+     * @param workingDirectory <code>File</code> object representing the path to the repository, or to a directory of
+     *        the repository.
+     * @return The <code>CommandScheduler</code> instance of the repository.
+     * @throws JavaGitException Thrown if the path of the repository can't be resolved.
+     */
+    public static CommandScheduler getInstance(File workingDirectory) throws JavaGitException {
+        CheckUtilities.checkNullArgument(workingDirectory, "repository path");
+        File canonicalFile;
+        try {
+            canonicalFile = workingDirectory.getCanonicalFile();
+        } catch (IOException e) {
+            throw new JavaGitException(JavaGitException.REPOSITORY_ERROR, e.getMessage(), e);
+        }
+        String rootPath = findRoot(canonicalFile).getPath();
+
+        CommandScheduler scheduler = INSTANCES.get(rootPath);
+        if (null == scheduler) {
+            scheduler = INSTANCES.putIfAbsent(rootPath, new CommandScheduler(JavaGitConfiguration
+                    .getMaxConcurrentReads()));
+        }
+        return scheduler;
+    }
+
+    /**
+     * Finds the root of the repository containing a directory: the closest directory having a <code>.git</code>
+     * directory or file, or the git directory itself. A directory outside any repository is its own root.
+     * 
+     * @param directory The canonical directory.
+     * @return The root of the repository.
+     */
+    private static File findRoot(File directory) {
+        for (File dir = directory; null != dir; dir = dir.getParentFile()) {
+            if (new File(dir, ".git").exists()) {
+                return dir;
+            }
+            if (new File(dir, "objects").isDirectory() && new File(dir, "HEAD").isFile()) {
+                // a git directory: the one of a working tree belongs to it, a bare repository is its own root
+                File parent = dir.getParentFile();
+                return (".git".equals(dir.getName()) && null != parent) ? parent : dir;
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Tells if a command writes the index, from the git command found in its command line.
+     * 
+     * @param commandLine The command line, starting with the git executable.
+     * @return true if the command has to be serialized with the other write commands.
+     */
+    public static boolean isWriteCommand(List<String> commandLine) {
+        for (int i = 1; i < commandLine.size(); i++) {
+            String arg = commandLine.get(i);
+            if (!arg.startsWith("-")) {
+                return WRITE_COMMANDS.contains(arg);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits until a command can run. Each successful call must be followed by a call to <code>release()</code>.
+     * 
+     * @param writeCommand true for a command writing the index.
+     * @param timeout The maximum time to wait, in milliseconds, or 0 for no limit.
+     * @throws JavaGitException Thrown with the code <code>PROCESS_TIMEOUT</code> if the command couldn't run before the
+     *         timeout, or <code>PROCESS_INTERRUPTED</code> if the thread is interrupted while waiting. The interrupt
+     *         status of the thread is kept.
+     */
+    public void acquire(boolean writeCommand, long timeout) throws JavaGitException {
+        boolean acquired;
+        try {
+            if (timeout <= 0) {
+                if (writeCommand) {
+                    write.lockInterruptibly();
+                }
+                else {
+                    reads.acquire();
+                }
+                acquired = true;
+            }
+            else if (writeCommand) {
+                acquired = write.tryLock(timeout, TimeUnit.MILLISECONDS);
+            }
+            else {
+                acquired = reads.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JavaGitException(JavaGitException.PROCESS_INTERRUPTED,
+                    ExceptionMessageMap.getMessage("020102"), e);
+        }
+        if (!acquired) {
+            throw new JavaGitException(JavaGitException.PROCESS_TIMEOUT, ExceptionMessageMap.getMessage("020103")
+                    + " { timeout=[" + timeout + "ms] }");
+        }
+    }
+
+    /**
+     * Releases the permit taken by <code>acquire()</code>, when the command is done.
+     * 
+     * @param writeCommand true for a command writing the index.
+     */
+    public void release(boolean writeCommand) {
+        if (writeCommand) {
+            write.unlock();
+        }
+        else {
+            reads.release();
+        }
+        completed.incrementAndGet();
+    }
+
+    /**
+     * @return The number of read commands allowed to run at the same time.
+     */
+    public int getMaxConcurrentReads() {
+        return maxReads;
+    }
+
+    /**
+     * @return The number of read commands running.
+     */
+    public int getRunningReads() {
+        return maxReads - reads.availablePermits();
+    }
+
+    /**
+     * @return An estimate of the number of read commands waiting to run.
+     */
+    public int getQueuedReads() {
+        return reads.getQueueLength();
+    }
+
+    /**
+     * @return true if a write command is running.
+     */
+    public boolean isWriteRunning() {
+        return write.isLocked();
+    }
+
+    /**
+     * @return An estimate of the number of write commands waiting to run.
+     */
+    public int getQueuedWrites() {
+        return write.getQueueLength();
+    }
+
+    /**
+     * @return The number of commands completed since the creation of the scheduler.
+     */
+    public long getCompletedCommands() {
+        return completed.get();
+    }
+}
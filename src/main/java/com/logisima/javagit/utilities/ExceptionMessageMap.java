@@ -67,6 +67,7 @@ import java.util.Map;
  * <li>436-437 -- git-show specific JavaGit exceptions</li>
  * <li>438-439 -- git-status specific JavaGit exceptions</li>
  * <li>440-441 -- git-tag specific JavaGit exceptions</li>
+ * <li>442-443 -- git-cat-file specific JavaGit exceptions</li>
  * </ul>
  * </li>
  * </ul>
@@ -114,15 +115,28 @@ public class ExceptionMessageMap {
 
         MESSAGE_MAP.put("020100", "020100: Unable to start sub-process.");
         MESSAGE_MAP.put("020101", "020101: Error reading input from the sub-process.");
+        MESSAGE_MAP.put("020102", "020102: Interrupted while waiting to run the sub-process.");
+        MESSAGE_MAP.put("020103", "020103: The sub-process timed out.");
+        MESSAGE_MAP.put("020104", "020104: The sub-process was interrupted.");
 
         MESSAGE_MAP.put("100000", "100000: Incorrect refType type.");
         MESSAGE_MAP.put("100001", "100001: Error retrieving git version.");
         MESSAGE_MAP.put("100002", "100002: Invalid path to git specified.");
 
+        MESSAGE_MAP.put("100100", "100100: Error reading the object database.");
+        MESSAGE_MAP.put("100101", "100101: Invalid object name.");
+        MESSAGE_MAP.put("100102", "100102: Corrupt object.");
+        MESSAGE_MAP.put("100103", "100103: Error reading the refs.");
+        MESSAGE_MAP.put("100104", "100104: Error writing the object database.");
+        MESSAGE_MAP.put("100105", "100105: Object too large.");
+
         MESSAGE_MAP.put("401000", "401000: Error calling git-add.");
         MESSAGE_MAP.put("401001", "401001: Error fatal pathspec error while executing git-add.");
 
         MESSAGE_MAP.put("410000", "410000: Error calling git-commit.");
+        MESSAGE_MAP.put("410100", "410100: Error creating a commit with the plumbing commands.");
+        MESSAGE_MAP.put("410101", "410101: The branch was updated by another writer.");
+        MESSAGE_MAP.put("410102", "410102: Invalid path for a file of a commit.");
 
         MESSAGE_MAP.put("404000", "404000: Error calling git-branch. ");
 
@@ -141,7 +155,15 @@ public class ExceptionMessageMap {
         MESSAGE_MAP.put("406000", "406000: Error calling git-checkout");
         MESSAGE_MAP.put("406001", "406001: Error not a treeIsh RefType");
 
+        MESSAGE_MAP.put("436000", "436000: Error calling git-show.");
+        MESSAGE_MAP.put("436001", "436001: Error writing the output of git-show.");
+
         MESSAGE_MAP.put("438000", "438000: Error calling git-status");
+        MESSAGE_MAP.put("438001", "438001: Error computing the status of the working tree.");
+
+        MESSAGE_MAP.put("442000", "442000: Error calling git-cat-file.");
+        MESSAGE_MAP.put("442001", "442001: Invalid object name for git-cat-file.");
+        MESSAGE_MAP.put("442002", "442002: Object is too large to be read in memory.");
     }
 
     /**
@@ -0,0 +1,124 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.utilities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.logisima.javagit.JavaGitConfiguration;
+
+/**
+ * <code>IdleReaper</code> releases the resources of a repository (batch processes, mapped packs) nobody used for
+ * <code>JavaGitConfiguration.getIdleTimeout()</code>. A resource registers itself when it acquires something, and is
+ * forgotten once released: it registers again when it acquires something again. The resources only write the time of
+ * their last use, so a lookup takes no shared lock.
+ * 
+ * A single daemon thread checks the registered resources, and only runs while there are resources to check.
+ */
+public final class IdleReaper {
+
+    // The longest interval between two checks of the resources, in milliseconds, so a new timeout applies quickly.
+    private static final long            CHECK_INTERVAL = 1000;
+
+    // The registered resources.
+    private static final Set<Releasable> RESOURCES      = new LinkedHashSet<Releasable>();
+
+    // The thread checking the resources, null when there is nothing to check.
+    private static Thread                thread;
+
+    private IdleReaper() {
+    }
+
+    /**
+     * Registers a resource, which has just acquired something. Does nothing if it is already registered.
+     * 
+     * @param resource The resource.
+     */
+    public static void register(Releasable resource) {
+        synchronized (RESOURCES) {
+            RESOURCES.add(resource);
+            if (null == thread) {
+                thread = new Thread("javagit-idle-reaper") {
+
+                    @Override
+                    public void run() {
+                        reapLoop();
+                    }
+                };
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private static void reapLoop() {
+        while (true) {
+            long timeout = JavaGitConfiguration.getIdleTimeout();
+            List<Releasable> resources;
+            synchronized (RESOURCES) {
+                if (RESOURCES.isEmpty()) {
+                    thread = null;
+                    return;
+                }
+                resources = new ArrayList<Releasable>(RESOURCES);
+                if (timeout > 0) {
+                    // removed first, so a resource acquiring something again while it is released registers again
+                    RESOURCES.clear();
+                }
+            }
+            if (timeout > 0) {
+                long idleSince = System.nanoTime() - timeout * 1000000L;
+                // released outside of the lock: a resource registers itself while holding its own lock
+                for (Releasable resource : resources) {
+                    if (!resource.releaseIfIdle(idleSince)) {
+                        synchronized (RESOURCES) {
+                            RESOURCES.add(resource);
+                        }
+                    }
+                }
+            }
+            long interval = (timeout > 0) ? Math.max(Math.min(timeout / 4, CHECK_INTERVAL), 10) : CHECK_INTERVAL;
+            synchronized (RESOURCES) {
+                try {
+                    RESOURCES.wait(interval);
+                } catch (InterruptedException e) {
+                    thread = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A resource which can be released when it is not used.
+     */
+    public interface Releasable {
+
+        /**
+         * Releases what the resource holds, if it wasn't used since a time.
+         * 
+         * @param idleSince The time, as given by <code>System.nanoTime()</code>.
+         * @return true if the resource holds nothing anymore, false if it was used since <code>idleSince</code>.
+         */
+        boolean releaseIfIdle(long idleSince);
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>InstanceRegistry</code> stores the instances of a per-repository singleton class, by canonical path. The
+ * registry takes no lock: two threads asking for the same repository at the same time may both build an instance, but
+ * only the first one registered is returned to both.
+ * 
+ * The instances are softly referenced: an instance nobody uses is kept for its caches, until the memory is needed.
+ * The entries of the collected instances are removed on the next access to the registry, and the resources registered
+ * with them (processes, mappings) are closed then.
+ * 
+ * @param <T> The class of the instances.
+ */
+public final class InstanceRegistry<T> {
+
+    // The registered instances, by canonical path.
+    private final ConcurrentMap<String, Entry<T>> instances = new ConcurrentHashMap<String, Entry<T>>();
+
+    // The entries whose instance was collected.
+    private final ReferenceQueue<T>               collected = new ReferenceQueue<T>();
+
+    /**
+     * Gets the instance registered for a path.
+     * 
+     * @param canonicalPath The canonical path of the repository.
+     * @return The instance, or null if there is none.
+     */
+    public T get(String canonicalPath) {
+        expunge();
+        Entry<T> entry = instances.get(canonicalPath);
+        return (null == entry) ? null : entry.get();
+    }
+
+    /**
+     * Registers an instance for a path, unless an instance is already registered.
+     * 
+     * @param canonicalPath The canonical path of the repository.
+     * @param instance The instance to register.
+     * @return The instance registered for the path: <code>instance</code>, or the instance registered before.
+     */
+    public T putIfAbsent(String canonicalPath, T instance) {
+        return putIfAbsent(canonicalPath, instance, null);
+    }
+
+    /**
+     * Registers an instance for a path, unless an instance is already registered. The resources are closed when the
+     * instance is collected; they must not reference the instance, or it would never be collected. They are not
+     * closed if the instance isn't registered, or is removed with <code>remove()</code>.
+     * 
+     * @param canonicalPath The canonical path of the repository.
+     * @param instance The instance to register.
+     * @param resources The resources held by the instance, or null.
+     * @return The instance registered for the path: <code>instance</code>, or the instance registered before.
+     */
+    public T putIfAbsent(String canonicalPath, T instance, Closeable resources) {
+        expunge();
+        Entry<T> entry = new Entry<T>(canonicalPath, instance, resources, collected);
+        while (true) {
+            Entry<T> existing = instances.putIfAbsent(canonicalPath, entry);
+            if (null == existing) {
+                return instance;
+            }
+            T existingInstance = existing.get();
+            if (null != existingInstance) {
+                return existingInstance;
+            }
+            // the registered instance was collected
+            if (instances.replace(canonicalPath, existing, entry)) {
+                return instance;
+            }
+        }
+    }
+
+    /**
+     * Removes the instance registered for a path, when it is closed. Its resources are left to the caller.
+     * 
+     * @param canonicalPath The canonical path of the repository.
+     * @param instance The instance to remove.
+     * @return true if the instance was registered for the path.
+     */
+    public boolean remove(String canonicalPath, T instance) {
+        expunge();
+        Entry<T> entry = instances.get(canonicalPath);
+        if (null == entry || entry.get() != instance || !instances.remove(canonicalPath, entry)) {
+            return false;
+        }
+        // a cleared reference is never enqueued, so its resources are not closed by expunge()
+        entry.clear();
+        return true;
+    }
+
+    /**
+     * Gets the number of entries of the registry, including the ones whose instance was collected but not yet removed.
+     * 
+     * @return The number of entries.
+     */
+    public int size() {
+        expunge();
+        return instances.size();
+    }
+
+    /**
+     * Removes the entries whose instance was collected, and closes their resources.
+     */
+    private void expunge() {
+        Reference<? extends T> reference;
+        while (null != (reference = collected.poll())) {
+            Entry<?> entry = (Entry<?>) reference;
+            instances.remove(entry.canonicalPath, entry);
+            if (null != entry.resources) {
+                try {
+                    entry.resources.close();
+                } catch (IOException e) {
+                    // nobody is left to be told
+                }
+            }
+        }
+    }
+
+    /**
+     * A soft reference to an instance, which knows its path and the resources to close once it is collected.
+     */
+    private static final class Entry<T> extends SoftReference<T> {
+
+        private final String    canonicalPath;
+
+        private final Closeable resources;
+
+        Entry(String canonicalPath, T instance, Closeable resources, ReferenceQueue<T> queue) {
+            super(instance, queue);
+            this.canonicalPath = canonicalPath;
+            this.resources = resources;
+        }
+    }
+}
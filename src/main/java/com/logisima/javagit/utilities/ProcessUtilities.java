@@ -19,14 +19,20 @@
  */
 package com.logisima.javagit.utilities;
 
+import java.io.ByteArrayOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
 
+import com.logisima.javagit.JavaGitConfiguration;
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.Parser;
+import com.logisima.javagit.cli.RawParser;
 import com.logisima.javagit.cli.Response;
 
 /**
@@ -36,6 +42,12 @@ public class ProcessUtilities {
 
     // TODO (jhl): add unit tests for this class.
 
+    // Size of the buffer used to read the raw output of a process.
+    private static final int RAW_BUFFER_SIZE   = 64 * 1024;
+
+    // Largest input written by the calling thread: it fits in a pipe buffer on every platform.
+    private static final int INLINE_INPUT_SIZE = 4096;
+
     /**
      * Start a process.
      * 
@@ -54,14 +66,19 @@ public class ProcessUtilities {
     }
 
     /**
-     * Reads the output from the process and prints it to stdout.
+     * Reads the output from the process and gives it to the parser, line by line, until the end of the output or until
+     * the parser is complete. The output is decoded in UTF-8.
      * 
      * @param p The process from which to read the output.
      * @exception IOException An <code>IOException</code> is thrown if there is trouble reading input from the
      *            sub-process.
      */
     public static void getProcessOutput(Process p, Parser parser) throws IOException {
-        BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()));
+        if (parser instanceof RawParser) {
+            getRawProcessOutput(p, (RawParser) parser);
+            return;
+        }
+        BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"));
         while (true) {
             try {
                 String str = br.readLine();
@@ -69,6 +86,9 @@ public class ProcessUtilities {
                     break;
                 }
                 parser.parseLine(str);
+                if (parser.isComplete()) {
+                    break;
+                }
             } catch (IOException e) {
                 IOException toThrow = new IOException(ExceptionMessageMap.getMessage("020101"));
                 toThrow.initCause(e);
@@ -77,34 +97,71 @@ public class ProcessUtilities {
         }
     }
 
+    /**
+     * Reads the output from the process and gives it to the parser, chunk by chunk, until the end of the output or
+     * until the parser is complete.
+     * 
+     * @param p The process from which to read the output.
+     * @param parser The parser of the raw output.
+     * @exception IOException An <code>IOException</code> is thrown if there is trouble reading input from the
+     *            sub-process.
+     */
+    public static void getRawProcessOutput(Process p, RawParser parser) throws IOException {
+        InputStream is = p.getInputStream();
+        byte[] buffer = new byte[RAW_BUFFER_SIZE];
+        while (true) {
+            int n;
+            try {
+                n = is.read(buffer);
+            } catch (IOException e) {
+                IOException toThrow = new IOException(ExceptionMessageMap.getMessage("020101"));
+                toThrow.initCause(e);
+                throw toThrow;
+            }
+            if (n < 0) {
+                break;
+            }
+            parser.parse(buffer, 0, n);
+            if (parser.isComplete()) {
+                break;
+            }
+        }
+    }
+
     /**
      * Waits for a process to terminate and then destroys it.
      * 
      * @param p The process to wait for and destroy.
      * @return The exit value of the process. By convention, 0 indicates normal termination.
+     * @throws JavaGitException Thrown with the code <code>PROCESS_INTERRUPTED</code> if the thread is interrupted while
+     *         waiting. The process is destroyed and the interrupt status of the thread is kept.
      */
-    public static int waitForAndDestroyProcess(Process p, Parser parser) {
-        /*
-         * I'm not sure this is the best way to handle waiting for a process to complete. -- jhl388 06.14.2008
-         */
-        while (true) {
+    public static int waitForAndDestroyProcess(Process p, Parser parser) throws JavaGitException {
+        try {
+            int i;
             try {
-                int i = p.waitFor();
-                parser.processExitCode(p.exitValue());
-                p.destroy();
-                return i;
+                i = p.waitFor();
             } catch (InterruptedException e) {
-                // TODO: deal with this interrupted exception in a better manner. -- jhl388 06.14.2008
-                continue;
+                Thread.currentThread().interrupt();
+                throw new JavaGitException(JavaGitException.PROCESS_INTERRUPTED, ExceptionMessageMap
+                        .getMessage("020104"), e);
+            }
+            try {
+                parser.processExitCode(i);
             } catch (JavaGitException e) {
-                continue;
+                // the parser reports its errors when its response is requested
             }
+            return i;
+        } finally {
+            p.destroy();
         }
     }
 
     /**
      * Runs the command specified in the command line with the specified working directory. The IParser is used to parse
-     * the response given by the command line.
+     * the response given by the command line. The commands run in a repository wait for their turn in the
+     * <code>CommandScheduler</code> of the repository. The command may take the time of
+     * <code>JavaGitConfiguration.getCommandTimeout()</code>.
      * 
      * @param workingDirectory The working directory in with which to start the process.
      * @param commandLine The command line to run.
@@ -115,19 +172,292 @@ public class ProcessUtilities {
      */
     public static Response runCommand(File workingDirectory, List<String> commandLine, Parser parser)
             throws IOException, JavaGitException {
+        return runCommand(workingDirectory, commandLine, parser, JavaGitConfiguration.getCommandTimeout());
+    }
+
+    /**
+     * Runs the command specified in the command line with the specified working directory and timeout. When the timeout
+     * is over, or when the calling thread is interrupted (by <code>Future.cancel(true)</code> for instance), the process
+     * is destroyed and a <code>JavaGitException</code> is thrown, with the code <code>PROCESS_TIMEOUT</code> or
+     * <code>PROCESS_INTERRUPTED</code>.
+     * 
+     * @param workingDirectory The working directory in with which to start the process.
+     * @param commandLine The command line to run.
+     * @param parser The parser to use to parse the command line's response.
+     * @param timeout The time the command may take, waiting for its turn and running, in milliseconds, or 0 for no
+     *        limit.
+     * @return The command response from the <code>IParser</code>.
+     * @throws IOException Thrown if there are problems with the subprocess.
+     * @throws JavaGitException
+     */
+    public static Response runCommand(File workingDirectory, List<String> commandLine, Parser parser, long timeout)
+            throws IOException, JavaGitException {
+        return runCommand(workingDirectory, commandLine, null, null, parser, timeout);
+    }
+
+    /**
+     * Runs the command specified in the command line with the specified working directory, and writes pathspecs on its
+     * standard input (see <code>addPathspecs()</code>).
+     * 
+     * @param workingDirectory The working directory in with which to start the process.
+     * @param commandLine The command line to run.
+     * @param pathspecs The pathspecs written on the standard input, each one followed by a NUL, or null to close the
+     *        standard input.
+     * @param parser The parser to use to parse the command line's response.
+     * @return The command response from the <code>IParser</code>.
+     * @throws IOException Thrown if there are problems with the subprocess.
+     * @throws JavaGitException
+     */
+    public static Response runCommand(File workingDirectory, List<String> commandLine, List<String> pathspecs,
+            Parser parser) throws IOException, JavaGitException {
+        return runCommand(workingDirectory, commandLine, null, toPathspecInput(pathspecs), parser, JavaGitConfiguration
+                .getCommandTimeout());
+    }
+
+    /**
+     * Runs the command specified in the command line with the specified working directory, additional environment
+     * variables and standard input. A command given its own index with <code>GIT_INDEX_FILE</code> doesn't wait for
+     * the commands writing the shared index of the repository.
+     * 
+     * @param workingDirectory The working directory in with which to start the process.
+     * @param commandLine The command line to run.
+     * @param environment The variables added to the environment of the process, or null.
+     * @param input The bytes written on the standard input of the process, or null to close the standard input.
+     * @param parser The parser to use to parse the command line's response.
+     * @return The command response from the <code>IParser</code>.
+     * @throws IOException Thrown if there are problems with the subprocess.
+     * @throws JavaGitException
+     */
+    public static Response runCommand(File workingDirectory, List<String> commandLine,
+            Map<String, String> environment, byte[] input, Parser parser) throws IOException, JavaGitException {
+        return runCommand(workingDirectory, commandLine, environment, input, parser, JavaGitConfiguration
+                .getCommandTimeout());
+    }
+
+    private static Response runCommand(File workingDirectory, List<String> commandLine,
+            Map<String, String> environment, byte[] input, Parser parser, long timeout) throws IOException,
+            JavaGitException {
+        if (workingDirectory == null) {
+            return execute(null, commandLine, environment, input, parser, false, timeout);
+        }
+        CommandScheduler scheduler = CommandScheduler.getInstance(workingDirectory);
+        boolean writeCommand = CommandScheduler.isWriteCommand(commandLine)
+                && (null == environment || !environment.containsKey("GIT_INDEX_FILE"));
+        long start = System.currentTimeMillis();
+        scheduler.acquire(writeCommand, timeout);
+        try {
+            if (timeout > 0) {
+                // the time spent waiting for the turn counts, at least a millisecond is left
+                timeout = Math.max(1, timeout - (System.currentTimeMillis() - start));
+            }
+            return execute(workingDirectory, commandLine, environment, input, parser, writeCommand, timeout);
+        } finally {
+            scheduler.release(writeCommand);
+        }
+    }
+
+    /**
+     * Adds paths to a command line. When their total length is over <code>JavaGitConfiguration.getMaxPathspecLength()
+     * </code>, the paths are not added as arguments: the command reads them on its standard input, and they have to be
+     * given to <code>runCommand()</code>.
+     * 
+     * @param commandLine The command line, without the paths.
+     * @param paths The paths.
+     * @param separator true to add "--" before the paths given as arguments.
+     * @return The pathspecs to write on the standard input of the command, or null if the paths were added as arguments.
+     * @throws JavaGitException Thrown if the version of git can't be read.
+     */
+    public static List<String> addPathspecs(List<String> commandLine, List<String> paths, boolean separator)
+            throws JavaGitException {
+        long length = 0;
+        for (String path : paths) {
+            length += path.length() + 1;
+        }
+        if (length > JavaGitConfiguration.getMaxPathspecLength() && JavaGitConfiguration.isGitVersionAtLeast(2, 26)) {
+            commandLine.add("--pathspec-from-file=-");
+            commandLine.add("--pathspec-file-nul");
+            return paths;
+        }
+        if (separator) {
+            commandLine.add("--");
+        }
+        commandLine.addAll(paths);
+        return null;
+    }
+
+    /**
+     * Converts pathspecs to the input of a command, each one followed by a NUL.
+     */
+    private static byte[] toPathspecInput(List<String> pathspecs) throws IOException {
+        if (null == pathspecs) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (String pathspec : pathspecs) {
+            bytes.write(pathspec.getBytes("UTF-8"));
+            bytes.write(0);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the input of a process and closes it. Git may write its output while it reads its input
+     * (<code>hash-object --stdin-paths</code> prints a SHA1 per path), so an input larger than a pipe buffer is written
+     * by its own thread while the output is read; a smaller one fits in the pipe and is written at once. If git stops
+     * reading (on an invalid option for instance), its error is read from its output.
+     */
+    private static void writeInput(Process p, byte[] input) {
+        if (input.length <= INLINE_INPUT_SIZE) {
+            new InputWriter(p, input).run();
+        }
+        else {
+            new InputWriter(p, input).start();
+        }
+    }
+
+    private static Response execute(File workingDirectory, List<String> commandLine,
+            Map<String, String> environment, byte[] input, Parser parser, boolean writeCommand, long timeout)
+            throws IOException, JavaGitException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new JavaGitException(JavaGitException.PROCESS_INTERRUPTED, ExceptionMessageMap.getMessage("020104"));
+        }
         ProcessBuilder pb = new ProcessBuilder(commandLine);
 
         if (workingDirectory != null) {
             pb.directory(workingDirectory);
         }
+        if (environment != null) {
+            pb.environment().putAll(environment);
+        }
+        if (!writeCommand) {
+            // a read command (git status) mustn't take index.lock to refresh the index, or it could make a write fail
+            pb.environment().put("GIT_OPTIONAL_LOCKS", "0");
+        }
+        // nobody can answer a prompt for credentials: git has to fail instead of waiting forever
+        pb.environment().put("GIT_TERMINAL_PROMPT", "0");
 
-        pb.redirectErrorStream(true);
+        boolean separateErrors = parser instanceof RawParser && ((RawParser) parser).isErrorOutputSeparate();
+        pb.redirectErrorStream(!separateErrors);
 
         Process p = startProcess(pb);
-        getProcessOutput(p, parser);
-        waitForAndDestroyProcess(p, parser);
+        ProcessWatchdog.Watch watch = ProcessWatchdog.watch(p, timeout);
+        ErrorReader errorReader = separateErrors ? new ErrorReader(p) : null;
+        try {
+            if (null == input) {
+                p.getOutputStream().close();
+            }
+            else {
+                writeInput(p, input);
+            }
+            getProcessOutput(p, parser);
+            if (null != errorReader && !parser.isComplete()) {
+                // the error output ends with the process: it is read before the process is destroyed
+                ((RawParser) parser).parseErrorOutput(errorReader.await());
+            }
+            if (parser.isComplete()) {
+                // the parser stopped reading: don't wait for the end of the output
+                p.destroy();
+            }
+            else {
+                waitForAndDestroyProcess(p, parser);
+            }
+        } catch (IOException e) {
+            // the process may have been destroyed while its output was read
+            watch.checkStopped();
+            throw e;
+        } finally {
+            ProcessWatchdog.unwatch(watch);
+            p.destroy();
+        }
+        watch.checkStopped();
 
         return parser.getResponse();
     }
 
+    /**
+     * Writes the input of a process and closes it, in the calling thread with <code>run()</code> or in its own thread
+     * with <code>start()</code>.
+     */
+    private static final class InputWriter extends Thread {
+
+        private final OutputStream os;
+
+        private final byte[]       input;
+
+        InputWriter(Process p, byte[] input) {
+            super("git stdin");
+            this.os = p.getOutputStream();
+            this.input = input;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                os.write(input);
+                os.flush();
+            } catch (IOException e) {
+                // git stopped reading its input
+            } finally {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // git stopped reading its input
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the error output of a process in its own thread, so that the process never blocks on a full pipe while its
+     * output is read. Only the first <code>RAW_BUFFER_SIZE</code> bytes are kept.
+     */
+    private static final class ErrorReader extends Thread {
+
+        private final InputStream           errors;
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ErrorReader(Process p) {
+            super("git stderr");
+            this.errors = p.getErrorStream();
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[1024];
+            try {
+                int n;
+                while ((n = errors.read(buffer)) >= 0) {
+                    synchronized (output) {
+                        if (output.size() < RAW_BUFFER_SIZE) {
+                            output.write(buffer, 0, Math.min(n, RAW_BUFFER_SIZE - output.size()));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // stream closed, the process is gone
+            }
+        }
+
+        /**
+         * Waits for the end of the error output.
+         * 
+         * @return The error output.
+         */
+        String await() throws IOException {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                // the error output read so far is returned
+                Thread.currentThread().interrupt();
+            }
+            synchronized (output) {
+                return output.toString("UTF-8");
+            }
+        }
+    }
+
 }
@@ -0,0 +1,160 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.logisima.javagit.JavaGitException;
+
+/**
+ * <code>ProcessWatchdog</code> destroys the git processes whose deadline is passed, or whose calling thread has been
+ * interrupted (by <code>Future.cancel(true)</code> for instance). The calling thread is usually blocked reading the
+ * output of the process, which doesn't respond to interrupts: destroying the process unblocks it.
+ * 
+ * A single daemon thread checks the watched processes, and only runs while there are processes to watch.
+ */
+final class ProcessWatchdog {
+
+    // The interval between two checks of the watched processes, in milliseconds.
+    private static final long        CHECK_INTERVAL = 50;
+
+    // The watched processes.
+    private static final List<Watch> WATCHES        = new ArrayList<Watch>();
+
+    // The thread checking the processes, null when there is nothing to watch.
+    private static Thread            thread;
+
+    private ProcessWatchdog() {
+    }
+
+    /**
+     * Starts watching a process run by the current thread.
+     * 
+     * @param process The process.
+     * @param timeout The time the process may run, in milliseconds, or 0 for no limit.
+     * @return The watch, to give to <code>unwatch()</code> when the process is done.
+     */
+    static Watch watch(Process process, long timeout) {
+        Watch watch = new Watch(process, Thread.currentThread(), timeout);
+        synchronized (WATCHES) {
+            WATCHES.add(watch);
+            if (null == thread) {
+                thread = new Thread("javagit-watchdog") {
+
+                    @Override
+                    public void run() {
+                        checkLoop();
+                    }
+                };
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        return watch;
+    }
+
+    /**
+     * Stops watching a process.
+     * 
+     * @param watch The watch returned by <code>watch()</code>.
+     */
+    static void unwatch(Watch watch) {
+        synchronized (WATCHES) {
+            WATCHES.remove(watch);
+        }
+    }
+
+    private static void checkLoop() {
+        while (true) {
+            synchronized (WATCHES) {
+                if (WATCHES.isEmpty()) {
+                    thread = null;
+                    return;
+                }
+                for (Watch watch : WATCHES) {
+                    watch.check();
+                }
+                try {
+                    WATCHES.wait(CHECK_INTERVAL);
+                } catch (InterruptedException e) {
+                    thread = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A watched process.
+     */
+    static final class Watch {
+
+        private static final int RUNNING     = 0;
+        private static final int TIMED_OUT   = 1;
+        private static final int INTERRUPTED = 2;
+
+        private final Process    process;
+        private final Thread     owner;
+        private final long       timeout;
+        private final long       deadline;
+        private volatile int     state;
+
+        private Watch(Process process, Thread owner, long timeout) {
+            this.process = process;
+            this.owner = owner;
+            this.timeout = timeout;
+            this.deadline = (timeout > 0) ? System.nanoTime() + timeout * 1000000L : 0;
+            this.state = RUNNING;
+        }
+
+        private void check() {
+            if (state != RUNNING) {
+                return;
+            }
+            if (owner.isInterrupted()) {
+                state = INTERRUPTED;
+            }
+            else if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                state = TIMED_OUT;
+            }
+            else {
+                return;
+            }
+            process.destroy();
+        }
+
+        /**
+         * Checks if the process has been destroyed by the watchdog.
+         * 
+         * @throws JavaGitException Thrown if the process has timed out or has been interrupted.
+         */
+        void checkStopped() throws JavaGitException {
+            if (state == TIMED_OUT) {
+                throw new JavaGitException(JavaGitException.PROCESS_TIMEOUT, ExceptionMessageMap.getMessage("020103")
+                        + " { timeout=[" + timeout + "ms] }");
+            }
+            if (state == INTERRUPTED) {
+                throw new JavaGitException(JavaGitException.PROCESS_INTERRUPTED, ExceptionMessageMap
+                        .getMessage("020104"));
+            }
+        }
+    }
+}
@@ -29,10 +29,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.logisima.javagit.JavaGit;
+import com.logisima.javagit.JavaGitConfiguration;
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.checkout.GitCheckout;
+import com.logisima.javagit.cli.rm.GitRm;
+import com.logisima.javagit.cli.rm.GitRmOptions;
 import com.logisima.javagit.cli.status.GitStatusResponse;
 import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
 
 public class GitAddTest extends GitTestCase {
 
@@ -135,6 +140,37 @@ public class GitAddTest extends GitTestCase {
         gitStatusTestEquals(response, "master", 2, 0, 0, 0, 0, 0);
     }
 
+    /**
+     * Test for adding, checking out and removing more files than the command line can hold: the paths are written on
+     * the standard input of git.
+     * 
+     * @throws IOException
+     * @throws JavaGitException
+     */
+    @Test
+    public void testAddingManyFilesThroughStandardInput() throws IOException, JavaGitException {
+        List<File> files = new ArrayList<File>();
+        int length = 0;
+        for (int i = 0; i < 3000; i++) {
+            String name = "file with a long name to fill the command line " + i + ".txt";
+            files.add(FileUtilities.createFile(repositoryPath, name, "Contents " + i));
+            length += name.length();
+        }
+        assertTrue(length > JavaGitConfiguration.getMaxPathspecLength());
+
+        new GitAdd().add(repositoryPath, files, null);
+        assertEquals(3000, HelperGitCommands.runGit(repositoryPath, "ls-files").split("\n").length);
+
+        FileUtilities.modifyFileContents(new File(repositoryPath, files.get(42).getPath()), " modified");
+        new GitCheckout().checkout(repositoryPath, files);
+        assertEquals("", HelperGitCommands.runGit(repositoryPath, "diff", "--name-only"));
+
+        GitRmOptions options = new GitRmOptions();
+        options.setOptCached(true);
+        new GitRm().rm(repositoryPath, options, files);
+        assertEquals("", HelperGitCommands.runGit(repositoryPath, "ls-files"));
+    }
+
     @After
     public void tearDown() throws Exception {
         if (repositoryPath.exists()) {
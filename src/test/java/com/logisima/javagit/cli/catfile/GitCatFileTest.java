@@ -0,0 +1,129 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.cli.catfile;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.object.db.GitObject;
+import com.logisima.javagit.object.db.ObjectInfo;
+import com.logisima.javagit.object.db.ObjectType;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class GitCatFileTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("GitCatFileTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+    }
+
+    /**
+     * Testing that several objects are read through the same batch process.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testReadObjects() throws JavaGitException, IOException {
+        FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+        FileUtilities.createFile(repositoryPath, "fileB.txt", "");
+        String shaA = HelperGitCommands.hashObject(repositoryPath, "fileA.txt");
+        String shaB = HelperGitCommands.hashObject(repositoryPath, "fileB.txt");
+
+        GitCatFile catFile = GitCatFile.getInstance(repositoryPath);
+        assertSame(catFile, GitCatFile.getInstance(new File(repositoryPath.getPath() + File.separator + ".")));
+        try {
+            for (int i = 0; i < 3; i++) {
+                GitObject blobA = catFile.open(shaA);
+                assertEquals(shaA, blobA.getSha1());
+                assertEquals(ObjectType.BLOB, blobA.getType());
+                assertEquals("This is file fileA.txt", new String(blobA.getData(), "UTF-8"));
+
+                GitObject blobB = catFile.open(shaB);
+                assertEquals(0, blobB.getSize());
+            }
+
+            ObjectInfo info = catFile.getInfo(shaA);
+            assertEquals(ObjectType.BLOB, info.getType());
+            assertEquals(22, info.getSize());
+
+            assertTrue(catFile.has(shaB));
+            assertFalse(catFile.has("0123456789012345678901234567890123456789"));
+            assertNull(catFile.open("0123456789012345678901234567890123456789"));
+        } finally {
+            catFile.close();
+        }
+
+        // a closed reader starts a new process on the next request, but is no longer the instance of the repository
+        assertNotNull(catFile.open(shaA));
+        catFile.close();
+        assertNotSame(catFile, GitCatFile.getInstance(repositoryPath));
+    }
+
+    /**
+     * Testing that the processes nobody uses are stopped, and started again on the next request.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIdleProcessesAreStopped() throws Exception {
+        FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+        String shaA = HelperGitCommands.hashObject(repositoryPath, "fileA.txt");
+
+        long timeout = JavaGitConfiguration.getIdleTimeout();
+        JavaGitConfiguration.setIdleTimeout(50);
+        GitCatFile catFile = GitCatFile.getInstance(repositoryPath);
+        try {
+            assertNotNull(catFile.open(shaA));
+            assertTrue(catFile.isRunning());
+            long deadline = System.currentTimeMillis() + 10000;
+            while (catFile.isRunning() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(catFile.isRunning());
+
+            assertNotNull(catFile.open(shaA));
+            assertTrue(catFile.isRunning());
+        } finally {
+            JavaGitConfiguration.setIdleTimeout(timeout);
+            catFile.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
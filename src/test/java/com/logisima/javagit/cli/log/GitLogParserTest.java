@@ -19,8 +19,154 @@
  */
 package com.logisima.javagit.cli.log;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.log.GitLogResponse.Commit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.utilities.ProcessUtilities;
 
 public class GitLogParserTest extends GitTestCase {
 
+    // Output of git log -z --numstat with the format of the parser
+    private static final String OUTPUT = "\u001e1111111111111111111111111111111111111111\u0000"
+            + "2222222222222222222222222222222222222222 3333333333333333333333333333333333333333\u0000"
+            + "JavaGit Test <test@javagit.test>\u0000Tue Oct 18 10:00:00 2026 +0200\u0000Merge topic\n\u0000\u0000"
+            + "\u001e2222222222222222222222222222222222222222\u00003333333333333333333333333333333333333333\u0000"
+            + "JavaGit Test <test@javagit.test>\u0000Tue Oct 18 09:00:00 2026 +0200\u0000"
+            + "Second commit\n\nWith a body.\n\u0000\u0000\n12\t0\tfileB.txt\u0000-\t-\timage.png\u0000"
+            + "3\t1\t\u0000old name.txt\u0000new name.txt\u0000"
+            + "\u001e3333333333333333333333333333333333333333\u0000\u0000"
+            + "JavaGit Test <test@javagit.test>\u0000Tue Oct 18 08:00:00 2026 +0200\u0000Première\n\u0000\u0000";
+
+    private static byte[] output() throws UnsupportedEncodingException {
+        return OUTPUT.getBytes("UTF-8");
+    }
+
+    /**
+     * Testing that all the commits are parsed, the last one included, even if the output is read in small chunks.
+     * 
+     * @throws JavaGitException
+     * @throws UnsupportedEncodingException
+     */
+    @Test
+    public void testParseAllCommits() throws JavaGitException, UnsupportedEncodingException {
+        byte[] output = output();
+        for (int chunk : new int[] { output.length, 7 }) {
+            GitLogParser parser = new GitLogParser();
+            for (int i = 0; i < output.length; i += chunk) {
+                parser.parse(output, i, Math.min(chunk, output.length - i));
+            }
+            List<Commit> commits = parser.getResponse().getCommitList();
+            assertEquals(3, commits.size());
+
+            Commit merge = commits.get(0);
+            assertEquals("1111111111111111111111111111111111111111", merge.getSha());
+            assertEquals(2, merge.getMergeDetails().size());
+            assertEquals("3333333333333333333333333333333333333333", merge.getMergeDetails().get(1));
+            assertEquals("JavaGit Test <test@javagit.test>", merge.getAuthor());
+            assertEquals("Tue Oct 18 10:00:00 2026 +0200", merge.getDateString());
+            assertEquals("Merge topic", merge.getMessage());
+            assertNull(merge.getFiles());
+
+            Commit second = commits.get(1);
+            assertNull(second.getMergeDetails());
+            assertEquals("Second commit\n\nWith a body.", second.getMessage());
+            assertEquals(3, second.getFiles().size());
+            assertEquals("fileB.txt", second.getFiles().get(0).getName());
+            assertEquals(0, second.getFiles().get(1).getLinesAdded());
+            assertEquals("new name.txt", second.getFiles().get(2).getName());
+            assertEquals(15, second.getLinesInserted());
+            assertEquals(1, second.getLinesDeleted());
+
+            assertEquals("Première", commits.get(2).getMessage());
+            assertNull(commits.get(2).getFiles());
+        }
+    }
+
+    /**
+     * Testing that a handler receives the commits as they are parsed, and can stop the parsing.
+     * 
+     * @throws JavaGitException
+     * @throws UnsupportedEncodingException
+     */
+    @Test
+    public void testParseWithHandler() throws JavaGitException, UnsupportedEncodingException {
+        final List<String> shas = new ArrayList<String>();
+        GitLogParser parser = new GitLogParser(new GitLogHandler() {
+
+            public boolean handleCommit(Commit commit) {
+                shas.add(commit.getSha());
+                return shas.size() < 2;
+            }
+        });
+        byte[] output = output();
+        parser.parse(output, 0, output.length);
+        assertTrue(parser.isComplete());
+        assertEquals(2, shas.size());
+        assertEquals("2222222222222222222222222222222222222222", shas.get(1));
+        assertTrue(parser.getResponse().getCommitList().isEmpty());
+        assertEquals(2, shas.size());
+    }
+
+    /**
+     * Testing that the bytes before the first commit are ignored.
+     * 
+     * @throws JavaGitException
+     * @throws UnsupportedEncodingException
+     */
+    @Test
+    public void testIgnoreLeadingOutput() throws JavaGitException, UnsupportedEncodingException {
+        GitLogParser parser = new GitLogParser();
+        parser.parseLine("warning: something");
+        byte[] output = output();
+        parser.parse(output, 0, output.length);
+        assertEquals(3, parser.getResponse().getCommitList().size());
+    }
+
+    /**
+     * Testing that the warnings written by git on its error output while it writes a commit are not parsed with the
+     * commit.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIgnoreErrorOutput() throws Exception {
+        File dir = FileUtilities.createTempDirectory("GitLogParserTest");
+        try {
+            int split = OUTPUT.indexOf("With a body.");
+            write(new File(dir, "head"), OUTPUT.substring(0, split));
+            write(new File(dir, "tail"), OUTPUT.substring(split));
+            List<String> command = Arrays.asList("sh", "-c",
+                    "cat head; echo 'warning: noise' >&2; cat tail; echo 'warning: more noise' >&2");
+
+            GitLogResponse response = (GitLogResponse) ProcessUtilities.runCommand(dir, command, new GitLogParser());
+            List<Commit> commits = response.getCommitList();
+            assertEquals(3, commits.size());
+            assertEquals("Second commit\n\nWith a body.", commits.get(1).getMessage());
+            assertEquals(3, commits.get(1).getFiles().size());
+            assertEquals("Première", commits.get(2).getMessage());
+        } finally {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(dir);
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
 }
@@ -19,8 +19,112 @@
  */
 package com.logisima.javagit.cli.log;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGit;
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.branch.GitBranchOptions;
+import com.logisima.javagit.cli.branch.GitBranchResponse;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.cli.log.GitLogResponse.Commit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
 
 public class GitLogTest extends GitTestCase {
 
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("GitLogTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+        for (int i = 0; i < 5; i++) {
+            FileUtilities.createFile(repositoryPath, "file" + i + ".txt", "This is file " + i);
+            HelperGitCommands.runGit(repositoryPath, "add", "file" + i + ".txt");
+            HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Commit " + i);
+        }
+    }
+
+    /**
+     * Testing that git log returns every commit, with their file details.
+     * 
+     * @throws JavaGitException
+     */
+    @Test
+    public void testLog() throws JavaGitException {
+        GitLogOptions options = new GitLogOptions();
+        options.setOptFileDetails(true);
+        List<Commit> commits = new GitLog().log(repositoryPath, options).getCommitList();
+        assertEquals(5, commits.size());
+        assertEquals("Commit 4", commits.get(0).getMessage());
+        assertEquals("Commit 0", commits.get(4).getMessage());
+        assertEquals(1, commits.get(4).getFiles().size());
+        assertEquals("file0.txt", commits.get(4).getFiles().get(0).getName());
+    }
+
+    /**
+     * Testing that git log streams the commits to a handler, which can stop the log early.
+     * 
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testLogWithHandler() throws JavaGitException, IOException {
+        final List<String> shas = new ArrayList<String>();
+        new GitLog().log(repositoryPath, null, null, new GitLogHandler() {
+
+            public boolean handleCommit(Commit commit) {
+                shas.add(commit.getSha());
+                return shas.size() < 2;
+            }
+        });
+        assertEquals(2, shas.size());
+        assertEquals(HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD~1"), shas.get(1));
+    }
+
+    /**
+     * Testing that asynchronous commands run concurrently on the configured executor.
+     * 
+     * @throws JavaGitException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testLogAsync() throws JavaGitException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        JavaGitConfiguration.setExecutor(executor);
+        try {
+            JavaGit git = new JavaGit(repositoryPath);
+            Future<GitLogResponse> log = git.logAsync(new GitLogOptions());
+            Future<GitBranchResponse> branch = git.branchAsync(new GitBranchOptions());
+            assertEquals(5, log.get().getCommitList().size());
+            assertEquals(1, branch.get().getBranchList().size());
+            assertEquals("Commit 4", log.get().getCommitList().get(0).getMessage());
+        } catch (ExecutionException e) {
+            fail(e.getCause().getMessage());
+        } finally {
+            JavaGitConfiguration.setExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
 }
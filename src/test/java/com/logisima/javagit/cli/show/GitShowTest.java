@@ -19,8 +19,118 @@
  */
 package com.logisima.javagit.cli.show;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.object.Ref;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
 
 public class GitShowTest extends GitTestCase {
 
+    File   repositoryPath;
+
+    byte[] content;
+
+    Ref    revision;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("GitShowTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+
+        // binary content: every byte value, CR LF and invalid UTF-8 sequences
+        content = new byte[200000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        File dir = new File(repositoryPath, "dir");
+        dir.mkdir();
+        OutputStream out = new FileOutputStream(new File(dir, "data.bin"));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        HelperGitCommands.runGit(repositoryPath, "add", "dir/data.bin");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Binary file");
+        revision = Ref.createSha1Ref(HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD"));
+    }
+
+    /**
+     * Testing that the content of a file at a revision is streamed as is to an output stream or a channel.
+     * 
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testShowContent() throws JavaGitException, IOException {
+        GitShow gitShow = new GitShow();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GitShowResponse response = gitShow.show(repositoryPath, null, new File("dir", "data.bin"), revision, out);
+        assertEquals(content.length, response.getSize());
+        assertTrue(Arrays.equals(content, out.toByteArray()));
+
+        File copy = new File(repositoryPath, "copy.bin");
+        RandomAccessFile raf = new RandomAccessFile(copy, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            response = gitShow.show(repositoryPath, null, new File("dir/data.bin"), revision, channel);
+            assertEquals(content.length, response.getSize());
+            assertEquals(content.length, channel.size());
+        } finally {
+            raf.close();
+        }
+
+        // the error of git is not written in the output
+        out.reset();
+        try {
+            gitShow.show(repositoryPath, null, new File("missing.txt"), revision, out);
+            fail("The file doesn't exist at this revision");
+        } catch (JavaGitException e) {
+            assertEquals(436000, e.getCode());
+            assertTrue(e.getMessage(), e.getMessage().contains("missing.txt"));
+        }
+        assertEquals(0, out.size());
+    }
+
+    /**
+     * Testing that the options are given to git.
+     * 
+     * @throws JavaGitException
+     */
+    @Test
+    public void testShowOptions() throws JavaGitException {
+        GitShowOptions options = new GitShowOptions();
+        options.setOptFormat("%s");
+        options.setOptNameOnly(true);
+        GitShowResponse response = new GitShow().show(repositoryPath, options, revision);
+        assertEquals("Binary file\n\ndir/data.bin", response.getProcessOutput().trim());
+
+        options.setOptNameOnly(false);
+        options.setOptNoPatch(true);
+        response = new GitShow().show(repositoryPath, options, revision);
+        assertEquals("Binary file", response.getProcessOutput().trim());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
 }
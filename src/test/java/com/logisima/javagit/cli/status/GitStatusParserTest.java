@@ -19,16 +19,21 @@
  */
 package com.logisima.javagit.cli.status;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 import org.junit.Test;
 
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.object.GitFileSystemObject.Status;
 import com.logisima.javagit.test.utilities.ParserTestUtilities;
 
 public class GitStatusParserTest extends GitTestCase {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     @Test
     public void testGitStatusOuput1() throws IOException, JavaGitException {
         final String workingDirectory = "/tmp/";
@@ -52,4 +57,39 @@ public class GitStatusParserTest extends GitTestCase {
         // testing
         gitStatusTestEquals(response, "master", 0, 0, 0, 0, 0, 0);
     }
+
+    @Test
+    public void testRenamedAndUnmerged() throws JavaGitException {
+        GitStatusParser parser = new GitStatusParser("/tmp/");
+        String output = "# branch.oid (initial)\u0000# branch.head (detached)\u0000"
+                + "2 RM N... 100644 100644 100644 3b18e512dba79e4c8300dd08aeb37f8e728b8dad "
+                + "3b18e512dba79e4c8300dd08aeb37f8e728b8dad R100 new name.txt\u0000old name.txt\u0000"
+                + "u UU N... 100644 100644 100644 100644 3b18e512dba79e4c8300dd08aeb37f8e728b8dad "
+                + "3b18e512dba79e4c8300dd08aeb37f8e728b8dad 3b18e512dba79e4c8300dd08aeb37f8e728b8dad conflict.txt\u0000"
+                + "? été.txt\u0000";
+        byte[] bytes = output.getBytes(UTF8);
+        parser.parse(bytes, 0, bytes.length);
+        GitStatusResponse response = parser.getResponse();
+
+        assertNull(response.getBranch());
+        assertEquals(1, response.getRenamedFilesToCommit().size());
+        assertEquals(new File("/tmp/new name.txt"), response.getRenamedFilesToCommit().get(0));
+        assertEquals(Status.MODIFIED, response.getFileToStatus().get(new File("/tmp/new name.txt")));
+        assertEquals(2, response.getModifiedFilesNotUpdated().size());
+        assertEquals(new File("/tmp/conflict.txt"), response.getModifiedFilesNotUpdated().get(1));
+        assertEquals(new File("/tmp/été.txt"), response.getUntrackedFiles().get(0));
+        assertEquals(Status.UNTRACKED, response.getFileToStatus().get(new File("/tmp/été.txt")));
+    }
+
+    @Test
+    public void testError() {
+        GitStatusParser parser = new GitStatusParser("/tmp/");
+        parser.parseLine("fatal: not a git repository (or any of the parent directories): .git");
+        try {
+            parser.getResponse();
+            fail("The error of git should have been reported.");
+        } catch (JavaGitException e) {
+            assertEquals(438000, e.getCode());
+        }
+    }
 }
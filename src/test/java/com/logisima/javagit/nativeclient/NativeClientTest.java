@@ -0,0 +1,251 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.nativeclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.branch.GitBranchOptions;
+import com.logisima.javagit.cli.branch.GitBranchResponse;
+import com.logisima.javagit.cli.client.ClientManager;
+import com.logisima.javagit.cli.client.ClientManager.ClientType;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.cli.log.GitLogHandler;
+import com.logisima.javagit.cli.log.GitLogOptions;
+import com.logisima.javagit.cli.log.GitLogResponse;
+import com.logisima.javagit.cli.log.GitLogResponse.Commit;
+import com.logisima.javagit.cli.status.GitStatus;
+import com.logisima.javagit.cli.status.GitStatusOptions;
+import com.logisima.javagit.cli.status.GitStatusResponse;
+import com.logisima.javagit.object.BranchRecord;
+import com.logisima.javagit.object.GitFileSystemObject.Status;
+import com.logisima.javagit.object.db.ObjectDatabase;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class NativeClientTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("NativeClientTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+
+        // a history with a merge: c0 - c1 - merge, c0 - c2 - merge
+        FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileA.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "First commit");
+        HelperGitCommands.runGit(repositoryPath, "branch", "topic");
+        FileUtilities.createFile(repositoryPath, "fileB.txt", "This is file fileB.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileB.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Second commit");
+        HelperGitCommands.runGit(repositoryPath, "checkout", "-q", "topic");
+        FileUtilities.createFile(repositoryPath, "fileC.txt", "This is file fileC.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileC.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Topic commit\n\nWith a body.");
+        HelperGitCommands.runGit(repositoryPath, "checkout", "-q", "-");
+        HelperGitCommands.runGit(repositoryPath, "merge", "-q", "--no-ff", "-m", "Merge topic", "topic");
+    }
+
+    /**
+     * Testing that the native git log walks the same commits as git.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testLog() throws JavaGitException, IOException {
+        NativeClient client = (NativeClient) ClientManager.getInstance().getClientInstance(ClientType.NATIVE);
+        String[] expected = HelperGitCommands.runGit(repositoryPath, "log", "--format=%H").split("\n");
+
+        GitLogResponse response = client.getGitLogInstance().log(repositoryPath, null);
+        List<Commit> commits = response.getCommitList();
+        assertEquals(expected.length, commits.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], commits.get(i).getSha());
+        }
+
+        Commit merge = commits.get(0);
+        assertEquals(2, merge.getMergeDetails().size());
+        assertEquals("Merge topic", merge.getMessage());
+        assertEquals("JavaGit Test <test@javagit.test>", merge.getAuthor());
+        assertEquals(HelperGitCommands.runGit(repositoryPath, "log", "-1", "--format=%ad"), merge.getDateString());
+        assertNull(commits.get(1).getMergeDetails());
+
+        GitLogOptions options = new GitLogOptions();
+        options.setOptLimitNoMerges(true);
+        options.setOptLimitCommitSkip(true, 1);
+        options.setOptLimitCommitMax(true, 1);
+        commits = client.getGitLogInstance().log(repositoryPath, options).getCommitList();
+        assertEquals(1, commits.size());
+        assertEquals(expected[2], commits.get(0).getSha());
+
+        options = new GitLogOptions();
+        options.setOptLimitFirstParent(true);
+        options.setOptOrderingReverse(true);
+        commits = client.getGitLogInstance().log(repositoryPath, options).getCommitList();
+        assertEquals(3, commits.size());
+        assertEquals("First commit", commits.get(0).getMessage());
+        assertEquals(expected[0], commits.get(2).getSha());
+
+        final List<String> shas = new ArrayList<String>();
+        client.getGitLogInstance().log(repositoryPath, null, null, new GitLogHandler() {
+
+            public boolean handleCommit(Commit commit) {
+                shas.add(commit.getSha());
+                return shas.size() < 2;
+            }
+        });
+        assertEquals(2, shas.size());
+        assertEquals(expected[1], shas.get(1));
+    }
+
+    /**
+     * Testing that the native git branch lists the branches of the repository.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testBranch() throws JavaGitException, IOException {
+        NativeClient client = (NativeClient) ClientManager.getInstance().getClientInstance(ClientType.NATIVE);
+        String current = HelperGitCommands.runGit(repositoryPath, "rev-parse", "--abbrev-ref", "HEAD");
+        HelperGitCommands.runGit(repositoryPath, "pack-refs", "--all");
+
+        GitBranchOptions options = new GitBranchOptions();
+        options.setOptVerbose(true);
+        GitBranchResponse response = client.getGitBranchInstance().branch(repositoryPath, options);
+        assertEquals(GitBranchResponse.responseType.BRANCH_LIST, response.getResponseType());
+        assertEquals(2, response.getBranchList().size());
+        assertEquals(current, response.getCurrentBranch().getName());
+        assertTrue(response.getBranchList().contains(response.getCurrentBranch()));
+
+        for (BranchRecord record : response.getListOfBranchRecord()) {
+            String sha1 = HelperGitCommands.runGit(repositoryPath, "rev-parse", "--short=7", record.getBranch()
+                    .getName());
+            assertEquals(sha1, record.getSha1().getName());
+            assertEquals(record.getBranch().getName().equals(current), record.isCurrentBranch());
+        }
+    }
+
+    /**
+     * Testing that the native git status reports the same files as git.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testStatus() throws JavaGitException, IOException {
+        NativeClient client = (NativeClient) ClientManager.getInstance().getClientInstance(ClientType.NATIVE);
+        GitStatus cliStatus = ClientManager.getInstance().getClientInstance(ClientType.CLI).getGitStatusInstance();
+
+        // a size change, a change of the same size, and a touched file
+        File fileA = new File(repositoryPath, "fileA.txt");
+        File fileB = new File(repositoryPath, "fileB.txt");
+        File fileC = new File(repositoryPath, "fileC.txt");
+        FileUtilities.modifyFileContents(fileA, " modified");
+        FileUtilities.createFile(repositoryPath, "fileB.txt", "This is file fileB.TXT");
+        fileB.setLastModified(fileB.lastModified() - 10000);
+        fileC.setLastModified(fileC.lastModified() - 10000);
+        // a new file, modified after it was added
+        FileUtilities.createFile(repositoryPath, "fileD.txt", "This is file fileD.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileD.txt");
+        FileUtilities.modifyFileContents(new File(repositoryPath, "fileD.txt"), " modified");
+        // a deleted file, and a removed file still in the working tree
+        new File(repositoryPath, "dir").mkdir();
+        FileUtilities.createFile(repositoryPath, "dir/fileE.txt", "This is file fileE.txt");
+        FileUtilities.createFile(repositoryPath, "dir/fileR.txt", "This is file fileR.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "dir");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-q", "-m", "Add dir");
+        new File(repositoryPath, "dir/fileE.txt").delete();
+        HelperGitCommands.runGit(repositoryPath, "rm", "-q", "--cached", "dir/fileR.txt");
+        // untracked directories, and an empty directory which is not reported
+        new File(repositoryPath, "dir/sub").mkdir();
+        FileUtilities.createFile(repositoryPath, "dir/sub/fileF.txt", "This is file fileF.txt");
+        new File(repositoryPath, "other").mkdir();
+        FileUtilities.createFile(repositoryPath, "other/fileG.txt", "This is file fileG.txt");
+        new File(repositoryPath, "empty").mkdir();
+
+        GitStatusResponse expected = cliStatus.status(repositoryPath, null);
+        GitStatusResponse response = client.getGitStatusInstance().status(repositoryPath, null);
+        assertStatusEquals(expected, response);
+        assertEquals(expected.getBranch(), response.getBranch());
+        assertEquals(Status.MODIFIED, response.getFileStatus(fileB));
+        assertEquals(Status.IN_REPOSITORY, response.getFileStatus(fileC));
+        assertEquals(3, response.getUntrackedFiles().size());
+
+        List<File> paths = new ArrayList<File>();
+        paths.add(new File("dir"));
+        paths.add(fileA);
+        paths.add(new File(repositoryPath, "other/fileG.txt"));
+        assertStatusEquals(cliStatus.status(repositoryPath, null, paths), client.getGitStatusInstance().status(
+                repositoryPath, null, paths));
+
+        GitStatusOptions options = new GitStatusOptions();
+        options.setOptUntrackedFiles(true);
+        assertStatusEquals(cliStatus.status(repositoryPath, options), client.getGitStatusInstance().status(
+                repositoryPath, options));
+        // ignored files, an ignored directory, and an untracked directory with only ignored files
+        FileUtilities.createFile(repositoryPath, ".gitignore", "*.log\n!keep.log\nbuild/\n");
+        FileUtilities.createFile(repositoryPath, "trace.log", "This is file trace.log");
+        FileUtilities.createFile(repositoryPath, "keep.log", "This is file keep.log");
+        FileUtilities.createFile(repositoryPath, "dir/sub/debug.log", "This is file debug.log");
+        new File(repositoryPath, "build").mkdir();
+        FileUtilities.createFile(repositoryPath, "build/out.txt", "This is file out.txt");
+        new File(repositoryPath, "logs").mkdir();
+        FileUtilities.createFile(repositoryPath, "logs/a.log", "This is file a.log");
+        expected = cliStatus.status(repositoryPath, null);
+        assertStatusEquals(expected, client.getGitStatusInstance().status(repositoryPath, null));
+        assertEquals(5, expected.getUntrackedFiles().size());
+        assertStatusEquals(cliStatus.status(repositoryPath, options), client.getGitStatusInstance().status(
+                repositoryPath, options));
+        paths.add(new File(repositoryPath, "build"));
+        assertStatusEquals(cliStatus.status(repositoryPath, null, paths), client.getGitStatusInstance().status(
+                repositoryPath, null, paths));
+    }
+
+    private void assertStatusEquals(GitStatusResponse expected, GitStatusResponse response) {
+        assertEquals(expected.getNewFilesToCommit(), response.getNewFilesToCommit());
+        assertEquals(expected.getModifiedFilesToCommit(), response.getModifiedFilesToCommit());
+        assertEquals(expected.getDeletedFilesToCommit(), response.getDeletedFilesToCommit());
+        assertEquals(expected.getModifiedFilesNotUpdated(), response.getModifiedFilesNotUpdated());
+        assertEquals(expected.getDeletedFilesNotUpdated(), response.getDeletedFilesNotUpdated());
+        assertEquals(expected.getUntrackedFiles(), response.getUntrackedFiles());
+        assertEquals(expected.getFileToStatus(), response.getFileToStatus());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ObjectDatabase.getInstance(repositoryPath).close();
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class CommitBuilderTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("CommitBuilderTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+        FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+        FileUtilities.createFile(repositoryPath, "fileB.txt", "This is file fileB.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileA.txt", "fileB.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Initial commit");
+    }
+
+    /**
+     * Testing that a commit is created on a branch without touching the index of the repository.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCommit() throws Exception {
+        String master = revParse("master");
+        FileUtilities.createFile(repositoryPath, "fileC.txt", "This is file fileC.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileC.txt");
+
+        CommitBuilder builder = DotGit.getInstance(repositoryPath).newCommit(Ref.createBranchRef("master"));
+        builder.setAuthor("JavaGit Test", "test@javagit.test").setCommitter("JavaGit Test", "test@javagit.test");
+        builder.add("dir/new.txt", "New content".getBytes("UTF-8"));
+        builder.add("fileA.txt", new File("fileC.txt"));
+        builder.remove("fileB.txt");
+        String commit = builder.commit("Plumbing commit\n\nWith a body");
+
+        assertEquals(commit, revParse("master"));
+        assertEquals(master, revParse("master^"));
+        assertEquals("dir/new.txt\nfileA.txt", HelperGitCommands.runGit(repositoryPath, "ls-tree", "-r",
+                "--name-only", "master"));
+        assertEquals("New content", HelperGitCommands.runGit(repositoryPath, "show", "master:dir/new.txt"));
+        assertEquals("This is file fileC.txt", HelperGitCommands.runGit(repositoryPath, "show", "master:fileA.txt"));
+        assertEquals("Plumbing commit", HelperGitCommands.runGit(repositoryPath, "log", "-1", "--format=%s"));
+
+        // the index still holds the staged file, and no temporary index is left
+        assertEquals("fileA.txt\nfileB.txt\nfileC.txt", HelperGitCommands.runGit(repositoryPath, "ls-files"));
+        for (String name : new File(repositoryPath, ".git").list()) {
+            assertFalse(name, name.startsWith("index.javagit"));
+        }
+    }
+
+    /**
+     * Testing that thousands of files are hashed by a single process: git prints their SHA1 while it reads their paths,
+     * more than a pipe holds.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCommitManyFiles() throws Exception {
+        File dir = new File(repositoryPath, "many");
+        assertTrue(dir.mkdir());
+        CommitBuilder builder = DotGit.getInstance(repositoryPath).newCommit(Ref.createBranchRef("master"));
+        builder.setAuthor("JavaGit Test", "test@javagit.test").setCommitter("JavaGit Test", "test@javagit.test");
+        int count = 3000;
+        for (int i = 0; i < count; i++) {
+            String name = "file" + i + ".txt";
+            FileUtilities.createFile(dir, name, "This is file " + i);
+            builder.add("many/" + name, new File(dir, name));
+        }
+        String commit = builder.commit("Many files");
+
+        assertEquals(commit, revParse("master"));
+        assertEquals(count + 2, HelperGitCommands.runGit(repositoryPath, "ls-tree", "-r", "--name-only", "master")
+                .split("\n").length);
+        assertEquals("This is file 2999", HelperGitCommands.runGit(repositoryPath, "show", "master:many/file2999.txt"));
+    }
+
+    /**
+     * Testing that a branch is created by its first commit, and that a branch moved by another writer is not
+     * overwritten.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCompareAndSwap() throws Exception {
+        CommitBuilder builder = new CommitBuilder(repositoryPath, Ref.createBranchRef("orphan"));
+        builder.setAuthor("JavaGit Test", "test@javagit.test").setCommitter("JavaGit Test", "test@javagit.test");
+        String orphan = builder.add("orphan.txt", new byte[0]).commit("Orphan commit");
+        assertEquals(orphan, revParse("orphan"));
+        assertEquals("orphan.txt", HelperGitCommands.runGit(repositoryPath, "ls-tree", "-r", "--name-only", orphan));
+
+        String master = revParse("master");
+        FileUtilities.createFile(repositoryPath, "fileA.txt", "Modified");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-a", "-m", "Concurrent commit");
+        String moved = revParse("master");
+
+        builder = new CommitBuilder(repositoryPath, Ref.createBranchRef("master"));
+        builder.setAuthor("JavaGit Test", "test@javagit.test").setCommitter("JavaGit Test", "test@javagit.test");
+        builder.setParent(master).remove("fileA.txt");
+        try {
+            builder.commit("Stale commit");
+            fail("The branch was moved");
+        } catch (JavaGitException e) {
+            assertEquals(JavaGitException.REF_CONFLICT, e.getCode());
+        }
+        assertEquals(moved, revParse("master"));
+    }
+
+    /**
+     * Testing that several writers create commits on different branches at the same time.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            HelperGitCommands.runGit(repositoryPath, "branch", "writer" + i, "master");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                final int writer = i;
+                results.add(executor.submit(new Callable<String>() {
+
+                    public String call() throws Exception {
+                        String last = null;
+                        for (int j = 0; j < 3; j++) {
+                            CommitBuilder builder = new CommitBuilder(repositoryPath, Ref.createBranchRef("writer"
+                                    + writer));
+                            builder.setAuthor("Writer " + writer, "test@javagit.test");
+                            builder.setCommitter("Writer " + writer, "test@javagit.test");
+                            builder.add("writer.txt", ("Commit " + j).getBytes("UTF-8"));
+                            last = builder.commit("Commit " + j + " of writer " + writer);
+                        }
+                        return last;
+                    }
+                }));
+            }
+            for (int i = 0; i < 4; i++) {
+                String last = results.get(i).get();
+                assertEquals(last, revParse("writer" + i));
+                assertEquals("4", HelperGitCommands.runGit(repositoryPath, "rev-list", "--count", "writer" + i));
+                assertEquals("Commit 2", HelperGitCommands.runGit(repositoryPath, "show", "writer" + i
+                        + ":writer.txt"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String revParse(String revision) throws Exception {
+        return HelperGitCommands.runGit(repositoryPath, "rev-parse", revision);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class IgnoreMatcherTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("IgnoreMatcherTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+    }
+
+    /**
+     * Testing that the ignored paths are the ones of git check-ignore.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testIsIgnored() throws JavaGitException, IOException {
+        createFile(".gitignore", "# comment\n*.log\n!keep.log\nbuild/\n/root-only\ndocs/**/*.tmp\na?c.txt\n[Tt]emp*\n"
+                + "space\\ \n");
+        createFile("src/.gitignore", "gen\n!*.log\n");
+        createFile(".git/info/exclude", "secret.txt\n");
+        List<String> paths = Arrays.asList("trace.log", "keep.log", "sub/keep.log", "build/out.txt", "build",
+                "sub/build/x.txt", "root-only", "sub/root-only", "docs/a.tmp", "docs/x/y/b.tmp", "other/c.tmp",
+                "abc.txt", "space ", "ab.txt", "Temp1", "temp2", "src/gen/Main.java", "src/debug.log", "src/main.java",
+                "secret.txt", "sub/secret.txt", "readme.txt");
+        for (String path : paths) {
+            if (!"build".equals(path)) {
+                createFile(path, path);
+            }
+        }
+
+        IgnoreMatcher matcher = IgnoreMatcher.getInstance(repositoryPath);
+        assertSame(matcher, IgnoreMatcher.getInstance(new File(repositoryPath.getPath() + File.separator + ".")));
+        matcher.refresh();
+        assertEquals(checkIgnore(paths), ignored(matcher, paths));
+        assertTrue(matcher.isIgnored("trace.log", false));
+        assertFalse(matcher.isIgnored("keep.log", false));
+        assertTrue(matcher.isIgnored("build/out.txt", false));
+
+        // frames give the same answers, name by name
+        IgnoreMatcher.Frame src = matcher.getFrame("").getChild("src");
+        assertTrue(src.isIgnored("gen", true));
+        assertFalse(src.isIgnored("debug.log", false));
+        assertFalse(src.isIgnored("main.java", false));
+        assertTrue(matcher.getFrame("docs/x").getChild("y").isIgnored("b.tmp", false));
+    }
+
+    /**
+     * Testing that a modified .gitignore file is read again.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testModifiedRules() throws JavaGitException, IOException {
+        createFile(".gitignore", "*.log\n");
+        createFile("trace.log", "trace");
+        createFile("trace.txt", "trace");
+        IgnoreMatcher matcher = IgnoreMatcher.getInstance(repositoryPath);
+        assertTrue(matcher.isIgnored("trace.log", false));
+        assertFalse(matcher.isIgnored("trace.txt", false));
+
+        File gitignore = createFile(".gitignore", "*.txt\n!trace.txt\n*.log\n");
+        gitignore.setLastModified(gitignore.lastModified() + 10000);
+        assertTrue(matcher.isIgnored("trace.log", false));
+        assertFalse(matcher.isIgnored("trace.txt", false));
+        createFile(".gitignore", "*.txt\n");
+        gitignore.setLastModified(gitignore.lastModified() + 20000);
+        assertFalse(matcher.isIgnored("trace.log", false));
+        assertTrue(matcher.isIgnored("trace.txt", false));
+        assertEquals(checkIgnore(Arrays.asList("trace.log", "trace.txt")), ignored(matcher, Arrays.asList(
+                "trace.log", "trace.txt")));
+    }
+
+    /**
+     * Testing that a modified exclude file is read again on refresh, not on each lookup.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testRefreshRepositoryRules() throws JavaGitException, IOException {
+        createFile(".git/info/exclude", "secret.txt\n");
+        IgnoreMatcher matcher = IgnoreMatcher.getInstance(repositoryPath);
+        matcher.refresh();
+        assertTrue(matcher.isIgnored("secret.txt", false));
+        assertFalse(matcher.isIgnored("private.txt", false));
+
+        File exclude = createFile(".git/info/exclude", "private.txt\n");
+        exclude.setLastModified(exclude.lastModified() + 10000);
+        assertTrue(matcher.isIgnored("secret.txt", false));
+        matcher.refresh();
+        assertFalse(matcher.isIgnored("secret.txt", false));
+        assertTrue(matcher.isIgnored("private.txt", false));
+    }
+
+    private File createFile(String path, String content) throws IOException {
+        File file = new File(repositoryPath, path);
+        file.getParentFile().mkdirs();
+        return FileUtilities.createFile(repositoryPath, path, content);
+    }
+
+    private Set<String> checkIgnore(List<String> paths) throws JavaGitException, IOException {
+        String[] args = new String[paths.size() + 2];
+        args[0] = "check-ignore";
+        args[1] = "--no-index";
+        for (int i = 0; i < paths.size(); i++) {
+            args[i + 2] = paths.get(i);
+        }
+        return new HashSet<String>(Arrays.asList(HelperGitCommands.runGit(repositoryPath, args).split("\n")));
+    }
+
+    private Set<String> ignored(IgnoreMatcher matcher, List<String> paths) {
+        Set<String> ignored = new HashSet<String>();
+        for (String path : paths) {
+            if (matcher.isIgnored(path, new File(repositoryPath, path).isDirectory())) {
+                ignored.add(path);
+            }
+        }
+        return ignored;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
@@ -20,12 +20,23 @@
 package com.logisima.javagit.object;
 
 import java.io.File;
+import java.nio.file.FileVisitResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
 import org.junit.Test;
 
+import com.logisima.javagit.JavaGitConfiguration;
 import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.cli.status.GitStatusResponse;
+import com.logisima.javagit.object.GitFileSystemObject.Status;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
 
 /**
  * Test cases for our <code>WorkingTree</code> class.
@@ -79,6 +90,222 @@ public class WorkingTreeTest extends TestCase {
         assertEquals(gitDirectory.getWorkingTree(), workingTree);
     }
 
+    /**
+     * Testing that the statuses of many files are read from a single, cached, git status.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGetStatuses() throws Exception {
+        File repositoryPath = FileUtilities.createTempDirectory("WorkingTreeTestRepo");
+        try {
+            new GitInit().init(repositoryPath, null);
+            FileUtilities.createFile(repositoryPath, "committed.txt", "committed");
+            FileUtilities.createFile(repositoryPath, "modified.txt", "committed");
+            HelperGitCommands.runGit(repositoryPath, "add", "committed.txt", "modified.txt");
+            HelperGitCommands.runGit(repositoryPath, "commit", "-m", "First commit");
+            FileUtilities.modifyFileContents(new File(repositoryPath, "modified.txt"), "modified");
+            FileUtilities.createFile(repositoryPath, "untracked.txt", "untracked");
+            new File(repositoryPath, "dir").mkdir();
+            FileUtilities.createFile(repositoryPath, "dir/untracked.txt", "untracked");
+
+            WorkingTree workingTree = WorkingTree.getInstance(repositoryPath);
+            List<GitFileSystemObject> files = new ArrayList<GitFileSystemObject>();
+            for (String name : new String[] { "committed.txt", "modified.txt", "untracked.txt", "dir/untracked.txt" }) {
+                files.add(workingTree.getFile(new File(repositoryPath, name)));
+            }
+            Map<GitFileSystemObject, Status> statuses = workingTree.getStatuses(files);
+            assertEquals(Status.IN_REPOSITORY, statuses.get(files.get(0)));
+            assertEquals(Status.MODIFIED, statuses.get(files.get(1)));
+            assertEquals(Status.UNTRACKED, statuses.get(files.get(2)));
+            assertEquals(Status.UNTRACKED, statuses.get(files.get(3)));
+
+            // the status is cached until the index changes
+            GitStatusResponse status = workingTree.getCachedStatus();
+            assertSame(status, workingTree.getCachedStatus());
+            HelperGitCommands.runGit(repositoryPath, "add", "untracked.txt");
+            assertNotSame(status, workingTree.getCachedStatus());
+            assertEquals(Status.NEW_TO_COMMIT, ((GitFile) files.get(2)).getStatus());
+
+            workingTree.invalidateStatus();
+            assertNotSame(status, workingTree.getCachedStatus());
+        } finally {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+
+    /**
+     * Testing that a watched working tree updates its cached status for the changed paths, without a change of the
+     * index.
+     * 
+     * @throws Exception
+     */
+    /**
+     * Testing the lazy children of a directory and the walk of the working tree.
+     */
+    @Test
+    public void testWalk() throws Exception {
+        File repositoryPath = FileUtilities.createTempDirectory("WorkingTreeWalkTestRepo");
+        try {
+            new GitInit().init(repositoryPath, null);
+            new File(repositoryPath, "dir/sub").mkdirs();
+            new File(repositoryPath, "skip").mkdir();
+            FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+            FileUtilities.createFile(repositoryPath, ".hidden", "This is file .hidden");
+            FileUtilities.createFile(repositoryPath, "dir/fileB.txt", "This is file fileB.txt");
+            FileUtilities.createFile(repositoryPath, "dir/sub/fileC.txt", "This is file fileC.txt");
+            FileUtilities.createFile(repositoryPath, "skip/fileD.txt", "This is file fileD.txt");
+            WorkingTree workingTree = WorkingTree.getInstance(repositoryPath);
+
+            List<GitFileSystemObject> children = workingTree.getTree();
+            assertEquals(3, children.size());
+            for (GitFileSystemObject child : children) {
+                assertEquals(GitFileSystemObject.getRelativePath(child.getFile(), repositoryPath), child.relativePath);
+                if (child.getName().equals("dir")) {
+                    assertTrue(child instanceof GitDirectory);
+                    List<GitFileSystemObject> grandChildren = ((GitDirectory) child).getChildren();
+                    assertEquals(2, grandChildren.size());
+                    for (GitFileSystemObject grandChild : grandChildren) {
+                        assertEquals(GitFileSystemObject.getRelativePath(grandChild.getFile(), repositoryPath),
+                                grandChild.relativePath);
+                    }
+                }
+            }
+
+            final List<String> paths = new ArrayList<String>();
+            workingTree.walk(new GitDirectory.Visitor() {
+
+                public FileVisitResult visitDirectory(GitDirectory directory) {
+                    paths.add(directory.relativePath.getPath().replace(File.separatorChar, '/') + "/");
+                    return directory.getName().equals("skip") ? FileVisitResult.SKIP_SUBTREE
+                            : FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult visitFile(GitFile file) throws JavaGitException {
+                    assertEquals(GitFileSystemObject.getRelativePath(file.getFile(), file.getWorkingTree().getPath()),
+                            file.relativePath);
+                    paths.add(file.relativePath.getPath().replace(File.separatorChar, '/'));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            assertEquals(6, paths.size());
+            assertTrue(paths.containsAll(Arrays.asList("dir/", "dir/fileB.txt", "dir/sub/", "dir/sub/fileC.txt",
+                    "fileA.txt", "skip/")));
+            // depth-first: the content of a directory follows it
+            int dir = paths.indexOf("dir/");
+            assertTrue(paths.indexOf("dir/sub/") > dir && paths.indexOf("dir/sub/") <= dir + 2);
+            assertTrue(paths.indexOf("dir/sub/fileC.txt") > dir && paths.indexOf("dir/sub/fileC.txt") <= dir + 3);
+
+            final List<String> visited = new ArrayList<String>();
+            workingTree.walk(new GitDirectory.Visitor() {
+
+                public FileVisitResult visitDirectory(GitDirectory directory) {
+                    visited.add(directory.getName());
+                    return FileVisitResult.TERMINATE;
+                }
+
+                public FileVisitResult visitFile(GitFile file) {
+                    visited.add(file.getName());
+                    return FileVisitResult.TERMINATE;
+                }
+            });
+            assertEquals(1, visited.size());
+        } finally {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+
+    @Test
+    public void testStatusWatcher() throws Exception {
+        File repositoryPath = FileUtilities.createTempDirectory("WorkingTreeWatcherTestRepo");
+        WorkingTree workingTree = WorkingTree.getInstance(repositoryPath);
+        try {
+            new GitInit().init(repositoryPath, null);
+            new File(repositoryPath, "dir").mkdir();
+            FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+            FileUtilities.createFile(repositoryPath, "dir/fileB.txt", "This is file fileB.txt");
+            HelperGitCommands.runGit(repositoryPath, "add", ".");
+            HelperGitCommands.runGit(repositoryPath, "commit", "-m", "First commit");
+            FileUtilities.createFile(repositoryPath, "fileC.txt", "This is file fileC.txt");
+            HelperGitCommands.runGit(repositoryPath, "add", "fileC.txt");
+
+            workingTree.startStatusWatcher();
+            assertTrue(workingTree.isStatusWatched());
+            GitStatusResponse status = workingTree.getCachedStatus();
+            assertSame(status, workingTree.getCachedStatus());
+            assertEquals(1, status.getNewFilesToCommit().size());
+
+            File fileA = new File(repositoryPath, "fileA.txt");
+            FileUtilities.modifyFileContents(fileA, " modified");
+            new File(repositoryPath, "dir/fileB.txt").delete();
+            new File(repositoryPath, "other/sub").mkdirs();
+            FileUtilities.createFile(repositoryPath, "other/sub/fileD.txt", "This is file fileD.txt");
+            status = waitForStatus(workingTree, 3);
+            assertEquals(Status.MODIFIED, status.getFileStatus(fileA));
+            assertEquals(Status.DELETED, status.getFileStatus(new File(repositoryPath, "dir/fileB.txt")));
+            assertEquals(Status.UNTRACKED, status.getFileStatus(new File(repositoryPath, "other/sub/fileD.txt")));
+            assertEquals(Status.NEW_TO_COMMIT, status.getFileStatus(new File(repositoryPath, "fileC.txt")));
+            assertStatusEquals(workingTree.getStatus(), status);
+
+            // a file created in an untracked directory keeps the directory reported as a whole
+            FileUtilities.createFile(repositoryPath, "other/fileE.txt", "This is file fileE.txt");
+            FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+            status = waitForStatus(workingTree, 2);
+            assertEquals(Status.IN_REPOSITORY, status.getFileStatus(fileA));
+            assertStatusEquals(workingTree.getStatus(), status);
+
+            // a file to commit modified in the working tree, then restored, gets its change to commit back
+            File fileC = new File(repositoryPath, "fileC.txt");
+            FileUtilities.modifyFileContents(fileC, " modified");
+            status = waitForStatus(workingTree, 3);
+            assertEquals(Status.MODIFIED, status.getFileStatus(fileC));
+            FileUtilities.createFile(repositoryPath, "fileC.txt", "This is file fileC.txt");
+            status = waitForStatus(workingTree, 2);
+            assertEquals(Status.NEW_TO_COMMIT, status.getFileStatus(fileC));
+            assertStatusEquals(workingTree.getStatus(), status);
+
+            // too many changed paths for the command line: the whole working tree is read
+            int maxPathspecLength = JavaGitConfiguration.getMaxPathspecLength();
+            JavaGitConfiguration.setMaxPathspecLength(0);
+            try {
+                FileUtilities.modifyFileContents(fileA, " modified");
+                status = waitForStatus(workingTree, 3);
+                assertEquals(Status.MODIFIED, status.getFileStatus(fileA));
+                assertStatusEquals(workingTree.getStatus(), status);
+            } finally {
+                JavaGitConfiguration.setMaxPathspecLength(maxPathspecLength);
+            }
+        } finally {
+            workingTree.stopStatusWatcher();
+            assertFalse(workingTree.isStatusWatched());
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+
+    /**
+     * Waits until the cached status has a number of changes in the working tree, the events being delivered
+     * asynchronously.
+     */
+    private static GitStatusResponse waitForStatus(WorkingTree workingTree, int changes) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        GitStatusResponse status = workingTree.getCachedStatus();
+        while (status.getModifiedFilesNotUpdated().size() + status.getDeletedFilesNotUpdated().size()
+                + status.getUntrackedFiles().size() != changes
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            status = workingTree.getCachedStatus();
+        }
+        return status;
+    }
+
+    private static void assertStatusEquals(GitStatusResponse expected, GitStatusResponse status) {
+        assertEquals(expected.getNewFilesToCommit(), status.getNewFilesToCommit());
+        assertEquals(expected.getModifiedFilesNotUpdated(), status.getModifiedFilesNotUpdated());
+        assertEquals(expected.getDeletedFilesNotUpdated(), status.getDeletedFilesNotUpdated());
+        assertEquals(expected.getUntrackedFiles(), status.getUntrackedFiles());
+        assertEquals(expected.getFileToStatus(), status.getFileToStatus());
+    }
+
     private static void runEqualityTests(String path1, String path2, boolean accessViaFileObjects, boolean testEquality) {
         WorkingTree workingTree1, workingTree2;
 
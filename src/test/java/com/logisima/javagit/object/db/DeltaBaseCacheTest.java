@@ -0,0 +1,58 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class DeltaBaseCacheTest extends TestCase {
+
+    /**
+     * Testing that the cache is bounded by the size of its contents and evicts the least recently used bases.
+     */
+    @Test
+    public void testEvictionBySize() {
+        DeltaBaseCache cache = new DeltaBaseCache(100);
+        cache.put(null, 1, new GitObject(null, ObjectType.BLOB, new byte[40]));
+        cache.put(null, 2, new GitObject(null, ObjectType.BLOB, new byte[40]));
+        assertEquals(80, cache.getSize());
+
+        // 1 is now the most recently used, so adding 3 evicts 2
+        assertNotNull(cache.get(null, 1));
+        cache.put(null, 3, new GitObject(null, ObjectType.BLOB, new byte[40]));
+        assertEquals(80, cache.getSize());
+        assertNull(cache.get(null, 2));
+        assertNotNull(cache.get(null, 1));
+        assertNotNull(cache.get(null, 3));
+
+        // a base larger than the limit is not cached
+        cache.put(null, 4, new GitObject(null, ObjectType.BLOB, new byte[101]));
+        assertNull(cache.get(null, 4));
+        assertEquals(80, cache.getSize());
+
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(null, 1));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class DirCacheTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("DirCacheTestRepo");
+        HelperGitCommands.runGit(repositoryPath, "init");
+        new File(repositoryPath, "dir" + File.separator + "sub").mkdirs();
+        FileUtilities.createFile(repositoryPath, "a.txt", "file a");
+        FileUtilities.createFile(repositoryPath, "dir/b.txt", "file b");
+        FileUtilities.createFile(repositoryPath, "dir/sub/c.txt", "file c, a bit longer");
+        FileUtilities.createFile(repositoryPath, "dir/sub/d.txt", "");
+        FileUtilities.createFile(repositoryPath, "zé.txt", "accented");
+        HelperGitCommands.runGit(repositoryPath, "add", ".");
+    }
+
+    /**
+     * Testing that the entries read match <code>git ls-files -s</code>, for the versions 2 and 4 of the index (git
+     * writes a version 3 index only if an entry has extended flags, see testIntentToAdd).
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testReadVersions() throws JavaGitException, IOException {
+        for (int version : new int[] { 2, 4 }) {
+            HelperGitCommands.runGit(repositoryPath, "update-index", "--index-version", String.valueOf(version));
+            DirCache dirCache = DirCache.read(repositoryPath);
+            assertEquals(version, dirCache.getVersion());
+            assertEquals(toLsFiles(dirCache), HelperGitCommands.runGit(repositoryPath, "-c", "core.quotepath=false",
+                    "ls-files", "-s"));
+
+            assertEquals(-1, dirCache.findEntry("dir"));
+            assertEquals(-1, dirCache.findEntry("b.txt"));
+            DirCache.Entry entry = dirCache.newEntry();
+            entry.moveTo(dirCache.findEntry("dir/sub/c.txt"));
+            assertEquals("dir/sub/c.txt", entry.getPath());
+            assertEquals(20, entry.getLength());
+            assertEquals(0100644, entry.getMode());
+            assertEquals(0, entry.getStage());
+            assertEquals(HelperGitCommands.hashObject(repositoryPath, "dir/sub/c.txt"), entry.getObjectId());
+        }
+    }
+
+    /**
+     * Testing the extended flags (version 3 and later), with an entry added by <code>git add -N</code>.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testIntentToAdd() throws JavaGitException, IOException {
+        FileUtilities.createFile(repositoryPath, "dir/new.txt", "new");
+        HelperGitCommands.runGit(repositoryPath, "add", "-N", "dir/new.txt");
+        DirCache dirCache = DirCache.read(repositoryPath);
+        assertTrue(dirCache.getVersion() >= 3);
+        assertEquals(toLsFiles(dirCache), HelperGitCommands.runGit(repositoryPath, "-c", "core.quotepath=false",
+                "ls-files", "-s"));
+
+        DirCache.Entry entry = dirCache.newEntry();
+        entry.moveTo(dirCache.findEntry("dir/new.txt"));
+        assertTrue(entry.isIntentToAdd());
+        entry.moveTo(dirCache.findEntry("a.txt"));
+        assertFalse(entry.isIntentToAdd());
+        assertFalse(entry.isSkipWorktree());
+    }
+
+    /**
+     * Testing the comparison of the stat data of an entry with the working tree.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testIsModified() throws JavaGitException, IOException {
+        File fileA = new File(repositoryPath, "a.txt");
+        // move the file back in time, so that the entry isn't racily clean
+        fileA.setLastModified(System.currentTimeMillis() - 10000);
+        HelperGitCommands.runGit(repositoryPath, "add", "a.txt");
+        DirCache dirCache = DirCache.read(repositoryPath);
+        DirCache.Entry entry = dirCache.newEntry();
+        entry.moveTo(dirCache.findEntry("a.txt"));
+        assertFalse(entry.isModified(fileA));
+
+        FileUtilities.modifyFileContents(fileA, "file a, modified");
+        assertTrue(entry.isModified(fileA));
+        fileA.delete();
+        assertTrue(entry.isModified(fileA));
+    }
+
+    /**
+     * Testing a repository without index.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testNoIndex() throws JavaGitException, IOException {
+        new File(repositoryPath, ".git" + File.separator + "index").delete();
+        assertNull(DirCache.read(repositoryPath));
+    }
+
+    private String toLsFiles(DirCache dirCache) {
+        StringBuilder sb = new StringBuilder();
+        DirCache.Entry entry = dirCache.newEntry();
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            entry.moveTo(i);
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append(Integer.toOctalString(entry.getMode())).append(' ').append(entry.getObjectId()).append(' ')
+                    .append(entry.getStage()).append('\t').append(entry.getPath());
+        }
+        return sb.toString();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
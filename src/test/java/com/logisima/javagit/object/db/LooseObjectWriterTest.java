@@ -0,0 +1,182 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class LooseObjectWriterTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("LooseObjectWriterTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+    }
+
+    /**
+     * Testing that the objects written from memory, streams and files are the objects git writes.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testWrite() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("Line ").append(i).append('\n');
+        }
+        byte[] data = content.toString().getBytes("UTF-8");
+        FileUtilities.createFile(repositoryPath, "file.txt", content.toString());
+        String expected = HelperGitCommands.runGit(repositoryPath, "hash-object", "file.txt");
+
+        LooseObjectWriter writer = ObjectDatabase.getInstance(repositoryPath).getObjectWriter();
+        assertEquals(expected, LooseObjectWriter.computeId(ObjectType.BLOB, data));
+        assertEquals(expected, writer.write(ObjectType.BLOB, data.length, new ByteArrayInputStream(data)));
+        assertEquals(expected, writer.writeBlob(new File(repositoryPath, "file.txt")));
+        assertEquals(expected, writer.write(ObjectType.BLOB, data));
+        assertEquals("blob", HelperGitCommands.runGit(repositoryPath, "cat-file", "-t", expected));
+        assertEquals(content.toString().trim(), HelperGitCommands.runGit(repositoryPath, "cat-file", "-p", expected));
+
+        String empty = writer.write(ObjectType.BLOB, new byte[0]);
+        assertEquals("e69de29bb2d1d6434b8b29ae775ad8c2e48c5391", empty);
+
+        // a tree and a commit built on the blob
+        byte[] tree = concat("100644 file.txt\0".getBytes("UTF-8"), ObjectId.toRaw(expected));
+        String treeId = writer.write(ObjectType.TREE, tree);
+        assertEquals("file.txt", HelperGitCommands.runGit(repositoryPath, "ls-tree", "--name-only", treeId));
+        String commit = "tree " + treeId + "\nauthor A <a@a> 0 +0000\ncommitter A <a@a> 0 +0000\n\nMessage\n";
+        String commitId = writer.write(ObjectType.COMMIT, commit.getBytes("UTF-8"));
+        assertEquals(treeId, HelperGitCommands.runGit(repositoryPath, "rev-parse", commitId + "^{tree}"));
+
+        HelperGitCommands.runGit(repositoryPath, "fsck", "--strict", "--no-dangling");
+        assertNoTempFile();
+    }
+
+    /**
+     * Testing that the existing objects, loose or packed, are not written again, and that a short stream is an error.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testExistingObjectsAndErrors() throws Exception {
+        LooseObjectWriter writer = ObjectDatabase.getInstance(repositoryPath).getObjectWriter();
+        byte[] data = "Packed content".getBytes("UTF-8");
+        String sha1 = writer.write(ObjectType.BLOB, data);
+        File loose = new File(repositoryPath, ".git/objects/" + sha1.substring(0, 2) + "/" + sha1.substring(2));
+        assertTrue(loose.isFile());
+        long modified = loose.lastModified();
+        Thread.sleep(1100);
+        assertEquals(sha1, writer.write(ObjectType.BLOB, data.length, new ByteArrayInputStream(data)));
+        assertEquals(modified, loose.lastModified());
+
+        // once packed, the object is not written as a loose object again
+        HelperGitCommands.runGit(repositoryPath, "update-ref", "refs/keep", writer.write(ObjectType.TAG,
+                ("object " + sha1 + "\ntype blob\ntag keep\ntagger A <a@a> 0 +0000\n\nKeep\n").getBytes("UTF-8")));
+        HelperGitCommands.runGit(repositoryPath, "repack", "-a", "-d");
+        HelperGitCommands.runGit(repositoryPath, "prune-packed");
+        assertFalse(loose.exists());
+        assertEquals(sha1, writer.write(ObjectType.BLOB, data));
+        assertEquals(sha1, writer.write(ObjectType.BLOB, data.length, new ByteArrayInputStream(data)));
+        assertFalse(loose.exists());
+
+        try {
+            writer.write(ObjectType.BLOB, data.length + 1, new ByteArrayInputStream(data));
+            fail("The stream is shorter than the size");
+        } catch (JavaGitException e) {
+            assertEquals(100104, e.getCode());
+        }
+        assertNoTempFile();
+    }
+
+    /**
+     * Testing that several threads write the same objects at the same time.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final LooseObjectWriter writer = ObjectDatabase.getInstance(repositoryPath).getObjectWriter();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+
+                    public List<String> call() throws Exception {
+                        List<String> ids = new ArrayList<String>();
+                        for (int j = 0; j < 50; j++) {
+                            byte[] data = ("Object " + j).getBytes("UTF-8");
+                            ids.add(writer.write(ObjectType.BLOB, data.length, new ByteArrayInputStream(data)));
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            List<String> expected = results.get(0).get();
+            for (Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+            for (int j = 0; j < 50; j++) {
+                assertEquals("Object " + j, HelperGitCommands.runGit(repositoryPath, "cat-file", "-p", expected.get(j)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertNoTempFile();
+    }
+
+    private void assertNoTempFile() {
+        for (String name : new File(repositoryPath, ".git/objects").list()) {
+            assertFalse(name, name.startsWith("tmp_obj_"));
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
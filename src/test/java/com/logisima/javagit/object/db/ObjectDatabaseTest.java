@@ -0,0 +1,236 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.catfile.GitCatFile;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class ObjectDatabaseTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("ObjectDatabaseTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+    }
+
+    /**
+     * Testing that loose and packed objects (including deltas) are read like git-cat-file reads them.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testReadLooseAndPackedObjects() throws JavaGitException, IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("This is line ").append(i).append(" of the file\n");
+        }
+        String[] commits = new String[3];
+        String[] blobs = new String[3];
+        for (int i = 0; i < 3; i++) {
+            content.append("One more line ").append(i).append("\n");
+            FileUtilities.createFile(repositoryPath, "file.txt", content.toString());
+            HelperGitCommands.runGit(repositoryPath, "add", "file.txt");
+            HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Commit " + i);
+            commits[i] = HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD");
+            blobs[i] = HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD:file.txt");
+        }
+
+        ObjectDatabase db = ObjectDatabase.getInstance(repositoryPath);
+        GitCatFile catFile = GitCatFile.getInstance(repositoryPath);
+        try {
+            assertSameObjects(catFile, db, commits, blobs);
+
+            // pack everything: the blobs are stored as deltas, the refs in packed-refs
+            HelperGitCommands.runGit(repositoryPath, "gc", "-q", "--aggressive", "--prune=now");
+            assertFalse(new File(db.getGitDir(), "objects/" + commits[2].substring(0, 2) + "/"
+                    + commits[2].substring(2)).exists());
+            catFile.close();
+            assertSameObjects(catFile, db, commits, blobs);
+
+            // the blobs share their delta chain, the second pass finds the bases in the cache
+            DeltaBaseCache cache = db.getDeltaBaseCache();
+            long hits = cache.getHits();
+            long lookups = hits + cache.getMisses();
+            assertSameObjects(catFile, db, commits, blobs);
+            assertTrue(cache.getHits() > hits);
+            // at most a lookup per object read, none for the headers
+            assertTrue(cache.getHits() + cache.getMisses() - lookups <= commits.length + blobs.length);
+
+            assertEquals(commits[2], db.resolve("HEAD"));
+            String branch = db.getRefDatabase().getFullBranch();
+            assertEquals(commits[2], db.resolve(branch));
+            assertEquals(commits[2], db.resolve(branch.substring("refs/heads/".length())));
+            assertFalse(db.has("0123456789012345678901234567890123456789"));
+            assertNull(db.open("0123456789012345678901234567890123456789"));
+            assertNull(db.open("unknown-branch"));
+
+            CommitObject commit = CommitObject.parse(db.open(commits[2]));
+            assertEquals(1, commit.getParents().size());
+            assertEquals(commits[1], commit.getParents().get(0));
+            assertEquals("JavaGit Test", commit.getAuthor().getName());
+            assertEquals("test@javagit.test", commit.getCommitter().getEmail());
+            assertEquals("Commit 2\n", commit.getMessage());
+        } finally {
+            catFile.close();
+            db.close();
+        }
+    }
+
+    /**
+     * Testing that the packs nobody reads are unmapped, and mapped again on the next read.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIdlePacksAreUnmapped() throws Exception {
+        FileUtilities.createFile(repositoryPath, "file.txt", "This is file.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "file.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Commit");
+        HelperGitCommands.runGit(repositoryPath, "gc", "-q", "--prune=now");
+        String commit = HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD");
+
+        long timeout = JavaGitConfiguration.getIdleTimeout();
+        JavaGitConfiguration.setIdleTimeout(50);
+        ObjectDatabase db = ObjectDatabase.getInstance(repositoryPath);
+        try {
+            assertNotNull(db.open(commit));
+            assertEquals(1, db.getMappedPackCount());
+            long deadline = System.currentTimeMillis() + 10000;
+            while (db.getMappedPackCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, db.getMappedPackCount());
+
+            assertEquals(ObjectType.COMMIT, db.open(commit).getType());
+            assertEquals(1, db.getMappedPackCount());
+        } finally {
+            JavaGitConfiguration.setIdleTimeout(timeout);
+            db.close();
+        }
+        assertEquals(0, db.getMappedPackCount());
+        assertNotSame(db, ObjectDatabase.getInstance(repositoryPath));
+    }
+
+    /**
+     * Testing that a loose object too large for an array is rejected, and that its header can still be read.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTooLargeLooseObject() throws Exception {
+        String sha1 = "0123456789012345678901234567890123456789";
+        File dir = new File(repositoryPath, ".git/objects/01");
+        dir.mkdirs();
+        OutputStream out = new DeflaterOutputStream(new FileOutputStream(new File(dir, sha1.substring(2))));
+        try {
+            out.write("blob 3000000000\0".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+
+        ObjectDatabase db = ObjectDatabase.getInstance(repositoryPath);
+        try {
+            assertTrue(db.has(sha1));
+            assertEquals(3000000000L, db.getInfo(sha1).getSize());
+            try {
+                db.open(sha1);
+                fail("A loose object too large for an array was read");
+            } catch (JavaGitException e) {
+                assertEquals(100105, e.getCode());
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Testing that a linked working tree reads the objects and the refs of the repository it shares, and its own HEAD.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLinkedWorkingTree() throws Exception {
+        FileUtilities.createFile(repositoryPath, "file.txt", "This is file.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "file.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Commit");
+        String commit = HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD");
+        String branch = HelperGitCommands.runGit(repositoryPath, "symbolic-ref", "HEAD");
+        File linked = new File(repositoryPath.getPath() + "-linked");
+        HelperGitCommands.runGit(repositoryPath, "worktree", "add", "-q", "-b", "feature", linked.getPath());
+
+        ObjectDatabase db = ObjectDatabase.getInstance(linked);
+        try {
+            assertEquals("refs/heads/feature", db.getRefDatabase().getFullBranch());
+            assertEquals(commit, db.resolve("HEAD"));
+            assertEquals(commit, db.resolve(branch));
+            assertEquals(ObjectType.COMMIT, db.open(commit).getType());
+            assertEquals(new File(repositoryPath, ".git").getCanonicalFile(), GitDir.findCommon(db.getGitDir())
+                    .getCanonicalFile());
+        } finally {
+            db.close();
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(linked);
+        }
+    }
+
+    private void assertSameObjects(GitCatFile catFile, ObjectDatabase db, String[] commits, String[] blobs)
+            throws JavaGitException {
+        for (int i = 0; i < commits.length; i++) {
+            for (String sha1 : new String[] { commits[i], blobs[i] }) {
+                GitObject expected = catFile.open(sha1);
+                GitObject actual = db.open(sha1);
+                assertEquals(expected.getType(), actual.getType());
+                assertEquals(expected.getSize(), actual.getSize());
+                assertTrue(Arrays.equals(expected.getData(), actual.getData()));
+
+                ObjectInfo info = db.getInfo(sha1);
+                assertEquals(expected.getType(), info.getType());
+                assertEquals(expected.getSize(), info.getSize());
+                assertTrue(db.has(sha1));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
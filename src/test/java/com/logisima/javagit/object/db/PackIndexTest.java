@@ -0,0 +1,122 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.object.Commit;
+import com.logisima.javagit.object.DotGit;
+import com.logisima.javagit.object.Ref;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class PackIndexTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("PackIndexTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+        for (int i = 0; i < 5; i++) {
+            FileUtilities.createFile(repositoryPath, "file" + i + ".txt", "This is file " + i);
+            HelperGitCommands.runGit(repositoryPath, "add", "file" + i + ".txt");
+            HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Commit " + i);
+        }
+        HelperGitCommands.runGit(repositoryPath, "gc", "-q", "--prune=now");
+    }
+
+    /**
+     * Testing that the v1 and v2 indexes find every object at the offset given by git-verify-pack.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testFindOffset() throws JavaGitException, IOException {
+        File packDir = new File(repositoryPath, ".git/objects/pack");
+        File pack = null;
+        for (File file : packDir.listFiles()) {
+            if (file.getName().endsWith(".pack")) {
+                pack = file;
+            }
+        }
+        assertNotNull(pack);
+        String packPath = pack.getPath();
+        File indexV2 = new File(packPath.substring(0, packPath.length() - 5) + ".idx");
+        File indexV1 = new File(repositoryPath, "v1.idx");
+        HelperGitCommands.runGit(repositoryPath, "index-pack", "--index-version=1", "-o", indexV1.getPath(),
+                packPath);
+
+        String[] lines = HelperGitCommands.runGit(repositoryPath, "verify-pack", "-v", indexV2.getPath()).split("\n");
+        for (File idx : new File[] { indexV2, indexV1 }) {
+            PackIndex index = new PackIndex(idx);
+            int count = 0;
+            for (String line : lines) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 5 || !ObjectId.isId(fields[0])) {
+                    continue;
+                }
+                assertEquals(Long.parseLong(fields[4]), index.findOffset(ObjectId.toRaw(fields[0])));
+                count++;
+            }
+            assertEquals(count, index.getObjectCount());
+            assertEquals(-1, index.findOffset(ObjectId.toRaw("0123456789012345678901234567890123456789")));
+            assertEquals(-1, index.findOffset(ObjectId.toRaw("ffffffffffffffffffffffffffffffffffffffff")));
+        }
+    }
+
+    /**
+     * Testing that commits are resolved from the object model through the packs.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testCommitResolution() throws JavaGitException, IOException {
+        DotGit dotGit = DotGit.getInstance(repositoryPath);
+        String expected = HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD~2");
+        CommitObject commit = Commit.getHeadCommit(2).read(dotGit);
+        assertEquals(expected, commit.getSha1());
+        assertEquals("Commit 2\n", commit.getMessage());
+
+        String branch = dotGit.getObjectDatabase().getRefDatabase().getFullBranch();
+        Ref branchRef = Ref.createBranchRef(branch.substring("refs/heads/".length()));
+        assertEquals(HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD"), dotGit.getObjectDatabase()
+                .resolve(branchRef));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ObjectDatabase.getInstance(repositoryPath).close();
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class PackWriterTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("PackWriterTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+    }
+
+    /**
+     * Testing that the deltas computed by the encoder are applied by the decoder.
+     */
+    @Test
+    public void testDeltaEncoder() {
+        Random random = new Random(42);
+        byte[] base = new byte[200000];
+        random.nextBytes(base);
+        byte[] target = new byte[250000];
+        // moved and repeated blocks of the base, with random bytes between them
+        System.arraycopy(base, 100000, target, 0, 100000);
+        random.nextBytes(target);
+        System.arraycopy(base, 100000, target, 1000, 100000);
+        System.arraycopy(base, 0, target, 110000, 90000);
+        System.arraycopy(base, 5000, target, 200017, 40000);
+
+        DeltaEncoder encoder = new DeltaEncoder(base);
+        byte[] delta = encoder.encode(target, target.length);
+        assertNotNull(delta);
+        // about 20000 random bytes are inserted
+        assertTrue(delta.length < 22000);
+        assertTrue(Arrays.equals(target, DeltaDecoder.apply(base, delta)));
+        assertNull(encoder.encode(target, 100));
+
+        byte[] small = "small".getBytes();
+        assertTrue(Arrays.equals(small, DeltaDecoder.apply(base, encoder.encode(small, 100))));
+        assertTrue(Arrays.equals(target, DeltaDecoder.apply(small, new DeltaEncoder(small).encode(target,
+                Integer.MAX_VALUE))));
+    }
+
+    /**
+     * Testing that a pack of generated files, with deltas, duplicates and a streamed object, is read by git and by
+     * <code>ObjectDatabase</code>.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testWritePack() throws Exception {
+        ObjectDatabase db = ObjectDatabase.getInstance(repositoryPath);
+        List<String> ids = new ArrayList<String>();
+        List<byte[]> contents = new ArrayList<byte[]>();
+
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            template.append("Generated line ").append(i).append('\n');
+        }
+        Random random = new Random(7);
+        byte[] big = new byte[300000];
+        random.nextBytes(big);
+
+        PackWriter writer = db.newPackWriter();
+        try {
+            writer.setMaxDeltaObjectSize(100000);
+            for (int i = 0; i < 200; i++) {
+                byte[] data = template.toString().replace("line " + (i % 500) + "\n", "line " + i + " changed\n")
+                        .getBytes("UTF-8");
+                contents.add(data);
+                ids.add(writer.add(ObjectType.BLOB, data));
+            }
+            // duplicates, and a big object streamed twice
+            assertEquals(ids.get(10), writer.add(ObjectType.BLOB, contents.get(10)));
+            String bigId = writer.add(ObjectType.BLOB, big.length, new ByteArrayInputStream(big));
+            assertEquals(bigId, writer.add(ObjectType.BLOB, big.length, new ByteArrayInputStream(big)));
+            try {
+                writer.add(ObjectType.BLOB, big.length + 1, new ByteArrayInputStream(big));
+                fail("The stream is shorter than the size");
+            } catch (JavaGitException e) {
+                assertEquals(100104, e.getCode());
+            }
+            contents.add(big);
+            ids.add(bigId);
+            assertEquals(201, writer.getObjectCount());
+
+            File pack = writer.finish();
+            assertTrue(pack.isFile());
+            File idx = new File(pack.getPath().replace(".pack", ".idx"));
+            assertEquals(201, new PackIndex(idx).getObjectCount());
+
+            String verify = HelperGitCommands.runGit(repositoryPath, "verify-pack", "-v", idx.getPath());
+            assertTrue(verify, verify.contains("chain length = 1:"));
+            assertTrue(pack.length() < big.length + 100000);
+        } finally {
+            writer.close();
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            assertTrue(Arrays.equals(contents.get(i), db.open(ids.get(i)).getData()));
+        }
+        assertEquals(new String(contents.get(199), "UTF-8").trim(), HelperGitCommands.runGit(repositoryPath,
+                "cat-file", "-p", ids.get(199)));
+
+        // no loose object, and the objects of the repository are not written again
+        assertEquals("0", HelperGitCommands.runGit(repositoryPath, "count-objects").split(" ")[0]);
+        writer = db.newPackWriter();
+        try {
+            assertEquals(ids.get(0), writer.add(ObjectType.BLOB, contents.get(0)));
+            assertEquals(0, writer.getObjectCount());
+            assertNull(writer.finish());
+        } finally {
+            writer.close();
+        }
+        for (String name : new File(repositoryPath, ".git/objects/pack").list()) {
+            assertFalse(name, name.startsWith("tmp_"));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
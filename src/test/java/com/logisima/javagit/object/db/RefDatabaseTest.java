@@ -0,0 +1,136 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class RefDatabaseTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("RefDatabaseTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+        FileUtilities.createFile(repositoryPath, "fileA.txt", "This is file fileA.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileA.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "First commit");
+    }
+
+    /**
+     * Testing that the loose and packed refs, the peeled tags and the symbolic refs are read like git reads them.
+     *
+     * @throws JavaGitException
+     * @throws IOException
+     */
+    @Test
+    public void testSnapshot() throws JavaGitException, IOException {
+        String commit = HelperGitCommands.runGit(repositoryPath, "rev-parse", "HEAD");
+        HelperGitCommands.runGit(repositoryPath, "branch", "feature");
+        HelperGitCommands.runGit(repositoryPath, "tag", "-a", "-m", "Version 1", "v1");
+        HelperGitCommands.runGit(repositoryPath, "tag", "light");
+        HelperGitCommands.runGit(repositoryPath, "update-ref", "refs/remotes/origin/master", commit);
+        HelperGitCommands.runGit(repositoryPath, "symbolic-ref", "refs/remotes/origin/HEAD", "refs/remotes/origin/master");
+        HelperGitCommands.runGit(repositoryPath, "pack-refs", "--all");
+        // a loose ref overriding a packed ref, and a loose ref only
+        FileUtilities.createFile(repositoryPath, "fileB.txt", "This is file fileB.txt");
+        HelperGitCommands.runGit(repositoryPath, "add", "fileB.txt");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Second commit");
+        HelperGitCommands.runGit(repositoryPath, "branch", "-f", "feature");
+        HelperGitCommands.runGit(repositoryPath, "branch", "loose/branch");
+
+        RefDatabase refs = ObjectDatabase.getInstance(repositoryPath).getRefDatabase();
+        RefDatabase.Snapshot snapshot = refs.getSnapshot();
+        assertEquals(forEachRef(), snapshot.getRefs("refs/"));
+        assertEquals(HelperGitCommands.runGit(repositoryPath, "symbolic-ref", "HEAD"), snapshot.getFullBranch());
+        assertEquals(commit, snapshot.getPeeledObjectId("refs/tags/v1"));
+        assertNull(snapshot.getPeeledObjectId("refs/tags/light"));
+        assertEquals("refs/remotes/origin/master", snapshot.getSymbolicRefTarget("refs/remotes/origin/HEAD"));
+        assertEquals(HelperGitCommands.runGit(repositoryPath, "rev-parse", "feature"), refs.resolve("feature"));
+        assertEquals(commit, refs.resolve("origin"));
+        assertEquals(2, snapshot.getRefs("refs/tags/").size());
+        assertEquals(1, snapshot.getRefs("refs/heads/loose/").size());
+    }
+
+    /**
+     * Testing that a snapshot is kept until the refs change.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testChangeDetection() throws Exception {
+        HelperGitCommands.runGit(repositoryPath, "branch", "packed");
+        HelperGitCommands.runGit(repositoryPath, "pack-refs", "--all");
+        RefDatabase refs = ObjectDatabase.getInstance(repositoryPath).getRefDatabase();
+
+        // wait until the snapshot is no longer racy
+        Thread.sleep(1100);
+        RefDatabase.Snapshot snapshot = refs.getSnapshot();
+        assertFalse(snapshot.isModified());
+        assertSame(snapshot, refs.getSnapshot());
+
+        HelperGitCommands.runGit(repositoryPath, "branch", "new");
+        assertTrue(snapshot.isModified());
+        assertNotNull(refs.getSnapshot().getObjectId("refs/heads/new"));
+
+        snapshot = refs.getSnapshot();
+        HelperGitCommands.runGit(repositoryPath, "branch", "-D", "packed");
+        assertTrue(snapshot.isModified());
+        assertNull(refs.getSnapshot().getObjectId("refs/heads/packed"));
+
+        HelperGitCommands.runGit(repositoryPath, "checkout", "-q", "-b", "other");
+        assertEquals("refs/heads/other", refs.getFullBranch());
+        assertEquals(forEachRef(), refs.getRefs("refs/"));
+    }
+
+    private SortedMap<String, String> forEachRef() throws JavaGitException, IOException {
+        SortedMap<String, String> refs = new TreeMap<String, String>();
+        String output = HelperGitCommands.runGit(repositoryPath, "for-each-ref", "--format=%(refname) %(objectname)");
+        for (String line : output.split("\n")) {
+            String[] fields = line.split(" ");
+            // symbolic refs are not listed by the snapshot
+            if (!fields[0].endsWith("/HEAD")) {
+                refs.put(fields[0], fields[1]);
+            }
+        }
+        return refs;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.object.db;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.cli.GitTestCase;
+import com.logisima.javagit.cli.init.GitInit;
+import com.logisima.javagit.object.Ref;
+import com.logisima.javagit.test.utilities.FileUtilities;
+import com.logisima.javagit.test.utilities.HelperGitCommands;
+
+public class RefResolverTest extends GitTestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("RefResolverTestRepo");
+        GitInit gitInit = new GitInit();
+        gitInit.init(repositoryPath, null);
+        for (int i = 0; i < 4; i++) {
+            FileUtilities.createFile(repositoryPath, "file.txt", "Version " + i);
+            HelperGitCommands.runGit(repositoryPath, "add", "file.txt");
+            HelperGitCommands.runGit(repositoryPath, "commit", "-m", "Commit " + i);
+        }
+    }
+
+    /**
+     * Testing that the refs are resolved like git rev-parse resolves them, and that the results are cached until the
+     * refs change.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResolve() throws Exception {
+        HelperGitCommands.runGit(repositoryPath, "branch", "feature", "HEAD~1");
+        HelperGitCommands.runGit(repositoryPath, "tag", "-a", "-m", "Packed tag", "packed", "HEAD~2");
+        HelperGitCommands.runGit(repositoryPath, "pack-refs", "--all");
+        HelperGitCommands.runGit(repositoryPath, "tag", "-a", "-m", "Loose tag", "loose", "HEAD~3");
+        HelperGitCommands.runGit(repositoryPath, "update-ref", "refs/remotes/origin/master", "HEAD~1");
+
+        ObjectDatabase db = ObjectDatabase.getInstance(repositoryPath);
+        RefResolver resolver = db.getRefResolver();
+        assertEquals(revParse("HEAD~3"), resolver.resolve(Ref.createHeadRef(3)));
+        assertEquals(revParse("HEAD~2"), resolver.resolve(Ref.createHeadRef(2)));
+        assertEquals(revParse("HEAD"), db.resolve(Ref.HEAD));
+        assertEquals(revParse("HEAD~1"), resolver.resolve(Ref.HEAD_1));
+        assertEquals(revParse("feature"), resolver.resolve(Ref.createBranchRef("feature")));
+        assertEquals(revParse("packed^{}"), resolver.resolve(Ref.createTagRef("packed")));
+        assertEquals(revParse("loose^{}"), resolver.resolve(Ref.createTagRef("loose")));
+        assertEquals(revParse("origin/master"), resolver.resolve(Ref.createRemoteRef("origin", "master")));
+        assertEquals(revParse("HEAD"), resolver.resolve(Ref.createSha1Ref(revParse("HEAD").toUpperCase())));
+        assertNull(resolver.resolve(Ref.createBranchRef("unknown")));
+        assertNull(resolver.resolve(Ref.createHeadRef(10)));
+
+        // once the refs are no longer racy, the results are cached
+        Thread.sleep(1100);
+        Ref feature = Ref.createBranchRef("feature");
+        resolver.resolve(feature);
+        long hits = resolver.getHits();
+        assertEquals(revParse("feature"), resolver.resolve(feature));
+        assertEquals(hits + 1, resolver.getHits());
+
+        // a new commit changes HEAD, and the results are resolved again
+        FileUtilities.createFile(repositoryPath, "file.txt", "Version 4");
+        HelperGitCommands.runGit(repositoryPath, "commit", "-a", "-m", "Commit 4");
+        assertEquals(revParse("HEAD"), resolver.resolve(Ref.HEAD));
+        assertEquals(revParse("HEAD~2"), resolver.resolve(Ref.createHeadRef(2)));
+        HelperGitCommands.runGit(repositoryPath, "branch", "-f", "feature", "HEAD");
+        assertEquals(revParse("HEAD"), resolver.resolve(feature));
+    }
+
+    private String revParse(String revision) throws Exception {
+        return HelperGitCommands.runGit(repositoryPath, "rev-parse", revision);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
@@ -19,10 +19,13 @@
  */
 package com.logisima.javagit.test.utilities;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import com.logisima.javagit.JavaGitConfiguration;
 import com.logisima.javagit.JavaGitException;
@@ -48,4 +51,62 @@ public class HelperGitCommands {
 
     }
 
+    /**
+     * Runs a git command in a repository and returns its output. The author and committer identities are forced, so
+     * that commits can be created whatever the git configuration of the machine running the tests.
+     * 
+     * @param repoDirectory The root directory of the repository.
+     * @param args The arguments of the git command (ex: "hash-object", "-w", "file.txt").
+     * @return The standard output of the command, trimmed.
+     * @throws IOException If IO errors happen.
+     * @throws JavaGitException If the command fails.
+     */
+    public static String runGit(File repoDirectory, String... args) throws IOException, JavaGitException {
+        List<String> cmdLine = new ArrayList<String>();
+        cmdLine.add(JavaGitConfiguration.getGitCommand());
+        for (String arg : args) {
+            cmdLine.add(arg);
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(cmdLine);
+        pb.directory(repoDirectory);
+        pb.redirectErrorStream(true);
+        Map<String, String> env = pb.environment();
+        env.put("GIT_AUTHOR_NAME", "JavaGit Test");
+        env.put("GIT_AUTHOR_EMAIL", "test@javagit.test");
+        env.put("GIT_COMMITTER_NAME", "JavaGit Test");
+        env.put("GIT_COMMITTER_EMAIL", "test@javagit.test");
+
+        Process p = pb.start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream is = p.getInputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = is.read(buffer)) >= 0) {
+            output.write(buffer, 0, n);
+        }
+        try {
+            if (p.waitFor() != 0) {
+                throw new JavaGitException(-1, "-1:  git command failed.  { command=[" + cmdLine + "], output=["
+                        + output.toString("UTF-8") + "] }");
+            }
+        } catch (InterruptedException e) {
+            throw new JavaGitException(-1, "-1:  git command interrupted.  { command=[" + cmdLine + "] }");
+        }
+        return output.toString("UTF-8").trim();
+    }
+
+    /**
+     * Writes the content of a file into the object database of a repository.
+     * 
+     * @param repoDirectory The root directory of the repository.
+     * @param filePath The path to the file, relative to the repository.
+     * @return The SHA1 of the blob.
+     * @throws IOException If IO errors happen.
+     * @throws JavaGitException If the command fails.
+     */
+    public static String hashObject(File repoDirectory, String filePath) throws IOException, JavaGitException {
+        return runGit(repoDirectory, "hash-object", "-w", filePath);
+    }
+
 }
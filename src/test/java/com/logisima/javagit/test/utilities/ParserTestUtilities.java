@@ -21,10 +21,12 @@ package com.logisima.javagit.test.utilities;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import com.logisima.javagit.JavaGitException;
 import com.logisima.javagit.cli.Parser;
+import com.logisima.javagit.cli.RawParser;
 import com.logisima.javagit.cli.Response;
 import com.logisima.javagit.utilities.ExceptionMessageMap;
 
@@ -58,4 +60,29 @@ public class ParserTestUtilities {
         }
         return parser.getResponse();
     }
+
+    /**
+     * Method to get the <code>ICommandResponse</code> from a raw parser and a file. The file is given to the parser in
+     * small chunks, so the records span several chunks. This method is only to test parser.
+     * 
+     * @param parser
+     * @param outputGitCmd file that reprsesent a output of a git command.
+     * @return <code>ICommandResponse</code>
+     * @throws IOException
+     * @throws JavaGitException
+     */
+    public static Response getGitResponse(RawParser parser, String outputGitCmd) throws IOException,
+            JavaGitException {
+        InputStream is = ParserTestUtilities.class.getClassLoader().getResourceAsStream(outputGitCmd);
+        try {
+            byte[] buffer = new byte[7];
+            int n;
+            while ((n = is.read(buffer)) >= 0) {
+                parser.parse(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+        }
+        return parser.getResponse();
+    }
 }
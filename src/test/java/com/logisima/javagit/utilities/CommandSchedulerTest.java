@@ -0,0 +1,131 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.utilities;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitConfiguration;
+import com.logisima.javagit.test.utilities.FileUtilities;
+
+/**
+ * Test cases for the <code>CommandScheduler</code> class.
+ */
+public class CommandSchedulerTest extends TestCase {
+
+    File repositoryPath;
+
+    @Before
+    public void setUp() throws Exception {
+        repositoryPath = FileUtilities.createTempDirectory("CommandSchedulerTestRepo");
+    }
+
+    @Test
+    public void testIsWriteCommand() {
+        assertTrue(CommandScheduler.isWriteCommand(Arrays.asList("git", "add", "file.txt")));
+        assertTrue(CommandScheduler.isWriteCommand(Arrays.asList("/usr/bin/git", "--no-pager", "commit", "-m", "log")));
+        assertFalse(CommandScheduler.isWriteCommand(Arrays.asList("git", "log", "--", "add")));
+        assertFalse(CommandScheduler.isWriteCommand(Arrays.asList("git", "status")));
+        assertFalse(CommandScheduler.isWriteCommand(Arrays.asList("git", "--version")));
+    }
+
+    /**
+     * Testing that the reads are bounded, that the writes run one at a time, and that the queues are reported.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testQueues() throws Exception {
+        int max = JavaGitConfiguration.getMaxConcurrentReads();
+        JavaGitConfiguration.setMaxConcurrentReads(1);
+        final CommandScheduler scheduler;
+        try {
+            scheduler = CommandScheduler.getInstance(repositoryPath);
+        } finally {
+            JavaGitConfiguration.setMaxConcurrentReads(max);
+        }
+        assertSame(scheduler, CommandScheduler.getInstance(new File(repositoryPath, ".")));
+        assertEquals(1, scheduler.getMaxConcurrentReads());
+
+        scheduler.acquire(false, 0);
+        scheduler.acquire(true, 0);
+        assertEquals(1, scheduler.getRunningReads());
+        assertTrue(scheduler.isWriteRunning());
+
+        final CountDownLatch done = new CountDownLatch(2);
+        for (final boolean writeCommand : new boolean[] { false, true }) {
+            new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        scheduler.acquire(writeCommand, 0);
+                        scheduler.release(writeCommand);
+                        done.countDown();
+                    } catch (Exception e) {
+                        // the latch is not counted down
+                    }
+                }
+            }.start();
+        }
+        while (scheduler.getQueuedReads() < 1 || scheduler.getQueuedWrites() < 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, done.getCount());
+
+        scheduler.release(false);
+        scheduler.release(true);
+        done.await();
+        assertEquals(0, scheduler.getRunningReads());
+        assertFalse(scheduler.isWriteRunning());
+        assertEquals(4, scheduler.getCompletedCommands());
+    }
+
+    /**
+     * Testing that the commands run in the directories of a repository share the scheduler of the repository.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSchedulerOfSubdirectory() throws Exception {
+        File gitDir = new File(repositoryPath, ".git");
+        File subdirectory = new File(repositoryPath, "src" + File.separator + "main");
+        assertTrue(gitDir.mkdir());
+        assertTrue(subdirectory.mkdirs());
+
+        CommandScheduler scheduler = CommandScheduler.getInstance(repositoryPath);
+        assertSame(scheduler, CommandScheduler.getInstance(subdirectory));
+        assertSame(scheduler, CommandScheduler.getInstance(new File(subdirectory, "..")));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repositoryPath.exists()) {
+            FileUtilities.removeDirectoryRecursivelyAndForcefully(repositoryPath);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.utilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.logisima.javagit.object.DotGit;
+import com.logisima.javagit.object.WorkingTree;
+
+/**
+ * Test cases for the <code>InstanceRegistry</code> class.
+ */
+public class InstanceRegistryTest extends TestCase {
+
+    @Test
+    public void testPutIfAbsent() {
+        InstanceRegistry<Object> registry = new InstanceRegistry<Object>();
+        Object first = new Object();
+        assertNull(registry.get("/repo"));
+        assertSame(first, registry.putIfAbsent("/repo", first));
+        assertSame(first, registry.putIfAbsent("/repo", new Object()));
+        assertSame(first, registry.get("/repo"));
+        assertEquals(1, registry.size());
+    }
+
+    /**
+     * Testing that a closed instance is removed without closing its resources.
+     */
+    @Test
+    public void testRemove() {
+        InstanceRegistry<Object> registry = new InstanceRegistry<Object>();
+        final boolean[] closed = new boolean[1];
+        Object first = new Object();
+        registry.putIfAbsent("/repo", first, new Closeable() {
+
+            public void close() {
+                closed[0] = true;
+            }
+        });
+        assertFalse(registry.remove("/repo", new Object()));
+        assertTrue(registry.remove("/repo", first));
+        assertFalse(registry.remove("/repo", first));
+        assertNull(registry.get("/repo"));
+        assertEquals(0, registry.size());
+        assertFalse(closed[0]);
+
+        Object second = new Object();
+        assertSame(second, registry.putIfAbsent("/repo", second));
+    }
+
+    /**
+     * Testing that the threads asking for the same repository at the same time get the same instance.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentGetInstance() throws Exception {
+        final File path = new File("registrytest" + System.nanoTime());
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<WorkingTree>> futures = new ArrayList<Future<WorkingTree>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(new Callable<WorkingTree>() {
+
+                    public WorkingTree call() throws Exception {
+                        start.await();
+                        DotGit.getInstance(path);
+                        return WorkingTree.getInstance(new File(path, "."));
+                    }
+                }));
+            }
+            start.countDown();
+            WorkingTree workingTree = WorkingTree.getInstance(path);
+            for (Future<WorkingTree> future : futures) {
+                assertSame(workingTree, future.get());
+            }
+            assertTrue(DotGit.existsInstance(path));
+            assertSame(DotGit.getInstance(path), DotGit.getInstance(path.getAbsoluteFile()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ *  This file is part of LogiSima (http://www.logisima.com).
+ *
+ *  JavGit is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JavGit is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LogiSima-Common.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  @author Benoît Simard
+ *  @See https://github.com/sim51/javagit
+ */
+package com.logisima.javagit.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.logisima.javagit.JavaGitException;
+import com.logisima.javagit.cli.Parser;
+import com.logisima.javagit.cli.Response;
+
+/**
+ * Test cases for the <code>ProcessUtilities</code> class.
+ */
+public class ProcessUtilitiesTest extends TestCase {
+
+    // A command hanging like a git waiting for credentials.
+    private static final List<String> HANGING_COMMAND = Arrays.asList("sleep", "30");
+
+    /**
+     * A parser ignoring the output.
+     */
+    private static class NullParser extends Parser {
+
+        private Response response = new Response() {
+        };
+
+        @Override
+        public void parseLine(String line) {
+        }
+
+        @Override
+        public Response getResponse() {
+            return response;
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            ProcessUtilities.runCommand(null, HANGING_COMMAND, new NullParser(), 200);
+            fail("The command should have timed out.");
+        } catch (JavaGitException e) {
+            assertEquals(JavaGitException.PROCESS_TIMEOUT, e.getCode());
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        final JavaGitException[] thrown = new JavaGitException[1];
+        final boolean[] interrupted = new boolean[1];
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    ProcessUtilities.runCommand(null, HANGING_COMMAND, new NullParser(), 0);
+                } catch (JavaGitException e) {
+                    thrown[0] = e;
+                } catch (Exception e) {
+                    // thrown[0] stays null
+                }
+                interrupted[0] = isInterrupted();
+            }
+        };
+        thread.start();
+        Thread.sleep(200);
+        thread.interrupt();
+        thread.join(10000);
+        assertFalse(thread.isAlive());
+        assertNotNull(thrown[0]);
+        assertEquals(JavaGitException.PROCESS_INTERRUPTED, thrown[0].getCode());
+        assertTrue(interrupted[0]);
+    }
+
+    @Test
+    public void testOutputIsDecodedInUtf8() throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        Parser parser = new NullParser() {
+
+            @Override
+            public void parseLine(String line) {
+                lines.add(line);
+            }
+        };
+        // "Première ligne" and "日本語" encoded in UTF-8, whatever the default charset of the JVM
+        List<String> command = Arrays.asList("printf", "Premi\\303\\250re ligne\\n"
+                + "\\346\\227\\245\\346\\234\\254\\350\\252\\236\\n");
+        ProcessUtilities.runCommand(null, command, parser);
+        assertEquals(Arrays.asList("Première ligne", "日本語"), lines);
+    }
+}